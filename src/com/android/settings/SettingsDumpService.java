@@ -38,6 +38,7 @@ import androidx.annotation.VisibleForTesting;
 
 import com.android.settings.applications.ProcStatsData;
 import com.android.settings.datausage.lib.DataUsageLib;
+import com.android.settings.deviceinfo.storage.StorageSizeCache;
 import com.android.settings.network.MobileNetworkRepository;
 import com.android.settingslib.net.DataUsageController;
 
@@ -59,6 +60,8 @@ public class SettingsDumpService extends Service {
     @VisibleForTesting
     static final String KEY_STORAGE = "storage";
     @VisibleForTesting
+    static final String KEY_STORAGE_CACHE = "storage_cache";
+    @VisibleForTesting
     static final String KEY_DATAUSAGE = "datausage";
     @VisibleForTesting
     static final String KEY_MEMORY = "memory";
@@ -95,6 +98,7 @@ public class SettingsDumpService extends Service {
             try {
                 dump.put(KEY_SERVICE, "Settings State");
                 dump.put(KEY_STORAGE, dumpStorage());
+                dump.put(KEY_STORAGE_CACHE, StorageSizeCache.getInstance(this).dump());
                 dump.put(KEY_DATAUSAGE, dumpDataUsage());
                 dump.put(KEY_MEMORY, dumpMemory());
                 dump.put(KEY_DEFAULT_BROWSER_APP, dumpDefaultBrowser());
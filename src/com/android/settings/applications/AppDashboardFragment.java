@@ -72,6 +72,11 @@ public class AppDashboardFragment extends DashboardFragment {
         return TAG;
     }
 
+    @Override
+    protected boolean shouldUpdatePreferenceStatesInBackground() {
+        return true;
+    }
+
     @Override
     public int getHelpResource() {
         return R.string.help_url_apps_and_notifications;
@@ -32,8 +32,6 @@ import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
 import com.android.settingslib.applications.ApplicationsState.AppFilter;
 
-import java.util.List;
-
 /**
  * Connects app op info to the ApplicationsState. Extends {@link AppStateAppOpsBridge} to tailor
  * to the semantics of {@link Manifest.permission#SCHEDULE_EXACT_ALARM}.
@@ -107,12 +105,8 @@ public class AppStateAlarmsAndRemindersBridge extends AppStateBaseBridge {
     }
 
     @Override
-    protected void loadAllExtraInfo() {
-        final List<AppEntry> allApps = mAppSession.getAllApps();
-        for (int i = 0; i < allApps.size(); i++) {
-            final AppEntry currentEntry = allApps.get(i);
-            updateExtraInfo(currentEntry, currentEntry.info.packageName, currentEntry.info.uid);
-        }
+    protected boolean shouldLoadExtraInfoInChunks() {
+        return true;
     }
 
     public static final AppFilter FILTER_CLOCK_APPS = new AppFilter() {
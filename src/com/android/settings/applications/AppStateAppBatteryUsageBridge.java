@@ -80,15 +80,8 @@ public class AppStateAppBatteryUsageBridge extends AppStateBaseBridge {
     }
 
     @Override
-    protected void loadAllExtraInfo() {
-        if (DEBUG) {
-            Log.d(TAG, "Start loadAllExtraInfo()");
-        }
-        mAppSession.getAllApps().stream().forEach(appEntry ->
-                updateExtraInfo(appEntry, appEntry.info.packageName, appEntry.info.uid));
-        if (DEBUG) {
-            Log.d(TAG, "End loadAllExtraInfo()");
-        }
+    protected boolean shouldLoadExtraInfoInChunks() {
+        return true;
     }
 
     protected Object getAppBatteryUsageState(String pkg, int uid) {
@@ -19,17 +19,41 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
 import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
 import com.android.settingslib.applications.ApplicationsState.Session;
 
+import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  * Common base class for bridging information to ApplicationsState.
  */
 public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks {
 
+    /** Number of apps whose extra info is loaded per message when loading in chunks. */
+    @VisibleForTesting
+    static final int LOAD_CHUNK_SIZE = 32;
+
+    // Loads the apps in the order of the default sorting of the lists, so the first chunk
+    // holds the apps shown first.
+    private static final Comparator<AppEntry> LOAD_ORDER = new Comparator<AppEntry>() {
+        private final Collator mCollator = Collator.getInstance();
+
+        @Override
+        public int compare(AppEntry app1, AppEntry app2) {
+            if (app1.label == null || app2.label == null) {
+                return app1.label == null ? (app2.label == null ? 0 : 1) : -1;
+            }
+            return mCollator.compare(app1.label, app2.label);
+        }
+    };
+
     protected final ApplicationsState mAppState;
     protected final Session mAppSession;
     protected final Callback mCallback;
@@ -115,12 +139,45 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
         // No op.
     }
 
-    protected abstract void loadAllExtraInfo();
+    /**
+     * Loads the extra info of all apps. By default the data shared by the apps is loaded with
+     * {@link #prefetchExtraInfo}, then the extra info of each app with {@link #updateExtraInfo}.
+     */
+    protected void loadAllExtraInfo() {
+        final List<AppEntry> apps = mAppSession.getAllApps();
+        prefetchExtraInfo(apps);
+        final int N = apps.size();
+        for (int i = 0; i < N; i++) {
+            final AppEntry app = apps.get(i);
+            updateExtraInfo(app, app.info.packageName, app.info.uid);
+        }
+    }
 
     protected abstract void updateExtraInfo(AppEntry app, String pkg, int uid);
 
+    /**
+     * Loads in bulk, typically with one call per user, the data needed by
+     * {@link #updateExtraInfo} for the given apps, so it is not queried app by app.
+     */
+    @WorkerThread
+    protected void prefetchExtraInfo(List<AppEntry> apps) {
+        // No op.
+    }
+
+    /**
+     * Returns true to load the extra info of all apps in chunks of {@link #LOAD_CHUNK_SIZE}
+     * apps with {@link #updateExtraInfo}, instead of {@link #loadAllExtraInfo}. The
+     * {@link Callback} is notified after the first chunk, so the top of the list is shown while
+     * the other apps are loading, and the list can be rebuilt between two chunks. The last chunk
+     * is reported with {@link Callback#onExtraInfoLoadCompleted}.
+     */
+    protected boolean shouldLoadExtraInfoInChunks() {
+        return false;
+    }
+
     private class MainHandler extends Handler {
         private static final int MSG_INFO_UPDATED = 1;
+        private static final int MSG_LOAD_COMPLETED = 2;
 
         public MainHandler(Looper looper) {
             super(looper);
@@ -132,6 +189,9 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
                 case MSG_INFO_UPDATED:
                     mCallback.onExtraInfoUpdated();
                     break;
+                case MSG_LOAD_COMPLETED:
+                    mCallback.onExtraInfoLoadCompleted();
+                    break;
             }
         }
     }
@@ -139,6 +199,11 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
     private class BackgroundHandler extends Handler {
         private static final int MSG_LOAD_ALL = 1;
         private static final int MSG_FORCE_LOAD_PKG = 2;
+        private static final int MSG_LOAD_CHUNK = 3;
+
+        // Apps of the ongoing chunked load, only accessed on the background thread.
+        private List<AppEntry> mPendingApps;
+        private int mNextChunkStart;
 
         public BackgroundHandler(Looper looper) {
             super(looper);
@@ -148,8 +213,21 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
         public void handleMessage(Message msg) {
             switch (msg.what) {
                 case MSG_LOAD_ALL:
-                    loadAllExtraInfo();
-                    mMainHandler.sendEmptyMessage(MainHandler.MSG_INFO_UPDATED);
+                    // A new load replaces the chunks left from the previous one.
+                    removeMessages(MSG_LOAD_CHUNK);
+                    if (shouldLoadExtraInfoInChunks()) {
+                        mPendingApps = new ArrayList<>(mAppSession.getAllApps());
+                        mPendingApps.sort(LOAD_ORDER);
+                        mNextChunkStart = 0;
+                        prefetchExtraInfo(mPendingApps);
+                        loadNextChunk();
+                    } else {
+                        loadAllExtraInfo();
+                        mMainHandler.sendEmptyMessage(MainHandler.MSG_LOAD_COMPLETED);
+                    }
+                    break;
+                case MSG_LOAD_CHUNK:
+                    loadNextChunk();
                     break;
                 case MSG_FORCE_LOAD_PKG:
                     ArrayList<AppEntry> apps = mAppSession.getAllApps();
@@ -166,10 +244,45 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
                     break;
             }
         }
+
+        private void loadNextChunk() {
+            if (mPendingApps == null) {
+                return;
+            }
+            final int size = mPendingApps.size();
+            final int start = mNextChunkStart;
+            final int end = Math.min(start + LOAD_CHUNK_SIZE, size);
+            for (int i = start; i < end; i++) {
+                final AppEntry app = mPendingApps.get(i);
+                updateExtraInfo(app, app.info.packageName, app.info.uid);
+            }
+            mNextChunkStart = end;
+            // Only the first and the last chunks update the list, not to rebuild it per chunk.
+            if (end == size) {
+                mMainHandler.sendEmptyMessage(MainHandler.MSG_LOAD_COMPLETED);
+            } else if (start == 0) {
+                mMainHandler.sendEmptyMessage(MainHandler.MSG_INFO_UPDATED);
+            }
+            if (end < size) {
+                // Posted rather than looped, so the rebuilds queued meanwhile on the same
+                // thread are not delayed until all apps are loaded.
+                sendEmptyMessage(MSG_LOAD_CHUNK);
+            } else {
+                mPendingApps = null;
+            }
+        }
     }
 
 
     public interface Callback {
         void onExtraInfoUpdated();
+
+        /**
+         * Called once the extra info of all apps is loaded, while the previous
+         * {@link #onExtraInfoUpdated} calls of a load in chunks only covered part of the apps.
+         */
+        default void onExtraInfoLoadCompleted() {
+            onExtraInfoUpdated();
+        }
     }
 }
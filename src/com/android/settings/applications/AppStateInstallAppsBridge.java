@@ -24,6 +24,7 @@ import android.content.pm.PackageManager;
 import android.os.RemoteException;
 import android.os.UserHandle;
 import android.util.Log;
+import android.util.SparseArray;
 
 import com.android.internal.util.ArrayUtils;
 import com.android.settingslib.applications.ApplicationsState;
@@ -43,6 +44,8 @@ public class AppStateInstallAppsBridge extends AppStateBaseBridge {
 
     private final IPackageManager mIpm;
     private final AppOpsManager mAppOpsManager;
+    // Packages requesting REQUEST_INSTALL_PACKAGES per user, loaded along with all apps.
+    private SparseArray<String[]> mRequesterPackages = new SparseArray<>();
 
     public AppStateInstallAppsBridge(Context context, ApplicationsState appState,
             Callback callback) {
@@ -53,29 +56,54 @@ public class AppStateInstallAppsBridge extends AppStateBaseBridge {
 
     @Override
     protected void updateExtraInfo(AppEntry app, String packageName, int uid) {
-        app.extraInfo = createInstallAppsStateFor(packageName, uid);
+        final String[] requesterPackages = mRequesterPackages.get(UserHandle.getUserId(uid));
+        app.extraInfo = requesterPackages != null
+                ? createInstallAppsState(ArrayUtils.contains(requesterPackages, packageName),
+                        packageName, uid)
+                : createInstallAppsStateFor(packageName, uid);
     }
 
     @Override
-    protected void loadAllExtraInfo() {
-        // TODO: consider making this a batch operation with a single binder call
-        final List<AppEntry> allApps = mAppSession.getAllApps();
-        for (int i = 0; i < allApps.size(); i++) {
-            AppEntry currentEntry = allApps.get(i);
-            updateExtraInfo(currentEntry, currentEntry.info.packageName, currentEntry.info.uid);
+    protected void prefetchExtraInfo(List<AppEntry> apps) {
+        // The requesting packages are the same for all apps of a user, query them once per user
+        // instead of once per app.
+        final SparseArray<String[]> requesterPackages = new SparseArray<>();
+        for (int i = 0; i < apps.size(); i++) {
+            final int userId = UserHandle.getUserId(apps.get(i).info.uid);
+            if (requesterPackages.indexOfKey(userId) >= 0) {
+                continue;
+            }
+            final String[] packages = getAppOpPermissionPackages(
+                    Manifest.permission.REQUEST_INSTALL_PACKAGES, userId);
+            if (packages == null) {
+                // Falls back to the queries per app.
+                continue;
+            }
+            requesterPackages.put(userId, packages);
         }
+        mRequesterPackages = requesterPackages;
     }
 
-    private boolean hasRequestedAppOpPermission(String permission, String packageName, int userId) {
+    @Override
+    protected boolean shouldLoadExtraInfoInChunks() {
+        return true;
+    }
+
+    private String[] getAppOpPermissionPackages(String permission, int userId) {
         try {
-            String[] packages = mIpm.getAppOpPermissionPackages(permission, userId);
-            return ArrayUtils.contains(packages, packageName);
+            final String[] packages = mIpm.getAppOpPermissionPackages(permission, userId);
+            return packages != null ? packages : new String[0];
         } catch (RemoteException exc) {
             Log.e(TAG, "PackageManager dead. Cannot get permission info");
-            return false;
+            return null;
         }
     }
 
+    private boolean hasRequestedAppOpPermission(String permission, String packageName, int userId) {
+        final String[] packages = getAppOpPermissionPackages(permission, userId);
+        return packages != null && ArrayUtils.contains(packages, packageName);
+    }
+
     private boolean hasPermission(String permission, int uid) {
         try {
             int result = mIpm.checkUidPermission(permission, uid);
@@ -91,10 +119,16 @@ public class AppStateInstallAppsBridge extends AppStateBaseBridge {
     }
 
     public InstallAppsState createInstallAppsStateFor(String packageName, int uid) {
-        final InstallAppsState appState = new InstallAppsState();
         final int userId = UserHandle.getUserId(uid);
-        appState.permissionRequested = hasRequestedAppOpPermission(
-                Manifest.permission.REQUEST_INSTALL_PACKAGES, packageName, userId);
+        return createInstallAppsState(hasRequestedAppOpPermission(
+                Manifest.permission.REQUEST_INSTALL_PACKAGES, packageName, userId),
+                packageName, uid);
+    }
+
+    private InstallAppsState createInstallAppsState(boolean permissionRequested,
+            String packageName, int uid) {
+        final InstallAppsState appState = new InstallAppsState();
+        appState.permissionRequested = permissionRequested;
         appState.appOpMode = getAppOpMode(AppOpsManager.OP_REQUEST_INSTALL_PACKAGES, uid,
                 packageName);
         return appState;
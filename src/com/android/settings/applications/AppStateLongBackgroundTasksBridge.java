@@ -33,8 +33,6 @@ import com.android.settingslib.applications.ApplicationsState.AppFilter;
 
 import libcore.util.EmptyArray;
 
-import java.util.List;
-
 /**
  * Connects app op info to the ApplicationsState. Extends {@link AppStateAppOpsBridge} to tailor
  * to the semantics of {@link Manifest.permission#RUN_USER_INITIATED_JOBS}.
@@ -82,12 +80,8 @@ public class AppStateLongBackgroundTasksBridge extends AppStateBaseBridge {
     }
 
     @Override
-    protected void loadAllExtraInfo() {
-        final List<AppEntry> allApps = mAppSession.getAllApps();
-        for (int i = 0; i < allApps.size(); i++) {
-            final AppEntry currentEntry = allApps.get(i);
-            updateExtraInfo(currentEntry, currentEntry.info.packageName, currentEntry.info.uid);
-        }
+    protected boolean shouldLoadExtraInfoInChunks() {
+        return true;
     }
 
     public static final AppFilter FILTER_LONG_JOBS_APPS = new AppFilter() {
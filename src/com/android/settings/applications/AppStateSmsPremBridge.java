@@ -20,8 +20,6 @@ import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
 import com.android.settingslib.applications.ApplicationsState.AppFilter;
 
-import java.util.ArrayList;
-
 /**
  * Connects the info provided by ApplicationsState and premium sms permission state.
  */
@@ -37,13 +35,8 @@ public class AppStateSmsPremBridge extends AppStateBaseBridge {
     }
 
     @Override
-    protected void loadAllExtraInfo() {
-        ArrayList<AppEntry> apps = mAppSession.getAllApps();
-        final int N = apps.size();
-        for (int i = 0; i < N; i++) {
-            AppEntry app = apps.get(i);
-            updateExtraInfo(app, app.info.packageName, app.info.uid);
-        }
+    protected boolean shouldLoadExtraInfoInChunks() {
+        return true;
     }
 
     @Override
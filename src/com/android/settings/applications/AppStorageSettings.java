@@ -53,6 +53,7 @@ import androidx.preference.PreferenceCategory;
 import com.android.settings.R;
 import com.android.settings.Utils;
 import com.android.settings.deviceinfo.StorageWizardMoveConfirm;
+import com.android.settings.deviceinfo.storage.StorageSizeCache;
 import com.android.settingslib.RestrictedLockUtils;
 import com.android.settingslib.applications.AppUtils;
 import com.android.settingslib.applications.ApplicationsState.Callbacks;
@@ -132,10 +133,12 @@ public class AppStorageSettings extends AppInfoWithHeader
     private VolumeInfo[] mCandidates;
     private AlertDialog.Builder mDialogBuilder;
     private ApplicationInfo mInfo;
+    private Context mAppContext;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mAppContext = getContext().getApplicationContext();
         if (savedInstanceState != null) {
             mCacheCleared = savedInstanceState.getBoolean(KEY_CACHE_CLEARED, false);
             mDataCleared = savedInstanceState.getBoolean(KEY_DATA_CLEARED, false);
@@ -608,8 +611,20 @@ public class AppStorageSettings extends AppInfoWithHeader
         return SettingsEnums.APPLICATIONS_APP_STORAGE;
     }
 
+    /**
+     * Returns the package sizes cached by the Storage page, which are dropped once the cache or
+     * the data of the app is cleared.
+     */
+    @VisibleForTesting
+    StorageSizeCache getStorageSizeCache() {
+        return StorageSizeCache.getInstance(mAppContext);
+    }
+
     class ClearCacheObserver extends IPackageDataObserver.Stub {
         public void onRemoveCompleted(final String packageName, final boolean succeeded) {
+            if (succeeded) {
+                getStorageSizeCache().invalidatePackage(mUserId, packageName);
+            }
             final Message msg = mHandler.obtainMessage(MSG_CLEAR_CACHE);
             msg.arg1 = succeeded ? OP_SUCCESSFUL : OP_FAILED;
             mHandler.sendMessage(msg);
@@ -618,6 +633,9 @@ public class AppStorageSettings extends AppInfoWithHeader
 
     class ClearUserDataObserver extends IPackageDataObserver.Stub {
         public void onRemoveCompleted(final String packageName, final boolean succeeded) {
+            if (succeeded) {
+                getStorageSizeCache().invalidatePackage(mUserId, packageName);
+            }
             final Message msg = mHandler.obtainMessage(MSG_CLEAR_USER_DATA);
             msg.arg1 = succeeded ? OP_SUCCESSFUL : OP_FAILED;
             mHandler.sendMessage(msg);
@@ -21,6 +21,7 @@ import static com.android.settings.spa.app.appinfo.AppInfoSettingsProvider.start
 import android.app.Application;
 import android.app.usage.UsageStats;
 import android.content.Context;
+import android.graphics.drawable.Drawable;
 import android.icu.text.RelativeDateTimeFormatter;
 import android.text.TextUtils;
 import android.util.ArrayMap;
@@ -77,6 +78,9 @@ public class AppsPreferenceController extends BasePreferenceController implement
 
     private Fragment mHost;
     private boolean mInitialLaunch = false;
+    // Recent apps and their icons loaded off the main thread, null if not loaded.
+    private volatile List<RecentAppStatsMixin.UsageStatsWrapper> mLoadedRecentApps;
+    private volatile Map<String, Drawable> mLoadedIcons;
 
     public AppsPreferenceController(Context context) {
         super(context, KEY_RECENT_APPS_CATEGORY);
@@ -101,6 +105,35 @@ public class AppsPreferenceController extends BasePreferenceController implement
         mInitialLaunch = true;
     }
 
+    @Override
+    public void loadStateInBackground() {
+        super.loadStateInBackground();
+        if (mInitialLaunch) {
+            // displayPreference() just loaded them.
+            return;
+        }
+        final List<RecentAppStatsMixin.UsageStatsWrapper> recentApps = loadRecentApps();
+        final Map<String, Drawable> icons = new ArrayMap<>();
+        for (RecentAppStatsMixin.UsageStatsWrapper statsWrapper : recentApps) {
+            final String pkgName = statsWrapper.mUsageStats.getPackageName();
+            final ApplicationsState.AppEntry appEntry =
+                    mApplicationsState.getEntry(pkgName, statsWrapper.mUserId);
+            if (appEntry != null) {
+                icons.put(pkgName + statsWrapper.mUserId,
+                        Utils.getBadgedIcon(mContext, appEntry.info));
+            }
+        }
+        mLoadedIcons = icons;
+        mLoadedRecentApps = recentApps;
+    }
+
+    @Override
+    public void discardLoadedState() {
+        super.discardLoadedState();
+        mLoadedRecentApps = null;
+        mLoadedIcons = null;
+    }
+
     @Override
     public void updateState(Preference preference) {
         super.updateState(preference);
@@ -120,7 +153,8 @@ public class AppsPreferenceController extends BasePreferenceController implement
     @VisibleForTesting
     void refreshUi() {
         loadAllAppsCount();
-        mRecentApps = loadRecentApps();
+        final List<RecentAppStatsMixin.UsageStatsWrapper> loadedRecentApps = mLoadedRecentApps;
+        mRecentApps = loadedRecentApps != null ? loadedRecentApps : loadRecentApps();
         if (!mRecentApps.isEmpty()) {
             displayRecentApps();
             mAllAppsInfoPref.setVisible(false);
@@ -203,7 +237,9 @@ public class AppsPreferenceController extends BasePreferenceController implement
 
                 pref.setKey(key);
                 pref.setTitle(appEntry.label);
-                pref.setIcon(Utils.getBadgedIcon(mContext, appEntry.info));
+                final Map<String, Drawable> loadedIcons = mLoadedIcons;
+                final Drawable icon = loadedIcons != null ? loadedIcons.get(key) : null;
+                pref.setIcon(icon != null ? icon : Utils.getBadgedIcon(mContext, appEntry.info));
                 pref.setSummary(StringUtil.formatRelativeTime(mContext,
                         System.currentTimeMillis() - stats.getLastTimeUsed(), false,
                         RelativeDateTimeFormatter.Style.LONG));
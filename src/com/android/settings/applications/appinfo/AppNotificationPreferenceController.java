@@ -22,6 +22,7 @@ import android.content.Context;
 import android.icu.text.MessageFormat;
 import android.os.Bundle;
 
+import androidx.annotation.WorkerThread;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceScreen;
 
@@ -31,6 +32,7 @@ import com.android.settings.notification.NotificationBackend;
 import com.android.settings.notification.app.AppNotificationSettings;
 import com.android.settingslib.applications.AppUtils;
 import com.android.settingslib.applications.ApplicationsState;
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.HashMap;
 import java.util.Locale;
@@ -64,7 +66,11 @@ public class AppNotificationPreferenceController extends AppInfoPreferenceContro
 
     @Override
     public void updateState(Preference preference) {
-        preference.setSummary(getNotificationSummary(mParent.getAppEntry(), mContext, mBackend));
+        final ApplicationsState.AppEntry appEntry = mParent.getAppEntry();
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final CharSequence summary = getNotificationSummary(appEntry, mContext, mBackend);
+            ThreadUtils.postOnMainThread(() -> preference.setSummary(summary));
+        });
     }
 
     @Override
@@ -83,6 +89,7 @@ public class AppNotificationPreferenceController extends AppInfoPreferenceContro
     }
 
 
+    @WorkerThread
     private CharSequence getNotificationSummary(ApplicationsState.AppEntry appEntry,
             Context context, NotificationBackend backend) {
         if (appEntry == null) {
@@ -90,6 +97,7 @@ public class AppNotificationPreferenceController extends AppInfoPreferenceContro
         }
         NotificationBackend.AppRow appRow =
                 backend.loadAppRow(context, context.getPackageManager(), appEntry.info);
+        backend.recordSentStats(backend.loadSentStats(context, appRow.userId), appRow);
         return getNotificationSummary(appRow, context);
     }
 
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Search index of the app list, built once per list rebuild.
+ *
+ * <p>Labels and package names are folded once when the index is built, so filtering only folds
+ * the query. A label matches when it contains the query, a package name matches when the query
+ * is a prefix of the package name or of one of its segments. Segments shared by most packages,
+ * like "com" or "android", only match a query going past them, and queries shorter than
+ * {@link #MIN_PACKAGE_QUERY_LENGTH} only match labels. A query extending the previous one is only
+ * checked against the previous matches.
+ */
+final class AppSearchIndex {
+
+    /** Shorter queries would match the package names of most apps. */
+    private static final int MIN_PACKAGE_QUERY_LENGTH = 2;
+
+    private static final String[] COMMON_SEGMENTS = {"com", "org", "android", "google"};
+
+    private final ArrayList<AppEntry> mEntries;
+    private final Locale mLocale;
+    private final String[] mLabels;
+    private final String[] mPackageNames;
+
+    AppSearchIndex(@NonNull ArrayList<AppEntry> entries, @NonNull Locale locale) {
+        final int size = entries.size();
+        mEntries = entries;
+        mLocale = locale;
+        mLabels = new String[size];
+        mPackageNames = new String[size];
+        for (int i = 0; i < size; i++) {
+            final AppEntry entry = entries.get(i);
+            mLabels[i] = fold(entry.label, locale);
+            mPackageNames[i] = entry.info != null && entry.info.packageName != null
+                    ? entry.info.packageName.toLowerCase(Locale.ROOT) : "";
+        }
+    }
+
+    /** Returns true if the index was built from the given list. */
+    boolean isIndexOf(@Nullable List<AppEntry> entries) {
+        return mEntries == entries;
+    }
+
+    /**
+     * Returns the entries matching the query, in list order.
+     *
+     * @param previous the result of the previous query, used to narrow down the entries to check
+     */
+    @WorkerThread
+    @NonNull
+    Result search(@Nullable CharSequence query, @Nullable Result previous) {
+        final String foldedQuery = fold(query, mLocale);
+        if (foldedQuery.isEmpty()) {
+            return new Result(this, foldedQuery, null /* positions */, mEntries.size());
+        }
+        final int[] positions;
+        final int candidateCount;
+        if (previous != null && previous.mIndex == this
+                && foldedQuery.startsWith(previous.mQuery)
+                && matchesSamePackageSegments(previous.mQuery, foldedQuery)) {
+            // Anything matching the longer query also matches the previous one.
+            positions = previous.mPositions != null ? previous.mPositions.clone() : null;
+            candidateCount = previous.mCount;
+        } else {
+            positions = null;
+            candidateCount = mEntries.size();
+        }
+        final int[] matches = positions != null ? positions : new int[candidateCount];
+        int count = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            final int position = positions != null ? positions[i] : i;
+            if (matches(position, foldedQuery)) {
+                matches[count++] = position;
+            }
+        }
+        return new Result(this, foldedQuery, matches, count);
+    }
+
+    private boolean matches(int position, String foldedQuery) {
+        if (mLabels[position].contains(foldedQuery)) {
+            return true;
+        }
+        if (foldedQuery.length() < MIN_PACKAGE_QUERY_LENGTH) {
+            return false;
+        }
+        final boolean spansSegments = foldedQuery.indexOf('.') >= 0;
+        final String packageName = mPackageNames[position];
+        int start = 0;
+        while (start < packageName.length()) {
+            final int separator = packageName.indexOf('.', start);
+            final int end = separator < 0 ? packageName.length() : separator;
+            if ((spansSegments || !isCommonSegment(packageName, start, end))
+                    && packageName.startsWith(foldedQuery, start)) {
+                return true;
+            }
+            if (separator < 0) {
+                break;
+            }
+            start = separator + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the package names are matched the same way for both queries, so the longer
+     * one can only match a subset of the previous matches.
+     */
+    private static boolean matchesSamePackageSegments(String previousQuery, String query) {
+        return previousQuery.length() >= MIN_PACKAGE_QUERY_LENGTH
+                && (previousQuery.indexOf('.') >= 0) == (query.indexOf('.') >= 0);
+    }
+
+    private static boolean isCommonSegment(String packageName, int start, int end) {
+        for (String segment : COMMON_SEGMENTS) {
+            if (segment.length() == end - start
+                    && packageName.regionMatches(start, segment, 0, segment.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Folds the text for comparison: lower-cased in the given locale, and without accents so
+     * "e" also finds "é".
+     */
+    @NonNull
+    static String fold(@Nullable CharSequence text, @NonNull Locale locale) {
+        if (TextUtils.isEmpty(text)) {
+            return "";
+        }
+        String folded = text.toString();
+        if (!Normalizer.isNormalized(folded, Normalizer.Form.NFD)) {
+            folded = Normalizer.normalize(folded, Normalizer.Form.NFD);
+        }
+        // Most labels have no accent, only copy the ones which do.
+        boolean hasMarks = false;
+        for (int i = 0; i < folded.length(); i++) {
+            if (Character.getType(folded.charAt(i)) == Character.NON_SPACING_MARK) {
+                hasMarks = true;
+                break;
+            }
+        }
+        if (hasMarks) {
+            final StringBuilder builder = new StringBuilder(folded.length());
+            for (int i = 0; i < folded.length(); i++) {
+                final char c = folded.charAt(i);
+                if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                    builder.append(c);
+                }
+            }
+            folded = builder.toString();
+        }
+        return folded.toLowerCase(locale);
+    }
+
+    /** Entries matching a query. */
+    static final class Result {
+        private final AppSearchIndex mIndex;
+        private final String mQuery;
+        // Positions of the matching entries in the index, null when all entries match.
+        @Nullable private final int[] mPositions;
+        private final int mCount;
+
+        private Result(AppSearchIndex index, String query, @Nullable int[] positions,
+                int count) {
+            mIndex = index;
+            mQuery = query;
+            mPositions = positions;
+            mCount = count;
+        }
+
+        int getCount() {
+            return mCount;
+        }
+
+        /** Returns the matching entries, or the indexed list itself when all entries match. */
+        @NonNull
+        ArrayList<AppEntry> getEntries() {
+            if (mPositions == null) {
+                return mIndex.mEntries;
+            }
+            final ArrayList<AppEntry> entries = new ArrayList<>(mCount);
+            for (int i = 0; i < mCount; i++) {
+                entries.add(mIndex.mEntries.get(mPositions[i]));
+            }
+            return entries;
+        }
+    }
+}
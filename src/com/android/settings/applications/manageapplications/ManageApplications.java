@@ -88,7 +88,9 @@ import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
 import androidx.core.view.ViewCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.android.internal.compat.IPlatformCompat;
@@ -179,6 +181,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Locale;
 import java.util.Set;
 
 /**
@@ -1239,7 +1242,10 @@ public class ManageApplications extends InstrumentedFragment
         private AppFilter mCompositeFilter;
         private boolean mHasReceivedLoadEntries;
         private boolean mHasReceivedBridgeCallback;
+        // The bridge may report the apps loaded so far before all of them are loaded.
+        private boolean mHasLoadedAllExtraInfo;
         private SearchFilter mSearchFilter;
+        private volatile AppSearchIndex mSearchIndex;
         private PowerAllowlistBackend mBackend;
 
         // This is to remember and restore the last scroll position when this
@@ -1535,6 +1541,10 @@ public class ManageApplications extends InstrumentedFragment
                 Log.w(TAG, "Apps haven't loaded completely yet, so nothing can be filtered");
                 return;
             }
+            if (mSearchIndex == null || !mSearchIndex.isIndexOf(mOriginalEntries)) {
+                // Index the list once per rebuild, every keystroke is then matched against it.
+                mSearchIndex = new AppSearchIndex(mOriginalEntries, Locale.getDefault());
+            }
             mSearchFilter.filter(query);
         }
 
@@ -1587,7 +1597,13 @@ public class ManageApplications extends InstrumentedFragment
             mOriginalEntries = entries;
             notifyDataSetChanged();
             if (getItemCount() == 0) {
-                mLoadingViewController.showEmpty(false /* animate */);
+                // A filter on the extra info may match none of the apps loaded so far, while
+                // the apps left to load match it.
+                if (mExtraInfoBridge == null || mHasLoadedAllExtraInfo) {
+                    mLoadingViewController.showEmpty(false /* animate */);
+                } else {
+                    mLoadingViewController.showLoadingViewDelayed();
+                }
             } else {
                 mLoadingViewController.showContent(false /* animate */);
 
@@ -1631,6 +1647,12 @@ public class ManageApplications extends InstrumentedFragment
             rebuild();
         }
 
+        @Override
+        public void onExtraInfoLoadCompleted() {
+            mHasLoadedAllExtraInfo = true;
+            onExtraInfoUpdated();
+        }
+
         @Override
         public void onRunningStateChanged(boolean running) {
             mManageApplications.getActivity().setProgressBarIndeterminateVisibility(running);
@@ -1955,35 +1977,85 @@ public class ManageApplications extends InstrumentedFragment
             }
         }
 
+        private void dispatchSearchResults(ArrayList<ApplicationsState.AppEntry> entries) {
+            final ArrayList<ApplicationsState.AppEntry> oldEntries = mEntries;
+            mEntries = entries;
+            final boolean hasHeader = mManageApplications.mListType == LIST_TYPE_APPS_LOCALE
+                    || mManageApplications.mListType == LIST_TYPE_CLONED_APPS;
+            if (oldEntries == null || (hasHeader && (oldEntries.isEmpty() || entries.isEmpty()))) {
+                // The header is only shown with apps, let the list lay out again.
+                notifyDataSetChanged();
+                return;
+            }
+            final int offset = hasHeader ? 1 : 0;
+            DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return oldEntries.size();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return entries.size();
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                    return oldEntries.get(oldItemPosition) == entries.get(newItemPosition);
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                    // Filtering only adds or removes apps, the bound ones are unchanged.
+                    return true;
+                }
+            }, false /* detectMoves */).dispatchUpdatesTo(new ListUpdateCallback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    notifyItemRangeInserted(position + offset, count);
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    notifyItemRangeRemoved(position + offset, count);
+                }
+
+                @Override
+                public void onMoved(int fromPosition, int toPosition) {
+                    notifyItemMoved(fromPosition + offset, toPosition + offset);
+                }
+
+                @Override
+                public void onChanged(int position, int count, Object payload) {
+                    notifyItemRangeChanged(position + offset, count, payload);
+                }
+            });
+        }
+
         /**
-         * An array filter that constrains the content of the array adapter with a substring.
-         * Item that does not contains the specified substring will be removed from the list.</p>
+         * A filter that constrains the app list with the {@link AppSearchIndex}. A query typed
+         * after the previous one only checks the apps matching the previous query, and only the
+         * apps added or removed by the new query are updated in the list.
          */
         private class SearchFilter extends Filter {
+            // Only accessed on the filter thread.
+            private AppSearchIndex.Result mLastResult;
+
             @WorkerThread
             @Override
             protected FilterResults performFiltering(CharSequence query) {
-                final ArrayList<ApplicationsState.AppEntry> matchedEntries;
-                if (TextUtils.isEmpty(query)) {
-                    matchedEntries = mOriginalEntries;
-                } else {
-                    matchedEntries = new ArrayList<>();
-                    for (ApplicationsState.AppEntry entry : mOriginalEntries) {
-                        if (entry.label.toLowerCase().contains(query.toString().toLowerCase())) {
-                            matchedEntries.add(entry);
-                        }
-                    }
-                }
+                final AppSearchIndex index = mSearchIndex;
+                final AppSearchIndex.Result result = index.search(query, mLastResult);
+                mLastResult = result;
                 final FilterResults results = new FilterResults();
-                results.values = matchedEntries;
-                results.count = matchedEntries.size();
+                results.values = result.getEntries();
+                results.count = result.getCount();
                 return results;
             }
 
             @Override
             protected void publishResults(CharSequence constraint, FilterResults results) {
-                mEntries = (ArrayList<ApplicationsState.AppEntry>) results.values;
-                notifyDataSetChanged();
+                dispatchSearchResults((ArrayList<ApplicationsState.AppEntry>) results.values);
             }
         }
     }
@@ -29,7 +29,9 @@ import android.provider.SettingsSlicesContract;
 import android.text.TextUtils;
 import android.util.Log;
 
+import androidx.annotation.CallSuper;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceScreen;
 
@@ -127,6 +129,9 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
     private UserHandle mWorkProfileUser;
     private int mMetricsCategory;
     private boolean mPrefVisibility;
+    // Summary loaded off the main thread, shown by refreshSummary() until discarded.
+    private volatile CharSequence mLoadedSummary;
+    private volatile boolean mHasLoadedSummary;
 
     /**
      * Instantiate a controller as specified controller type and user-defined key.
@@ -289,6 +294,44 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
         }
     }
 
+    /**
+     * Loads off the main thread what {@link #updateState(Preference)} shows, for the screens
+     * which update their preference states in the background. Only called when the controller
+     * is available, {@link #updateState(Preference)} then follows on the main thread.
+     *
+     * <p>Loads the summary by default, so {@link #refreshSummary(Preference)} does not call
+     * {@link #getSummary()} on the main thread. Controllers whose {@code updateState} reads more
+     * than the summary override this to load it as well.
+     */
+    @WorkerThread
+    @CallSuper
+    public void loadStateInBackground() {
+        mLoadedSummary = getSummary();
+        mHasLoadedSummary = true;
+    }
+
+    /**
+     * Drops what {@link #loadStateInBackground()} loaded once the {@link #updateState(Preference)}
+     * following it is done, so later updates read the state again.
+     */
+    @CallSuper
+    public void discardLoadedState() {
+        mHasLoadedSummary = false;
+        mLoadedSummary = null;
+    }
+
+    @Override
+    protected void refreshSummary(Preference preference) {
+        if (!mHasLoadedSummary) {
+            super.refreshSummary(preference);
+            return;
+        }
+        final CharSequence summary = mLoadedSummary;
+        if (preference != null && summary != null) {
+            preference.setSummary(summary);
+        }
+    }
+
     /**
      * @return the UI type supported by the controller.
      */
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.accessibility.TopLevelAccessibilityPreferenceController;
+import com.android.settings.accounts.TopLevelAccountEntryPreferenceController;
+import com.android.settings.applications.AppBatteryUsagePreferenceController;
+import com.android.settings.applications.ClonedAppsPreferenceController;
+import com.android.settings.applications.DefaultAppsPreferenceController;
+import com.android.settings.applications.HibernatedAppsPreferenceController;
+import com.android.settings.applications.appcompat.UserAspectRatioAppsPreferenceController;
+import com.android.settings.communal.CommunalPreferenceController;
+import com.android.settings.connecteddevice.TopLevelConnectedDevicesPreferenceController;
+import com.android.settings.deviceinfo.TopLevelStoragePreferenceController;
+import com.android.settings.deviceinfo.aboutphone.TopLevelAboutDevicePreferenceController;
+import com.android.settings.display.TopLevelDisplayPreferenceController;
+import com.android.settings.display.TopLevelWallpaperPreferenceController;
+import com.android.settings.fuelgauge.TopLevelBatteryPreferenceController;
+import com.android.settings.location.TopLevelLocationPreferenceController;
+import com.android.settings.network.AdaptiveConnectivityPreferenceController;
+import com.android.settings.network.AirplaneModePreferenceController;
+import com.android.settings.network.CellularSecurityPreferenceController;
+import com.android.settings.network.NetworkProviderCallsSmsController;
+import com.android.settings.network.TetherPreferenceController;
+import com.android.settings.network.TopLevelNetworkEntryPreferenceController;
+import com.android.settings.privacy.TopLevelPrivacyEntryPreferenceController;
+import com.android.settings.safetycenter.TopLevelSafetyCenterEntryPreferenceController;
+import com.android.settings.security.TopLevelSecurityEntryPreferenceController;
+import com.android.settings.spa.development.compat.PlatformCompatPreferenceController;
+import com.android.settings.support.SupportPreferenceController;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the factories creating the {@link BasePreferenceController}s declared in xml.
+ *
+ * <p>The controllers of the most opened screens (the homepage, Network &amp; internet and Apps)
+ * are registered with their constructors, so they are created without reflection. The
+ * constructor of any other controller class is looked up once per process and kept as a
+ * factory, so inflating a screen or indexing it for search does not repeat the class lookup nor
+ * rely on exceptions to find out whether the controller takes a preference key.
+ */
+final class PreferenceControllerFactory {
+    private static final String TAG = "PrefCtrlFactory";
+
+    /** Creates a controller with the {@code (Context)} constructor. */
+    private interface ContextOnlyConstructor {
+        BasePreferenceController create(Context context);
+    }
+
+    /** Creates a controller with the {@code (Context, String)} constructor. */
+    private interface KeyedConstructor {
+        BasePreferenceController create(Context context, String key);
+    }
+
+    // Marks the class names which cannot be instantiated, so they are not looked up again.
+    private static final PreferenceControllerFactory INVALID =
+            new PreferenceControllerFactory(/* contextOnly= */ null, /* keyed= */ null);
+
+    private static final Map<String, PreferenceControllerFactory> sFactories =
+            new ConcurrentHashMap<>();
+
+    // Keep in sync with the controllers declared in top_level_settings.xml, apps.xml and
+    // network_provider_internet.xml, all of which take a preference key.
+    private static final Map<String, KeyedConstructor> sRegisteredFactories = Map.ofEntries(
+            // Homepage
+            keyed(TopLevelAccessibilityPreferenceController.class,
+                    TopLevelAccessibilityPreferenceController::new),
+            keyed(TopLevelAccountEntryPreferenceController.class,
+                    TopLevelAccountEntryPreferenceController::new),
+            keyed(CommunalPreferenceController.class, CommunalPreferenceController::new),
+            keyed(TopLevelConnectedDevicesPreferenceController.class,
+                    TopLevelConnectedDevicesPreferenceController::new),
+            keyed(TopLevelStoragePreferenceController.class,
+                    TopLevelStoragePreferenceController::new),
+            keyed(TopLevelAboutDevicePreferenceController.class,
+                    TopLevelAboutDevicePreferenceController::new),
+            keyed(TopLevelDisplayPreferenceController.class,
+                    TopLevelDisplayPreferenceController::new),
+            keyed(TopLevelWallpaperPreferenceController.class,
+                    TopLevelWallpaperPreferenceController::new),
+            keyed(TopLevelBatteryPreferenceController.class,
+                    TopLevelBatteryPreferenceController::new),
+            keyed(TopLevelLocationPreferenceController.class,
+                    TopLevelLocationPreferenceController::new),
+            keyed(TopLevelNetworkEntryPreferenceController.class,
+                    TopLevelNetworkEntryPreferenceController::new),
+            keyed(TopLevelPrivacyEntryPreferenceController.class,
+                    TopLevelPrivacyEntryPreferenceController::new),
+            keyed(TopLevelSafetyCenterEntryPreferenceController.class,
+                    TopLevelSafetyCenterEntryPreferenceController::new),
+            keyed(TopLevelSecurityEntryPreferenceController.class,
+                    TopLevelSecurityEntryPreferenceController::new),
+            keyed(SupportPreferenceController.class, SupportPreferenceController::new),
+            // Network & internet
+            keyed(AdaptiveConnectivityPreferenceController.class,
+                    AdaptiveConnectivityPreferenceController::new),
+            keyed(AirplaneModePreferenceController.class,
+                    AirplaneModePreferenceController::new),
+            keyed(CellularSecurityPreferenceController.class,
+                    CellularSecurityPreferenceController::new),
+            keyed(NetworkProviderCallsSmsController.class,
+                    NetworkProviderCallsSmsController::new),
+            keyed(TetherPreferenceController.class, TetherPreferenceController::new),
+            // Apps
+            keyed(AppBatteryUsagePreferenceController.class,
+                    AppBatteryUsagePreferenceController::new),
+            keyed(ClonedAppsPreferenceController.class, ClonedAppsPreferenceController::new),
+            keyed(DefaultAppsPreferenceController.class, DefaultAppsPreferenceController::new),
+            keyed(HibernatedAppsPreferenceController.class,
+                    HibernatedAppsPreferenceController::new),
+            keyed(UserAspectRatioAppsPreferenceController.class,
+                    UserAspectRatioAppsPreferenceController::new),
+            keyed(PlatformCompatPreferenceController.class,
+                    PlatformCompatPreferenceController::new));
+
+    @Nullable private final ContextOnlyConstructor mContextOnly;
+    @Nullable private final KeyedConstructor mKeyed;
+
+    private PreferenceControllerFactory(
+            @Nullable ContextOnlyConstructor contextOnly, @Nullable KeyedConstructor keyed) {
+        mContextOnly = contextOnly;
+        mKeyed = keyed;
+    }
+
+    /**
+     * Returns the factory of the controller, or null if the controller cannot be instantiated.
+     */
+    @Nullable
+    static PreferenceControllerFactory get(@NonNull String controllerName) {
+        final PreferenceControllerFactory factory =
+                sFactories.computeIfAbsent(controllerName, PreferenceControllerFactory::resolve);
+        return factory == INVALID ? null : factory;
+    }
+
+    /** Returns true if the controller can only be created with a preference key. */
+    boolean requiresKey() {
+        return mContextOnly == null;
+    }
+
+    /**
+     * Creates the controller, preferring the {@code (Context)} constructor as
+     * {@link PreferenceControllerListHelper} always did.
+     *
+     * @throws IllegalStateException if the controller cannot be created
+     */
+    @NonNull
+    BasePreferenceController create(@NonNull Context context, @Nullable String key,
+            boolean isWorkProfile) {
+        if (mContextOnly != null) {
+            try {
+                return mContextOnly.create(context);
+            } catch (IllegalStateException e) {
+                if (mKeyed == null || key == null) {
+                    throw e;
+                }
+                Log.d(TAG, "Context-only constructor failed, fallback to keyed one", e);
+            }
+        }
+        if (mKeyed == null || key == null) {
+            throw new IllegalStateException("Controller requires a key");
+        }
+        final BasePreferenceController controller = mKeyed.create(context, key);
+        controller.setForWork(isWorkProfile);
+        return controller;
+    }
+
+    @VisibleForTesting
+    static void clear() {
+        sFactories.clear();
+    }
+
+    private static Map.Entry<String, KeyedConstructor> keyed(
+            Class<? extends BasePreferenceController> clazz, KeyedConstructor constructor) {
+        return Map.entry(clazz.getName(), constructor);
+    }
+
+    private static PreferenceControllerFactory resolve(String controllerName) {
+        final KeyedConstructor registered = sRegisteredFactories.get(controllerName);
+        if (registered != null) {
+            return new PreferenceControllerFactory(/* contextOnly= */ null, registered);
+        }
+        final Class<?> clazz;
+        try {
+            clazz = Class.forName(controllerName);
+        } catch (ClassNotFoundException | LinkageError e) {
+            Log.w(TAG, "Cannot find controller class: " + controllerName, e);
+            return INVALID;
+        }
+        if (!BasePreferenceController.class.isAssignableFrom(clazz)
+                || Modifier.isAbstract(clazz.getModifiers())) {
+            Log.w(TAG, "Not a concrete preference controller: " + controllerName);
+            return INVALID;
+        }
+        Constructor<?> contextOnly = null;
+        Constructor<?> keyed = null;
+        // Walks the public constructors instead of getConstructor() to avoid the
+        // NoSuchMethodException of the missing one.
+        for (Constructor<?> constructor : clazz.getConstructors()) {
+            final Class<?>[] types = constructor.getParameterTypes();
+            if (types.length == 1 && types[0] == Context.class) {
+                contextOnly = constructor;
+            } else if (types.length == 2 && types[0] == Context.class
+                    && types[1] == String.class) {
+                keyed = constructor;
+            }
+        }
+        if (contextOnly == null && keyed == null) {
+            Log.w(TAG, "No suitable constructor for controller: " + controllerName);
+            return INVALID;
+        }
+        final Constructor<?> contextOnlyConstructor = contextOnly;
+        final Constructor<?> keyedConstructor = keyed;
+        return new PreferenceControllerFactory(
+                contextOnlyConstructor == null ? null
+                        : context -> newInstance(controllerName, contextOnlyConstructor, context),
+                keyedConstructor == null ? null
+                        : (context, key) ->
+                                newInstance(controllerName, keyedConstructor, context, key));
+    }
+
+    private static BasePreferenceController newInstance(String controllerName,
+            Constructor<?> constructor, Object... params) {
+        try {
+            return (BasePreferenceController) constructor.newInstance(params);
+        } catch (InstantiationException | IllegalArgumentException | InvocationTargetException
+                | IllegalAccessException e) {
+            throw new IllegalStateException(
+                    "Invalid preference controller: " + controllerName, e);
+        }
+    }
+}
@@ -70,25 +70,26 @@ public class PreferenceControllerListHelper {
             if (TextUtils.isEmpty(controllerName)) {
                 continue;
             }
-            BasePreferenceController controller;
+            final PreferenceControllerFactory factory =
+                    PreferenceControllerFactory.get(controllerName);
+            if (factory == null) {
+                Log.w(TAG, "Cannot instantiate controller from reflection: " + controllerName);
+                continue;
+            }
+            final String key = metadata.getString(METADATA_KEY);
+            final boolean isWorkProfile = metadata.getBoolean(METADATA_FOR_WORK, false);
+            if (factory.requiresKey() && TextUtils.isEmpty(key)) {
+                Log.w(TAG, "Controller requires key but it's not defined in xml: "
+                        + controllerName);
+                continue;
+            }
+            final BasePreferenceController controller;
             try {
-                controller = BasePreferenceController.createInstance(context, controllerName);
+                controller = factory.create(context, TextUtils.isEmpty(key) ? null : key,
+                        isWorkProfile);
             } catch (IllegalStateException e) {
-                Log.d(TAG, "Could not find Context-only controller for pref: " + controllerName);
-                final String key = metadata.getString(METADATA_KEY);
-                final boolean isWorkProfile = metadata.getBoolean(METADATA_FOR_WORK, false);
-                if (TextUtils.isEmpty(key)) {
-                    Log.w(TAG, "Controller requires key but it's not defined in xml: "
-                            + controllerName);
-                    continue;
-                }
-                try {
-                    controller = BasePreferenceController.createInstance(context, controllerName,
-                            key, isWorkProfile);
-                } catch (IllegalStateException e2) {
-                    Log.w(TAG, "Cannot instantiate controller from reflection: " + controllerName);
-                    continue;
-                }
+                Log.w(TAG, "Cannot instantiate controller from reflection: " + controllerName);
+                continue;
             }
             controllers.add(controller);
         }
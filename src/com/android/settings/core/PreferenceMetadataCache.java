@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.os.Bundle;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory cache of the metadata extracted by {@link PreferenceXmlParserUtils}.
+ *
+ * <p>The same preference screens are parsed by the fragments, the controller helpers, the search
+ * index providers and the slices. The metadata only depends on the xml resource, the requested
+ * flags and the resource configuration, which form the cache key. The process is restarted when
+ * the APK is updated, so the cache never outlives the resources it was built from.
+ */
+final class PreferenceMetadataCache {
+
+    // Enough for the preference screens of Settings with a few combinations of flags.
+    private static final int MAX_CACHED_SCREENS = 512;
+
+    private static final LruCache<String, List<Bundle>> sMetadataCache =
+            new LruCache<>(MAX_CACHED_SCREENS);
+
+    private PreferenceMetadataCache() {}
+
+    /**
+     * Returns the cache key of the metadata, or null if the metadata of the context should not be
+     * cached.
+     */
+    @Nullable
+    static String getKey(@NonNull Context context, int xmlResId, int flags) {
+        final Resources resources = context.getResources();
+        final Configuration configuration = resources != null ? resources.getConfiguration() : null;
+        if (configuration == null) {
+            return null;
+        }
+        return xmlResId
+                + "|" + flags
+                + "|" + configuration.getLocales().toLanguageTags()
+                + "|" + configuration.mcc
+                + "|" + configuration.mnc
+                + "|" + configuration.densityDpi
+                + "|" + configuration.uiMode
+                + "|" + configuration.screenLayout
+                + "|" + configuration.smallestScreenWidthDp;
+    }
+
+    /** Returns a copy of the cached metadata, or null if the metadata is not cached. */
+    @Nullable
+    static List<Bundle> get(@Nullable String key) {
+        if (key == null) {
+            return null;
+        }
+        final List<Bundle> metadata = sMetadataCache.get(key);
+        return metadata != null ? copyOf(metadata) : null;
+    }
+
+    /** Caches a copy of the metadata, so later changes of the caller are not visible. */
+    static void put(@Nullable String key, @NonNull List<Bundle> metadata) {
+        if (key != null) {
+            sMetadataCache.put(key, copyOf(metadata));
+        }
+    }
+
+    @VisibleForTesting
+    static void clear() {
+        sMetadataCache.evictAll();
+    }
+
+    @VisibleForTesting
+    static int size() {
+        return sMetadataCache.size();
+    }
+
+    private static List<Bundle> copyOf(List<Bundle> metadata) {
+        final List<Bundle> copy = new ArrayList<>(metadata.size());
+        for (Bundle bundle : metadata) {
+            copy.add(new Bundle(bundle));
+        }
+        return copy;
+    }
+}
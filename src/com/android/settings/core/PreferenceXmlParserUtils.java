@@ -110,17 +110,32 @@ public class PreferenceXmlParserUtils {
     /**
      * Extracts metadata from preference xml and put them into a {@link Bundle}.
      *
+     * <p>The metadata is cached per resource configuration, the returned bundles are copies and
+     * can be modified by the caller.
+     *
      * @param xmlResId xml res id of a preference screen
      * @param flags    Should be one or more of {@link MetadataFlag}.
      */
     @NonNull
     public static List<Bundle> extractMetadata(Context context, @XmlRes int xmlResId, int flags)
             throws IOException, XmlPullParserException {
-        final List<Bundle> metadata = new ArrayList<>();
         if (xmlResId <= 0) {
             Log.d(TAG, xmlResId + " is invalid.");
-            return metadata;
+            return new ArrayList<>();
         }
+        final String cacheKey = PreferenceMetadataCache.getKey(context, xmlResId, flags);
+        final List<Bundle> cachedMetadata = PreferenceMetadataCache.get(cacheKey);
+        if (cachedMetadata != null) {
+            return cachedMetadata;
+        }
+        final List<Bundle> metadata = parseMetadata(context, xmlResId, flags);
+        PreferenceMetadataCache.put(cacheKey, metadata);
+        return metadata;
+    }
+
+    private static List<Bundle> parseMetadata(Context context, @XmlRes int xmlResId, int flags)
+            throws IOException, XmlPullParserException {
+        final List<Bundle> metadata = new ArrayList<>();
         final XmlResourceParser parser = context.getResources().getXml(xmlResId);
 
         int type;
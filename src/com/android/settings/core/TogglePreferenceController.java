@@ -37,6 +37,9 @@ public abstract class TogglePreferenceController extends BasePreferenceControlle
 
     private static final String TAG = "TogglePrefController";
 
+    // Checked state loaded off the main thread, null if not loaded.
+    private volatile Boolean mLoadedChecked;
+
     public TogglePreferenceController(Context context, String preferenceKey) {
         super(context, preferenceKey);
     }
@@ -64,19 +67,36 @@ public abstract class TogglePreferenceController extends BasePreferenceControlle
         }
     }
 
+    @Override
+    public void loadStateInBackground() {
+        super.loadStateInBackground();
+        mLoadedChecked = isChecked();
+    }
+
+    @Override
+    public void discardLoadedState() {
+        super.discardLoadedState();
+        mLoadedChecked = null;
+    }
+
     @Override
     public void updateState(Preference preference) {
         if (preference instanceof TwoStatePreference) {
-            ((TwoStatePreference) preference).setChecked(isChecked());
+            ((TwoStatePreference) preference).setChecked(isCheckedOrLoaded());
         } else if (preference instanceof PrimarySwitchPreference) {
-            ((PrimarySwitchPreference) preference).setChecked(isChecked());
+            ((PrimarySwitchPreference) preference).setChecked(isCheckedOrLoaded());
         } else if (preference instanceof TwoStateButtonPreference) {
-            ((TwoStateButtonPreference) preference).setChecked(isChecked());
+            ((TwoStateButtonPreference) preference).setChecked(isCheckedOrLoaded());
         } else {
             refreshSummary(preference);
         }
     }
 
+    private boolean isCheckedOrLoaded() {
+        final Boolean loadedChecked = mLoadedChecked;
+        return loadedChecked != null ? loadedChecked : isChecked();
+    }
+
     @Override
     public final boolean onPreferenceChange(Preference preference, Object newValue) {
         // TwoStatePreference is a regular preference and can be handled by DashboardFragment
@@ -54,6 +54,7 @@ import com.android.settingslib.core.lifecycle.Lifecycle;
 import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.Tile;
 import com.android.settingslib.search.Indexable;
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -64,7 +65,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -89,6 +92,10 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     private DashboardTilePlaceholderPreferenceController mPlaceholderPreferenceController;
     private boolean mListeningToCategoryChange;
     private List<String> mSuppressInjectedTileKeys;
+    // Identifies the latest background update, older results are dropped.
+    private int mPreferenceStateGeneration;
+    @VisibleForTesting
+    Executor mPreferenceStateExecutor;
 
     @Override
     public void onAttach(Context context) {
@@ -386,35 +393,148 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         return mPreferenceControllers.values();
     }
 
+    /**
+     * Returns true if the availability and the state of the preferences are loaded on a
+     * background pool in {@link #updatePreferenceStates()}.
+     *
+     * <p>Screens with controllers doing binder calls in {@code getAvailabilityStatus()} or
+     * {@code getSummary()} can opt in, as long as all their controllers are safe to query off
+     * the main thread. The available {@link BasePreferenceController}s load their state with
+     * {@link BasePreferenceController#loadStateInBackground()}, and the preferences are then
+     * updated together in one main thread pass.
+     */
+    protected boolean shouldUpdatePreferenceStatesInBackground() {
+        return false;
+    }
+
     /**
      * Update state of each preference managed by PreferenceController.
      */
     protected void updatePreferenceStates() {
+        if (shouldUpdatePreferenceStatesInBackground()) {
+            updatePreferenceStatesInBackground();
+            return;
+        }
         final PreferenceScreen screen = getPreferenceScreen();
         Collection<List<AbstractPreferenceController>> controllerLists =
                 mPreferenceControllers.values();
         for (List<AbstractPreferenceController> controllerList : controllerLists) {
             for (AbstractPreferenceController controller : controllerList) {
-                if (!controller.isAvailable()) {
-                    continue;
-                }
+                updatePreferenceState(screen, controller, controller.isAvailable());
+            }
+        }
+    }
 
-                final String key = controller.getPreferenceKey();
-                if (TextUtils.isEmpty(key)) {
-                    Log.d(TAG, String.format("Preference key is %s in Controller %s",
-                            key, controller.getClass().getSimpleName()));
-                    continue;
-                }
+    private void updatePreferenceStatesInBackground() {
+        final int generation = ++mPreferenceStateGeneration;
+        if (mPreferenceStateExecutor == null) {
+            mPreferenceStateExecutor = ThreadUtils.getBackgroundExecutor();
+        }
+        final Map<AbstractPreferenceController, CompletableFuture<Boolean>> availabilities =
+                new ArrayMap<>();
+        for (List<AbstractPreferenceController> controllerList : mPreferenceControllers.values()) {
+            for (AbstractPreferenceController controller : controllerList) {
+                availabilities.put(controller, CompletableFuture.supplyAsync(
+                        () -> loadPreferenceState(controller), mPreferenceStateExecutor));
+            }
+        }
 
-                final Preference preference = screen.findPreference(key);
-                if (preference == null) {
-                    Log.d(TAG, String.format("Cannot find preference with key %s in Controller %s",
-                            key, controller.getClass().getSimpleName()));
-                    continue;
-                }
-                controller.updateState(preference);
+        final List<String> pendingKeys = new ArrayList<>();
+        availabilities.forEach((controller, availability) -> {
+            final String key = controller.getPreferenceKey();
+            if (!availability.isDone() && !TextUtils.isEmpty(key)
+                    && !pendingKeys.contains(key)) {
+                pendingKeys.add(key);
+            }
+        });
+        if (pendingKeys.isEmpty()) {
+            applyPreferenceStates(generation, availabilities);
+            return;
+        }
+        // Holds the results until every controller finished or the blocker timed out, so the
+        // screen is not redrawn for each controller.
+        final UiBlockerController blocker = new UiBlockerController(pendingKeys);
+        availabilities.forEach((controller, availability) -> availability.whenComplete(
+                (available, e) -> blocker.countDown(controller.getPreferenceKey())));
+        blocker.start(() -> applyPreferenceStates(generation, availabilities));
+    }
+
+    /**
+     * Returns the availability of the controller, after loading its state if available, or null
+     * if it must be checked again.
+     */
+    @Nullable
+    private Boolean loadPreferenceState(AbstractPreferenceController controller) {
+        final boolean available;
+        try {
+            available = controller.isAvailable();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Cannot load availability in background for "
+                    + controller.getClass().getSimpleName(), e);
+            return null;
+        }
+        if (available && controller instanceof BasePreferenceController) {
+            try {
+                ((BasePreferenceController) controller).loadStateInBackground();
+            } catch (RuntimeException e) {
+                // updateState() reads what could not be loaded on the main thread.
+                Log.w(TAG, "Cannot load state in background for "
+                        + controller.getClass().getSimpleName(), e);
+            }
+        }
+        return available;
+    }
+
+    private void applyPreferenceStates(int generation,
+            Map<AbstractPreferenceController, CompletableFuture<Boolean>> availabilities) {
+        final PreferenceScreen screen = getPreferenceScreen();
+        if (generation != mPreferenceStateGeneration || screen == null) {
+            return;
+        }
+        availabilities.forEach((controller, availability) -> {
+            if (availability.isDone()) {
+                applyPreferenceState(screen, controller, availability.join());
+            } else {
+                // The blocker timed out, applies this one on its own once it is loaded.
+                availability.thenAccept(available -> ThreadUtils.postOnMainThread(() -> {
+                    final PreferenceScreen currentScreen = getPreferenceScreen();
+                    if (generation == mPreferenceStateGeneration && currentScreen != null) {
+                        applyPreferenceState(currentScreen, controller, available);
+                    }
+                }));
             }
+        });
+    }
+
+    private void applyPreferenceState(PreferenceScreen screen,
+            AbstractPreferenceController controller, @Nullable Boolean available) {
+        updatePreferenceState(screen, controller,
+                available != null ? available : controller.isAvailable());
+        if (controller instanceof BasePreferenceController) {
+            ((BasePreferenceController) controller).discardLoadedState();
+        }
+    }
+
+    private void updatePreferenceState(PreferenceScreen screen,
+            AbstractPreferenceController controller, boolean available) {
+        if (!available) {
+            return;
+        }
+
+        final String key = controller.getPreferenceKey();
+        if (TextUtils.isEmpty(key)) {
+            Log.d(TAG, String.format("Preference key is %s in Controller %s",
+                    key, controller.getClass().getSimpleName()));
+            return;
+        }
+
+        final Preference preference = screen.findPreference(key);
+        if (preference == null) {
+            Log.d(TAG, String.format("Cannot find preference with key %s in Controller %s",
+                    key, controller.getClass().getSimpleName()));
+            return;
         }
+        controller.updateState(preference);
     }
 
     /**
@@ -88,9 +88,9 @@ public class UiBlockerController {
 
     /**
      * Count down latch by {@code key}. It only count down 1 time if same key count down multiple
-     * times.
+     * times. It can be called from any thread.
      */
-    public boolean countDown(String key) {
+    public synchronized boolean countDown(String key) {
         if (mKeys.remove(key)) {
             mCountDownLatch.countDown();
             return true;
@@ -46,6 +46,7 @@ import com.android.settings.R;
 import com.android.settings.core.instrumentation.InstrumentedDialogFragment;
 import com.android.settings.datausage.lib.DataUsageFormatter;
 import com.android.settings.datausage.lib.NetworkTemplates;
+import com.android.settings.datausage.lib.NetworkUsageSnapshotCache;
 import com.android.settings.network.SubscriptionUtil;
 import com.android.settings.network.telephony.MobileNetworkUtils;
 import com.android.settings.search.BaseSearchIndexProvider;
@@ -254,6 +255,8 @@ public class BillingCycleSettings extends DataUsageBaseFragment implements
 
     @Override
     public void updateDataUsage() {
+        // The cycles may have changed, drop the usage cached for the previous ones.
+        NetworkUsageSnapshotCache.invalidate(getContext(), mNetworkTemplate);
         updatePrefs();
     }
 
@@ -22,8 +22,6 @@ import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
 import com.android.settings.datausage.lib.NetworkCycleBucketRepository
 import com.android.settings.datausage.lib.NetworkStatsRepository
-import com.android.settings.datausage.lib.NetworkStatsRepository.Companion.Bucket
-import com.android.settings.datausage.lib.NetworkStatsRepository.Companion.filterTime
 import com.android.settings.datausage.lib.NetworkUsageData
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.MutableStateFlow
@@ -32,14 +30,10 @@ import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.filterNotNull
 import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.shareIn
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.plus
 
-data class SelectedBuckets(
-    val selectedCycle: NetworkUsageData,
-    val buckets: List<Bucket>,
-)
-
 class DataUsageListViewModel(application: Application) : AndroidViewModel(application) {
     private val scope = viewModelScope + Dispatchers.Default
 
@@ -49,23 +43,19 @@ class DataUsageListViewModel(application: Application) : AndroidViewModel(applic
         NetworkStatsRepository(getApplication(), template).queryDetailsForDevice()
     }.stateIn(scope, SharingStarted.WhileSubscribed(), emptyList())
 
-    val cyclesFlow = combine(templateFlow.filterNotNull(), bucketsFlow) { template, buckets ->
-        NetworkCycleBucketRepository(application, template, buckets).loadCycles()
-    }.flowOn(Dispatchers.Default)
+    // Shared by the cycles and the chart data, so the buckets are only indexed once.
+    private val bucketRepositoryFlow =
+        combine(templateFlow.filterNotNull(), bucketsFlow) { template, buckets ->
+            NetworkCycleBucketRepository(application, template, buckets)
+        }.shareIn(scope, SharingStarted.WhileSubscribed(), replay = 1)
 
-    val selectedCycleFlow = MutableStateFlow<NetworkUsageData?>(null)
+    val cyclesFlow = bucketRepositoryFlow.map { it.loadCycles() }.flowOn(Dispatchers.Default)
 
-    private val selectedBucketsFlow =
-        combine(selectedCycleFlow.filterNotNull(), bucketsFlow) { selectedCycle, buckets ->
-            SelectedBuckets(
-                selectedCycle = selectedCycle,
-                buckets = buckets.filterTime(selectedCycle.startTime, selectedCycle.endTime),
-            )
-        }.flowOn(Dispatchers.Default)
+    val selectedCycleFlow = MutableStateFlow<NetworkUsageData?>(null)
 
+    // The daily ranges are within the selected cycle, so the buckets don't need to be filtered.
     val chartDataFlow =
-        combine(templateFlow.filterNotNull(), selectedBucketsFlow) { template, selectedBuckets ->
-            NetworkCycleBucketRepository(application, template, selectedBuckets.buckets)
-                .queryChartData(selectedBuckets.selectedCycle)
+        combine(selectedCycleFlow.filterNotNull(), bucketRepositoryFlow) { selectedCycle, repo ->
+            repo.queryChartData(selectedCycle)
         }.flowOn(Dispatchers.Default)
 }
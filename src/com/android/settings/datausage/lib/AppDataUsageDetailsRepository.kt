@@ -36,6 +36,8 @@ class AppDataUsageDetailsRepository @JvmOverloads constructor(
         NetworkCycleDataRepository(context, template),
     private val networkStatsRepository: NetworkStatsRepository =
         NetworkStatsRepository(context, template),
+    private val snapshotCache: NetworkUsageSnapshotCache =
+        NetworkUsageSnapshotCache(context, template),
 ) : IAppDataUsageDetailsRepository {
     private val withSdkSandboxUids = withSdkSandboxUids(uids)
 
@@ -47,11 +49,9 @@ class AppDataUsageDetailsRepository @JvmOverloads constructor(
             ?: networkCycleDataRepository.getCycles()
 
     private fun queryDetails(range: Range<Long>): NetworkUsageDetailsData {
-        val buckets = networkStatsRepository.queryBuckets(range.lower, range.upper)
-            .filter { it.uid in withSdkSandboxUids }
-        val totalUsage = buckets.sumOf { it.bytes }
-        val foregroundUsage =
-            buckets.filter { it.state == NetworkStats.Bucket.STATE_FOREGROUND }.sumOf { it.bytes }
+        val (totalUsage, foregroundUsage) =
+            snapshotCache.getOrLoad(range, withSdkSandboxUids) { queryUsage(range) }
+                ?: longArrayOf(0, 0)
         return NetworkUsageDetailsData(
             range = range,
             totalUsage = totalUsage,
@@ -59,4 +59,16 @@ class AppDataUsageDetailsRepository @JvmOverloads constructor(
             backgroundUsage = totalUsage - foregroundUsage,
         )
     }
+
+    /** Gets the total and the foreground usage of the uids in the range, null on failure. */
+    private fun queryUsage(range: Range<Long>): LongArray? {
+        val usageByState =
+            networkStatsRepository.queryUsageByState(range.lower, range.upper, withSdkSandboxUids)
+                ?: return null
+        var totalUsage = 0L
+        for (i in 0 until usageByState.size()) {
+            totalUsage += usageByState.valueAt(i)
+        }
+        return longArrayOf(totalUsage, usageByState[NetworkStats.Bucket.STATE_FOREGROUND])
+    }
 }
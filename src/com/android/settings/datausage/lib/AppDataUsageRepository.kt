@@ -26,10 +26,10 @@ import android.os.UserHandle
 import android.os.UserManager
 import android.util.SparseArray
 import android.util.SparseBooleanArray
+import android.util.SparseLongArray
 import androidx.annotation.VisibleForTesting
 import androidx.core.util.keyIterator
 import com.android.settings.R
-import com.android.settings.datausage.lib.NetworkStatsRepository.Companion.Bucket
 import com.android.settingslib.AppItem
 import com.android.settingslib.net.UidDetailProvider
 import com.android.settingslib.spaprivileged.framework.common.userManager
@@ -43,12 +43,12 @@ class AppDataUsageRepository(
     private val networkStatsRepository = NetworkStatsRepository(context, template)
 
     fun getAppPercent(carrierId: Int?, startTime: Long, endTime: Long): List<Pair<AppItem, Int>> {
-        val buckets = networkStatsRepository.queryBuckets(startTime, endTime)
-        return getAppPercent(carrierId, buckets)
+        val usageByUid = networkStatsRepository.queryUsageByUid(startTime, endTime)
+        return getAppPercent(carrierId, usageByUid)
     }
 
     @VisibleForTesting
-    fun getAppPercent(carrierId: Int?, buckets: List<Bucket>): List<Pair<AppItem, Int>> {
+    fun getAppPercent(carrierId: Int?, usageByUid: SparseLongArray): List<Pair<AppItem, Int>> {
         val items = ArrayList<AppItem>()
         val knownItems = SparseArray<AppItem>()
         val profiles = context.userManager.userProfiles
@@ -56,7 +56,7 @@ class AppDataUsageRepository(
         val userIdToIsHiddenMap = profiles.associate { profile ->
             profile.identifier to shouldSkipProfile(userManager, profile)
         }
-        bindStats(buckets, userIdToIsHiddenMap, knownItems, items)
+        bindStats(usageByUid, userIdToIsHiddenMap, knownItems, items)
         val restrictedUids = context.getSystemService(NetworkPolicyManager::class.java)!!
             .getUidsWithPolicy(NetworkPolicyManager.POLICY_REJECT_METERED_BACKGROUND)
         for (uid in restrictedUids) {
@@ -103,14 +103,15 @@ class AppDataUsageRepository(
     }
 
     private fun bindStats(
-        buckets: List<Bucket>,
+        usageByUid: SparseLongArray,
         userIdToIsHiddenMap: Map<Int, Boolean>,
         knownItems: SparseArray<AppItem>,
         items: ArrayList<AppItem>,
     ) {
-        for (bucket in buckets) {
+        for (i in 0 until usageByUid.size()) {
             // Decide how to collapse items together
-            val uid = bucket.uid
+            val uid = usageByUid.keyAt(i)
+            val usage = usageByUid.valueAt(i)
             val collapseKey: Int
             val category: Int
             val userId = UserHandle.getUserId(uid)
@@ -124,7 +125,8 @@ class AppDataUsageRepository(
                         accumulate(
                             collapseKey = UidDetailProvider.buildKeyForUser(userId),
                             knownItems = knownItems,
-                            bucket = bucket,
+                            uid = uid,
+                            usage = usage,
                             itemCategory = AppItem.CATEGORY_USER,
                             items = items,
                         )
@@ -155,7 +157,8 @@ class AppDataUsageRepository(
             accumulate(
                 collapseKey = collapseKey,
                 knownItems = knownItems,
-                bucket = bucket,
+                uid = uid,
+                usage = usage,
                 itemCategory = category,
                 items = items,
             )
@@ -179,13 +182,15 @@ class AppDataUsageRepository(
      *
      * @param collapseKey  the collapse key used to map the item.
      * @param knownItems   collection of known (already existing) items.
-     * @param bucket       the network stats bucket to extract data usage from.
+     * @param uid          the uid of the data usage.
+     * @param usage        the data usage of the uid, in bytes.
      * @param itemCategory the item is categorized on the list view by this category. Must be
      */
     private fun accumulate(
         collapseKey: Int,
         knownItems: SparseArray<AppItem>,
-        bucket: Bucket,
+        uid: Int,
+        usage: Long,
         itemCategory: Int,
         items: ArrayList<AppItem>,
     ) {
@@ -196,8 +201,8 @@ class AppDataUsageRepository(
             items.add(item)
             knownItems.put(item.key, item)
         }
-        item.addUid(bucket.uid)
-        item.total += bucket.bytes
+        item.addUid(uid)
+        item.total += usage
     }
 
     companion object {
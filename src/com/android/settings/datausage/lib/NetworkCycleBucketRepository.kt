@@ -24,7 +24,6 @@ import com.android.settings.datausage.lib.NetworkCycleDataRepository.Companion.b
 import com.android.settings.datausage.lib.NetworkCycleDataRepository.Companion.getCycles
 import com.android.settings.datausage.lib.NetworkStatsRepository.Companion.Bucket
 import com.android.settings.datausage.lib.NetworkStatsRepository.Companion.aggregate
-import com.android.settings.datausage.lib.NetworkStatsRepository.Companion.filterTime
 
 class NetworkCycleBucketRepository(
     context: Context,
@@ -33,6 +32,7 @@ class NetworkCycleBucketRepository(
     private val networkCycleDataRepository: NetworkCycleDataRepository =
         NetworkCycleDataRepository(context, networkTemplate)
 ) {
+    private val timeIndex by lazy { NetworkUsageTimeIndex(buckets) }
 
     fun loadCycles(): List<NetworkUsageData> =
         getCycles().map { aggregateUsage(it) }.filter { it.usage > 0 }
@@ -56,6 +56,6 @@ class NetworkCycleBucketRepository(
     private fun aggregateUsage(range: Range<Long>) = NetworkUsageData(
         startTime = range.lower,
         endTime = range.upper,
-        usage = buckets.filterTime(range.lower, range.upper).aggregate()?.usage ?: 0,
+        usage = timeIndex.getUsage(range.lower, range.upper),
     )
 }
@@ -35,6 +35,8 @@ class NetworkCycleDataRepository(
     private val networkTemplate: NetworkTemplate,
     private val networkStatsRepository: NetworkStatsRepository =
         NetworkStatsRepository(context, networkTemplate),
+    private val snapshotCache: NetworkUsageSnapshotCache =
+        NetworkUsageSnapshotCache(context, networkTemplate),
 ) : INetworkCycleDataRepository {
 
     private val policyManager = context.getSystemService(NetworkPolicyManager::class.java)!!
@@ -56,7 +58,9 @@ class NetworkCycleDataRepository(
     override fun queryUsage(range: Range<Long>) = NetworkUsageData(
         startTime = range.lower,
         endTime = range.upper,
-        usage = networkStatsRepository.querySummaryForDevice(range.lower, range.upper),
+        usage = snapshotCache.getUsage(range) {
+            networkStatsRepository.querySummaryForDevice(range.lower, range.upper)
+        } ?: 0,
     )
 
     companion object {
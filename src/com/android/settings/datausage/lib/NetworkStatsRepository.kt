@@ -22,6 +22,7 @@ import android.content.Context
 import android.net.NetworkTemplate
 import android.util.Log
 import android.util.Range
+import android.util.SparseLongArray
 
 class NetworkStatsRepository(context: Context, private val template: NetworkTemplate) {
     private val networkStatsManager = context.getSystemService(NetworkStatsManager::class.java)!!
@@ -33,7 +34,7 @@ class NetworkStatsRepository(context: Context, private val template: NetworkTemp
     ): NetworkUsageData? = try {
         networkStatsManager.queryDetailsForUidTagState(
             template, range.lower, range.upper, uid, NetworkStats.Bucket.TAG_NONE, state,
-        ).convertToBuckets().aggregate()
+        ).aggregate()
     } catch (e: Exception) {
         Log.e(TAG, "Exception queryDetailsForUidTagState", e)
         null
@@ -47,20 +48,63 @@ class NetworkStatsRepository(context: Context, private val template: NetworkTemp
         emptyList()
     }
 
-    fun getTimeRange(): Range<Long>? = queryDetailsForDevice().aggregate()?.timeRange
+    fun getTimeRange(): Range<Long>? = try {
+        networkStatsManager.queryDetailsForDevice(template, Long.MIN_VALUE, Long.MAX_VALUE)
+            .aggregate()?.timeRange
+    } catch (e: Exception) {
+        Log.e(TAG, "Exception queryDetailsForDevice", e)
+        null
+    }
 
-    fun querySummaryForDevice(startTime: Long, endTime: Long): Long = try {
+    /** Gets the usage of the device between the given times, or null if the query fails. */
+    fun querySummaryForDevice(startTime: Long, endTime: Long): Long? = try {
         networkStatsManager.querySummaryForDevice(template, startTime, endTime).bytes
     } catch (e: Exception) {
         Log.e(TAG, "Exception querySummaryForDevice", e)
-        0
+        null
     }
 
-    fun queryBuckets(startTime: Long, endTime: Long): List<Bucket> = try {
-        networkStatsManager.querySummary(template, startTime, endTime).convertToBuckets()
+    /**
+     * Visits the buckets with usage of the summary between the given times.
+     *
+     * The same [NetworkStats.Bucket] instance is passed to every call of [visitor], so it must not
+     * be kept after the call returns.
+     *
+     * @return false if the query failed
+     */
+    fun visitBuckets(
+        startTime: Long,
+        endTime: Long,
+        visitor: (NetworkStats.Bucket) -> Unit,
+    ): Boolean = try {
+        networkStatsManager.querySummary(template, startTime, endTime).forEachBucket(visitor)
+        true
     } catch (e: Exception) {
         Log.e(TAG, "Exception querySummary", e)
-        emptyList()
+        false
+    }
+
+    /** Gets the usage between the given times, summed by uid. */
+    fun queryUsageByUid(startTime: Long, endTime: Long): SparseLongArray {
+        val usageByUid = SparseLongArray()
+        visitBuckets(startTime, endTime) { bucket ->
+            usageByUid.put(bucket.uid, usageByUid[bucket.uid] + bucket.bytes)
+        }
+        return usageByUid
+    }
+
+    /**
+     * Gets the usage of the given uids between the given times, summed by state, or null if the
+     * query fails.
+     */
+    fun queryUsageByState(startTime: Long, endTime: Long, uids: List<Int>): SparseLongArray? {
+        val usageByState = SparseLongArray()
+        val succeeded = visitBuckets(startTime, endTime) { bucket ->
+            if (bucket.uid in uids) {
+                usageByState.put(bucket.state, usageByState[bucket.state] + bucket.bytes)
+            }
+        }
+        return if (succeeded) usageByState else null
     }
 
     companion object {
@@ -89,23 +133,44 @@ class NetworkStatsRepository(context: Context, private val template: NetworkTemp
             it.startTimeStamp >= startTime && it.endTimeStamp <= endTime
         }
 
-        private fun NetworkStats.convertToBuckets(): List<Bucket> = use {
+        private fun NetworkStats.convertToBuckets(): List<Bucket> {
             val buckets = mutableListOf<Bucket>()
-            val bucket = NetworkStats.Bucket()
-            while (getNextBucket(bucket)) {
-                if (bucket.bytes > 0) {
-                    buckets += Bucket(
-                        uid = bucket.uid,
-                        bytes = bucket.bytes,
-                        state = bucket.state,
-                        startTimeStamp = bucket.startTimeStamp,
-                        endTimeStamp = bucket.endTimeStamp,
-                    )
-                }
+            forEachBucket { bucket ->
+                buckets += Bucket(
+                    uid = bucket.uid,
+                    bytes = bucket.bytes,
+                    state = bucket.state,
+                    startTimeStamp = bucket.startTimeStamp,
+                    endTimeStamp = bucket.endTimeStamp,
+                )
+            }
+            return buckets
+        }
+
+        /** Same as `convertToBuckets().aggregate()`, without keeping the buckets. */
+        private fun NetworkStats.aggregate(): NetworkUsageData? {
+            var startTime = Long.MAX_VALUE
+            var endTime = Long.MIN_VALUE
+            var usage = 0L
+            var hasBucket = false
+            forEachBucket { bucket ->
+                startTime = minOf(startTime, bucket.startTimeStamp)
+                endTime = maxOf(endTime, bucket.endTimeStamp)
+                usage += bucket.bytes
+                hasBucket = true
             }
-            buckets
+            return if (hasBucket) NetworkUsageData(startTime, endTime, usage) else null
         }
 
+        /** Reads the buckets with usage into a single reused [NetworkStats.Bucket], then closes. */
+        private inline fun NetworkStats.forEachBucket(action: (NetworkStats.Bucket) -> Unit) =
+            use {
+                val bucket = NetworkStats.Bucket()
+                while (getNextBucket(bucket)) {
+                    if (bucket.bytes > 0) action(bucket)
+                }
+            }
+
         private val NetworkStats.Bucket.bytes: Long
             get() = rxBytes + txBytes
     }
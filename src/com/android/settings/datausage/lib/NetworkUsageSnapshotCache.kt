@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage.lib
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.net.NetworkTemplate
+import android.text.format.DateUtils
+import android.util.Range
+import androidx.annotation.VisibleForTesting
+import java.security.MessageDigest
+
+/**
+ * Persistent cache of the usage of the closed cycles, which can no longer change.
+ *
+ * The entries are keyed by the [NetworkTemplate], the cycle range and the uids. The usage of the
+ * open cycle, and of the cycles closed less than [SETTLE_TIME_MS] ago, is always loaded live.
+ */
+class NetworkUsageSnapshotCache @VisibleForTesting constructor(
+    context: Context,
+    template: NetworkTemplate,
+    private val currentTimeMillis: () -> Long,
+) {
+    constructor(context: Context, template: NetworkTemplate) :
+        this(context, template, System::currentTimeMillis)
+
+    private val preferences = context.getPreferences()
+    private val templateKey = template.toCacheKey()
+
+    /**
+     * Gets the usage of the device in the cycle, from the cache if the cycle is closed.
+     *
+     * Returns null if the cycle is not cached and [load] fails, which it reports by returning null.
+     */
+    fun getUsage(range: Range<Long>, load: () -> Long?): Long? =
+        getOrLoad(range, uids = emptyList()) { load()?.let { longArrayOf(it) } }?.get(0)
+
+    /**
+     * Gets the values of the cycle from the cache if the cycle is closed, loads them otherwise.
+     *
+     * [load] returns null when it fails, in which case nothing is cached and null is returned.
+     */
+    fun getOrLoad(range: Range<Long>, uids: List<Int>, load: () -> LongArray?): LongArray? {
+        if (!isClosed(range)) return load()
+        val key = entryKey(range, uids)
+        preferences.getString(key, null)?.parseValues()?.let { return it }
+        val values = load() ?: return null
+        val editor = preferences.edit()
+        if (preferences.all.size >= MAX_ENTRIES) editor.clear()
+        editor.putString(key, values.joinToString(VALUE_SEPARATOR)).apply()
+        return values
+    }
+
+    /** Removes all the cached cycles of the template, for example after a policy change. */
+    fun invalidate() {
+        val prefix = templateKey + KEY_SEPARATOR
+        val editor = preferences.edit()
+        for (key in preferences.all.keys) {
+            if (key.startsWith(prefix)) editor.remove(key)
+        }
+        editor.apply()
+    }
+
+    private fun isClosed(range: Range<Long>): Boolean =
+        range.upper <= currentTimeMillis() - SETTLE_TIME_MS
+
+    private fun entryKey(range: Range<Long>, uids: List<Int>): String = listOf(
+        templateKey,
+        range.lower.toString(),
+        range.upper.toString(),
+        uids.sorted().joinToString(VALUE_SEPARATOR),
+    ).joinToString(KEY_SEPARATOR)
+
+    companion object {
+        private const val PREFERENCES_NAME = "NetworkUsageSnapshotCache"
+        private const val KEY_SEPARATOR = "/"
+        private const val VALUE_SEPARATOR = ","
+
+        /** Keeps the cache small, it is cleared when full. */
+        private const val MAX_ENTRIES = 500
+
+        /** How long the stats of a cycle may still be updated after its end. */
+        @VisibleForTesting
+        const val SETTLE_TIME_MS = DateUtils.DAY_IN_MILLIS
+
+        private fun Context.getPreferences(): SharedPreferences =
+            getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE)
+
+        /**
+         * Digests all the fields of the template, so the subscriptions and networks are told apart
+         * without storing their ids.
+         */
+        private fun NetworkTemplate.toCacheKey(): String {
+            val subscriberIds = subscriberIds.orEmpty().sorted()
+            val wifiNetworkKeys = wifiNetworkKeys.orEmpty().sorted()
+            val fields = listOf(
+                matchRule,
+                meteredness,
+                roaming,
+                defaultNetworkStatus,
+                ratType,
+                oemManaged,
+                subscriberIds.size,
+                wifiNetworkKeys.size,
+            ).map { it.toString() } + subscriberIds + wifiNetworkKeys
+            val digest = MessageDigest.getInstance("SHA-256")
+            for (field in fields) {
+                digest.update(field.toByteArray())
+                // Ends each field with a byte the ids do not contain, so they cannot run together.
+                digest.update(0)
+            }
+            return digest.digest().joinToString("") { "%02x".format(it) }
+        }
+
+        private fun String.parseValues(): LongArray? = try {
+            split(VALUE_SEPARATOR).map { it.toLong() }.toLongArray()
+        } catch (e: NumberFormatException) {
+            null
+        }
+
+        /** Removes all the cached cycles of the template. */
+        @JvmStatic
+        fun invalidate(context: Context, template: NetworkTemplate) {
+            NetworkUsageSnapshotCache(context, template).invalidate()
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage.lib
+
+import com.android.settings.datausage.lib.NetworkStatsRepository.Companion.Bucket
+import com.android.settings.datausage.lib.NetworkStatsRepository.Companion.filterTime
+
+/**
+ * Time index of the [Bucket]s, to get the usage of many time ranges.
+ *
+ * The usage of a range is the same as `buckets.filterTime(startTime, endTime)` aggregated, but
+ * comes from two binary searches over the sorted bucket boundaries and the cumulative usage,
+ * instead of a pass over all the buckets.
+ */
+class NetworkUsageTimeIndex(buckets: List<Bucket>) {
+    private val startTimes: LongArray
+    private val endTimes: LongArray
+
+    /** The usage of the first `i` buckets is `cumulativeUsage[i]`. */
+    private val cumulativeUsage: LongArray
+
+    /** The buckets if they overlap so that their end times are not sorted, null otherwise. */
+    private val unsortedBuckets: List<Bucket>?
+
+    init {
+        val sortedBuckets =
+            buckets.sortedWith(compareBy<Bucket> { it.startTimeStamp }.thenBy { it.endTimeStamp })
+        val size = sortedBuckets.size
+        startTimes = LongArray(size)
+        endTimes = LongArray(size)
+        cumulativeUsage = LongArray(size + 1)
+        var endTimesSorted = true
+        for ((i, bucket) in sortedBuckets.withIndex()) {
+            startTimes[i] = bucket.startTimeStamp
+            endTimes[i] = bucket.endTimeStamp
+            cumulativeUsage[i + 1] = cumulativeUsage[i] + bucket.bytes
+            if (i > 0 && endTimes[i] < endTimes[i - 1]) endTimesSorted = false
+        }
+        unsortedBuckets = if (endTimesSorted) null else sortedBuckets
+    }
+
+    /** Gets the usage of the buckets fully within the given time range. */
+    fun getUsage(startTime: Long, endTime: Long): Long {
+        unsortedBuckets?.let { buckets ->
+            return buckets.filterTime(startTime, endTime).sumOf { it.bytes }
+        }
+        // Both boundaries are sorted, so the buckets starting after startTime are a suffix and
+        // the ones ending before endTime are a prefix.
+        val fromIndex = startTimes.firstIndexNotLessThan(startTime)
+        val toIndex = endTimes.firstIndexGreaterThan(endTime)
+        return if (toIndex > fromIndex) {
+            cumulativeUsage[toIndex] - cumulativeUsage[fromIndex]
+        } else 0
+    }
+
+    private companion object {
+        fun LongArray.firstIndexNotLessThan(value: Long): Int {
+            var low = 0
+            var high = size
+            while (low < high) {
+                val mid = (low + high) ushr 1
+                if (this[mid] < value) low = mid + 1 else high = mid
+            }
+            return low
+        }
+
+        fun LongArray.firstIndexGreaterThan(value: Long): Int {
+            var low = 0
+            var high = size
+            while (low < high) {
+                val mid = (low + high) ushr 1
+                if (this[mid] <= value) low = mid + 1 else high = mid
+            }
+            return low
+        }
+    }
+}
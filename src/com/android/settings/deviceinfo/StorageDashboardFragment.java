@@ -384,21 +384,29 @@ public class StorageDashboardFragment extends DashboardFragment
             return;
         }
 
-        setLoading(false /* loading */, false /* animate */);
-
-        final long privateUsedBytes = mStorageInfo.totalBytes - mStorageInfo.freeBytes;
-        mPreferenceController.setVolume(mSelectedStorageEntry.getVolumeInfo());
-        mPreferenceController.setUsedSize(privateUsedBytes);
-        mPreferenceController.setTotalSize(mStorageInfo.totalBytes);
         // Cache total size and used size
-        mStorageCacheHelper
-                .cacheTotalSizeAndTotalUsedSize(mStorageInfo.totalBytes, privateUsedBytes);
+        mStorageCacheHelper.cacheTotalSizeAndTotalUsedSize(
+                mStorageInfo.totalBytes, mStorageInfo.totalBytes - mStorageInfo.freeBytes);
+        updateSizes(mAppsResult);
+    }
+
+    /**
+     * Shows the sizes of the users loaded so far. The categories of the current user are shown
+     * once its result is loaded, before the other users are done.
+     */
+    private void updateSizes(SparseArray<StorageAsyncLoader.StorageResult> results) {
+        if (results.get(mUserId) != null) {
+            setLoading(false /* loading */, false /* animate */);
+
+            mPreferenceController.setVolume(mSelectedStorageEntry.getVolumeInfo());
+            mPreferenceController.setUsedSize(mStorageInfo.totalBytes - mStorageInfo.freeBytes);
+            mPreferenceController.setTotalSize(mStorageInfo.totalBytes);
+            mPreferenceController.onLoadFinished(results, mUserId);
+        }
         for (NonCurrentUserController userController : mNonCurrentUsers) {
             userController.setTotalSize(mStorageInfo.totalBytes);
         }
-
-        mPreferenceController.onLoadFinished(mAppsResult, mUserId);
-        updateNonCurrentUserControllers(mNonCurrentUsers, mAppsResult);
+        updateNonCurrentUserControllers(mNonCurrentUsers, results);
         setNonCurrentUsersVisible(true);
     }
 
@@ -478,10 +486,22 @@ public class StorageDashboardFragment extends DashboardFragment
     public Loader<SparseArray<StorageAsyncLoader.StorageResult>> onCreateLoader(int id,
             Bundle args) {
         final Context context = getContext();
-        return new StorageAsyncLoader(context, mUserManager,
+        final StorageAsyncLoader loader = new StorageAsyncLoader(context, mUserManager,
                 mSelectedStorageEntry.getFsUuid(),
                 new StorageStatsSource(context),
                 context.getPackageManager());
+        // Fills in the users as soon as they are loaded, before all users are done.
+        loader.setProgressListener(loadedResults -> {
+            // The progress is posted without the Loader lifecycle, so it may arrive after the
+            // fragment is gone, or after the loader was restarted for another volume.
+            if (!isAdded() || getView() == null
+                    || getLoaderManager().getLoader(STORAGE_JOB_ID) != loader
+                    || mStorageInfo == null || mAppsResult != null) {
+                return;
+            }
+            updateSizes(loadedResults);
+        });
+        return loader;
     }
 
     @Override
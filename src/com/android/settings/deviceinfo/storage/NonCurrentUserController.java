@@ -191,7 +191,12 @@ public class NonCurrentUserController extends AbstractPreferenceController imple
         if (result != null) {
             long totalSize = 0;
             for (int id : mProfiles) {
-                totalSize += stats.get(id).externalStats.totalBytes;
+                final StorageAsyncLoader.StorageResult profileResult = stats.get(id);
+                if (profileResult == null) {
+                    // Partial results of StorageAsyncLoader, the profile is still loading.
+                    return;
+                }
+                totalSize += profileResult.externalStats.totalBytes;
             }
             setSize(totalSize, true /* animate */);
             // TODO(b/171758224): Update the source of size info
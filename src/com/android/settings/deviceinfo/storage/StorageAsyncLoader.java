@@ -31,6 +31,7 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Process;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.os.storage.StorageManager;
@@ -41,12 +42,27 @@ import android.util.ArraySet;
 import android.util.Log;
 import android.util.SparseArray;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
 import com.android.settingslib.applications.StorageStatsSource;
 import com.android.settingslib.utils.AsyncLoaderCompat;
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * StorageAsyncLoader is a Loader which loads categorized app information and external stats for all
@@ -57,10 +73,36 @@ public class StorageAsyncLoader
     private UserManager mUserManager;
     private static final String TAG = "StorageAsyncLoader";
 
+    // The scan is mostly blocked on binder calls and MediaStore queries.
+    private static final int SCAN_THREAD_COUNT = 4;
+    private static final long SCAN_THREAD_KEEP_ALIVE_SECONDS = 30L;
+    // Number of packages whose stats are loaded by one scan task.
+    private static final int PACKAGES_PER_TASK = 32;
+
+    // Columns of the grouped MediaStore query, see queryGroupedMediaSizes().
+    private static final String GROUPED_MEDIA_COLUMNS = FileColumns.MEDIA_TYPE
+            + ", " + MediaColumns.IS_TRASHED
+            + ", " + MediaColumns.MIME_TYPE + " IS NOT NULL";
+    private static final String[] GROUPED_MEDIA_PROJECTION = new String[] {
+            FileColumns.MEDIA_TYPE,
+            MediaColumns.IS_TRASHED,
+            MediaColumns.MIME_TYPE + " IS NOT NULL",
+            "sum(" + MediaColumns.SIZE + ")"};
+
+    private static final long UNKNOWN_MEDIA_GENERATION = -1L;
+
+    private static ThreadPoolExecutor sScanExecutor;
+    // The per-user contexts are derived from the application context, so they can outlive the
+    // loaders.
+    private static final Map<Integer, Context> sUserContexts = new ConcurrentHashMap<>();
+    private static volatile boolean sGroupedQueryUnsupported;
+
     private String mUuid;
     private StorageStatsSource mStatsManager;
     private PackageManager mPackageManager;
-    private ArraySet<String> mSeenPackages;
+    private StorageSizeCache mSizeCache;
+    @Nullable
+    private ProgressListener mProgressListener;
 
     public StorageAsyncLoader(Context context, UserManager userManager,
             String uuid, StorageStatsSource source, PackageManager pm) {
@@ -71,76 +113,276 @@ public class StorageAsyncLoader
         mPackageManager = pm;
     }
 
+    /** Sets the listener notified on the main thread whenever the result of a user is loaded. */
+    public void setProgressListener(@Nullable ProgressListener listener) {
+        mProgressListener = listener;
+    }
+
     @Override
     public SparseArray<StorageResult> loadInBackground() {
+        // The first use of the cache reads it from the disk, which is kept off the main thread.
+        mSizeCache = StorageSizeCache.getInstance(getContext());
         return getStorageResultsForUsers();
     }
 
+    /**
+     * Scans the users concurrently, and the apps and the MediaStore categories of each user
+     * concurrently. Each user is reported to the {@link ProgressListener} as soon as it is loaded.
+     */
     private SparseArray<StorageResult> getStorageResultsForUsers() {
-        mSeenPackages = new ArraySet<>();
-        final SparseArray<StorageResult> results = new SparseArray<>();
         final List<UserInfo> infos = mUserManager.getUsers();
 
         // Sort the users by user id ascending.
         Collections.sort(infos,
                 (userInfo, otherUser) -> Integer.compare(userInfo.id, otherUser.id));
 
+        final Executor executor = getExecutor();
+        // System size is the same for each user.
+        final CompletableFuture<Long> systemSize =
+                CompletableFuture.supplyAsync(this::getSystemSize, executor);
+        final SparseArray<StorageResult> loadedResults = new SparseArray<>();
+        final List<CompletableFuture<UserScan>> userScans = new ArrayList<>();
         for (UserInfo info : infos) {
-            final StorageResult result = getAppsAndGamesSize(info.id);
-            final Bundle media = new Bundle();
-            media.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, MediaColumns.VOLUME_NAME
-                    + "= '" + MediaStore.VOLUME_EXTERNAL_PRIMARY + "'");
-            result.imagesSize = getFilesSize(info.id, MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                    media /* queryArgs */);
-            result.videosSize = getFilesSize(info.id, MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
-                    media /* queryArgs */);
-            result.audioSize = getFilesSize(info.id, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                    media /* queryArgs */);
-            result.systemSize = getSystemSize();
-
-            final Bundle documentsQueryArgs = new Bundle();
-            documentsQueryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION,
-                    FileColumns.MEDIA_TYPE + "=" + FileColumns.MEDIA_TYPE_DOCUMENT);
-            result.documentsSize = getFilesSize(info.id,
-                    MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY),
-                    documentsQueryArgs);
-
-            final Bundle otherQueryArgs = new Bundle();
-            otherQueryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION,
-                    FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_IMAGE
-                            + " AND " + FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_VIDEO
-                            + " AND " + FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_AUDIO
-                            + " AND " + FileColumns.MEDIA_TYPE + "!="
-                            + FileColumns.MEDIA_TYPE_DOCUMENT
-                            + " AND " + FileColumns.MIME_TYPE + " IS NOT NULL");
-            result.otherSize = getFilesSize(info.id,
-                    MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY),
-                    otherQueryArgs);
-
-            final Bundle trashQueryArgs = new Bundle();
-            trashQueryArgs.putInt(MediaStore.QUERY_ARG_MATCH_TRASHED, MediaStore.MATCH_ONLY);
-            result.trashSize = getFilesSize(info.id,
-                    MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY),
-                    trashQueryArgs);
-
-            results.put(info.id, result);
+            userScans.add(scanUser(info.id, systemSize, executor)
+                    .thenApply(scan -> {
+                        onUserResultLoaded(loadedResults, scan);
+                        return scan;
+                    }));
+        }
+
+        final SparseArray<StorageResult> results = new SparseArray<>();
+        final Set<String> seenPackages = new ArraySet<>();
+        for (CompletableFuture<UserScan> userScan : userScans) {
+            final UserScan scan = join(userScan);
+            // Code bytes may share between different profiles. To know all the duplicate code
+            // size and we can get a reasonable system size in StorageItemPreferenceController.
+            for (Map.Entry<String, Long> codeBytes : scan.mCodeBytes.entrySet()) {
+                if (!seenPackages.add(codeBytes.getKey())) {
+                    scan.mResult.duplicateCodeSize += codeBytes.getValue();
+                }
+            }
+            results.put(scan.mUserId, scan.mResult);
         }
+        mSizeCache.persist();
         return results;
     }
 
-    private long getFilesSize(int userId, Uri uri, Bundle queryArgs) {
-        final Context perUserContext;
+    private CompletableFuture<UserScan> scanUser(int userId,
+            CompletableFuture<Long> systemSize, Executor executor) {
+        final CompletableFuture<AppsSize> appsSize = CompletableFuture
+                .supplyAsync(() -> {
+                    Log.d(TAG, "Loading apps");
+                    return mPackageManager.getInstalledApplicationsAsUser(0, userId);
+                }, executor)
+                .thenCompose(apps -> {
+                    mSizeCache.retainPackages(mUuid, userId, apps);
+                    return getAppsAndGamesSize(userId, apps, executor);
+                });
+        final CompletableFuture<StorageStatsSource.ExternalStorageStats> externalStats =
+                CompletableFuture.supplyAsync(() -> getExternalStats(userId), executor);
+
+        final CompletableFuture<MediaSizes> mediaSizes = getMediaSizes(userId, executor);
+
+        return CompletableFuture.allOf(appsSize, externalStats, mediaSizes, systemSize)
+                .thenApply(unused -> {
+                    final AppsSize apps = appsSize.join();
+                    final MediaSizes media = mediaSizes.join();
+                    final StorageResult result = new StorageResult();
+                    result.gamesSize = apps.mGamesSize;
+                    result.allAppsExceptGamesSize = apps.mAllAppsExceptGamesSize;
+                    result.externalStats = externalStats.join();
+                    result.imagesSize = media.imagesSize;
+                    result.videosSize = media.videosSize;
+                    result.audioSize = media.audioSize;
+                    result.systemSize = systemSize.join();
+                    result.documentsSize = media.documentsSize;
+                    result.otherSize = media.otherSize;
+                    result.trashSize = media.trashSize;
+                    Log.d(TAG, "Obtaining result completed");
+                    return new UserScan(userId, result, apps.mCodeBytes);
+                });
+    }
+
+    private void onUserResultLoaded(SparseArray<StorageResult> loadedResults, UserScan scan) {
+        final ProgressListener listener = mProgressListener;
+        final SparseArray<StorageResult> snapshot;
+        synchronized (loadedResults) {
+            // The result is copied before the duplicate code size is added to it, and the
+            // listener gets its own copies, so no result is shared with the main thread.
+            loadedResults.put(scan.mUserId, scan.mResult.copy());
+            snapshot = new SparseArray<>(loadedResults.size());
+            for (int i = 0; i < loadedResults.size(); i++) {
+                snapshot.put(loadedResults.keyAt(i), loadedResults.valueAt(i).copy());
+            }
+        }
+        if (listener != null) {
+            ThreadUtils.postOnMainThread(() -> listener.onUserResultsLoaded(snapshot));
+        }
+    }
+
+    /**
+     * Loads the file category sizes of the user from {@link StorageSizeCache} if MediaStore did
+     * not change since they were cached. Otherwise loads them with one grouped MediaStore query,
+     * or with a query per category if MediaStore does not support the grouped query.
+     */
+    private CompletableFuture<MediaSizes> getMediaSizes(int userId, Executor executor) {
+        final Context perUserContext = getUserContext(userId);
+        if (perUserContext == null) {
+            return CompletableFuture.completedFuture(new MediaSizes());
+        }
+        final long generation = getMediaGeneration(perUserContext);
+        if (generation != UNKNOWN_MEDIA_GENERATION) {
+            final MediaSizes cachedSizes = mSizeCache.getMediaSizes(userId, generation);
+            if (cachedSizes != null) {
+                return CompletableFuture.completedFuture(cachedSizes);
+            }
+        }
+        final ContentResolver resolver = perUserContext.getContentResolver();
+        CompletableFuture<MediaSizes> sizes = null;
+        if (!sGroupedQueryUnsupported) {
+            final MediaSizes groupedSizes = queryGroupedMediaSizes(resolver);
+            if (groupedSizes != null) {
+                sizes = CompletableFuture.completedFuture(groupedSizes);
+            } else {
+                sGroupedQueryUnsupported = true;
+            }
+        }
+        if (sizes == null) {
+            sizes = queryMediaSizesPerCategory(resolver, executor);
+        }
+        if (generation == UNKNOWN_MEDIA_GENERATION) {
+            return sizes;
+        }
+        return sizes.thenApply(scannedSizes -> {
+            mSizeCache.putMediaSizes(userId, generation, scannedSizes);
+            return scannedSizes;
+        });
+    }
+
+    /** Returns the MediaStore generation of the primary external volume, bumped on changes. */
+    private static long getMediaGeneration(Context perUserContext) {
         try {
-            perUserContext = getContext().createPackageContextAsUser(
-                getContext().getApplicationContext().getPackageName(),
-                0 /* flags= */,
-                UserHandle.of(userId));
-        } catch (NameNotFoundException e) {
-            Log.e(TAG, "Not able to get Context for user ID " + userId);
-            return 0L;
+            return MediaStore.getGeneration(perUserContext, MediaStore.VOLUME_EXTERNAL_PRIMARY);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Not able to get MediaStore generation", e);
+            return UNKNOWN_MEDIA_GENERATION;
         }
+    }
+
+    /**
+     * Sums the sizes of all the file categories in one pass over the files table, grouped by
+     * media type, trashed state and the presence of a mime type. Returns null if the query
+     * failed.
+     */
+    @VisibleForTesting
+    @Nullable
+    static MediaSizes queryGroupedMediaSizes(ContentResolver resolver) {
+        final Bundle queryArgs = new Bundle();
+        queryArgs.putString(ContentResolver.QUERY_ARG_SQL_GROUP_BY, GROUPED_MEDIA_COLUMNS);
+        queryArgs.putInt(MediaStore.QUERY_ARG_MATCH_TRASHED, MediaStore.MATCH_INCLUDE);
+        try (Cursor cursor = resolver.query(
+                MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY),
+                GROUPED_MEDIA_PROJECTION,
+                queryArgs,
+                null /* cancellationSignal */)) {
+            if (cursor == null) {
+                return null;
+            }
+            final MediaSizes sizes = new MediaSizes();
+            while (cursor.moveToNext()) {
+                final long size = cursor.getLong(3 /* sum(size) */);
+                if (cursor.getInt(1 /* is_trashed */) != 0) {
+                    sizes.trashSize += size;
+                    continue;
+                }
+                switch (cursor.getInt(0 /* media_type */)) {
+                    case FileColumns.MEDIA_TYPE_IMAGE:
+                        sizes.imagesSize += size;
+                        break;
+                    case FileColumns.MEDIA_TYPE_VIDEO:
+                        sizes.videosSize += size;
+                        break;
+                    case FileColumns.MEDIA_TYPE_AUDIO:
+                        sizes.audioSize += size;
+                        break;
+                    case FileColumns.MEDIA_TYPE_DOCUMENT:
+                        sizes.documentsSize += size;
+                        break;
+                    default:
+                        if (cursor.getInt(2 /* has mime type */) != 0) {
+                            sizes.otherSize += size;
+                        }
+                        break;
+                }
+            }
+            return sizes;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Grouped MediaStore query is not supported", e);
+            return null;
+        }
+    }
+
+    /** Sums the sizes of the file categories with a concurrent MediaStore query per category. */
+    @VisibleForTesting
+    static CompletableFuture<MediaSizes> queryMediaSizesPerCategory(ContentResolver resolver,
+            Executor executor) {
+        final Bundle media = new Bundle();
+        media.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, MediaColumns.VOLUME_NAME
+                + "= '" + MediaStore.VOLUME_EXTERNAL_PRIMARY + "'");
+        final CompletableFuture<Long> imagesSize = getFilesSizeAsync(resolver,
+                MediaStore.Images.Media.EXTERNAL_CONTENT_URI, media /* queryArgs */, executor);
+        final CompletableFuture<Long> videosSize = getFilesSizeAsync(resolver,
+                MediaStore.Video.Media.EXTERNAL_CONTENT_URI, media /* queryArgs */, executor);
+        final CompletableFuture<Long> audioSize = getFilesSizeAsync(resolver,
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, media /* queryArgs */, executor);
+
+        final Bundle documentsQueryArgs = new Bundle();
+        documentsQueryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION,
+                FileColumns.MEDIA_TYPE + "=" + FileColumns.MEDIA_TYPE_DOCUMENT);
+        final CompletableFuture<Long> documentsSize = getFilesSizeAsync(resolver,
+                MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY),
+                documentsQueryArgs, executor);
+
+        final Bundle otherQueryArgs = new Bundle();
+        otherQueryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION,
+                FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_IMAGE
+                        + " AND " + FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_VIDEO
+                        + " AND " + FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_AUDIO
+                        + " AND " + FileColumns.MEDIA_TYPE + "!="
+                        + FileColumns.MEDIA_TYPE_DOCUMENT
+                        + " AND " + FileColumns.MIME_TYPE + " IS NOT NULL");
+        final CompletableFuture<Long> otherSize = getFilesSizeAsync(resolver,
+                MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY),
+                otherQueryArgs, executor);
+
+        final Bundle trashQueryArgs = new Bundle();
+        trashQueryArgs.putInt(MediaStore.QUERY_ARG_MATCH_TRASHED, MediaStore.MATCH_ONLY);
+        final CompletableFuture<Long> trashSize = getFilesSizeAsync(resolver,
+                MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY),
+                trashQueryArgs, executor);
 
-        try (Cursor cursor = perUserContext.getContentResolver().query(
+        return CompletableFuture.allOf(imagesSize, videosSize, audioSize, documentsSize,
+                otherSize, trashSize)
+                .thenApply(unused -> {
+                    final MediaSizes sizes = new MediaSizes();
+                    sizes.imagesSize = imagesSize.join();
+                    sizes.videosSize = videosSize.join();
+                    sizes.audioSize = audioSize.join();
+                    sizes.documentsSize = documentsSize.join();
+                    sizes.otherSize = otherSize.join();
+                    sizes.trashSize = trashSize.join();
+                    return sizes;
+                });
+    }
+
+    private static CompletableFuture<Long> getFilesSizeAsync(ContentResolver resolver, Uri uri,
+            Bundle queryArgs, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> getFilesSize(resolver, uri, queryArgs),
+                executor);
+    }
+
+    private static long getFilesSize(ContentResolver resolver, Uri uri, Bundle queryArgs) {
+        try (Cursor cursor = resolver.query(
                 uri,
                 new String[] {"sum(" + MediaColumns.SIZE + ")"},
                 queryArgs,
@@ -152,6 +394,27 @@ public class StorageAsyncLoader
         }
     }
 
+    /** Returns the cached package context of the user, or null if it cannot be created. */
+    @Nullable
+    private Context getUserContext(int userId) {
+        final Context cachedContext = sUserContexts.get(userId);
+        if (cachedContext != null) {
+            return cachedContext;
+        }
+        final Context perUserContext;
+        try {
+            perUserContext = getContext().createPackageContextAsUser(
+                getContext().getApplicationContext().getPackageName(),
+                0 /* flags= */,
+                UserHandle.of(userId));
+        } catch (NameNotFoundException e) {
+            Log.e(TAG, "Not able to get Context for user ID " + userId);
+            return null;
+        }
+        sUserContexts.put(userId, perUserContext);
+        return perUserContext;
+    }
+
     private long getSystemSize() {
         try {
             return mStatsManager.getTotalBytes(StorageManager.UUID_DEFAULT)
@@ -162,73 +425,138 @@ public class StorageAsyncLoader
         }
     }
 
-    private StorageResult getAppsAndGamesSize(int userId) {
-        Log.d(TAG, "Loading apps");
-        final List<ApplicationInfo> applicationInfos =
-                mPackageManager.getInstalledApplicationsAsUser(0, userId);
-        final StorageResult result = new StorageResult();
+    /**
+     * Loads the app sizes of the user. There is no bulk call returning the stats of every package
+     * with its category, so the packages are split into tasks running concurrently.
+     */
+    private CompletableFuture<AppsSize> getAppsAndGamesSize(int userId,
+            List<ApplicationInfo> applicationInfos, Executor executor) {
+        final List<CompletableFuture<AppsSize>> tasks = new ArrayList<>();
+        for (int start = 0; start < applicationInfos.size(); start += PACKAGES_PER_TASK) {
+            final List<ApplicationInfo> apps = applicationInfos.subList(start,
+                    Math.min(start + PACKAGES_PER_TASK, applicationInfos.size()));
+            tasks.add(CompletableFuture.supplyAsync(
+                    () -> getAppsAndGamesSize(userId, apps), executor));
+        }
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]))
+                .thenApply(unused -> {
+                    final AppsSize result = new AppsSize();
+                    // Merges in the package order, the first user of a package owns its code.
+                    for (CompletableFuture<AppsSize> task : tasks) {
+                        final AppsSize size = task.join();
+                        result.mGamesSize += size.mGamesSize;
+                        result.mAllAppsExceptGamesSize += size.mAllAppsExceptGamesSize;
+                        result.mCodeBytes.putAll(size.mCodeBytes);
+                    }
+                    return result;
+                });
+    }
+
+    private AppsSize getAppsAndGamesSize(int userId, List<ApplicationInfo> applicationInfos) {
+        final AppsSize result = new AppsSize();
         final UserHandle myUser = UserHandle.of(userId);
         for (int i = 0, size = applicationInfos.size(); i < size; i++) {
             final ApplicationInfo app = applicationInfos.get(i);
 
-            StorageStatsSource.AppStorageStats stats;
-            try {
-                stats = mStatsManager.getStatsForPackage(mUuid, app.packageName, myUser);
-            } catch (NameNotFoundException | IOException e) {
-                // This may happen if the package was removed during our calculation.
-                Log.w(TAG, "App unexpectedly not found", e);
-                continue;
-            }
-
-            final long dataSize = stats.getDataBytes();
-            final long cacheQuota = mStatsManager.getCacheQuotaBytes(mUuid, app.uid);
-            final long cacheBytes = stats.getCacheBytes();
-            long blamedSize = dataSize + stats.getCodeBytes();
-            // Technically, we could overages as freeable on the storage settings screen.
-            // If the app is using more cache than its quota, we would accidentally subtract the
-            // overage from the system size (because it shows up as unused) during our attribution.
-            // Thus, we cap the attribution at the quota size.
-            if (cacheQuota < cacheBytes) {
-                blamedSize = blamedSize - cacheBytes + cacheQuota;
-            }
-
-            // Code bytes may share between different profiles. To know all the duplicate code size
-            // and we can get a reasonable system size in StorageItemPreferenceController.
-            if (mSeenPackages.contains(app.packageName)) {
-                result.duplicateCodeSize += stats.getCodeBytes();
+            final long blamedSize;
+            final long codeBytes;
+            final StorageSizeCache.AppEntry cachedEntry =
+                    mSizeCache.getAppEntry(mUuid, userId, app);
+            if (cachedEntry != null) {
+                blamedSize = cachedEntry.mBlamedSize;
+                codeBytes = cachedEntry.mCodeBytes;
             } else {
-                mSeenPackages.add(app.packageName);
+                StorageStatsSource.AppStorageStats stats;
+                try {
+                    stats = mStatsManager.getStatsForPackage(mUuid, app.packageName, myUser);
+                } catch (NameNotFoundException | IOException e) {
+                    // This may happen if the package was removed during our calculation.
+                    Log.w(TAG, "App unexpectedly not found", e);
+                    continue;
+                }
+                blamedSize = getBlamedSize(app, stats);
+                codeBytes = stats.getCodeBytes();
+                mSizeCache.putAppEntry(mUuid, userId, app, blamedSize, codeBytes);
             }
+            result.mCodeBytes.put(app.packageName, codeBytes);
 
             switch (app.category) {
                 case CATEGORY_GAME:
-                    result.gamesSize += blamedSize;
+                    result.mGamesSize += blamedSize;
                     break;
                 case CATEGORY_AUDIO:
                 case CATEGORY_VIDEO:
                 case CATEGORY_IMAGE:
-                    result.allAppsExceptGamesSize += blamedSize;
+                    result.mAllAppsExceptGamesSize += blamedSize;
                     break;
                 default:
                     // The deprecated game flag does not set the category.
                     if ((app.flags & ApplicationInfo.FLAG_IS_GAME) != 0) {
-                        result.gamesSize += blamedSize;
+                        result.mGamesSize += blamedSize;
                         break;
                     }
-                    result.allAppsExceptGamesSize += blamedSize;
+                    result.mAllAppsExceptGamesSize += blamedSize;
                     break;
             }
         }
+        return result;
+    }
 
+    private long getBlamedSize(ApplicationInfo app, StorageStatsSource.AppStorageStats stats) {
+        final long dataSize = stats.getDataBytes();
+        final long cacheBytes = stats.getCacheBytes();
+        long blamedSize = dataSize + stats.getCodeBytes();
+        // Technically, we could overages as freeable on the storage settings screen.
+        // If the app is using more cache than its quota, we would accidentally subtract the
+        // overage from the system size (because it shows up as unused) during our attribution.
+        // Thus, we cap the attribution at the quota size. The quota is never negative, so it
+        // is only queried for the apps having cache.
+        if (cacheBytes > 0) {
+            final long cacheQuota = mStatsManager.getCacheQuotaBytes(mUuid, app.uid);
+            if (cacheQuota < cacheBytes) {
+                blamedSize = blamedSize - cacheBytes + cacheQuota;
+            }
+        }
+        return blamedSize;
+    }
+
+    @Nullable
+    private StorageStatsSource.ExternalStorageStats getExternalStats(int userId) {
         Log.d(TAG, "Loading external stats");
         try {
-            result.externalStats = mStatsManager.getExternalStorageStats(mUuid,
-                    UserHandle.of(userId));
+            return mStatsManager.getExternalStorageStats(mUuid, UserHandle.of(userId));
         } catch (IOException e) {
             Log.w(TAG, e);
+            return null;
         }
-        Log.d(TAG, "Obtaining result completed");
-        return result;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static synchronized Executor getExecutor() {
+        if (sScanExecutor == null) {
+            sScanExecutor = new ThreadPoolExecutor(
+                    SCAN_THREAD_COUNT,
+                    SCAN_THREAD_COUNT,
+                    SCAN_THREAD_KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    runnable -> new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }, TAG));
+            sScanExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sScanExecutor;
     }
 
     @Override
@@ -253,6 +581,69 @@ public class StorageAsyncLoader
         public long cacheSize;
         public long duplicateCodeSize;
         public StorageStatsSource.ExternalStorageStats externalStats;
+
+        /** Returns a copy of the sizes, the external stats are immutable and shared. */
+        StorageResult copy() {
+            final StorageResult result = new StorageResult();
+            result.gamesSize = gamesSize;
+            result.allAppsExceptGamesSize = allAppsExceptGamesSize;
+            result.audioSize = audioSize;
+            result.imagesSize = imagesSize;
+            result.videosSize = videosSize;
+            result.documentsSize = documentsSize;
+            result.otherSize = otherSize;
+            result.trashSize = trashSize;
+            result.systemSize = systemSize;
+            result.cacheSize = cacheSize;
+            result.duplicateCodeSize = duplicateCodeSize;
+            result.externalStats = externalStats;
+            return result;
+        }
+    }
+
+    /** Sizes of the MediaStore file categories of a user. */
+    @VisibleForTesting
+    static final class MediaSizes {
+        long imagesSize;
+        long videosSize;
+        long audioSize;
+        long documentsSize;
+        long otherSize;
+        long trashSize;
+    }
+
+    /** App sizes of a user, or of a part of its packages. */
+    private static final class AppsSize {
+        long mGamesSize;
+        long mAllAppsExceptGamesSize;
+        // Code bytes of each package, in the order of the installed applications.
+        final Map<String, Long> mCodeBytes = new LinkedHashMap<>();
+    }
+
+    /** Scan result of a user, before the duplicate code size is known. */
+    private static final class UserScan {
+        final int mUserId;
+        final StorageResult mResult;
+        final Map<String, Long> mCodeBytes;
+
+        UserScan(int userId, StorageResult result, Map<String, Long> codeBytes) {
+            mUserId = userId;
+            mResult = result;
+            mCodeBytes = codeBytes;
+        }
+    }
+
+    /**
+     * ProgressListener receives the results of the users loaded so far, before
+     * {@link StorageAsyncLoader} delivers all of them.
+     */
+    public interface ProgressListener {
+        /**
+         * Called on the main thread whenever the result of a user is loaded. The results of the
+         * users still loading are missing, and {@link StorageResult#duplicateCodeSize} is not
+         * computed yet.
+         */
+        void onUserResultsLoaded(SparseArray<StorageResult> loadedResults);
     }
 
     /**
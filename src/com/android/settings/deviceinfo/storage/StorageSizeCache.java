@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.deviceinfo.storage;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.net.Uri;
+import android.os.UserHandle;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Persistent cache of the per-package and per-category sizes scanned by
+ * {@link StorageAsyncLoader}, so revisiting the Storage page only rescans what changed.
+ *
+ * <p>The package sizes are keyed by the user and the package, and are dropped when the package is
+ * added, removed, changed or its data is cleared, when its cache or data is cleared from the app
+ * storage page (clearing the cache sends no broadcast), when its APK path changes (on update), or
+ * when they are older than {@link #APP_STATS_MAX_AGE_MILLIS} since the app data grows without any
+ * broadcast. The MediaStore category sizes of a user are valid as long as the MediaStore
+ * generation of the volume is unchanged, which is bumped on every MediaStore change.
+ */
+public class StorageSizeCache {
+    private static final String TAG = "StorageSizeCache";
+    private static final String SHARED_PREFERENCE_NAME = "StorageSizeCache";
+    private static final String APPS_KEY_PREFIX = "apps_";
+    private static final String MEDIA_KEY_PREFIX = "media_";
+
+    @VisibleForTesting
+    static final long APP_STATS_MAX_AGE_MILLIS = DateUtils.HOUR_IN_MILLIS;
+
+    private static StorageSizeCache sInstance;
+
+    private final SharedPreferences mSharedPreferences;
+    private final LongSupplier mClock;
+    // Package sizes by volume and user, see getAppsKey(), then by package name.
+    private final Map<String, Map<String, AppEntry>> mAppEntries = new ConcurrentHashMap<>();
+    private final Map<Integer, MediaEntry> mMediaEntries = new ConcurrentHashMap<>();
+
+    private final AtomicLong mAppHits = new AtomicLong();
+    private final AtomicLong mAppMisses = new AtomicLong();
+    private final AtomicLong mMediaHits = new AtomicLong();
+    private final AtomicLong mMediaMisses = new AtomicLong();
+    private final AtomicLong mInvalidations = new AtomicLong();
+
+    /** Returns the cache of the process, which is loaded from the disk on first use. */
+    public static synchronized StorageSizeCache getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            sInstance = new StorageSizeCache(appContext, System::currentTimeMillis);
+            sInstance.registerPackageReceiver(appContext);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    StorageSizeCache(Context context, LongSupplier clock) {
+        mSharedPreferences =
+                context.getSharedPreferences(SHARED_PREFERENCE_NAME, Context.MODE_PRIVATE);
+        mClock = clock;
+        restore();
+    }
+
+    @VisibleForTesting
+    static synchronized void setInstance(@Nullable StorageSizeCache cache) {
+        sInstance = cache;
+    }
+
+    /** Returns the cached sizes of the app, or null if they must be scanned again. */
+    @Nullable
+    AppEntry getAppEntry(@Nullable String volumeUuid, int userId, @NonNull ApplicationInfo app) {
+        final Map<String, AppEntry> entries = mAppEntries.get(getAppsKey(volumeUuid, userId));
+        final AppEntry entry = entries != null ? entries.get(app.packageName) : null;
+        if (entry == null
+                || !Objects.equals(entry.mSourceDir, app.sourceDir)
+                || mClock.getAsLong() - entry.mTimestamp > APP_STATS_MAX_AGE_MILLIS) {
+            mAppMisses.incrementAndGet();
+            return null;
+        }
+        mAppHits.incrementAndGet();
+        return entry;
+    }
+
+    /** Caches the scanned sizes of the app. */
+    void putAppEntry(@Nullable String volumeUuid, int userId, @NonNull ApplicationInfo app,
+            long blamedSize, long codeBytes) {
+        mAppEntries
+                .computeIfAbsent(getAppsKey(volumeUuid, userId), key -> new ConcurrentHashMap<>())
+                .put(app.packageName,
+                        new AppEntry(app.sourceDir, blamedSize, codeBytes, mClock.getAsLong()));
+    }
+
+    /** Returns the cached category sizes of the user, or null if MediaStore changed since. */
+    @Nullable
+    StorageAsyncLoader.MediaSizes getMediaSizes(int userId, long generation) {
+        final MediaEntry entry = mMediaEntries.get(userId);
+        if (entry == null || entry.mGeneration != generation) {
+            mMediaMisses.incrementAndGet();
+            return null;
+        }
+        mMediaHits.incrementAndGet();
+        return entry.mSizes;
+    }
+
+    /** Caches the category sizes of the user scanned at the MediaStore {@code generation}. */
+    void putMediaSizes(int userId, long generation, @NonNull StorageAsyncLoader.MediaSizes sizes) {
+        mMediaEntries.put(userId, new MediaEntry(generation, sizes, mClock.getAsLong()));
+    }
+
+    /** Drops the cached sizes of the package on every volume. */
+    public void invalidatePackage(int userId, @NonNull String packageName) {
+        final String userSuffix = getAppsKey("", userId);
+        for (Map.Entry<String, Map<String, AppEntry>> entries : mAppEntries.entrySet()) {
+            if (entries.getKey().endsWith(userSuffix)
+                    && entries.getValue().remove(packageName) != null) {
+                mInvalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /** Drops the cached sizes of the packages not installed for the user anymore. */
+    void retainPackages(@Nullable String volumeUuid, int userId,
+            @NonNull Iterable<ApplicationInfo> apps) {
+        final String key = getAppsKey(volumeUuid, userId);
+        final Map<String, AppEntry> entries = mAppEntries.get(key);
+        if (entries == null) {
+            return;
+        }
+        final Map<String, AppEntry> installed = new ConcurrentHashMap<>();
+        for (ApplicationInfo app : apps) {
+            final AppEntry entry = entries.get(app.packageName);
+            if (entry != null) {
+                installed.put(app.packageName, entry);
+            }
+        }
+        mAppEntries.put(key, installed);
+    }
+
+    @VisibleForTesting
+    void clear() {
+        mAppEntries.clear();
+        mMediaEntries.clear();
+        mSharedPreferences.edit().clear().apply();
+    }
+
+    /** Writes the cached sizes to the disk. */
+    void persist() {
+        final SharedPreferences.Editor editor = mSharedPreferences.edit().clear();
+        try {
+            for (Map.Entry<String, Map<String, AppEntry>> user : mAppEntries.entrySet()) {
+                final JSONObject apps = new JSONObject();
+                for (Map.Entry<String, AppEntry> app : user.getValue().entrySet()) {
+                    apps.put(app.getKey(), app.getValue().toJson());
+                }
+                editor.putString(APPS_KEY_PREFIX + user.getKey(), apps.toString());
+            }
+            for (Map.Entry<Integer, MediaEntry> user : mMediaEntries.entrySet()) {
+                editor.putString(MEDIA_KEY_PREFIX + user.getKey(),
+                        user.getValue().toJson().toString());
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to persist storage sizes", e);
+            return;
+        }
+        editor.apply();
+    }
+
+    /** Returns the hit rate and the staleness of the cache, for the dumpsys output. */
+    @NonNull
+    public JSONObject dump() throws JSONException {
+        final long now = mClock.getAsLong();
+        long appEntries = 0;
+        long oldestAppEntryTime = now;
+        for (Map<String, AppEntry> entries : mAppEntries.values()) {
+            for (AppEntry entry : entries.values()) {
+                appEntries++;
+                oldestAppEntryTime = Math.min(oldestAppEntryTime, entry.mTimestamp);
+            }
+        }
+        long oldestMediaEntryTime = now;
+        for (MediaEntry entry : mMediaEntries.values()) {
+            oldestMediaEntryTime = Math.min(oldestMediaEntryTime, entry.mTimestamp);
+        }
+        final JSONObject obj = new JSONObject();
+        obj.put("appEntries", appEntries);
+        obj.put("appHits", mAppHits.get());
+        obj.put("appMisses", mAppMisses.get());
+        obj.put("appHitRate", hitRate(mAppHits.get(), mAppMisses.get()));
+        obj.put("oldestAppEntryAgeMillis", now - oldestAppEntryTime);
+        obj.put("mediaEntries", mMediaEntries.size());
+        obj.put("mediaHits", mMediaHits.get());
+        obj.put("mediaMisses", mMediaMisses.get());
+        obj.put("mediaHitRate", hitRate(mMediaHits.get(), mMediaMisses.get()));
+        obj.put("oldestMediaEntryAgeMillis", now - oldestMediaEntryTime);
+        obj.put("invalidations", mInvalidations.get());
+        return obj;
+    }
+
+    private static String getAppsKey(@Nullable String volumeUuid, int userId) {
+        return (volumeUuid != null ? volumeUuid : "") + ":" + userId;
+    }
+
+    private static String hitRate(long hits, long misses) {
+        final long total = hits + misses;
+        return total == 0 ? "n/a" : String.valueOf((double) hits / total);
+    }
+
+    private void restore() {
+        for (Map.Entry<String, ?> preference : mSharedPreferences.getAll().entrySet()) {
+            final String key = preference.getKey();
+            try {
+                if (key.startsWith(APPS_KEY_PREFIX)) {
+                    final JSONObject apps = new JSONObject((String) preference.getValue());
+                    final Map<String, AppEntry> entries = new ConcurrentHashMap<>();
+                    final Iterator<String> packageNames = apps.keys();
+                    while (packageNames.hasNext()) {
+                        final String packageName = packageNames.next();
+                        entries.put(packageName, AppEntry.fromJson(apps.getJSONArray(packageName)));
+                    }
+                    mAppEntries.put(key.substring(APPS_KEY_PREFIX.length()), entries);
+                } else if (key.startsWith(MEDIA_KEY_PREFIX)) {
+                    final int userId = Integer.parseInt(key.substring(MEDIA_KEY_PREFIX.length()));
+                    mMediaEntries.put(userId,
+                            MediaEntry.fromJson(new JSONArray((String) preference.getValue())));
+                }
+            } catch (JSONException | NumberFormatException | ClassCastException e) {
+                Log.w(TAG, "Ignore invalid cached sizes: " + key, e);
+            }
+        }
+    }
+
+    private void registerPackageReceiver(Context context) {
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_DATA_CLEARED);
+        filter.addDataScheme("package");
+        // The loader also scans the profiles, so the packages of all the users are watched.
+        context.registerReceiverForAllUsers(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final Uri data = intent.getData();
+                if (data == null) {
+                    return;
+                }
+                final int uid = intent.getIntExtra(Intent.EXTRA_UID, -1);
+                final int userId = uid >= 0 ? UserHandle.getUserId(uid) : getSendingUserId();
+                invalidatePackage(userId, data.getSchemeSpecificPart());
+            }
+        }, filter, /* broadcastPermission= */ null, /* scheduler= */ null);
+    }
+
+    /** Cached sizes of a package. */
+    static final class AppEntry {
+        final String mSourceDir;
+        final long mBlamedSize;
+        final long mCodeBytes;
+        final long mTimestamp;
+
+        AppEntry(String sourceDir, long blamedSize, long codeBytes, long timestamp) {
+            mSourceDir = sourceDir;
+            mBlamedSize = blamedSize;
+            mCodeBytes = codeBytes;
+            mTimestamp = timestamp;
+        }
+
+        JSONArray toJson() {
+            return new JSONArray()
+                    .put(mSourceDir != null ? mSourceDir : "")
+                    .put(mBlamedSize)
+                    .put(mCodeBytes)
+                    .put(mTimestamp);
+        }
+
+        static AppEntry fromJson(JSONArray json) throws JSONException {
+            return new AppEntry(json.getString(0), json.getLong(1), json.getLong(2),
+                    json.getLong(3));
+        }
+    }
+
+    /** Cached category sizes of a user. */
+    private static final class MediaEntry {
+        final long mGeneration;
+        final StorageAsyncLoader.MediaSizes mSizes;
+        final long mTimestamp;
+
+        MediaEntry(long generation, StorageAsyncLoader.MediaSizes sizes, long timestamp) {
+            mGeneration = generation;
+            mSizes = sizes;
+            mTimestamp = timestamp;
+        }
+
+        JSONArray toJson() {
+            return new JSONArray()
+                    .put(mGeneration)
+                    .put(mTimestamp)
+                    .put(mSizes.imagesSize)
+                    .put(mSizes.videosSize)
+                    .put(mSizes.audioSize)
+                    .put(mSizes.documentsSize)
+                    .put(mSizes.otherSize)
+                    .put(mSizes.trashSize);
+        }
+
+        static MediaEntry fromJson(JSONArray json) throws JSONException {
+            final StorageAsyncLoader.MediaSizes sizes = new StorageAsyncLoader.MediaSizes();
+            sizes.imagesSize = json.getLong(2);
+            sizes.videosSize = json.getLong(3);
+            sizes.audioSize = json.getLong(4);
+            sizes.documentsSize = json.getLong(5);
+            sizes.otherSize = json.getLong(6);
+            sizes.trashSize = json.getLong(7);
+            return new MediaEntry(json.getLong(0), sizes, json.getLong(1));
+        }
+    }
+}
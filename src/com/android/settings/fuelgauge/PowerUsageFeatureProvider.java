@@ -160,6 +160,9 @@ public interface PowerUsageFeatureProvider {
     /** Whether the device is under the battery defender mode */
     boolean isBatteryDefend(BatteryInfo info);
 
+    /** Whether the battery states are saved as one compact snapshot row per timestamp. */
+    boolean isBatteryStateCompactStorageEnabled();
+
     /** Whether the battery usage reattribute is eabled or not. */
     boolean isBatteryUsageReattributeEnabled();
 
@@ -246,6 +246,11 @@ public class PowerUsageFeatureProviderImpl implements PowerUsageFeatureProvider
         return info.isBatteryDefender && !isExtraDefend();
     }
 
+    @Override
+    public boolean isBatteryStateCompactStorageEnabled() {
+        return false;
+    }
+
     @Override
     public boolean isBatteryUsageReattributeEnabled() {
         return false;
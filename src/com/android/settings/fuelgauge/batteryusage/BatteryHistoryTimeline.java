@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import android.text.format.DateUtils;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Interpolates the raw battery history into the expected timestamp slots.
+ *
+ * <p>The raw timestamps are kept in a sorted {@code long[]} and searched with binary search. Each
+ * consumer key is interned into an integer ID once, so the interpolation walks plain arrays
+ * instead of looking up the {@code String} keys of the nested history maps for every slot. The
+ * interpolated entries are filled into a matrix preallocated for all slots, and the result maps
+ * are only created once all slots are resolved.
+ */
+final class BatteryHistoryTimeline {
+    private static final String TAG = "BatteryHistoryTimeline";
+    private static final int MAX_DIFF_SECONDS_OF_UPPER_TIMESTAMP = 5;
+    private static final int MAX_DIFF_MINUTES_OF_FORCE_ALIGN_IN_BOOTING_SECTION = 10;
+
+    // The source of the slot data besides the raw timestamp index.
+    private static final int SOURCE_EMPTY = -1;
+    private static final int SOURCE_INTERPOLATED = -2;
+
+    private final long[] mRawTimestamps;
+    private final Map<Long, Map<String, BatteryHistEntry>> mBatteryHistoryMap;
+    private final String[] mConsumerKeys;
+    // The raw entries indexed by [raw timestamp index][consumer ID].
+    private final BatteryHistEntry[][] mRawEntries;
+    // The usage times indexed by [raw timestamp index][consumer ID].
+    private final long[][] mForegroundUsageTimes;
+    private final long[][] mBackgroundUsageTimes;
+
+    BatteryHistoryTimeline(@NonNull Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap) {
+        mBatteryHistoryMap = batteryHistoryMap;
+        mRawTimestamps = toSortedArray(batteryHistoryMap.keySet());
+
+        final Map<String, Integer> consumerIds = new ArrayMap<>();
+        for (Map<String, BatteryHistEntry> entryMap : batteryHistoryMap.values()) {
+            if (entryMap == null) {
+                continue;
+            }
+            for (String entryKey : entryMap.keySet()) {
+                if (!consumerIds.containsKey(entryKey)) {
+                    consumerIds.put(entryKey, consumerIds.size());
+                }
+            }
+        }
+        final int consumerCount = consumerIds.size();
+        mConsumerKeys = new String[consumerCount];
+        for (Map.Entry<String, Integer> consumerId : consumerIds.entrySet()) {
+            mConsumerKeys[consumerId.getValue()] = consumerId.getKey();
+        }
+
+        final int rawCount = mRawTimestamps.length;
+        mRawEntries = new BatteryHistEntry[rawCount][consumerCount];
+        mForegroundUsageTimes = new long[rawCount][consumerCount];
+        mBackgroundUsageTimes = new long[rawCount][consumerCount];
+        for (int rawIndex = 0; rawIndex < rawCount; rawIndex++) {
+            final Map<String, BatteryHistEntry> entryMap =
+                    batteryHistoryMap.get(mRawTimestamps[rawIndex]);
+            if (entryMap == null) {
+                continue;
+            }
+            for (Map.Entry<String, BatteryHistEntry> entry : entryMap.entrySet()) {
+                final int consumerId = consumerIds.get(entry.getKey());
+                final BatteryHistEntry histEntry = entry.getValue();
+                mRawEntries[rawIndex][consumerId] = histEntry;
+                mForegroundUsageTimes[rawIndex][consumerId] = histEntry.mForegroundUsageTimeInMs;
+                mBackgroundUsageTimes[rawIndex][consumerId] = histEntry.mBackgroundUsageTimeInMs;
+            }
+        }
+    }
+
+    /** Gets the sorted raw timestamps. */
+    long[] getRawTimestamps() {
+        return mRawTimestamps;
+    }
+
+    /**
+     * Interpolates the battery history into the {@code timestampSlots}, the last slot is excluded
+     * since it stands for the current time which is loaded from the battery stats service.
+     */
+    Map<Long, Map<String, BatteryHistEntry>> interpolate(@NonNull final long[] timestampSlots) {
+        final int slotCount = timestampSlots.length;
+        final Map<Long, Map<String, BatteryHistEntry>> resultMap = new ArrayMap<>(slotCount);
+        if (mRawTimestamps.length == 0 || slotCount == 0) {
+            return resultMap;
+        }
+        final int consumerCount = mConsumerKeys.length;
+        final int[] slotSources = new int[slotCount];
+        final BatteryHistEntry[] slotEntries = new BatteryHistEntry[slotCount * consumerCount];
+        // The first slot is always the first raw timestamp.
+        slotSources[0] = 0;
+        for (int slotIndex = 1; slotIndex < slotCount - 1; slotIndex++) {
+            slotSources[slotIndex] =
+                    interpolateSlot(
+                            timestampSlots[slotIndex],
+                            slotEntries,
+                            /* offset= */ slotIndex * consumerCount);
+        }
+
+        for (int slotIndex = 0; slotIndex < slotCount - 1; slotIndex++) {
+            final long slotTimestamp = timestampSlots[slotIndex];
+            final int source = slotSources[slotIndex];
+            if (source == SOURCE_EMPTY) {
+                resultMap.put(slotTimestamp, new ArrayMap<>());
+            } else if (source == SOURCE_INTERPOLATED) {
+                final int offset = slotIndex * consumerCount;
+                final Map<String, BatteryHistEntry> entryMap = new ArrayMap<>(consumerCount);
+                for (int consumerId = 0; consumerId < consumerCount; consumerId++) {
+                    final BatteryHistEntry entry = slotEntries[offset + consumerId];
+                    if (entry != null) {
+                        entryMap.put(mConsumerKeys[consumerId], entry);
+                    }
+                }
+                resultMap.put(slotTimestamp, entryMap);
+            } else {
+                // Force aligned into the raw data, shares the original map directly.
+                resultMap.put(slotTimestamp, mBatteryHistoryMap.get(mRawTimestamps[source]));
+            }
+        }
+        return resultMap;
+    }
+
+    /**
+     * Resolves the data for one slot.
+     *
+     * @return the raw timestamp index if the slot is force aligned into the raw data, or {@link
+     *     #SOURCE_EMPTY}, or {@link #SOURCE_INTERPOLATED} if the interpolated entries are filled
+     *     into the {@code slotEntries} starting from the {@code offset}.
+     */
+    private int interpolateSlot(
+            final long currentSlot, final BatteryHistEntry[] slotEntries, final int offset) {
+        final int upperIndex = ceilingIndex(mRawTimestamps, currentSlot);
+        final int lowerIndex = floorIndex(mRawTimestamps, currentSlot);
+        // Case 1: upper timestamp is not found since scheduler is delayed!
+        if (upperIndex < 0) {
+            log("job scheduler is delayed", currentSlot, null);
+            return SOURCE_EMPTY;
+        }
+        final long upperTimestamp = mRawTimestamps[upperIndex];
+        // Case 2: upper timestamp is closed to the current timestamp.
+        if ((upperTimestamp - currentSlot)
+                < MAX_DIFF_SECONDS_OF_UPPER_TIMESTAMP * DateUtils.SECOND_IN_MILLIS) {
+            log("force align into the nearest slot", currentSlot, null);
+            return upperIndex;
+        }
+        // Case 3: lower timestamp is not found before starting to collect data.
+        if (lowerIndex < 0) {
+            log("no lower timestamp slot data", currentSlot, null);
+            return SOURCE_EMPTY;
+        }
+        final long lowerTimestamp = mRawTimestamps[lowerIndex];
+        final BatteryHistEntry[] lowerEntries = mRawEntries[lowerIndex];
+        final BatteryHistEntry[] upperEntries = mRawEntries[upperIndex];
+        // Verifies whether the lower data is valid to use or not by checking boot time.
+        final BatteryHistEntry upperEntryDataFirstEntry = findFirstEntry(upperIndex);
+        if (upperEntryDataFirstEntry == null) {
+            log("no upper timestamp slot data", currentSlot, null);
+            return SOURCE_EMPTY;
+        }
+        final long upperEntryDataBootTimestamp =
+                upperEntryDataFirstEntry.mTimestamp - upperEntryDataFirstEntry.mBootTimestamp;
+        // Lower data is captured before upper data corresponding device is booting.
+        // Skips the booting-specific logics and always does interpolation for daily chart level
+        // data.
+        if (lowerTimestamp < upperEntryDataBootTimestamp
+                && !TimestampUtils.isMidnight(currentSlot)) {
+            // Provides an opportunity to force align the slot directly.
+            if ((upperTimestamp - currentSlot)
+                    < MAX_DIFF_MINUTES_OF_FORCE_ALIGN_IN_BOOTING_SECTION
+                            * DateUtils.MINUTE_IN_MILLIS) {
+                log("force align into the nearest slot", currentSlot, null);
+                return upperIndex;
+            }
+            log("in the different booting section", currentSlot, null);
+            return SOURCE_EMPTY;
+        }
+        log("apply interpolation arithmetic", currentSlot, null);
+        final double ratio =
+                (double) (currentSlot - lowerTimestamp) / (upperTimestamp - lowerTimestamp);
+        final long[] lowerForegroundUsageTimes = mForegroundUsageTimes[lowerIndex];
+        final long[] upperForegroundUsageTimes = mForegroundUsageTimes[upperIndex];
+        final long[] lowerBackgroundUsageTimes = mBackgroundUsageTimes[lowerIndex];
+        final long[] upperBackgroundUsageTimes = mBackgroundUsageTimes[upperIndex];
+        // Applies interpolation arithmetic for each BatteryHistEntry.
+        for (int consumerId = 0; consumerId < upperEntries.length; consumerId++) {
+            final BatteryHistEntry upperEntry = upperEntries[consumerId];
+            if (upperEntry == null) {
+                continue;
+            }
+            final BatteryHistEntry lowerEntry = lowerEntries[consumerId];
+            // Checks whether there is any abnormal battery reset conditions.
+            if (lowerEntry != null
+                    && (lowerForegroundUsageTimes[consumerId]
+                                    > upperForegroundUsageTimes[consumerId]
+                            || lowerBackgroundUsageTimes[consumerId]
+                                    > upperBackgroundUsageTimes[consumerId])) {
+                slotEntries[offset + consumerId] = upperEntry;
+                log("abnormal reset condition is found", currentSlot, upperEntry);
+                continue;
+            }
+            slotEntries[offset + consumerId] =
+                    BatteryHistEntry.interpolate(
+                            currentSlot, upperTimestamp, ratio, lowerEntry, upperEntry);
+            if (lowerEntry == null) {
+                log("cannot find lower entry data", currentSlot, upperEntry);
+            }
+        }
+        return SOURCE_INTERPOLATED;
+    }
+
+    @Nullable
+    private BatteryHistEntry findFirstEntry(final int rawIndex) {
+        final Map<String, BatteryHistEntry> entryMap =
+                mBatteryHistoryMap.get(mRawTimestamps[rawIndex]);
+        return entryMap == null || entryMap.isEmpty() ? null : entryMap.values().iterator().next();
+    }
+
+    /**
+     * Computes expected timestamp slots. The start timestamp is the {@code startTimestamp}. The end
+     * timestamp is current time. The middle timestamps are the sharp hour timestamps between the
+     * start and end timestamps.
+     */
+    static long[] getTimestampSlots(final long startTimestamp, final long currentTime) {
+        // If the start timestamp is later or equal the end one, return the empty slots.
+        if (startTimestamp >= currentTime) {
+            return new long[0];
+        }
+        final long firstHourTimestamp = TimestampUtils.getNextHourTimestamp(startTimestamp);
+        final int hourSlotCount =
+                firstHourTimestamp < currentTime
+                        ? (int)
+                                ((currentTime - firstHourTimestamp - 1) / DateUtils.HOUR_IN_MILLIS
+                                        + 1)
+                        : 0;
+        final long[] timestampSlots = new long[hourSlotCount + 2];
+        timestampSlots[0] = startTimestamp;
+        for (int index = 0; index < hourSlotCount; index++) {
+            timestampSlots[index + 1] = firstHourTimestamp + index * DateUtils.HOUR_IN_MILLIS;
+        }
+        timestampSlots[hourSlotCount + 1] = currentTime;
+        return timestampSlots;
+    }
+
+    /**
+     * Searches the nearest lower and upper timestamp of the {@code target} in the sorted {@code
+     * timestamps}, zero value is used to represent invalid searching result.
+     */
+    static long[] findNearestTimestamp(final long[] sortedTimestamps, final long target) {
+        final int lowerIndex = floorIndex(sortedTimestamps, target);
+        final int upperIndex = ceilingIndex(sortedTimestamps, target);
+        return new long[] {
+            lowerIndex < 0 ? 0 : sortedTimestamps[lowerIndex],
+            upperIndex < 0 ? 0 : sortedTimestamps[upperIndex]
+        };
+    }
+
+    /** Converts the timestamps into a sorted primitive array. */
+    static long[] toSortedArray(final Collection<Long> timestamps) {
+        final long[] sortedTimestamps = new long[timestamps.size()];
+        int index = 0;
+        for (long timestamp : timestamps) {
+            sortedTimestamps[index++] = timestamp;
+        }
+        Arrays.sort(sortedTimestamps);
+        return sortedTimestamps;
+    }
+
+    /** Returns the index of the largest timestamp <= target, or -1 if not found. */
+    private static int floorIndex(final long[] sortedTimestamps, final long target) {
+        final int index = Arrays.binarySearch(sortedTimestamps, target);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /** Returns the index of the smallest timestamp >= target, or -1 if not found. */
+    private static int ceilingIndex(final long[] sortedTimestamps, final long target) {
+        final int index = Arrays.binarySearch(sortedTimestamps, target);
+        if (index >= 0) {
+            return index;
+        }
+        final int insertionPoint = -index - 1;
+        return insertionPoint < sortedTimestamps.length ? insertionPoint : -1;
+    }
+
+    private static void log(
+            final String content, final long timestamp, @Nullable final BatteryHistEntry entry) {
+        if (DataProcessor.sDebug) {
+            Log.d(
+                    TAG,
+                    String.format(
+                            entry != null ? "%s %s:\n%s" : "%s %s:%s",
+                            ConvertUtils.utcToLocalTimeForLogging(timestamp),
+                            content,
+                            entry));
+        }
+    }
+}
@@ -17,9 +17,14 @@
 package com.android.settings.fuelgauge.batteryusage;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.MergeCursor;
 import android.net.Uri;
 import android.text.TextUtils;
 import android.util.Log;
@@ -35,8 +40,11 @@ import com.android.settings.fuelgauge.batteryusage.db.BatteryEventEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryState;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryStateDao;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryStateDatabase;
+import com.android.settings.fuelgauge.batteryusage.db.BatteryStateSnapshotDao;
+import com.android.settings.fuelgauge.batteryusage.db.BatteryStateSnapshotEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryUsageSlotDao;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryUsageSlotEntity;
+import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.fuelgauge.BatteryUtils;
 
 import java.time.Clock;
@@ -44,6 +52,8 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /** {@link ContentProvider} class to fetch battery usage data. */
 public class BatteryUsageContentProvider extends ContentProvider {
@@ -98,7 +108,9 @@ public class BatteryUsageContentProvider extends ContentProvider {
     }
 
     private Clock mClock;
+    private BatteryStateDatabase mDatabase;
     private BatteryStateDao mBatteryStateDao;
+    private BatteryStateSnapshotDao mBatteryStateSnapshotDao;
     private AppUsageEventDao mAppUsageEventDao;
     private BatteryEventDao mBatteryEventDao;
     private BatteryUsageSlotDao mBatteryUsageSlotDao;
@@ -115,11 +127,12 @@ public class BatteryUsageContentProvider extends ContentProvider {
             return false;
         }
         mClock = Clock.systemUTC();
-        final BatteryStateDatabase database = BatteryStateDatabase.getInstance(getContext());
-        mBatteryStateDao = database.batteryStateDao();
-        mAppUsageEventDao = database.appUsageEventDao();
-        mBatteryEventDao = database.batteryEventDao();
-        mBatteryUsageSlotDao = database.batteryUsageSlotDao();
+        mDatabase = BatteryStateDatabase.getInstance(getContext());
+        mBatteryStateDao = mDatabase.batteryStateDao();
+        mBatteryStateSnapshotDao = mDatabase.batteryStateSnapshotDao();
+        mAppUsageEventDao = mDatabase.appUsageEventDao();
+        mBatteryEventDao = mDatabase.batteryEventDao();
+        mBatteryUsageSlotDao = mDatabase.batteryUsageSlotDao();
         Log.w(TAG, "create content provider from " + getCallingPackage());
         return true;
     }
@@ -164,7 +177,13 @@ public class BatteryUsageContentProvider extends ContentProvider {
         try {
             switch (sUriMatcher.match(uri)) {
                 case BATTERY_STATE_CODE:
-                    mBatteryStateDao.insert(BatteryState.create(contentValues));
+                    if (isCompactStorageEnabled()) {
+                        mBatteryStateSnapshotDao.insert(
+                                BatteryStateSnapshotEntity.create(
+                                        List.of(BatteryState.create(contentValues))));
+                    } else {
+                        mBatteryStateDao.insert(BatteryState.create(contentValues));
+                    }
                     break;
                 case APP_USAGE_EVENT_CODE:
                     mAppUsageEventDao.insert(AppUsageEventEntity.create(contentValues));
@@ -188,6 +207,88 @@ public class BatteryUsageContentProvider extends ContentProvider {
         return uri;
     }
 
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        final int code = sUriMatcher.match(uri);
+        if (code != BATTERY_STATE_CODE
+                && code != APP_USAGE_EVENT_CODE
+                && code != BATTERY_EVENT_CODE
+                && code != BATTERY_USAGE_SLOT_CODE) {
+            throw new IllegalArgumentException("unknown URI: " + uri);
+        }
+        if (values == null || values.length == 0) {
+            return 0;
+        }
+        final long timestamp = mClock.millis();
+        try {
+            // Each @Insert of a list is wrapped into one single Room transaction.
+            switch (code) {
+                case BATTERY_STATE_CODE:
+                    final List<BatteryState> states = new ArrayList<>(values.length);
+                    for (ContentValues contentValues : values) {
+                        states.add(BatteryState.create(contentValues));
+                    }
+                    if (isCompactStorageEnabled()) {
+                        mBatteryStateSnapshotDao.insertAll(toSnapshots(states));
+                    } else {
+                        mBatteryStateDao.insertAll(states);
+                    }
+                    break;
+                case APP_USAGE_EVENT_CODE:
+                    final List<AppUsageEventEntity> appUsageEvents =
+                            new ArrayList<>(values.length);
+                    for (ContentValues contentValues : values) {
+                        appUsageEvents.add(AppUsageEventEntity.create(contentValues));
+                    }
+                    mAppUsageEventDao.insertAll(appUsageEvents);
+                    break;
+                case BATTERY_EVENT_CODE:
+                    final List<BatteryEventEntity> batteryEvents = new ArrayList<>(values.length);
+                    for (ContentValues contentValues : values) {
+                        batteryEvents.add(BatteryEventEntity.create(contentValues));
+                    }
+                    mBatteryEventDao.insertAll(batteryEvents);
+                    break;
+                case BATTERY_USAGE_SLOT_CODE:
+                    final List<BatteryUsageSlotEntity> batteryUsageSlots =
+                            new ArrayList<>(values.length);
+                    for (ContentValues contentValues : values) {
+                        batteryUsageSlots.add(BatteryUsageSlotEntity.create(contentValues));
+                    }
+                    mBatteryUsageSlotDao.insertAll(batteryUsageSlots);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "bulkInsert() from:" + uri + " error:", e);
+            return 0;
+        }
+        Log.d(
+                TAG,
+                String.format(
+                        "bulkInsert() size=%d into %s in %d/ms",
+                        values.length, uri, mClock.millis() - timestamp));
+        return values.length;
+    }
+
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        // Applies all operations in one Room transaction to avoid per-row commit cost.
+        try {
+            return mDatabase.runInTransaction(() -> super.applyBatch(operations));
+        } catch (Exception e) {
+            if (e instanceof OperationApplicationException) {
+                throw (OperationApplicationException) e;
+            }
+            if (e.getCause() instanceof OperationApplicationException) {
+                throw (OperationApplicationException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     @Override
     public int delete(@NonNull Uri uri, @Nullable String s, @Nullable String[] strings) {
         throw new UnsupportedOperationException("unsupported!");
@@ -240,6 +341,17 @@ public class BatteryUsageContentProvider extends ContentProvider {
         Cursor cursor = null;
         try {
             cursor = mBatteryStateDao.getBatteryStatesAfter(queryTimestamp);
+            final List<BatteryStateSnapshotEntity> snapshots =
+                    mBatteryStateSnapshotDao.getAllAfter(queryTimestamp);
+            if (!snapshots.isEmpty()) {
+                // The decoded rows use the columns of the legacy rows, so a column index read
+                // before iterating is valid for all the merged rows.
+                cursor =
+                        new MergeCursor(
+                                new Cursor[] {
+                                    cursor, toCursor(cursor.getColumnNames(), snapshots)
+                                });
+            }
         } catch (RuntimeException e) {
             Log.e(TAG, "query() from:" + uri + " error:", e);
         }
@@ -318,6 +430,48 @@ public class BatteryUsageContentProvider extends ContentProvider {
         return cursor;
     }
 
+    private static boolean isCompactStorageEnabled() {
+        return FeatureFactory.getFeatureFactory()
+                .getPowerUsageFeatureProvider()
+                .isBatteryStateCompactStorageEnabled();
+    }
+
+    private static List<BatteryStateSnapshotEntity> toSnapshots(List<BatteryState> states) {
+        final Map<Long, List<BatteryState>> statesMap = new TreeMap<>();
+        for (BatteryState state : states) {
+            statesMap.computeIfAbsent(state.timestamp, key -> new ArrayList<>()).add(state);
+        }
+        final List<BatteryStateSnapshotEntity> snapshots = new ArrayList<>(statesMap.size());
+        for (List<BatteryState> snapshotStates : statesMap.values()) {
+            snapshots.add(BatteryStateSnapshotEntity.create(snapshotStates));
+        }
+        return snapshots;
+    }
+
+    private static Cursor toCursor(
+            String[] columnNames, List<BatteryStateSnapshotEntity> snapshots) {
+        int size = 0;
+        for (BatteryStateSnapshotEntity snapshot : snapshots) {
+            size += snapshot.consumerCount;
+        }
+        final MatrixCursor cursor = new MatrixCursor(columnNames, size);
+        for (BatteryStateSnapshotEntity snapshot : snapshots) {
+            for (BatteryState state : snapshot.toBatteryStates()) {
+                cursor.newRow()
+                        .add(BatteryHistEntry.KEY_UID, state.uid)
+                        .add(BatteryHistEntry.KEY_USER_ID, state.userId)
+                        .add(BatteryHistEntry.KEY_PACKAGE_NAME, state.packageName)
+                        .add(BatteryHistEntry.KEY_TIMESTAMP, state.timestamp)
+                        .add(BatteryHistEntry.KEY_CONSUMER_TYPE, state.consumerType)
+                        .add(
+                                BatteryHistEntry.KEY_IS_FULL_CHARGE_CYCLE_START,
+                                state.isFullChargeCycleStart ? 1 : 0)
+                        .add(BatteryHistEntry.KEY_BATTERY_INFORMATION, state.batteryInformation);
+            }
+        }
+        return cursor;
+    }
+
     private List<Integer> getQueryBatteryEventTypes(Uri uri) {
         Log.d(TAG, "getQueryBatteryEventTypes from uri: " + uri);
         final String batteryEventTypesParameter =
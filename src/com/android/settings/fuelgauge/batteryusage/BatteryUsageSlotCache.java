@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * A process-wide cache of {@link BatteryUsageSlot} for the closed hourly intervals.
+ *
+ * <p>A time slot is closed once a battery state snapshot is recorded at or after its end
+ * timestamp, after that its usage diff data will never change. The cached slots are stored as
+ * protos and converted into new {@link BatteryDiffData} instances on each read, since the diff
+ * data is mutable after being loaded.
+ */
+final class BatteryUsageSlotCache {
+    private static final String TAG = "BatteryUsageSlotCache";
+    // Covers all hourly slots of the 7 days battery usage chart.
+    private static final int MAX_CACHED_SLOT_SIZE = 7 * 24 + 1;
+
+    private static final LruCache<String, BatteryUsageSlot> sSlotCache =
+            new LruCache<>(MAX_CACHED_SLOT_SIZE);
+
+    private BatteryUsageSlotCache() {}
+
+    /** Gets the cached closed slot, or null if it was not computed before. */
+    @Nullable
+    static BatteryUsageSlot get(
+            @NonNull UserIdsSeries userIdsSeries,
+            final boolean hasScreenOnTime,
+            final long startTimestamp,
+            final long endTimestamp) {
+        return sSlotCache.get(getKey(userIdsSeries, hasScreenOnTime, startTimestamp, endTimestamp));
+    }
+
+    /** Caches the computed closed slot. */
+    static void put(
+            @NonNull UserIdsSeries userIdsSeries,
+            final boolean hasScreenOnTime,
+            @NonNull BatteryUsageSlot batteryUsageSlot) {
+        sSlotCache.put(
+                getKey(
+                        userIdsSeries,
+                        hasScreenOnTime,
+                        batteryUsageSlot.getStartTimestamp(),
+                        batteryUsageSlot.getEndTimestamp()),
+                batteryUsageSlot);
+    }
+
+    /** Clears all cached slots, should be invoked once the database is cleared. */
+    static void clear() {
+        Log.d(TAG, "clear() size=" + sSlotCache.size());
+        sSlotCache.evictAll();
+    }
+
+    /** Gets the number of cached slots. */
+    static int size() {
+        return sSlotCache.size();
+    }
+
+    private static String getKey(
+            UserIdsSeries userIdsSeries,
+            final boolean hasScreenOnTime,
+            final long startTimestamp,
+            final long endTimestamp) {
+        return String.format(
+                Locale.ENGLISH,
+                "%s|%b|%d|%d",
+                userIdsSeries.getVisibleUserIds(),
+                hasScreenOnTime,
+                startTimestamp,
+                endTimestamp);
+    }
+}
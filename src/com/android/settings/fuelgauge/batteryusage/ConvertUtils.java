@@ -549,6 +549,11 @@ public final class ConvertUtils {
         return builder.build();
     }
 
+    /** Converts from {@link BatteryDiffData} to {@link BatteryUsageSlot}. */
+    static BatteryUsageSlot convertToBatteryUsageSlot(final BatteryDiffData batteryDiffData) {
+        return convertToBatteryUsageSlot(batteryDiffData, /* optimizationModeCache= */ null);
+    }
+
     private static BatteryUsageSlot convertToBatteryUsageSlot(
             final BatteryDiffData batteryDiffData,
             final @Nullable BatteryOptimizationModeCache optimizationModeCache) {
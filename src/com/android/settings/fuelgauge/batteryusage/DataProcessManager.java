@@ -18,9 +18,9 @@ package com.android.settings.fuelgauge.batteryusage;
 
 import android.app.usage.UsageEvents;
 import android.content.Context;
-import android.os.AsyncTask;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Process;
 import android.util.ArrayMap;
 import android.util.Log;
 
@@ -37,11 +37,21 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
- * Manages the async tasks to process battery and app usage data.
+ * Manages the pipeline to process battery and app usage data.
  *
- * <p>For now, there exist 4 async tasks in this manager:
+ * <p>All stages run on a dedicated bounded executor and the execution time of each stage is
+ * recorded. For now, there exist the following load stages in this manager:
  *
  * <ul>
  *   <li>loadCurrentBatteryHistoryMap: load the latest battery history data from battery stats
@@ -50,23 +60,27 @@ import java.util.Set;
  *       from usage stats service.
  *   <li>loadDatabaseAppUsageList: load the necessary app usage data (after last full charge) from
  *       database
+ *   <li>loadPowerConnectionBatteryEventList: load the power connection events from database.
+ *   <li>loadBatteryUsageSlotList: load the stored battery usage slots from database.
  *   <li>loadAndApplyBatteryMapFromServiceOnly: load all the battery history data (should be after
  *       last full charge) from battery stats service and apply the callback function directly
  * </ul>
  *
- * If there is battery level data, the first 3 async tasks will be started at the same time.
+ * If there is battery level data, the first 5 load stages will be started at the same time.
  *
  * <ul>
- *   <li>After loadCurrentAppUsageList and loadDatabaseAppUsageList complete, which means all app
- *       usage data has been loaded, the intermediate usage result will be generated.
- *   <li>Then after all 3 async tasks complete, the battery history data and app usage data will be
+ *   <li>After the app usage data and the power connection events are loaded, the intermediate
+ *       usage result will be generated.
+ *   <li>Then after all the stages complete, the battery history data and app usage data will be
  *       combined to generate final data used for UI rendering. And the callback function will be
  *       applied.
  *   <li>If current user is locked, which means we couldn't get the latest app usage data, screen-on
  *       time will not be shown in the UI and empty screen-on time data will be returned.
+ *   <li>If the pipeline is cancelled, no further stage will be started and the callback function
+ *       will not be applied.
  * </ul>
  *
- * If there is no battery level data, the 4th async task will be started only and the usage map
+ * If there is no battery level data, the last load stage will be started only and the usage map
  * callback function will be applied directly to show the app list on the UI.
  */
 public class DataProcessManager {
@@ -74,12 +88,22 @@ public class DataProcessManager {
     private static final List<BatteryEventType> POWER_CONNECTION_EVENTS =
             List.of(BatteryEventType.POWER_CONNECTED, BatteryEventType.POWER_DISCONNECTED);
 
+    // The pipeline stages are mostly blocked on binder calls and database queries.
+    private static final int PIPELINE_THREAD_COUNT = 4;
+    private static final long PIPELINE_THREAD_KEEP_ALIVE_SECONDS = 30L;
+    private static final Set<DataProcessManager> sActiveManagers = ConcurrentHashMap.newKeySet();
+
+    private static ThreadPoolExecutor sPipelineExecutor;
+
     // For testing only.
     @VisibleForTesting static Map<Long, Map<String, BatteryHistEntry>> sFakeBatteryHistoryMap;
+    @VisibleForTesting static Executor sTestExecutor;
 
     // Raw start timestamp with round to the nearest hour.
     private final long mRawStartTimestamp;
     private final long mLastFullChargeTimestamp;
+    // The latest battery state snapshot timestamp in database, slots before it are closed.
+    private final long mLastRecordTimestamp;
     private final boolean mIsFromPeriodJob;
     private final Context mContext;
     private final Handler mHandler;
@@ -100,6 +124,10 @@ public class DataProcessManager {
     private boolean mShowScreenOnTime = true;
     private Set<String> mSystemAppsPackageNames = null;
     private Set<Integer> mSystemAppsUids = null;
+    private long mPipelineStartTime;
+    private volatile boolean mIsCancelled = false;
+    private final List<CompletableFuture<?>> mStageFutures = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> mStageTimings = new ConcurrentHashMap<>();
 
     /**
      * The indexed {@link AppUsagePeriod} list data for each corresponding time slot.
@@ -131,12 +159,41 @@ public class DataProcessManager {
             @NonNull final OnBatteryDiffDataMapLoadedListener callbackFunction,
             @NonNull final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay,
             @NonNull final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap) {
+        this(
+                context,
+                handler,
+                userIdsSeries,
+                isFromPeriodJob,
+                rawStartTimestamp,
+                lastFullChargeTimestamp,
+                /* lastRecordTimestamp= */ 0L,
+                callbackFunction,
+                hourlyBatteryLevelsPerDay,
+                batteryHistoryMap);
+    }
+
+    /**
+     * Constructor when there exists battery level data, the time slots which end no later than
+     * {@code lastRecordTimestamp} are closed and their usage diff data can be reused.
+     */
+    DataProcessManager(
+            Context context,
+            Handler handler,
+            final UserIdsSeries userIdsSeries,
+            final boolean isFromPeriodJob,
+            final long rawStartTimestamp,
+            final long lastFullChargeTimestamp,
+            final long lastRecordTimestamp,
+            @NonNull final OnBatteryDiffDataMapLoadedListener callbackFunction,
+            @NonNull final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay,
+            @NonNull final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap) {
         mContext = context.getApplicationContext();
         mHandler = handler;
         mUserIdsSeries = userIdsSeries;
         mIsFromPeriodJob = isFromPeriodJob;
         mRawStartTimestamp = rawStartTimestamp;
         mLastFullChargeTimestamp = lastFullChargeTimestamp;
+        mLastRecordTimestamp = lastRecordTimestamp;
         mCallbackFunction = callbackFunction;
         mHourlyBatteryLevelsPerDay = hourlyBatteryLevelsPerDay;
         mBatteryHistoryMap = batteryHistoryMap;
@@ -155,6 +212,7 @@ public class DataProcessManager {
         mIsFromPeriodJob = false;
         mRawStartTimestamp = 0L;
         mLastFullChargeTimestamp = 0L;
+        mLastRecordTimestamp = 0L;
         mHourlyBatteryLevelsPerDay = null;
         mBatteryHistoryMap = null;
         // When there is no battery level data, don't show screen-on time and battery level chart on
@@ -162,37 +220,113 @@ public class DataProcessManager {
         mShowScreenOnTime = false;
     }
 
-    /** Starts the async tasks to load battery history data and app usage data. */
+    /** Starts the pipeline to load battery history data and app usage data. */
     public void start() {
+        mPipelineStartTime = System.currentTimeMillis();
+        sActiveManagers.add(this);
         // If we have battery level data, load the battery history map and app usage simultaneously.
         if (mHourlyBatteryLevelsPerDay != null) {
-            if (mIsFromPeriodJob) {
-                mIsCurrentBatteryHistoryLoaded = true;
-                mIsCurrentAppUsageLoaded = true;
-                mIsBatteryUsageSlotLoaded = true;
-            } else {
-                // Loads the latest battery history data from the service.
-                loadCurrentBatteryHistoryMap();
-                // Loads the latest app usage list from the service.
-                loadCurrentAppUsageList();
-                // Loads existing battery usage slots from database.
-                if (mUserIdsSeries.isMainUserProfileOnly()) {
-                    loadBatteryUsageSlotList();
-                } else {
-                    mIsBatteryUsageSlotLoaded = true;
-                }
-            }
-            // Loads app usage list from database.
-            loadDatabaseAppUsageList();
-            // Loads the battery event list from database.
-            loadPowerConnectionBatteryEventList();
+            startLoadPipeline();
         } else {
             // If there is no battery level data, only load the battery history data from service
             // and show it as the app list directly.
-            loadAndApplyBatteryMapFromServiceOnly();
+            supplyStage(
+                            "loadAndApplyBatteryMapFromServiceOnly",
+                            this::loadBatteryMapFromServiceOnly)
+                    .whenComplete(this::onPipelineCompleted);
+        }
+    }
+
+    /**
+     * Cancels the pipeline, the running stages will complete but no further stage will be started
+     * and the callback function will not be applied.
+     */
+    public void cancel() {
+        mIsCancelled = true;
+        sActiveManagers.remove(this);
+        for (CompletableFuture<?> future : mStageFutures) {
+            future.cancel(/* mayInterruptIfRunning= */ false);
+        }
+    }
+
+    /** Cancels all the running pipelines which post the results into the {@code handler}. */
+    public static void cancel(@Nullable Handler handler) {
+        if (handler == null) {
+            return;
+        }
+        for (DataProcessManager dataProcessManager : sActiveManagers) {
+            if (dataProcessManager.mHandler == handler) {
+                Log.d(TAG, "cancel the running pipeline");
+                dataProcessManager.cancel();
+            }
         }
     }
 
+    private void startLoadPipeline() {
+        // The data from the service and the usage slots are not needed for the period job.
+        final boolean loadFromService = !mIsFromPeriodJob;
+        final CompletableFuture<Map<String, BatteryHistEntry>> currentBatteryHistoryFuture =
+                loadFromService
+                        ? supplyStage(
+                                "loadCurrentBatteryHistoryMap", this::loadCurrentBatteryHistoryMap)
+                        : CompletableFuture.completedFuture(null);
+        final CompletableFuture<List<AppUsageEvent>> currentAppUsageFuture =
+                loadFromService
+                        ? supplyStage("loadCurrentAppUsageList", this::loadCurrentAppUsageList)
+                        : CompletableFuture.completedFuture(null);
+        final CompletableFuture<List<BatteryUsageSlot>> batteryUsageSlotFuture =
+                loadFromService && mUserIdsSeries.isMainUserProfileOnly()
+                        ? supplyStage("loadBatteryUsageSlotList", this::loadBatteryUsageSlotList)
+                        : CompletableFuture.completedFuture(null);
+        final CompletableFuture<List<AppUsageEvent>> databaseAppUsageFuture =
+                supplyStage("loadDatabaseAppUsageList", this::loadDatabaseAppUsageList);
+        final CompletableFuture<List<BatteryEvent>> batteryEventFuture =
+                supplyStage(
+                        "loadPowerConnectionBatteryEventList",
+                        this::loadPowerConnectionBatteryEventList);
+
+        // Generates the intermediate usage result once all app usage data and battery events are
+        // loaded, without waiting for the battery history and usage slots.
+        final CompletableFuture<Void> appUsagePeriodFuture =
+                CompletableFuture.allOf(
+                                currentAppUsageFuture, databaseAppUsageFuture, batteryEventFuture)
+                        .thenRunAsync(
+                                () ->
+                                        runStage(
+                                                "processAppUsageData",
+                                                () -> {
+                                                    onAppUsageAndBatteryEventLoaded(
+                                                            currentAppUsageFuture.join(),
+                                                            databaseAppUsageFuture.join(),
+                                                            batteryEventFuture.join());
+                                                    processAppUsageData();
+                                                    return null;
+                                                }),
+                                getExecutor());
+        mStageFutures.add(appUsagePeriodFuture);
+
+        // Combines the battery history data and app usage data to generate the final data.
+        final CompletableFuture<Map<Long, BatteryDiffData>> finalDataFuture =
+                CompletableFuture.allOf(
+                                currentBatteryHistoryFuture,
+                                batteryUsageSlotFuture,
+                                appUsagePeriodFuture)
+                        .thenApplyAsync(
+                                unused ->
+                                        runStage(
+                                                "generateFinalData",
+                                                () -> {
+                                                    onCurrentBatteryHistoryLoaded(
+                                                            currentBatteryHistoryFuture.join());
+                                                    onBatteryUsageSlotLoaded(
+                                                            batteryUsageSlotFuture.join());
+                                                    return generateFinalData();
+                                                }),
+                                getExecutor());
+        mStageFutures.add(finalDataFuture);
+        finalDataFuture.whenComplete(this::onPipelineCompleted);
+    }
+
     @VisibleForTesting
     List<AppUsageEvent> getAppUsageEventList() {
         return mAppUsageEventList;
@@ -229,239 +363,158 @@ public class DataProcessManager {
         return mShowScreenOnTime;
     }
 
-    private void loadCurrentBatteryHistoryMap() {
-        new AsyncTask<Void, Void, Map<String, BatteryHistEntry>>() {
-            @Override
-            protected Map<String, BatteryHistEntry> doInBackground(Void... voids) {
-                final long startTime = System.currentTimeMillis();
-                // Loads the current battery usage data from the battery stats service.
-                final Map<String, BatteryHistEntry> currentBatteryHistoryMap =
-                        DataProcessor.getCurrentBatteryHistoryMapFromStatsService(mContext);
-                Log.d(
-                        TAG,
-                        String.format(
-                                "execute loadCurrentBatteryHistoryMap size=%d in %d/ms",
-                                currentBatteryHistoryMap.size(),
-                                (System.currentTimeMillis() - startTime)));
-                return currentBatteryHistoryMap;
-            }
+    @VisibleForTesting
+    Map<String, Long> getStageTimings() {
+        return mStageTimings;
+    }
 
-            @Override
-            protected void onPostExecute(
-                    final Map<String, BatteryHistEntry> currentBatteryHistoryMap) {
-                if (mBatteryHistoryMap != null) {
-                    // Replaces the placeholder in mBatteryHistoryMap.
-                    for (Map.Entry<Long, Map<String, BatteryHistEntry>> mapEntry :
-                            mBatteryHistoryMap.entrySet()) {
-                        if (mapEntry.getValue()
-                                .containsKey(
-                                        DataProcessor.CURRENT_TIME_BATTERY_HISTORY_PLACEHOLDER)) {
-                            mapEntry.setValue(currentBatteryHistoryMap);
-                        }
-                    }
-                }
-                mIsCurrentBatteryHistoryLoaded = true;
-                tryToGenerateFinalDataAndApplyCallback();
-            }
-        }.execute();
+    private Map<String, BatteryHistEntry> loadCurrentBatteryHistoryMap() {
+        // Loads the current battery usage data from the battery stats service.
+        final Map<String, BatteryHistEntry> currentBatteryHistoryMap =
+                DataProcessor.getCurrentBatteryHistoryMapFromStatsService(mContext);
+        Log.d(
+                TAG,
+                String.format(
+                        "loadCurrentBatteryHistoryMap size=%d", currentBatteryHistoryMap.size()));
+        return currentBatteryHistoryMap;
     }
 
-    private void loadCurrentAppUsageList() {
-        new AsyncTask<Void, Void, List<AppUsageEvent>>() {
-            @Override
-            @Nullable
-            protected List<AppUsageEvent> doInBackground(Void... voids) {
-                if (!shouldLoadAppUsageData()) {
-                    Log.d(TAG, "not loadCurrentAppUsageList");
+    @Nullable
+    private List<AppUsageEvent> loadCurrentAppUsageList() {
+        if (!shouldLoadAppUsageData()) {
+            Log.d(TAG, "not loadCurrentAppUsageList");
+            return null;
+        }
+        // Loads the current battery usage data from the battery stats service.
+        final Map<Long, UsageEvents> usageEventsMap = new ArrayMap<>();
+        for (int userId : mUserIdsSeries.getVisibleUserIds()) {
+            final UsageEvents usageEventsForCurrentUser =
+                    DataProcessor.getCurrentAppUsageEventsForUser(
+                            mContext, mUserIdsSeries, userId, mRawStartTimestamp);
+            if (usageEventsForCurrentUser == null) {
+                // If fail to load usage events for any user, return null directly and screen-on
+                // time will not be shown in the UI.
+                if (userId == mUserIdsSeries.getCurrentUserId()) {
                     return null;
                 }
-                final long startTime = System.currentTimeMillis();
-                // Loads the current battery usage data from the battery stats service.
-                final Map<Long, UsageEvents> usageEventsMap = new ArrayMap<>();
-                for (int userId : mUserIdsSeries.getVisibleUserIds()) {
-                    final UsageEvents usageEventsForCurrentUser =
-                            DataProcessor.getCurrentAppUsageEventsForUser(
-                                    mContext, mUserIdsSeries, userId, mRawStartTimestamp);
-                    if (usageEventsForCurrentUser == null) {
-                        // If fail to load usage events for any user, return null directly and
-                        // screen-on time will not be shown in the UI.
-                        if (userId == mUserIdsSeries.getCurrentUserId()) {
-                            return null;
-                        }
-                    } else {
-                        usageEventsMap.put(Long.valueOf(userId), usageEventsForCurrentUser);
-                    }
-                }
-                final List<AppUsageEvent> appUsageEventList =
-                        DataProcessor.generateAppUsageEventListFromUsageEvents(
-                                mContext, usageEventsMap);
-                Log.d(
-                        TAG,
-                        String.format(
-                                "execute loadCurrentAppUsageList size=%d in %d/ms",
-                                appUsageEventList.size(),
-                                (System.currentTimeMillis() - startTime)));
-                return appUsageEventList;
+            } else {
+                usageEventsMap.put(Long.valueOf(userId), usageEventsForCurrentUser);
             }
+        }
+        final List<AppUsageEvent> appUsageEventList =
+                DataProcessor.generateAppUsageEventListFromUsageEvents(mContext, usageEventsMap);
+        Log.d(TAG, String.format("loadCurrentAppUsageList size=%d", appUsageEventList.size()));
+        return appUsageEventList;
+    }
 
-            @Override
-            protected void onPostExecute(final List<AppUsageEvent> currentAppUsageList) {
-                if (currentAppUsageList == null || currentAppUsageList.isEmpty()) {
-                    Log.d(TAG, "currentAppUsageList is null or empty");
-                } else {
-                    mAppUsageEventList.addAll(currentAppUsageList);
-                }
-                mIsCurrentAppUsageLoaded = true;
-                tryToProcessAppUsageData();
-            }
-        }.execute();
+    @Nullable
+    private List<AppUsageEvent> loadDatabaseAppUsageList() {
+        if (!shouldLoadAppUsageData()) {
+            Log.d(TAG, "not loadDatabaseAppUsageList");
+            return null;
+        }
+        // Loads the app usage data from the database.
+        final List<AppUsageEvent> appUsageEventList =
+                DatabaseUtils.getAppUsageEventForUsers(
+                        mContext,
+                        Calendar.getInstance(),
+                        mUserIdsSeries.getVisibleUserIds(),
+                        mRawStartTimestamp);
+        Log.d(TAG, String.format("loadDatabaseAppUsageList size=%d", appUsageEventList.size()));
+        return appUsageEventList;
     }
 
-    private void loadDatabaseAppUsageList() {
-        new AsyncTask<Void, Void, List<AppUsageEvent>>() {
-            @Override
-            protected List<AppUsageEvent> doInBackground(Void... voids) {
-                if (!shouldLoadAppUsageData()) {
-                    Log.d(TAG, "not loadDatabaseAppUsageList");
-                    return null;
-                }
-                final long startTime = System.currentTimeMillis();
-                // Loads the app usage data from the database.
-                final List<AppUsageEvent> appUsageEventList =
-                        DatabaseUtils.getAppUsageEventForUsers(
-                                mContext,
-                                Calendar.getInstance(),
-                                mUserIdsSeries.getVisibleUserIds(),
-                                mRawStartTimestamp);
-                Log.d(
-                        TAG,
-                        String.format(
-                                "execute loadDatabaseAppUsageList size=%d in %d/ms",
-                                appUsageEventList.size(),
-                                (System.currentTimeMillis() - startTime)));
-                return appUsageEventList;
-            }
+    private List<BatteryEvent> loadPowerConnectionBatteryEventList() {
+        // Loads the battery event data from the database.
+        final List<BatteryEvent> batteryEventList =
+                DatabaseUtils.getBatteryEvents(
+                        mContext,
+                        Calendar.getInstance(),
+                        mRawStartTimestamp,
+                        POWER_CONNECTION_EVENTS);
+        Log.d(
+                TAG,
+                String.format(
+                        "loadPowerConnectionBatteryEventList size=%d", batteryEventList.size()));
+        return batteryEventList;
+    }
 
-            @Override
-            protected void onPostExecute(final List<AppUsageEvent> databaseAppUsageList) {
-                if (databaseAppUsageList == null || databaseAppUsageList.isEmpty()) {
-                    Log.d(TAG, "databaseAppUsageList is null or empty");
-                } else {
-                    mAppUsageEventList.addAll(databaseAppUsageList);
-                }
-                mIsDatabaseAppUsageLoaded = true;
-                tryToProcessAppUsageData();
-            }
-        }.execute();
-    }
-
-    private void loadPowerConnectionBatteryEventList() {
-        new AsyncTask<Void, Void, List<BatteryEvent>>() {
-            @Override
-            protected List<BatteryEvent> doInBackground(Void... voids) {
-                final long startTime = System.currentTimeMillis();
-                // Loads the battery event data from the database.
-                final List<BatteryEvent> batteryEventList =
-                        DatabaseUtils.getBatteryEvents(
-                                mContext,
-                                Calendar.getInstance(),
-                                mRawStartTimestamp,
-                                POWER_CONNECTION_EVENTS);
-                Log.d(
-                        TAG,
-                        String.format(
-                                "execute loadPowerConnectionBatteryEventList size=%d in %d/ms",
-                                batteryEventList.size(), (System.currentTimeMillis() - startTime)));
-                return batteryEventList;
-            }
+    private List<BatteryUsageSlot> loadBatteryUsageSlotList() {
+        // Loads the battery usage slot data from the database.
+        final List<BatteryUsageSlot> batteryUsageSlotList =
+                DatabaseUtils.getBatteryUsageSlots(
+                        mContext, Calendar.getInstance(), mLastFullChargeTimestamp);
+        Log.d(
+                TAG,
+                String.format("loadBatteryUsageSlotList size=%d", batteryUsageSlotList.size()));
+        return batteryUsageSlotList;
+    }
 
-            @Override
-            protected void onPostExecute(final List<BatteryEvent> batteryEventList) {
-                if (batteryEventList == null || batteryEventList.isEmpty()) {
-                    Log.d(TAG, "batteryEventList is null or empty");
-                } else {
-                    mBatteryEventList.clear();
-                    mBatteryEventList.addAll(batteryEventList);
-                }
-                mIsBatteryEventLoaded = true;
-                tryToProcessAppUsageData();
-            }
-        }.execute();
-    }
-
-    private void loadBatteryUsageSlotList() {
-        new AsyncTask<Void, Void, List<BatteryUsageSlot>>() {
-            @Override
-            protected List<BatteryUsageSlot> doInBackground(Void... voids) {
-                final long startTime = System.currentTimeMillis();
-                // Loads the battery usage slot data from the database.
-                final List<BatteryUsageSlot> batteryUsageSlotList =
-                        DatabaseUtils.getBatteryUsageSlots(
-                                mContext, Calendar.getInstance(), mLastFullChargeTimestamp);
-                Log.d(
-                        TAG,
-                        String.format(
-                                "execute loadBatteryUsageSlotList size=%d in %d/ms",
-                                batteryUsageSlotList.size(),
-                                (System.currentTimeMillis() - startTime)));
-                return batteryUsageSlotList;
-            }
+    private Map<Long, BatteryDiffData> loadBatteryMapFromServiceOnly() {
+        final Map<Long, BatteryDiffData> batteryDiffDataMap =
+                DataProcessor.getBatteryDiffDataMapFromStatsService(
+                        mContext,
+                        mUserIdsSeries,
+                        mRawStartTimestamp,
+                        getSystemAppsPackageNames(),
+                        getSystemAppsUids());
+        Log.d(
+                TAG,
+                String.format(
+                        "loadAndApplyBatteryMapFromServiceOnly size=%d",
+                        batteryDiffDataMap.size()));
+        return batteryDiffDataMap;
+    }
 
-            @Override
-            protected void onPostExecute(final List<BatteryUsageSlot> batteryUsageSlotList) {
-                if (batteryUsageSlotList == null || batteryUsageSlotList.isEmpty()) {
-                    Log.d(TAG, "batteryUsageSlotList is null or empty");
-                } else {
-                    mBatteryUsageSlotList.clear();
-                    mBatteryUsageSlotList.addAll(batteryUsageSlotList);
+    private void onCurrentBatteryHistoryLoaded(
+            @Nullable final Map<String, BatteryHistEntry> currentBatteryHistoryMap) {
+        if (currentBatteryHistoryMap != null && mBatteryHistoryMap != null) {
+            // Replaces the placeholder in mBatteryHistoryMap.
+            for (Map.Entry<Long, Map<String, BatteryHistEntry>> mapEntry :
+                    mBatteryHistoryMap.entrySet()) {
+                if (mapEntry.getValue()
+                        .containsKey(DataProcessor.CURRENT_TIME_BATTERY_HISTORY_PLACEHOLDER)) {
+                    mapEntry.setValue(currentBatteryHistoryMap);
                 }
-                mIsBatteryUsageSlotLoaded = true;
-                tryToGenerateFinalDataAndApplyCallback();
-            }
-        }.execute();
-    }
-
-    private void loadAndApplyBatteryMapFromServiceOnly() {
-        new AsyncTask<Void, Void, Map<Long, BatteryDiffData>>() {
-            @Override
-            protected Map<Long, BatteryDiffData> doInBackground(Void... voids) {
-                final long startTime = System.currentTimeMillis();
-                final Map<Long, BatteryDiffData> batteryDiffDataMap =
-                        DataProcessor.getBatteryDiffDataMapFromStatsService(
-                                mContext,
-                                mUserIdsSeries,
-                                mRawStartTimestamp,
-                                getSystemAppsPackageNames(),
-                                getSystemAppsUids());
-                Log.d(
-                        TAG,
-                        String.format(
-                                "execute loadAndApplyBatteryMapFromServiceOnly size=%d in %d/ms",
-                                batteryDiffDataMap.size(),
-                                (System.currentTimeMillis() - startTime)));
-                return batteryDiffDataMap;
             }
+        }
+        mIsCurrentBatteryHistoryLoaded = true;
+    }
 
-            @Override
-            protected void onPostExecute(final Map<Long, BatteryDiffData> batteryDiffDataMap) {
-                // Post results back to main thread to refresh UI.
-                if (mHandler != null && mCallbackFunction != null) {
-                    mHandler.post(
-                            () -> {
-                                mCallbackFunction.onBatteryDiffDataMapLoaded(batteryDiffDataMap);
-                            });
-                }
-            }
-        }.execute();
+    private void onAppUsageAndBatteryEventLoaded(
+            @Nullable final List<AppUsageEvent> currentAppUsageList,
+            @Nullable final List<AppUsageEvent> databaseAppUsageList,
+            @Nullable final List<BatteryEvent> batteryEventList) {
+        if (currentAppUsageList == null || currentAppUsageList.isEmpty()) {
+            Log.d(TAG, "currentAppUsageList is null or empty");
+        } else {
+            mAppUsageEventList.addAll(currentAppUsageList);
+        }
+        mIsCurrentAppUsageLoaded = true;
+        if (databaseAppUsageList == null || databaseAppUsageList.isEmpty()) {
+            Log.d(TAG, "databaseAppUsageList is null or empty");
+        } else {
+            mAppUsageEventList.addAll(databaseAppUsageList);
+        }
+        mIsDatabaseAppUsageLoaded = true;
+        if (batteryEventList == null || batteryEventList.isEmpty()) {
+            Log.d(TAG, "batteryEventList is null or empty");
+        } else {
+            mBatteryEventList.clear();
+            mBatteryEventList.addAll(batteryEventList);
+        }
+        mIsBatteryEventLoaded = true;
     }
 
-    private void tryToProcessAppUsageData() {
-        // Ignore processing the data if any required data is not loaded.
-        if (!mIsCurrentAppUsageLoaded || !mIsDatabaseAppUsageLoaded || !mIsBatteryEventLoaded) {
-            return;
+    private void onBatteryUsageSlotLoaded(
+            @Nullable final List<BatteryUsageSlot> batteryUsageSlotList) {
+        if (batteryUsageSlotList == null || batteryUsageSlotList.isEmpty()) {
+            Log.d(TAG, "batteryUsageSlotList is null or empty");
+        } else {
+            mBatteryUsageSlotList.clear();
+            mBatteryUsageSlotList.addAll(batteryUsageSlotList);
         }
-        processAppUsageData();
-        tryToGenerateFinalDataAndApplyCallback();
+        mIsBatteryUsageSlotLoaded = true;
     }
 
     private void processAppUsageData() {
@@ -479,70 +532,100 @@ public class DataProcessManager {
                         mBatteryEventList);
     }
 
-    private void tryToGenerateFinalDataAndApplyCallback() {
-        // Ignore processing the data if any required data is not loaded.
-        if (!mIsCurrentBatteryHistoryLoaded
-                || !mIsCurrentAppUsageLoaded
-                || !mIsDatabaseAppUsageLoaded
-                || !mIsBatteryEventLoaded
-                || !mIsBatteryUsageSlotLoaded) {
-            return;
+    private Map<Long, BatteryDiffData> generateFinalData() {
+        final Map<Long, BatteryUsageSlot> batteryUsageSlotMap = new ArrayMap<>();
+        for (BatteryUsageSlot batteryUsageSlot : mBatteryUsageSlotList) {
+            batteryUsageSlotMap.put(batteryUsageSlot.getStartTimestamp(), batteryUsageSlot);
         }
-        generateFinalDataAndApplyCallback();
-    }
-
-    private synchronized void generateFinalDataAndApplyCallback() {
-        new AsyncTask<Void, Void, Map<Long, BatteryDiffData>>() {
-            @Override
-            protected Map<Long, BatteryDiffData> doInBackground(Void... voids) {
-                final long startTime = System.currentTimeMillis();
-                final Map<Long, BatteryDiffData> batteryDiffDataMap = new ArrayMap<>();
-                for (BatteryUsageSlot batteryUsageSlot : mBatteryUsageSlotList) {
-                    batteryDiffDataMap.put(
-                            batteryUsageSlot.getStartTimestamp(),
-                            ConvertUtils.convertToBatteryDiffData(
-                                    mContext,
-                                    batteryUsageSlot,
-                                    getSystemAppsPackageNames(),
-                                    getSystemAppsUids()));
-                }
-                batteryDiffDataMap.putAll(
-                        DataProcessor.getBatteryDiffDataMap(
-                                mContext,
-                                mUserIdsSeries,
-                                mHourlyBatteryLevelsPerDay,
-                                mBatteryHistoryMap,
-                                mAppUsagePeriodMap,
-                                getSystemAppsPackageNames(),
-                                getSystemAppsUids()));
-                // Process the reattributate data for the following two cases:
-                // 1) the latest slot for the timestamp "until now"
-                // 2) walkthrough all BatteryDiffData again to handle "re-compute" case
-                final PowerUsageFeatureProvider featureProvider =
-                        FeatureFactory.getFeatureFactory()
-                                .getPowerUsageFeatureProvider();
-                featureProvider.processBatteryReattributeData(
-                        mContext, batteryDiffDataMap, mBatteryEventList, mIsFromPeriodJob);
-
-                Log.d(
-                        TAG,
-                        String.format(
-                                "execute generateFinalDataAndApplyCallback size=%d in %d/ms",
-                                batteryDiffDataMap.size(), System.currentTimeMillis() - startTime));
-                return batteryDiffDataMap;
+        // Reuses the stored or cached closed slots and only computes the open ones.
+        final Map<Long, BatteryDiffData> computedBatteryDiffDataMap =
+                DataProcessor.getBatteryDiffDataMap(
+                        mContext,
+                        mUserIdsSeries,
+                        mHourlyBatteryLevelsPerDay,
+                        mBatteryHistoryMap,
+                        mAppUsagePeriodMap,
+                        getSystemAppsPackageNames(),
+                        getSystemAppsUids(),
+                        batteryUsageSlotMap,
+                        mLastRecordTimestamp);
+        final Map<Long, BatteryDiffData> batteryDiffDataMap = new ArrayMap<>();
+        for (BatteryUsageSlot batteryUsageSlot : mBatteryUsageSlotList) {
+            if (computedBatteryDiffDataMap.containsKey(batteryUsageSlot.getStartTimestamp())) {
+                continue;
             }
+            batteryDiffDataMap.put(
+                    batteryUsageSlot.getStartTimestamp(),
+                    ConvertUtils.convertToBatteryDiffData(
+                            mContext,
+                            batteryUsageSlot,
+                            getSystemAppsPackageNames(),
+                            getSystemAppsUids()));
+        }
+        batteryDiffDataMap.putAll(computedBatteryDiffDataMap);
+        // Process the reattributate data for the following two cases:
+        // 1) the latest slot for the timestamp "until now"
+        // 2) walkthrough all BatteryDiffData again to handle "re-compute" case
+        final PowerUsageFeatureProvider featureProvider =
+                FeatureFactory.getFeatureFactory().getPowerUsageFeatureProvider();
+        featureProvider.processBatteryReattributeData(
+                mContext, batteryDiffDataMap, mBatteryEventList, mIsFromPeriodJob);
+        Log.d(TAG, String.format("generateFinalData size=%d", batteryDiffDataMap.size()));
+        return batteryDiffDataMap;
+    }
 
-            @Override
-            protected void onPostExecute(final Map<Long, BatteryDiffData> batteryDiffDataMap) {
-                // Post results back to main thread to refresh UI.
-                if (mHandler != null && mCallbackFunction != null) {
-                    mHandler.post(
-                            () -> {
-                                mCallbackFunction.onBatteryDiffDataMapLoaded(batteryDiffDataMap);
-                            });
-                }
-            }
-        }.execute();
+    /** Runs the {@code stage} on the pipeline executor. */
+    private <T> CompletableFuture<T> supplyStage(
+            final String stageName, final Supplier<T> stage) {
+        final CompletableFuture<T> future =
+                CompletableFuture.supplyAsync(() -> runStage(stageName, stage), getExecutor());
+        mStageFutures.add(future);
+        return future;
+    }
+
+    /** Runs the {@code stage} in the current thread and records its execution time. */
+    private <T> T runStage(final String stageName, final Supplier<T> stage) {
+        if (mIsCancelled) {
+            throw new CancellationException(stageName + " is cancelled");
+        }
+        final long startTime = System.currentTimeMillis();
+        final T result = stage.get();
+        final long elapsedTime = System.currentTimeMillis() - startTime;
+        mStageTimings.put(stageName, elapsedTime);
+        Log.d(TAG, String.format("execute %s in %d/ms", stageName, elapsedTime));
+        return result;
+    }
+
+    private void onPipelineCompleted(
+            @Nullable final Map<Long, BatteryDiffData> batteryDiffDataMap,
+            @Nullable final Throwable throwable) {
+        sActiveManagers.remove(this);
+        if (mIsCancelled) {
+            Log.d(TAG, "pipeline is cancelled, stages=" + mStageTimings);
+            return;
+        }
+        final Map<Long, BatteryDiffData> resultMap;
+        if (throwable != null) {
+            Log.e(TAG, "pipeline failed, stages=" + mStageTimings, throwable);
+            // Still notify the callback, so the caller is not left waiting for the data.
+            resultMap = new ArrayMap<>();
+        } else {
+            Log.d(
+                    TAG,
+                    String.format(
+                            "pipeline completed in %d/ms, stages=%s",
+                            System.currentTimeMillis() - mPipelineStartTime, mStageTimings));
+            resultMap = batteryDiffDataMap;
+        }
+        // Post results back to main thread to refresh UI.
+        if (mHandler != null && mCallbackFunction != null) {
+            mHandler.post(
+                    () -> {
+                        if (!mIsCancelled) {
+                            mCallbackFunction.onBatteryDiffDataMapLoaded(resultMap);
+                        }
+                    });
+        }
     }
 
     // Whether we should load app usage data from service or database.
@@ -573,6 +656,31 @@ public class DataProcessManager {
         return mSystemAppsUids;
     }
 
+    private static synchronized Executor getExecutor() {
+        if (sTestExecutor != null) {
+            return sTestExecutor;
+        }
+        if (sPipelineExecutor == null) {
+            sPipelineExecutor =
+                    new ThreadPoolExecutor(
+                            PIPELINE_THREAD_COUNT,
+                            PIPELINE_THREAD_COUNT,
+                            PIPELINE_THREAD_KEEP_ALIVE_SECONDS,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(),
+                            runnable ->
+                                    new Thread(
+                                            () -> {
+                                                Process.setThreadPriority(
+                                                        Process.THREAD_PRIORITY_BACKGROUND);
+                                                runnable.run();
+                                            },
+                                            TAG));
+            sPipelineExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sPipelineExecutor;
+    }
+
     /**
      * @return Returns battery level data and start async task to compute battery diff usage data
      *     and load app labels + icons. Returns null if the input is invalid or not having at least
@@ -695,6 +803,7 @@ public class DataProcessManager {
                         isFromPeriodJob,
                         startTimestamp,
                         lastFullChargeTime,
+                        Collections.max(batteryHistoryMap.keySet()),
                         onBatteryDiffDataMapLoadedListener,
                         batteryLevelData.getHourlyBatteryLevelsPerDay(),
                         processedBatteryHistoryMap)
@@ -80,7 +80,6 @@ public final class DataProcessor {
     private static final int POWER_COMPONENT_WAKELOCK = 12;
     private static final int MIN_AVERAGE_POWER_THRESHOLD_MILLI_AMP = 10;
     private static final int MIN_DAILY_DATA_SIZE = 2;
-    private static final int MAX_DIFF_SECONDS_OF_UPPER_TIMESTAMP = 5;
     private static final String MEDIASERVER_PACKAGE_NAME = "mediaserver";
     private static final String ANDROID_CORE_APPS_SHARED_USER_ID = "android.uid.shared";
     private static final Map<String, BatteryHistEntry> EMPTY_BATTERY_MAP = new ArrayMap<>();
@@ -416,17 +415,21 @@ public final class DataProcessor {
     static Map<Long, Map<String, BatteryHistEntry>> getHistoryMapWithExpectedTimestamps(
             Context context, final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap) {
         final long startTime = System.currentTimeMillis();
-        final List<Long> rawTimestampList = new ArrayList<>(batteryHistoryMap.keySet());
-        final Map<Long, Map<String, BatteryHistEntry>> resultMap = new ArrayMap();
-        if (rawTimestampList.isEmpty()) {
+        if (batteryHistoryMap.isEmpty()) {
             Log.d(TAG, "empty batteryHistoryMap in getHistoryMapWithExpectedTimestamps()");
-            return resultMap;
+            return new ArrayMap<>();
+        }
+        final BatteryHistoryTimeline timeline = new BatteryHistoryTimeline(batteryHistoryMap);
+        final long[] expectedTimestampSlots =
+                BatteryHistoryTimeline.getTimestampSlots(
+                        timeline.getRawTimestamps()[0], getCurrentTimeMillis());
+        final Map<Long, Map<String, BatteryHistEntry>> resultMap =
+                timeline.interpolate(expectedTimestampSlots);
+        if (expectedTimestampSlots.length > 0) {
+            resultMap.put(
+                    expectedTimestampSlots[expectedTimestampSlots.length - 1],
+                    Map.of(CURRENT_TIME_BATTERY_HISTORY_PLACEHOLDER, EMPTY_BATTERY_HIST_ENTRY));
         }
-        Collections.sort(rawTimestampList);
-        final long currentTime = getCurrentTimeMillis();
-        final List<Long> expectedTimestampList = getTimestampSlots(rawTimestampList, currentTime);
-        interpolateHistory(
-                context, rawTimestampList, expectedTimestampList, batteryHistoryMap, resultMap);
         Log.d(
                 TAG,
                 String.format(
@@ -463,19 +466,10 @@ public final class DataProcessor {
         if (rawTimestampList.isEmpty()) {
             return timestampSlots;
         }
-        final long startTimestamp = rawTimestampList.get(0);
-        final long endTimestamp = currentTime;
-        // If the start timestamp is later or equal the end one, return the empty list.
-        if (startTimestamp >= endTimestamp) {
-            return timestampSlots;
-        }
-        timestampSlots.add(startTimestamp);
-        for (long timestamp = TimestampUtils.getNextHourTimestamp(startTimestamp);
-                timestamp < endTimestamp;
-                timestamp += DateUtils.HOUR_IN_MILLIS) {
+        for (long timestamp :
+                BatteryHistoryTimeline.getTimestampSlots(rawTimestampList.get(0), currentTime)) {
             timestampSlots.add(timestamp);
         }
-        timestampSlots.add(endTimestamp);
         return timestampSlots;
     }
 
@@ -498,21 +492,10 @@ public final class DataProcessor {
 
     @VisibleForTesting
     static long[] findNearestTimestamp(final List<Long> timestamps, final long target) {
-        final long[] results = new long[] {Long.MIN_VALUE, Long.MAX_VALUE};
-        // Searches the nearest lower and upper timestamp value.
-        timestamps.forEach(
-                timestamp -> {
-                    if (timestamp <= target && timestamp > results[0]) {
-                        results[0] = timestamp;
-                    }
-                    if (timestamp >= target && timestamp < results[1]) {
-                        results[1] = timestamp;
-                    }
-                });
-        // Uses zero value to represent invalid searching result.
-        results[0] = results[0] == Long.MIN_VALUE ? 0 : results[0];
-        results[1] = results[1] == Long.MAX_VALUE ? 0 : results[1];
-        return results;
+        // Searches the nearest lower and upper timestamp value, zero value is used to represent
+        // invalid searching result.
+        return BatteryHistoryTimeline.findNearestTimestamp(
+                BatteryHistoryTimeline.toSortedArray(timestamps), target);
     }
 
     static Map<Long, BatteryDiffData> getBatteryDiffDataMap(
@@ -524,6 +507,42 @@ public final class DataProcessor {
                     appUsagePeriodMap,
             final @NonNull Set<String> systemAppsPackageNames,
             final @NonNull Set<Integer> systemAppsUids) {
+        return getBatteryDiffDataMap(
+                context,
+                userIdsSeries,
+                hourlyBatteryLevelsPerDay,
+                batteryHistoryMap,
+                appUsagePeriodMap,
+                systemAppsPackageNames,
+                systemAppsUids,
+                /* closedBatteryUsageSlotMap= */ Collections.emptyMap(),
+                /* lastRecordTimestamp= */ 0L);
+    }
+
+    /**
+     * Same as above, but reuses the usage diff data of closed time slots instead of computing them
+     * from the battery history again.
+     *
+     * <p>A time slot is closed if its end timestamp is no later than {@code lastRecordTimestamp},
+     * the latest battery state snapshot recorded in the database. Closed slots are loaded from
+     * {@code closedBatteryUsageSlotMap} (keyed by the start timestamp) or {@link
+     * BatteryUsageSlotCache}, and the newly computed closed slots are memoized into the cache.
+     * Only the open current-hour slot and the interpolation edges are computed every time.
+     */
+    static Map<Long, BatteryDiffData> getBatteryDiffDataMap(
+            Context context,
+            final UserIdsSeries userIdsSeries,
+            final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay,
+            final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap,
+            final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>>
+                    appUsagePeriodMap,
+            final @NonNull Set<String> systemAppsPackageNames,
+            final @NonNull Set<Integer> systemAppsUids,
+            final @NonNull Map<Long, BatteryUsageSlot> closedBatteryUsageSlotMap,
+            final long lastRecordTimestamp) {
+        final long startTime = System.currentTimeMillis();
+        final boolean hasScreenOnTime = appUsagePeriodMap != null;
+        int reusedSlotCount = 0;
         final Map<Long, BatteryDiffData> batteryDiffDataMap = new ArrayMap<>();
         // Each time slot usage diff data =
         //     sum(Math.abs(timestamp[i+1] data - timestamp[i] data));
@@ -541,6 +560,27 @@ public final class DataProcessor {
                         hourlyBatteryLevelsPerDay.get(dailyIndex).getLevels().get(hourlyIndex);
                 final int endBatteryLevel =
                         hourlyBatteryLevelsPerDay.get(dailyIndex).getLevels().get(hourlyIndex + 1);
+                final boolean isClosedSlot = endTimestamp <= lastRecordTimestamp;
+                final BatteryUsageSlot closedBatteryUsageSlot =
+                        isClosedSlot
+                                ? getClosedBatteryUsageSlot(
+                                        userIdsSeries,
+                                        hasScreenOnTime,
+                                        startTimestamp,
+                                        endTimestamp,
+                                        closedBatteryUsageSlotMap)
+                                : null;
+                if (closedBatteryUsageSlot != null) {
+                    batteryDiffDataMap.put(
+                            startTimestamp,
+                            ConvertUtils.convertToBatteryDiffData(
+                                    context,
+                                    closedBatteryUsageSlot,
+                                    systemAppsPackageNames,
+                                    systemAppsUids));
+                    reusedSlotCount++;
+                    continue;
+                }
                 final long slotDuration = endTimestamp - startTimestamp;
                 List<Map<String, BatteryHistEntry>> slotBatteryHistoryList = new ArrayList<>();
                 slotBatteryHistoryList.add(
@@ -571,11 +611,51 @@ public final class DataProcessor {
                                         : appUsagePeriodMap.get(dailyIndex).get(hourlyIndex),
                                 slotBatteryHistoryList);
                 batteryDiffDataMap.put(startTimestamp, hourlyBatteryDiffData);
+                if (isClosedSlot && hourlyBatteryDiffData != null) {
+                    BatteryUsageSlotCache.put(
+                            userIdsSeries,
+                            hasScreenOnTime,
+                            ConvertUtils.convertToBatteryUsageSlot(hourlyBatteryDiffData));
+                }
             }
         }
+        if (lastRecordTimestamp > 0L) {
+            Log.d(
+                    TAG,
+                    String.format(
+                            "getBatteryDiffDataMap() size=%d reused=%d in %d/ms",
+                            batteryDiffDataMap.size(),
+                            reusedSlotCount,
+                            (System.currentTimeMillis() - startTime)));
+        }
         return batteryDiffDataMap;
     }
 
+    /**
+     * Gets the stored or cached closed slot, or null if it has to be computed.
+     *
+     * <p>The stored slots don't record whether the app usage data was available when they were
+     * computed, e.g. while the user was locked, so a stored slot is only reused if it has screen-on
+     * time exactly when the slot to compute has it.
+     */
+    @VisibleForTesting
+    @Nullable
+    static BatteryUsageSlot getClosedBatteryUsageSlot(
+            final UserIdsSeries userIdsSeries,
+            final boolean hasScreenOnTime,
+            final long startTimestamp,
+            final long endTimestamp,
+            final Map<Long, BatteryUsageSlot> closedBatteryUsageSlotMap) {
+        final BatteryUsageSlot batteryUsageSlot = closedBatteryUsageSlotMap.get(startTimestamp);
+        if (batteryUsageSlot != null
+                && batteryUsageSlot.getEndTimestamp() == endTimestamp
+                && (batteryUsageSlot.getScreenOnTime() > 0L) == hasScreenOnTime) {
+            return batteryUsageSlot;
+        }
+        return BatteryUsageSlotCache.get(
+                userIdsSeries, hasScreenOnTime, startTimestamp, endTimestamp);
+    }
+
     /**
      * @return Returns the indexed battery usage data for each corresponding time slot.
      *     <p>There could be 2 cases of the returned value:
@@ -593,6 +673,11 @@ public final class DataProcessor {
             final Context context,
             final Map<Long, BatteryDiffData> batteryDiffDataMap,
             final @Nullable BatteryLevelData batteryLevelData) {
+        if (batteryDiffDataMap == null || batteryDiffDataMap.isEmpty()) {
+            // Nothing was loaded, for example the loading pipeline failed.
+            Log.w(TAG, "batteryDiffDataMap is null or empty in generateBatteryUsageMap()");
+            return null;
+        }
         final Map<Integer, Map<Integer, BatteryDiffData>> resultMap = new ArrayMap<>();
         if (batteryLevelData == null) {
             Preconditions.checkArgument(batteryDiffDataMap.size() == 1);
@@ -1103,136 +1188,6 @@ public final class DataProcessor {
                 .collect(Collectors.toList());
     }
 
-    /**
-     * Interpolates history map based on expected timestamp slots and processes the corner case when
-     * the expected start timestamp is earlier than what we have.
-     */
-    private static void interpolateHistory(
-            Context context,
-            final List<Long> rawTimestampList,
-            final List<Long> expectedTimestampSlots,
-            final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap,
-            final Map<Long, Map<String, BatteryHistEntry>> resultMap) {
-        if (rawTimestampList.isEmpty() || expectedTimestampSlots.isEmpty()) {
-            return;
-        }
-        final int expectedTimestampSlotsSize = expectedTimestampSlots.size();
-        final long startTimestamp = expectedTimestampSlots.get(0);
-        final long endTimestamp = expectedTimestampSlots.get(expectedTimestampSlotsSize - 1);
-
-        resultMap.put(startTimestamp, batteryHistoryMap.get(startTimestamp));
-        for (int index = 1; index < expectedTimestampSlotsSize - 1; index++) {
-            interpolateHistoryForSlot(
-                    context,
-                    expectedTimestampSlots.get(index),
-                    rawTimestampList,
-                    batteryHistoryMap,
-                    resultMap);
-        }
-        resultMap.put(
-                endTimestamp,
-                Map.of(CURRENT_TIME_BATTERY_HISTORY_PLACEHOLDER, EMPTY_BATTERY_HIST_ENTRY));
-    }
-
-    private static void interpolateHistoryForSlot(
-            Context context,
-            final long currentSlot,
-            final List<Long> rawTimestampList,
-            final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap,
-            final Map<Long, Map<String, BatteryHistEntry>> resultMap) {
-        final long[] nearestTimestamps = findNearestTimestamp(rawTimestampList, currentSlot);
-        final long lowerTimestamp = nearestTimestamps[0];
-        final long upperTimestamp = nearestTimestamps[1];
-        // Case 1: upper timestamp is zero since scheduler is delayed!
-        if (upperTimestamp == 0) {
-            log(context, "job scheduler is delayed", currentSlot, null);
-            resultMap.put(currentSlot, new ArrayMap<>());
-            return;
-        }
-        // Case 2: upper timestamp is closed to the current timestamp.
-        if ((upperTimestamp - currentSlot)
-                < MAX_DIFF_SECONDS_OF_UPPER_TIMESTAMP * DateUtils.SECOND_IN_MILLIS) {
-            log(context, "force align into the nearest slot", currentSlot, null);
-            resultMap.put(currentSlot, batteryHistoryMap.get(upperTimestamp));
-            return;
-        }
-        // Case 3: lower timestamp is zero before starting to collect data.
-        if (lowerTimestamp == 0) {
-            log(context, "no lower timestamp slot data", currentSlot, null);
-            resultMap.put(currentSlot, new ArrayMap<>());
-            return;
-        }
-        interpolateHistoryForSlot(
-                context, currentSlot, lowerTimestamp, upperTimestamp, batteryHistoryMap, resultMap);
-    }
-
-    private static void interpolateHistoryForSlot(
-            Context context,
-            final long currentSlot,
-            final long lowerTimestamp,
-            final long upperTimestamp,
-            final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap,
-            final Map<Long, Map<String, BatteryHistEntry>> resultMap) {
-        final Map<String, BatteryHistEntry> lowerEntryDataMap =
-                batteryHistoryMap.get(lowerTimestamp);
-        final Map<String, BatteryHistEntry> upperEntryDataMap =
-                batteryHistoryMap.get(upperTimestamp);
-        // Verifies whether the lower data is valid to use or not by checking boot time.
-        final BatteryHistEntry upperEntryDataFirstEntry =
-                upperEntryDataMap.values().stream().findFirst().get();
-        final long upperEntryDataBootTimestamp =
-                upperEntryDataFirstEntry.mTimestamp - upperEntryDataFirstEntry.mBootTimestamp;
-        // Lower data is captured before upper data corresponding device is booting.
-        // Skips the booting-specific logics and always does interpolation for daily chart level
-        // data.
-        if (lowerTimestamp < upperEntryDataBootTimestamp
-                && !TimestampUtils.isMidnight(currentSlot)) {
-            // Provides an opportunity to force align the slot directly.
-            if ((upperTimestamp - currentSlot) < 10 * DateUtils.MINUTE_IN_MILLIS) {
-                log(context, "force align into the nearest slot", currentSlot, null);
-                resultMap.put(currentSlot, upperEntryDataMap);
-            } else {
-                log(context, "in the different booting section", currentSlot, null);
-                resultMap.put(currentSlot, new ArrayMap<>());
-            }
-            return;
-        }
-        log(context, "apply interpolation arithmetic", currentSlot, null);
-        final Map<String, BatteryHistEntry> newHistEntryMap = new ArrayMap<>();
-        final double timestampLength = upperTimestamp - lowerTimestamp;
-        final double timestampDiff = currentSlot - lowerTimestamp;
-        // Applies interpolation arithmetic for each BatteryHistEntry.
-        for (String entryKey : upperEntryDataMap.keySet()) {
-            final BatteryHistEntry lowerEntry = lowerEntryDataMap.get(entryKey);
-            final BatteryHistEntry upperEntry = upperEntryDataMap.get(entryKey);
-            // Checks whether there is any abnormal battery reset conditions.
-            if (lowerEntry != null) {
-                final boolean invalidForegroundUsageTime =
-                        lowerEntry.mForegroundUsageTimeInMs > upperEntry.mForegroundUsageTimeInMs;
-                final boolean invalidBackgroundUsageTime =
-                        lowerEntry.mBackgroundUsageTimeInMs > upperEntry.mBackgroundUsageTimeInMs;
-                if (invalidForegroundUsageTime || invalidBackgroundUsageTime) {
-                    newHistEntryMap.put(entryKey, upperEntry);
-                    log(context, "abnormal reset condition is found", currentSlot, upperEntry);
-                    continue;
-                }
-            }
-            final BatteryHistEntry newEntry =
-                    BatteryHistEntry.interpolate(
-                            currentSlot,
-                            upperTimestamp,
-                            /* ratio= */ timestampDiff / timestampLength,
-                            lowerEntry,
-                            upperEntry);
-            newHistEntryMap.put(entryKey, newEntry);
-            if (lowerEntry == null) {
-                log(context, "cannot find lower entry data", currentSlot, upperEntry);
-                continue;
-            }
-        }
-        resultMap.put(currentSlot, newHistEntryMap);
-    }
-
     private static Integer getLevel(
             Context context,
             final Map<Long, Map<String, BatteryHistEntry>> processedBatteryHistoryMap,
@@ -1876,20 +1831,4 @@ public final class DataProcessor {
     private static long getCurrentTimeMillis() {
         return sTestCurrentTimeMillis > 0 ? sTestCurrentTimeMillis : System.currentTimeMillis();
     }
-
-    private static void log(
-            Context context,
-            final String content,
-            final long timestamp,
-            final BatteryHistEntry entry) {
-        if (sDebug) {
-            Log.d(
-                    TAG,
-                    String.format(
-                            entry != null ? "%s %s:\n%s" : "%s %s:%s",
-                            ConvertUtils.utcToLocalTimeForLogging(timestamp),
-                            content,
-                            entry));
-        }
-    }
 }
@@ -420,6 +420,7 @@ public final class DatabaseUtils {
 
     /** Clears all data in the battery usage database. */
     public static void clearAll(Context context) {
+        BatteryUsageSlotCache.clear();
         AsyncTask.execute(
                 () -> {
                     try {
@@ -428,6 +429,7 @@ public final class DatabaseUtils {
                         database.appUsageEventDao().clearAll();
                         database.batteryEventDao().clearAll();
                         database.batteryStateDao().clearAll();
+                        database.batteryStateSnapshotDao().clearAll();
                         database.batteryUsageSlotDao().clearAll();
                         database.batteryReattributeDao().clearAll();
                     } catch (RuntimeException e) {
@@ -438,6 +440,7 @@ public final class DatabaseUtils {
 
     /** Clears data after a specific startTimestamp in the battery usage database. */
     public static void clearAllAfter(Context context, long startTimestamp) {
+        BatteryUsageSlotCache.clear();
         AsyncTask.execute(
                 () -> {
                     try {
@@ -446,6 +449,7 @@ public final class DatabaseUtils {
                         database.appUsageEventDao().clearAllAfter(startTimestamp);
                         database.batteryEventDao().clearAllAfter(startTimestamp);
                         database.batteryStateDao().clearAllAfter(startTimestamp);
+                        database.batteryStateSnapshotDao().clearAllAfter(startTimestamp);
                         database.batteryUsageSlotDao().clearAllAfter(startTimestamp);
                     } catch (RuntimeException e) {
                         Log.e(TAG, "clearAllAfter() failed", e);
@@ -466,6 +470,7 @@ public final class DatabaseUtils {
                         database.appUsageEventDao().clearAllBefore(earliestTimestamp);
                         database.batteryEventDao().clearAllBefore(earliestTimestamp);
                         database.batteryStateDao().clearAllBefore(earliestTimestamp);
+                        database.batteryStateSnapshotDao().clearAllBefore(earliestTimestamp);
                         database.batteryUsageSlotDao().clearAllBefore(earliestTimestamp);
                         database.batteryReattributeDao().clearAllBefore(earliestTimestamp);
                     } catch (RuntimeException e) {
@@ -36,6 +36,7 @@ import com.android.settings.fuelgauge.batteryusage.db.BatteryReattributeEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryState;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryStateDao;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryStateDatabase;
+import com.android.settings.fuelgauge.batteryusage.db.BatteryStateSnapshotEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryUsageSlotDao;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryUsageSlotEntity;
 import com.android.settings.overlay.FeatureFactory;
@@ -99,6 +100,14 @@ public final class LogUtils {
         final List<BatteryState> stateList =
                 dao.getAllAfter(Clock.systemUTC().millis() - DUMP_TIME_OFFSET_FOR_ENTRY.toMillis());
         dumpListItems(writer, stateList, state -> state);
+        writer.println("\n\tBatteryStateSnapshot DatabaseHistory:");
+        final List<BatteryStateSnapshotEntity> snapshotList =
+                BatteryStateDatabase.getInstance(context)
+                        .batteryStateSnapshotDao()
+                        .getAllAfterForLog(
+                                Clock.systemUTC().millis()
+                                        - DUMP_TIME_OFFSET_FOR_ENTRY.toMillis());
+        dumpListItems(writer, snapshotList, snapshot -> snapshot);
     }
 
     static void dumpAppUsageDatabaseHist(Context context, PrintWriter writer) {
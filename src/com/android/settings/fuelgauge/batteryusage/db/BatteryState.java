@@ -19,6 +19,7 @@ package com.android.settings.fuelgauge.batteryusage.db;
 import android.content.ContentValues;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import com.android.settings.fuelgauge.BatteryUtils;
@@ -30,7 +31,7 @@ import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.util.Locale;
 
 /** A {@link Entity} class to save battery states snapshot into database. */
-@Entity
+@Entity(indices = {@Index(value = {"timestamp"})})
 public class BatteryState {
     @PrimaryKey(autoGenerate = true)
     private long mId;
@@ -37,8 +37,18 @@ public interface BatteryStateDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insertAll(List<BatteryState> states);
 
-    /** Gets the {@link Cursor} of the latest record timestamp no later than the given timestamp. */
-    @Query("SELECT MAX(timestamp) FROM BatteryState WHERE timestamp <= :timestamp")
+    /**
+     * Gets the {@link Cursor} of the latest record timestamp no later than the given timestamp,
+     * including the snapshots saved in the compact storage mode. Each table is reduced to its own
+     * MAX() first, which is a single index seek instead of a range scan.
+     */
+    @Query(
+            "SELECT MAX(timestamp) FROM ("
+                    + "SELECT MAX(timestamp) AS timestamp FROM BatteryState"
+                    + " WHERE timestamp <= :timestamp"
+                    + " UNION ALL SELECT MAX(timestamp) AS timestamp"
+                    + " FROM BatteryStateSnapshotEntity"
+                    + " WHERE timestamp <= :timestamp)")
     Cursor getLatestTimestampBefore(long timestamp);
 
     /** Lists all recorded battery states after a specific timestamp. */
@@ -50,11 +60,18 @@ public interface BatteryStateDao {
     List<BatteryState> getAllAfter(long timestamp);
 
     /** Get the count of distinct timestamp after a specific timestamp. */
-    @Query("SELECT COUNT(DISTINCT timestamp) FROM BatteryState WHERE timestamp > :timestamp")
+    @Query(
+            "SELECT COUNT(*) FROM ("
+                    + "SELECT DISTINCT timestamp FROM BatteryState WHERE timestamp > :timestamp"
+                    + " UNION SELECT timestamp FROM BatteryStateSnapshotEntity"
+                    + " WHERE timestamp > :timestamp)")
     int getDistinctTimestampCount(long timestamp);
 
     /** Lists all distinct timestamps after a specific timestamp. */
-    @Query("SELECT DISTINCT timestamp FROM BatteryState WHERE timestamp > :timestamp")
+    @Query(
+            "SELECT DISTINCT timestamp FROM BatteryState WHERE timestamp > :timestamp"
+                    + " UNION SELECT timestamp FROM BatteryStateSnapshotEntity"
+                    + " WHERE timestamp > :timestamp")
     List<Long> getDistinctTimestamps(long timestamp);
 
     /** Deletes all recorded data before a specific timestamp. */
@@ -23,6 +23,8 @@ import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 /** A {@link RoomDatabase} for battery usage states history. */
 @Database(
@@ -30,16 +32,66 @@ import androidx.room.RoomDatabase;
             AppUsageEventEntity.class,
             BatteryEventEntity.class,
             BatteryState.class,
+            BatteryStateSnapshotEntity.class,
             BatteryUsageSlotEntity.class,
             BatteryReattributeEntity.class
         },
-        version = 2)
+        version = 4)
 public abstract class BatteryStateDatabase extends RoomDatabase {
     private static final String TAG = "BatteryStateDatabase";
     private static final String DB_FILE_NAME = "battery-usage-db-v10";
 
     private static BatteryStateDatabase sBatteryStateDatabase;
 
+    /**
+     * Adds the table for the compact battery state snapshots. The existing {@link BatteryState}
+     * rows are kept and read together with the snapshots until they expire.
+     */
+    static final Migration MIGRATION_2_3 =
+            new Migration(/* startVersion= */ 2, /* endVersion= */ 3) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    database.execSQL(
+                            "CREATE TABLE IF NOT EXISTS `BatteryStateSnapshotEntity` ("
+                                    + "`timestamp` INTEGER NOT NULL,"
+                                    + " `isFullChargeCycleStart` INTEGER NOT NULL,"
+                                    + " `consumerCount` INTEGER NOT NULL,"
+                                    + " `snapshot` BLOB NOT NULL,"
+                                    + " PRIMARY KEY(`timestamp`))");
+                }
+            };
+
+    /**
+     * Adds the indexes for the timestamp range scans and the latest timestamp queries, the indexes
+     * are named as the default ones generated by Room for the entities.
+     */
+    static final Migration MIGRATION_3_4 =
+            new Migration(/* startVersion= */ 3, /* endVersion= */ 4) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    database.execSQL(
+                            "CREATE INDEX IF NOT EXISTS"
+                                    + " `index_AppUsageEventEntity_userId_timestamp`"
+                                    + " ON `AppUsageEventEntity` (`userId`, `timestamp`)");
+                    database.execSQL(
+                            "CREATE INDEX IF NOT EXISTS `index_AppUsageEventEntity_timestamp`"
+                                    + " ON `AppUsageEventEntity` (`timestamp`)");
+                    database.execSQL(
+                            "CREATE INDEX IF NOT EXISTS"
+                                    + " `index_BatteryEventEntity_batteryEventType_timestamp`"
+                                    + " ON `BatteryEventEntity` (`batteryEventType`, `timestamp`)");
+                    database.execSQL(
+                            "CREATE INDEX IF NOT EXISTS `index_BatteryEventEntity_timestamp`"
+                                    + " ON `BatteryEventEntity` (`timestamp`)");
+                    database.execSQL(
+                            "CREATE INDEX IF NOT EXISTS `index_BatteryState_timestamp`"
+                                    + " ON `BatteryState` (`timestamp`)");
+                    database.execSQL(
+                            "CREATE INDEX IF NOT EXISTS `index_BatteryUsageSlotEntity_timestamp`"
+                                    + " ON `BatteryUsageSlotEntity` (`timestamp`)");
+                }
+            };
+
     /** Provides DAO for app usage event table. */
     public abstract AppUsageEventDao appUsageEventDao();
 
@@ -49,6 +101,9 @@ public abstract class BatteryStateDatabase extends RoomDatabase {
     /** Provides DAO for battery state table. */
     public abstract BatteryStateDao batteryStateDao();
 
+    /** Provides DAO for compact battery state snapshot table. */
+    public abstract BatteryStateSnapshotDao batteryStateSnapshotDao();
+
     /** Provides DAO for battery usage slot table. */
     public abstract BatteryUsageSlotDao batteryUsageSlotDao();
 
@@ -63,6 +118,7 @@ public abstract class BatteryStateDatabase extends RoomDatabase {
                     Room.databaseBuilder(context, BatteryStateDatabase.class, DB_FILE_NAME)
                             // Allows accessing data in the main thread for dumping bugreport.
                             .allowMainThreadQueries()
+                            .addMigrations(MIGRATION_2_3, MIGRATION_3_4)
                             .fallbackToDestructiveMigration()
                             .build();
             Log.d(TAG, "initialize battery states database");
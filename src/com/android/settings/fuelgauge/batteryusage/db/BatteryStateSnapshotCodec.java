@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage.db;
+
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.settings.fuelgauge.BatteryUtils;
+import com.android.settings.fuelgauge.batteryusage.BatteryInformation;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Encodes all {@link BatteryState} of one snapshot into a compact binary blob.
+ *
+ * <p>The device battery state, boot timestamp, zone ID and total power are identical for all
+ * consumers of a snapshot, so they are stored once in a shared header. Consumers are sorted by
+ * user ID and uid, and both are delta encoded as zigzag varints. The {@link BatteryInformation}
+ * is kept as raw proto bytes instead of the Base64 string used by the {@link BatteryState} table.
+ *
+ * <pre>
+ * blob     := version header count consumer*
+ * header   := varint(length) BatteryInformation
+ * consumer := zigzag(userIdDelta) zigzag(uidDelta) varint(consumerType) flags
+ *             [varint(length) packageName] varint(length) BatteryInformation
+ * </pre>
+ */
+public final class BatteryStateSnapshotCodec {
+    private static final String TAG = "BatteryStateSnapshotCodec";
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int FLAG_SHARED_HEADER = 1;
+    private static final int FLAG_HAS_PACKAGE_NAME = 1 << 1;
+
+    private static final Comparator<BatteryState> CONSUMER_COMPARATOR =
+            Comparator.<BatteryState>comparingLong(state -> state.userId)
+                    .thenComparingLong(state -> state.uid);
+
+    private BatteryStateSnapshotCodec() {}
+
+    /** Encodes all {@link BatteryState} with the same timestamp into a binary blob. */
+    @NonNull
+    public static byte[] encode(@NonNull List<BatteryState> states) {
+        final List<BatteryState> sortedStates = new ArrayList<>(states);
+        Collections.sort(sortedStates, CONSUMER_COMPARATOR);
+        final List<BatteryInformation> informationList = new ArrayList<>(sortedStates.size());
+        for (BatteryState state : sortedStates) {
+            informationList.add(
+                    BatteryUtils.parseProtoFromString(
+                            state.batteryInformation, BatteryInformation.getDefaultInstance()));
+        }
+        final BatteryInformation header =
+                informationList.isEmpty()
+                        ? BatteryInformation.getDefaultInstance()
+                        : extractHeader(informationList.get(0));
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(FORMAT_VERSION);
+        writeBytes(output, header.toByteArray());
+        writeVarint(output, sortedStates.size());
+        long previousUserId = 0;
+        long previousUid = 0;
+        for (int index = 0; index < sortedStates.size(); index++) {
+            final BatteryState state = sortedStates.get(index);
+            final BatteryInformation information = informationList.get(index);
+            writeVarint(output, zigzag(state.userId - previousUserId));
+            writeVarint(output, zigzag(state.uid - previousUid));
+            writeVarint(output, state.consumerType);
+            previousUserId = state.userId;
+            previousUid = state.uid;
+
+            final boolean sharesHeader = header.equals(extractHeader(information));
+            int flags = sharesHeader ? FLAG_SHARED_HEADER : 0;
+            flags |= state.packageName != null ? FLAG_HAS_PACKAGE_NAME : 0;
+            output.write(flags);
+            if (state.packageName != null) {
+                writeBytes(output, state.packageName.getBytes(StandardCharsets.UTF_8));
+            }
+            writeBytes(
+                    output,
+                    (sharesHeader ? stripHeader(information) : information).toByteArray());
+        }
+        return output.toByteArray();
+    }
+
+    /** Decodes the binary blob into {@link BatteryState} list of the snapshot. */
+    @NonNull
+    public static List<BatteryState> decode(
+            long timestamp, boolean isFullChargeCycleStart, @Nullable byte[] blob) {
+        final List<BatteryState> states = new ArrayList<>();
+        if (blob == null || blob.length == 0) {
+            return states;
+        }
+        final Reader reader = new Reader(blob);
+        try {
+            final int version = reader.readByte();
+            if (version != FORMAT_VERSION) {
+                Log.e(TAG, "unsupported snapshot format version: " + version);
+                return states;
+            }
+            final BatteryInformation header = BatteryInformation.parseFrom(reader.readBytes());
+            final int count = (int) reader.readVarint();
+            long userId = 0;
+            long uid = 0;
+            for (int index = 0; index < count; index++) {
+                userId += unzigzag(reader.readVarint());
+                uid += unzigzag(reader.readVarint());
+                final int consumerType = (int) reader.readVarint();
+                final int flags = reader.readByte();
+                final String packageName =
+                        (flags & FLAG_HAS_PACKAGE_NAME) != 0
+                                ? new String(reader.readBytes(), StandardCharsets.UTF_8)
+                                : null;
+                final byte[] informationBytes = reader.readBytes();
+                final BatteryInformation information =
+                        (flags & FLAG_SHARED_HEADER) != 0
+                                ? header.toBuilder().mergeFrom(informationBytes).build()
+                                : BatteryInformation.parseFrom(informationBytes);
+                states.add(
+                        BatteryState.newBuilder()
+                                .setUid(uid)
+                                .setUserId(userId)
+                                .setPackageName(packageName)
+                                .setTimestamp(timestamp)
+                                .setConsumerType(consumerType)
+                                .setIsFullChargeCycleStart(isFullChargeCycleStart)
+                                .setBatteryInformation(
+                                        Base64.encodeToString(
+                                                information.toByteArray(), Base64.DEFAULT))
+                                .build());
+            }
+        } catch (InvalidProtocolBufferException | IndexOutOfBoundsException e) {
+            Log.e(TAG, "failed to decode snapshot at " + timestamp, e);
+            states.clear();
+        }
+        return states;
+    }
+
+    private static BatteryInformation extractHeader(BatteryInformation information) {
+        final BatteryInformation.Builder builder = BatteryInformation.newBuilder();
+        if (information.hasDeviceBatteryState()) {
+            builder.setDeviceBatteryState(information.getDeviceBatteryState());
+        }
+        if (information.hasBootTimestamp()) {
+            builder.setBootTimestamp(information.getBootTimestamp());
+        }
+        if (information.hasZoneId()) {
+            builder.setZoneId(information.getZoneId());
+        }
+        if (information.hasTotalPower()) {
+            builder.setTotalPower(information.getTotalPower());
+        }
+        return builder.build();
+    }
+
+    private static BatteryInformation stripHeader(BatteryInformation information) {
+        return information.toBuilder()
+                .clearDeviceBatteryState()
+                .clearBootTimestamp()
+                .clearZoneId()
+                .clearTotalPower()
+                .build();
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    private static void writeBytes(ByteArrayOutputStream output, byte[] bytes) {
+        writeVarint(output, bytes.length);
+        output.write(bytes, /* off= */ 0, bytes.length);
+    }
+
+    /** A minimal cursor over the encoded blob. */
+    private static final class Reader {
+        private final byte[] mBlob;
+        private int mPosition;
+
+        Reader(byte[] blob) {
+            mBlob = Objects.requireNonNull(blob);
+        }
+
+        int readByte() {
+            if (mPosition >= mBlob.length) {
+                throw new IndexOutOfBoundsException("unexpected end of snapshot");
+            }
+            return mBlob[mPosition++] & 0xFF;
+        }
+
+        long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int value = readByte();
+                result |= (long) (value & 0x7F) << shift;
+                if ((value & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IndexOutOfBoundsException("malformed varint in snapshot");
+        }
+
+        byte[] readBytes() {
+            final int length = (int) readVarint();
+            if (length < 0 || mPosition + length > mBlob.length) {
+                throw new IndexOutOfBoundsException("unexpected end of snapshot");
+            }
+            final byte[] bytes = new byte[length];
+            System.arraycopy(mBlob, mPosition, bytes, /* destPos= */ 0, length);
+            mPosition += length;
+            return bytes;
+        }
+    }
+}
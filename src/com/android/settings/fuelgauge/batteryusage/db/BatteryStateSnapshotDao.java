@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.settings.fuelgauge.batteryusage.db;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+/** DAO for accessing {@link BatteryStateSnapshotEntity} in the database. */
+@Dao
+public interface BatteryStateSnapshotDao {
+
+    /** Inserts a {@link BatteryStateSnapshotEntity} data into the database. */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(BatteryStateSnapshotEntity snapshot);
+
+    /** Inserts {@link BatteryStateSnapshotEntity} data into the database. */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertAll(List<BatteryStateSnapshotEntity> snapshots);
+
+    /** Gets all recorded snapshots after a specific timestamp. */
+    @Query(
+            "SELECT * FROM BatteryStateSnapshotEntity WHERE timestamp >= :timestamp"
+                    + " ORDER BY timestamp ASC")
+    List<BatteryStateSnapshotEntity> getAllAfter(long timestamp);
+
+    /** Gets all recorded snapshots after a specific timestamp for log. */
+    @Query(
+            "SELECT * FROM BatteryStateSnapshotEntity WHERE timestamp > :timestamp"
+                    + " ORDER BY timestamp DESC")
+    List<BatteryStateSnapshotEntity> getAllAfterForLog(long timestamp);
+
+    /** Deletes all recorded data before a specific timestamp. */
+    @Query("DELETE FROM BatteryStateSnapshotEntity WHERE timestamp <= :timestamp")
+    void clearAllBefore(long timestamp);
+
+    /** Deletes all recorded data after a specific timestamp. */
+    @Query("DELETE FROM BatteryStateSnapshotEntity WHERE timestamp >= :timestamp")
+    void clearAllAfter(long timestamp);
+
+    /** Clears all recorded data in the database. */
+    @Query("DELETE FROM BatteryStateSnapshotEntity")
+    void clearAll();
+}
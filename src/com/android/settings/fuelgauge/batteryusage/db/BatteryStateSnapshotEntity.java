@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage.db;
+
+import static com.android.settings.fuelgauge.batteryusage.ConvertUtils.utcToLocalTimeForLogging;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A {@link Entity} to save all battery states of one snapshot into one row in the compact storage
+ * mode. The consumers are encoded by {@link BatteryStateSnapshotCodec}.
+ */
+@Entity
+public class BatteryStateSnapshotEntity {
+
+    /** The snapshot timestamp shared by all consumers. */
+    @PrimaryKey public final long timestamp;
+
+    /** Whether the snapshot is the start of a full charge cycle. */
+    public final boolean isFullChargeCycleStart;
+
+    /** The number of consumers encoded in the {@link #snapshot}. */
+    public final int consumerCount;
+
+    /** The encoded consumers, see {@link BatteryStateSnapshotCodec}. */
+    @NonNull public final byte[] snapshot;
+
+    public BatteryStateSnapshotEntity(
+            long timestamp,
+            boolean isFullChargeCycleStart,
+            int consumerCount,
+            @NonNull byte[] snapshot) {
+        this.timestamp = timestamp;
+        this.isFullChargeCycleStart = isFullChargeCycleStart;
+        this.consumerCount = consumerCount;
+        this.snapshot = snapshot;
+    }
+
+    /** Creates new {@link BatteryStateSnapshotEntity} from {@link BatteryState} of a snapshot. */
+    @NonNull
+    public static BatteryStateSnapshotEntity create(@NonNull List<BatteryState> states) {
+        final BatteryState firstState = states.get(0);
+        return new BatteryStateSnapshotEntity(
+                firstState.timestamp,
+                firstState.isFullChargeCycleStart,
+                states.size(),
+                BatteryStateSnapshotCodec.encode(states));
+    }
+
+    /** Decodes all {@link BatteryState} of this snapshot. */
+    @NonNull
+    public List<BatteryState> toBatteryStates() {
+        return BatteryStateSnapshotCodec.decode(timestamp, isFullChargeCycleStart, snapshot);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(
+                Locale.US,
+                "\nBatteryStateSnapshot{\n\ttimestamp=%s|isStart=%b|consumers=%d|bytes=%d\n}",
+                utcToLocalTimeForLogging(timestamp),
+                isFullChargeCycleStart,
+                consumerCount,
+                snapshot.length);
+    }
+}
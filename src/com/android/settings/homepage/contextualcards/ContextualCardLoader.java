@@ -26,6 +26,7 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Process;
 import android.provider.Settings;
 import android.util.Log;
 
@@ -39,12 +40,17 @@ import com.android.settingslib.core.instrumentation.MetricsFeatureProvider;
 import com.android.settingslib.utils.AsyncLoaderCompat;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 public class ContextualCardLoader extends AsyncLoaderCompat<List<ContextualCard>> {
 
@@ -56,6 +62,15 @@ public class ContextualCardLoader extends AsyncLoaderCompat<List<ContextualCard>
 
     private static final String TAG = "ContextualCardLoader";
     private static final long ELIGIBILITY_CHECKER_TIMEOUT_MS = 400;
+    private static final long CHECKER_THREAD_KEEP_ALIVE_SECONDS = 30L;
+
+    // Shared by all loads, so a resume of the homepage does not create new threads. The checkers
+    // never wait in a queue, each one gets a thread so the timeout only counts its own work.
+    private static ThreadPoolExecutor sCheckerExecutor;
+    // Checks the cached cards again one at a time, apart from the checkers of the loads.
+    private static ThreadPoolExecutor sRecheckExecutor;
+    // Slice uris of the cached cards being checked again in the background.
+    private static final Set<String> sPendingRechecks = ConcurrentHashMap.newKeySet();
 
     private final ContentObserver mObserver = new ContentObserver(
             new Handler(Looper.getMainLooper())) {
@@ -72,10 +87,17 @@ public class ContextualCardLoader extends AsyncLoaderCompat<List<ContextualCard>
     Uri mNotifyUri;
 
     private final Context mContext;
+    private final EligibleCardCache mEligibleCardCache;
 
     ContextualCardLoader(Context context) {
+        this(context, EligibleCardCache.getInstance());
+    }
+
+    @VisibleForTesting
+    ContextualCardLoader(Context context, EligibleCardCache eligibleCardCache) {
         super(context);
         mContext = context.getApplicationContext();
+        mEligibleCardCache = eligibleCardCache;
     }
 
     @Override
@@ -187,42 +209,121 @@ public class ContextualCardLoader extends AsyncLoaderCompat<List<ContextualCard>
             return candidates;
         }
 
-        final ExecutorService executor = Executors.newFixedThreadPool(candidates.size());
-        final List<ContextualCard> cards = new ArrayList<>();
-        List<Future<ContextualCard>> eligibleCards = new ArrayList<>();
-
-        final List<EligibleCardChecker> checkers = candidates.stream()
-                .map(card -> new EligibleCardChecker(mContext, card))
-                .collect(Collectors.toList());
-        try {
-            eligibleCards = executor.invokeAll(checkers, ELIGIBILITY_CHECKER_TIMEOUT_MS,
-                    TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            Log.w(TAG, "Failed to get eligible states for all cards", e);
+        final ContextualCard[] eligibleCards = new ContextualCard[candidates.size()];
+        final List<ContextualCard> uncachedCandidates = new ArrayList<>();
+        final List<Integer> uncachedPositions = new ArrayList<>();
+        final List<ContextualCard> cachedCandidates = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            final ContextualCard candidate = candidates.get(i);
+            final ContextualCard cachedCard = mEligibleCardCache.get(candidate);
+            if (cachedCard != null) {
+                eligibleCards[i] = cachedCard;
+                cachedCandidates.add(candidate);
+            } else {
+                uncachedCandidates.add(candidate);
+                uncachedPositions.add(i);
+            }
+        }
+
+        final List<EligibleCardChecker> checkers = new ArrayList<>();
+        for (ContextualCard candidate : uncachedCandidates) {
+            checkers.add(new EligibleCardChecker(mContext, candidate));
+        }
+        List<Future<ContextualCard>> checkedCards = Collections.emptyList();
+        if (!checkers.isEmpty()) {
+            try {
+                checkedCards = getCheckerExecutor().invokeAll(checkers,
+                        ELIGIBILITY_CHECKER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Failed to get eligible states for all cards", e);
+            }
         }
-        executor.shutdown();
 
         // Collect future and eligible cards
-        for (int i = 0; i < eligibleCards.size(); i++) {
-            final Future<ContextualCard> cardFuture = eligibleCards.get(i);
+        for (int i = 0; i < checkedCards.size(); i++) {
+            final Future<ContextualCard> cardFuture = checkedCards.get(i);
+            final ContextualCard candidate = uncachedCandidates.get(i);
             if (cardFuture.isCancelled()) {
                 Log.w(TAG, "Timeout getting eligible state for card: "
-                        + candidates.get(i).getSliceUri());
+                        + candidate.getSliceUri());
                 continue;
             }
 
             try {
                 final ContextualCard card = cardFuture.get();
-                if (card != null) {
-                    cards.add(card);
-                }
+                mEligibleCardCache.put(candidate, card);
+                eligibleCards[uncachedPositions.get(i)] = card;
             } catch (Exception e) {
                 Log.w(TAG, "Failed to get eligible state for card", e);
             }
         }
+        // The cached cards are shown right away and checked again once the other cards are
+        // checked, not to delay them. A change of eligibility reloads the cards.
+        cachedCandidates.forEach(this::recheckInBackground);
+
+        final List<ContextualCard> cards = new ArrayList<>();
+        for (ContextualCard card : eligibleCards) {
+            if (card != null) {
+                cards.add(card);
+            }
+        }
         return cards;
     }
 
+    private void recheckInBackground(ContextualCard candidate) {
+        final String sliceUri = candidate.getTextSliceUri();
+        if (!sPendingRechecks.add(sliceUri)) {
+            return;
+        }
+        getRecheckExecutor().execute(() -> {
+            try {
+                final ContextualCard card = new EligibleCardChecker(mContext, candidate).call();
+                mEligibleCardCache.put(candidate, card);
+                if (card == null) {
+                    Log.d(TAG, "Card not eligible anymore: " + sliceUri);
+                    mContext.getContentResolver().notifyChange(
+                            CardContentProvider.REFRESH_CARD_URI, null /* observer */);
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to check eligible state for card: " + sliceUri, e);
+            } finally {
+                sPendingRechecks.remove(sliceUri);
+            }
+        });
+    }
+
+    private static synchronized ExecutorService getCheckerExecutor() {
+        if (sCheckerExecutor == null) {
+            sCheckerExecutor = createExecutor(0 /* corePoolSize */,
+                    Integer.MAX_VALUE /* maximumPoolSize */, new SynchronousQueue<>());
+        }
+        return sCheckerExecutor;
+    }
+
+    private static synchronized ExecutorService getRecheckExecutor() {
+        if (sRecheckExecutor == null) {
+            sRecheckExecutor = createExecutor(1 /* corePoolSize */, 1 /* maximumPoolSize */,
+                    new LinkedBlockingQueue<>());
+        }
+        return sRecheckExecutor;
+    }
+
+    private static ThreadPoolExecutor createExecutor(int corePoolSize, int maximumPoolSize,
+            BlockingQueue<Runnable> queue) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                corePoolSize,
+                maximumPoolSize,
+                CHECKER_THREAD_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                queue,
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, TAG));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private boolean isLargeCard(ContextualCard card) {
         return card.getSliceUri().equals(BLUETOOTH_DEVICES_SLICE_URI);
     }
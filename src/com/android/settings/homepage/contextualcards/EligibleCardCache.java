@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.homepage.contextualcards;
+
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Short-lived cache of the contextual cards found eligible by {@link EligibleCardChecker}.
+ *
+ * <p>Entries are keyed by the slice uri and the version of the app providing the card, so an
+ * update of the app invalidates its cards. A cached card is shown right away by
+ * {@link ContextualCardLoader}, which checks it again in the background to refresh the entry.
+ */
+class EligibleCardCache {
+
+    @VisibleForTesting
+    static final long MAX_AGE_MS = 5 * DateUtils.MINUTE_IN_MILLIS;
+
+    private static EligibleCardCache sInstance;
+
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+    private final LongSupplier mClock;
+
+    static synchronized EligibleCardCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new EligibleCardCache(SystemClock::elapsedRealtime);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    EligibleCardCache(LongSupplier clock) {
+        mClock = clock;
+    }
+
+    /**
+     * Returns the candidate with the slice state of its cached eligible card, or null if it
+     * was not found eligible recently or its ranking score now hides it.
+     */
+    @Nullable
+    ContextualCard get(ContextualCard candidate) {
+        // The ranking score comes with the candidate, so a cached card may have been demoted.
+        if (candidate.getRankingScore() < 0) {
+            return null;
+        }
+        final Entry entry = mEntries.get(getKey(candidate));
+        if (entry == null || mClock.getAsLong() - entry.mTimestamp > MAX_AGE_MS) {
+            return null;
+        }
+        return candidate.mutate()
+                .setSlice(entry.mCard.getSlice())
+                .setHasInlineAction(entry.mCard.hasInlineAction())
+                .build();
+    }
+
+    /** Stores the result of the eligibility check of the candidate. */
+    void put(ContextualCard candidate, @Nullable ContextualCard eligibleCard) {
+        final String key = getKey(candidate);
+        if (eligibleCard == null) {
+            mEntries.remove(key);
+        } else {
+            mEntries.put(key, new Entry(eligibleCard, mClock.getAsLong()));
+        }
+    }
+
+    @VisibleForTesting
+    void clear() {
+        mEntries.clear();
+    }
+
+    private static String getKey(ContextualCard card) {
+        return card.getTextSliceUri() + "#" + card.getAppVersion();
+    }
+
+    private static class Entry {
+        private final ContextualCard mCard;
+        private final long mTimestamp;
+
+        Entry(ContextualCard card, long timestamp) {
+            mCard = card;
+            mTimestamp = timestamp;
+        }
+    }
+}
@@ -34,6 +34,7 @@ import com.android.settingslib.bluetooth.LocalBluetoothManager;
 public class BluetoothUpdateWorker extends SliceBackgroundWorker implements BluetoothCallback {
 
     private static final String TAG = "BluetoothUpdateWorker";
+    private static final long SLICE_UPDATE_INTERVAL_MS = 500L;
 
     private static LocalBluetoothManager sLocalBluetoothManager;
 
@@ -81,6 +82,12 @@ public class BluetoothUpdateWorker extends SliceBackgroundWorker implements Blue
     public void close() {
     }
 
+    @Override
+    protected long getSliceUpdateInterval() {
+        // A connection fires several profile and ACL callbacks, coalesce them.
+        return SLICE_UPDATE_INTERVAL_MS;
+    }
+
     @Override
     public void onAclConnectionStateChanged(CachedBluetoothDevice cachedDevice, int state) {
         notifySliceChange();
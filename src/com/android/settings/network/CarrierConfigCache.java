@@ -33,9 +33,16 @@ import android.util.Log;
 import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This is a singleton class for Carrier-Configuration cache.
@@ -65,6 +72,25 @@ public class CarrierConfigCache {
     @VisibleForTesting
     protected static CarrierConfigManager sCarrierConfigManager;
 
+    /**
+     * The fetches of the Carrier-Configurations in flight, shared by the callers asking for the
+     * same subscription, so the fetch of a subscription does not block the other ones.
+     */
+    private static final Map<Integer, CompletableFuture<PersistableBundle>> sPendingConfigs =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Manages mapping data from the subscription ID to the config values fetched by
+     * {@link #getConfigForSubId(int, String...)} while the whole Carrier-Configuration is not
+     * loaded. The bundles are guarded by themselves.
+     */
+    private static final Map<Integer, PersistableBundle> sPartialConfigs =
+            new ConcurrentHashMap<>();
+
+    // Incremented on each change of the Carrier-Configurations, so the fetches started before
+    // are not cached.
+    private static final AtomicInteger sConfigVersion = new AtomicInteger();
+
     /**
      * Static method to create a singleton class for Carrier-Configuration cache.
      *
@@ -140,17 +166,132 @@ public class CarrierConfigCache {
     public PersistableBundle getConfigForSubId(int subId) {
         if (sCarrierConfigManager == null) return null;
 
-        synchronized (sCarrierConfigs) {
-            if (sCarrierConfigs.containsKey(subId)) {
-                return sCarrierConfigs.get(subId);
-            }
-            final PersistableBundle config = sCarrierConfigManager.getConfigForSubId(subId);
+        final PersistableBundle cachedConfig = sCarrierConfigs.get(subId);
+        if (cachedConfig != null) {
+            return cachedConfig;
+        }
+        final CompletableFuture<PersistableBundle> newFetch = new CompletableFuture<>();
+        final CompletableFuture<PersistableBundle> pendingFetch =
+                sPendingConfigs.putIfAbsent(subId, newFetch);
+        if (pendingFetch != null) {
+            // Another caller is fetching this subscription, share its result.
+            return pendingFetch.join();
+        }
+
+        final int configVersion = sConfigVersion.get();
+        PersistableBundle config = null;
+        try {
+            config = sCarrierConfigManager.getConfigForSubId(subId);
             if (config == null) {
                 Log.e(TAG, "Could not get carrier config, subId:" + subId);
-                return null;
+            } else if (configVersion == sConfigVersion.get()) {
+                sCarrierConfigs.put(subId, config);
+                sPartialConfigs.remove(subId);
             }
-            sCarrierConfigs.put(subId, config);
-            return config;
+        } finally {
+            sPendingConfigs.remove(subId, newFetch);
+            newFetch.complete(config);
+        }
+        return config;
+    }
+
+    /**
+     * Gets the values of the given keys of the Carrier-Configuration for a particular
+     * subscription. Only the requested keys are fetched when the whole Carrier-Configuration is
+     * not cached yet.
+     *
+     * @param subId the subscription ID, normally obtained from {@link SubscriptionManager}.
+     * @param keys the config keys to get.
+     * @return A {@link PersistableBundle} containing at least the values of the given keys, or
+     * null if the Carrier-Configuration cannot be obtained.
+     */
+    public PersistableBundle getConfigForSubId(int subId, @NonNull String... keys) {
+        if (sCarrierConfigManager == null) return null;
+
+        final PersistableBundle cachedConfig = sCarrierConfigs.get(subId);
+        if (cachedConfig != null) {
+            return cachedConfig;
+        }
+        final PersistableBundle partialConfig =
+                sPartialConfigs.computeIfAbsent(subId, id -> new PersistableBundle());
+        final List<String> missingKeys = new ArrayList<>();
+        synchronized (partialConfig) {
+            for (String key : keys) {
+                if (!partialConfig.containsKey(key)) {
+                    missingKeys.add(key);
+                }
+            }
+            if (missingKeys.isEmpty()) {
+                return new PersistableBundle(partialConfig);
+            }
+        }
+
+        final int configVersion = sConfigVersion.get();
+        final PersistableBundle config;
+        try {
+            config = sCarrierConfigManager.getConfigForSubId(subId,
+                    missingKeys.toArray(new String[0]));
+        } catch (RuntimeException e) {
+            // The carrier config service may not be ready yet.
+            Log.e(TAG, "Could not get carrier config keys, subId:" + subId, e);
+            return null;
+        }
+        if (config == null) {
+            Log.e(TAG, "Could not get carrier config keys, subId:" + subId);
+            return null;
+        }
+        synchronized (partialConfig) {
+            if (configVersion == sConfigVersion.get()) {
+                partialConfig.putAll(config);
+            }
+            final PersistableBundle result = new PersistableBundle(partialConfig);
+            result.putAll(config);
+            return result;
+        }
+    }
+
+    /**
+     * Gets a boolean value of the Carrier-Configuration for a particular subscription, fetching
+     * only this key if the whole Carrier-Configuration is not cached yet.
+     *
+     * @return the config value, or {@code defaultValue} if the Carrier-Configuration cannot be
+     * obtained.
+     */
+    public boolean getBoolean(int subId, @NonNull String key, boolean defaultValue) {
+        final PersistableBundle config = getConfigForSubId(subId, key);
+        return config != null ? config.getBoolean(key, defaultValue) : defaultValue;
+    }
+
+    /**
+     * Gets an int value of the Carrier-Configuration for a particular subscription, fetching
+     * only this key if the whole Carrier-Configuration is not cached yet.
+     *
+     * @return the config value, or {@code defaultValue} if the Carrier-Configuration cannot be
+     * obtained.
+     */
+    public int getInt(int subId, @NonNull String key, int defaultValue) {
+        final PersistableBundle config = getConfigForSubId(subId, key);
+        return config != null ? config.getInt(key, defaultValue) : defaultValue;
+    }
+
+    /**
+     * Loads the Carrier-Configuration of a subscription in the background, so it is cached by
+     * the time a page needs it.
+     */
+    public void prewarm(int subId) {
+        if (sCarrierConfigManager == null || !SubscriptionManager.isValidSubscriptionId(subId)
+                || sCarrierConfigs.containsKey(subId)) {
+            return;
+        }
+        ThreadUtils.postOnBackgroundThread(() -> loadConfig(subId));
+    }
+
+    @WorkerThread
+    private void loadConfig(int subId) {
+        try {
+            getConfigForSubId(subId);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not prewarm carrier config, subId:" + subId, e);
         }
     }
 
@@ -165,18 +306,32 @@ public class CarrierConfigCache {
         return getConfigForSubId(SubscriptionManager.getDefaultSubscriptionId());
     }
 
+    /**
+     * Drops the cached Carrier-Configuration of a subscription, or of all subscriptions for an
+     * invalid subId.
+     *
+     * @return true if the Carrier-Configuration of the subscription was in use.
+     */
+    static boolean invalidate(int subId) {
+        sConfigVersion.incrementAndGet();
+        if (SubscriptionManager.isValidSubscriptionId(subId)) {
+            final boolean cached = sCarrierConfigs.remove(subId) != null;
+            return sPartialConfigs.remove(subId) != null || cached;
+        }
+        sCarrierConfigs.clear();
+        sPartialConfigs.clear();
+        return false;
+    }
+
     private static class CarrierConfigChangeReceiver extends BroadcastReceiver {
         @Override
         public void onReceive(Context context, Intent intent) {
             if (!ACTION_CARRIER_CONFIG_CHANGED.equals(intent.getAction())) return;
 
             final int subId = intent.getIntExtra(EXTRA_SUBSCRIPTION_INDEX, INVALID_SUBSCRIPTION_ID);
-            synchronized (sCarrierConfigs) {
-                if (SubscriptionManager.isValidSubscriptionId(subId)) {
-                    sCarrierConfigs.remove(subId);
-                } else {
-                    sCarrierConfigs.clear();
-                }
+            if (invalidate(subId)) {
+                // Loads the new config of the subscription in use before the pages ask for it.
+                getInstance(context).prewarm(subId);
             }
         }
     }
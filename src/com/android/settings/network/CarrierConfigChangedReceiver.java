@@ -49,14 +49,16 @@ public class CarrierConfigChangedReceiver extends BroadcastReceiver {
         }
 
         if (ACTION_CARRIER_CONFIG_CHANGED.equals(intent.getAction())) {
-            checkSubscriptionIndex(intent);
+            checkSubscriptionIndex(context, intent);
         }
     }
 
-    private void checkSubscriptionIndex(Intent intent) {
+    private void checkSubscriptionIndex(Context context, Intent intent) {
         if (intent.hasExtra(CarrierConfigManager.EXTRA_SUBSCRIPTION_INDEX)) {
             int subId = intent.getIntExtra(CarrierConfigManager.EXTRA_SUBSCRIPTION_INDEX, -1);
             Log.i(TAG, "subId from config changed: " + subId);
+            // The waiting flow shows the pages of this subscription next, load its config now.
+            CarrierConfigCache.getInstance(context).prewarm(subId);
             mLatch.countDown();
         }
     }
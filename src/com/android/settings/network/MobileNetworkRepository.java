@@ -19,12 +19,16 @@ import static android.telephony.SubscriptionManager.PROFILE_CLASS_PROVISIONING;
 import static android.telephony.UiccSlotInfo.CARD_STATE_INFO_PRESENT;
 
 import android.app.settings.SettingsEnums;
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
 import android.provider.Settings;
+import android.telephony.CarrierConfigManager;
 import android.telephony.SubscriptionInfo;
 import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyCallback;
@@ -42,6 +46,7 @@ import androidx.lifecycle.LifecycleOwner;
 
 import com.android.internal.telephony.flags.Flags;
 import com.android.settings.network.telephony.MobileNetworkUtils;
+import com.android.settings.network.telephony.TelephonySnapshot;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.core.instrumentation.MetricsFeatureProvider;
 import com.android.settingslib.mobile.dataservice.MobileNetworkDatabase;
@@ -57,6 +62,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -73,6 +79,9 @@ public class MobileNetworkRepository extends SubscriptionManager.OnSubscriptions
     private static Map<Integer, MobileNetworkInfoEntity> sCacheMobileNetworkInfoEntityMap =
             new ArrayMap<>();
     private static Map<Integer, UiccInfoEntity> sCacheUiccInfoEntityMap = new ArrayMap<>();
+    // Only holds the subscriptions with a registered TelephonyCallback, which keeps them current.
+    private static Map<Integer, TelephonySnapshot> sTelephonySnapshotMap =
+            new ConcurrentHashMap<>();
     private static Collection<MobileNetworkCallback> sCallbacks = new CopyOnWriteArrayList<>();
     private static final Object sInstanceLock = new Object();
     @GuardedBy("sInstanceLock")
@@ -90,6 +99,8 @@ public class MobileNetworkRepository extends SubscriptionManager.OnSubscriptions
     private Context mContext;
     private AirplaneModeObserver mAirplaneModeObserver;
     private DataRoamingObserver mDataRoamingObserver;
+    private BroadcastReceiver mCarrierConfigChangedReceiver;
+    private boolean mIsCarrierConfigChangedReceiverRegistered;
     private MetricsFeatureProvider mMetricsFeatureProvider;
     private int mPhysicalSlotIndex = SubscriptionManager.INVALID_SIM_SLOT_INDEX;
     private int mLogicalSlotIndex = SubscriptionManager.INVALID_SIM_SLOT_INDEX;
@@ -128,6 +139,51 @@ public class MobileNetworkRepository extends SubscriptionManager.OnSubscriptions
         mMobileNetworkInfoDao = mMobileNetworkDatabase.mMobileNetworkInfoDao();
         mAirplaneModeObserver = new AirplaneModeObserver(new Handler(Looper.getMainLooper()));
         mDataRoamingObserver = new DataRoamingObserver(new Handler(Looper.getMainLooper()));
+        mCarrierConfigChangedReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final int subId = intent.getIntExtra(CarrierConfigManager.EXTRA_SUBSCRIPTION_INDEX,
+                        SubscriptionManager.INVALID_SUBSCRIPTION_ID);
+                if (mTelephonyCallbackMap.containsKey(subId)) {
+                    // The snapshot must not be reloaded from the config being replaced.
+                    CarrierConfigCache.invalidate(subId);
+                    refreshTelephonySnapshot(subId);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the telephony snapshot of the subscription. The snapshot is cached while the
+     * subscription is registered by a page, it is loaded again otherwise.
+     */
+    @NonNull
+    public static TelephonySnapshot getTelephonySnapshot(Context context, int subId) {
+        final TelephonySnapshot snapshot = sTelephonySnapshotMap.get(subId);
+        return snapshot != null ? snapshot : TelephonySnapshot.load(context, subId);
+    }
+
+    /**
+     * Loads the telephony snapshot of the subscription again, for callers being notified of a
+     * change before this repository.
+     */
+    @NonNull
+    public static TelephonySnapshot loadTelephonySnapshot(Context context, int subId) {
+        final TelephonySnapshot snapshot = TelephonySnapshot.load(context, subId);
+        sTelephonySnapshotMap.replace(subId, snapshot);
+        return snapshot;
+    }
+
+    private void refreshTelephonySnapshot(int subId) {
+        sExecutor.execute(() -> {
+            final TelephonySnapshot snapshot = TelephonySnapshot.load(mContext, subId);
+            mContext.getMainExecutor().execute(() -> {
+                // Dropped if the subscription was unregistered in the meantime.
+                if (mTelephonyCallbackMap.containsKey(subId)) {
+                    sTelephonySnapshotMap.put(subId, snapshot);
+                }
+            });
+        });
     }
 
     private class AirplaneModeObserver extends ContentObserver {
@@ -216,6 +272,9 @@ public class MobileNetworkRepository extends SubscriptionManager.OnSubscriptions
             mSubscriptionManager.addOnSubscriptionsChangedListener(mContext.getMainExecutor(),
                     this);
             mAirplaneModeObserver.register(mContext);
+            mContext.registerReceiver(mCarrierConfigChangedReceiver,
+                    new IntentFilter(CarrierConfigManager.ACTION_CARRIER_CONFIG_CHANGED));
+            mIsCarrierConfigChangedReceiverRegistered = true;
             Log.d(TAG, "addRegister done");
         }
         sCallbacks.add(mobileNetworkCallback);
@@ -247,6 +306,7 @@ public class MobileNetworkRepository extends SubscriptionManager.OnSubscriptions
                 telephonyCallback);
         mTelephonyCallbackMap.put(subId, telephonyCallback);
         mTelephonyManagerMap.put(subId, telephonyManager);
+        refreshTelephonySnapshot(subId);
     }
 
     private TelephonyManager getTelephonyManagerBySubId(Context context, int subId) {
@@ -276,6 +336,7 @@ public class MobileNetworkRepository extends SubscriptionManager.OnSubscriptions
                 if (callback != null) {
                     telephonyManager.unregisterTelephonyCallback(callback);
                     mTelephonyCallbackMap.remove(subId);
+                    sTelephonySnapshotMap.remove(subId);
                 }
             }
         }
@@ -289,6 +350,10 @@ public class MobileNetworkRepository extends SubscriptionManager.OnSubscriptions
             mSubscriptionManager.removeOnSubscriptionsChangedListener(this);
             mAirplaneModeObserver.unRegister(mContext);
             mDataRoamingObserver.unRegister(mContext);
+            if (mIsCarrierConfigChangedReceiverRegistered) {
+                mContext.unregisterReceiver(mCarrierConfigChangedReceiver);
+                mIsCarrierConfigChangedReceiverRegistered = false;
+            }
 
             mTelephonyManagerMap.forEach((id, manager) -> {
                 TelephonyCallback callback = mTelephonyCallbackMap.get(id);
@@ -298,6 +363,7 @@ public class MobileNetworkRepository extends SubscriptionManager.OnSubscriptions
             });
             mTelephonyCallbackMap.clear();
             mTelephonyManagerMap.clear();
+            sTelephonySnapshotMap.clear();
             Log.d(TAG, "removeRegister done");
         }
     }
@@ -742,7 +808,8 @@ public class MobileNetworkRepository extends SubscriptionManager.OnSubscriptions
 
     private class PhoneCallStateTelephonyCallback extends TelephonyCallback implements
             TelephonyCallback.CallStateListener,
-            TelephonyCallback.UserMobileDataStateListener {
+            TelephonyCallback.UserMobileDataStateListener,
+            TelephonyCallback.AllowedNetworkTypesListener {
 
         private int mSubId;
 
@@ -765,6 +832,14 @@ public class MobileNetworkRepository extends SubscriptionManager.OnSubscriptions
                         getTelephonyManagerBySubId(mContext, mSubId));
             });
         }
+
+        @Override
+        public void onAllowedNetworkTypesChanged(int reason, long allowedNetworkType) {
+            if (reason == TelephonyManager.ALLOWED_NETWORK_TYPES_REASON_USER
+                    || reason == TelephonyManager.ALLOWED_NETWORK_TYPES_REASON_CARRIER) {
+                refreshTelephonySnapshot(mSubId);
+            }
+        }
     }
 
     /**
@@ -807,6 +882,7 @@ public class MobileNetworkRepository extends SubscriptionManager.OnSubscriptions
         printwriter.println(" uiccInfoEntityList= " + mUiccInfoEntityList);
         printwriter.println(" CacheSubscriptionInfoEntityMap= " + sCacheSubscriptionInfoEntityMap);
         printwriter.println(" SubscriptionInfoMap= " + mSubscriptionInfoMap);
+        printwriter.println(" TelephonySnapshotMap= " + sTelephonySnapshotMap);
         printwriter.flush();
         printwriter.decreaseIndent();
     }
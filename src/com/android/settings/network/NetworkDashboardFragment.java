@@ -50,6 +50,11 @@ public class NetworkDashboardFragment extends DashboardFragment implements
         return TAG;
     }
 
+    @Override
+    protected boolean shouldUpdatePreferenceStatesInBackground() {
+        return true;
+    }
+
     @Override
     protected int getPreferenceScreenResId() {
         return R.xml.network_provider_internet;
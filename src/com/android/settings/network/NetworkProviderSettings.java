@@ -104,6 +104,7 @@ import com.google.android.setupcompat.template.FooterButtonStyleUtils;
 import com.google.android.setupcompat.util.WizardManagerHelper;
 import com.google.android.setupdesign.GlifPreferenceLayout;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -200,6 +201,16 @@ public class NetworkProviderSettings extends RestrictedSettingsFragment
             view.postDelayed(mRemoveLoadingRunnable, 10);
         }
     };
+    // Coalesces the bursts of Wi-Fi entries changes into one update of the list per frame.
+    @VisibleForTesting
+    final Runnable mWifiEntriesChangedRunnable = () -> {
+        mWifiEntriesChangedPending = false;
+        updateWifiEntryPreferences();
+    };
+    private boolean mWifiEntriesChangedPending;
+    // The Wi-Fi entries shown by the last update, in order.
+    private final List<WifiEntry> mShownWifiEntries = new ArrayList<>();
+
     @VisibleForTesting
     final Runnable mHideProgressBarRunnable = () -> {
         setProgressBarVisible(false);
@@ -585,6 +596,8 @@ public class NetworkProviderSettings extends RestrictedSettingsFragment
     public void onStop() {
         getView().removeCallbacks(mRemoveLoadingRunnable);
         getView().removeCallbacks(mUpdateWifiEntryPreferencesRunnable);
+        getView().removeCallbacks(mWifiEntriesChangedRunnable);
+        mWifiEntriesChangedPending = false;
         getView().removeCallbacks(mHideProgressBarRunnable);
         mAirplaneModeEnabler.stop();
         mDataStateListener.stop();
@@ -961,7 +974,7 @@ public class NetworkProviderSettings extends RestrictedSettingsFragment
 
     @Override
     public void onWifiEntriesChanged(@WifiPickerTracker.WifiEntriesChangedReason int reason) {
-        updateWifiEntryPreferences();
+        scheduleWifiEntryPreferencesUpdate();
         if (reason == WifiPickerTracker.WIFI_ENTRIES_CHANGED_REASON_SCAN_RESULTS) {
             setProgressBarVisible(false);
         }
@@ -1001,6 +1014,20 @@ public class NetworkProviderSettings extends RestrictedSettingsFragment
         setAdditionalSettingsSummaries();
     }
 
+    /**
+     * Updates the Wi-Fi entries list on the next frame. The changes reported until then are
+     * rendered by the same update, as scan results can come several times per second.
+     */
+    @VisibleForTesting
+    void scheduleWifiEntryPreferencesUpdate() {
+        final View view = getView();
+        if (view == null || mWifiEntriesChangedPending) {
+            return;
+        }
+        mWifiEntriesChangedPending = true;
+        view.postOnAnimation(mWifiEntriesChangedRunnable);
+    }
+
     protected void updateWifiEntryPreferences() {
         // bypass the update if the activity and the view are not ready, or it's restricted UI.
         if (getActivity() == null || getView() == null || mIsRestricted) {
@@ -1048,12 +1075,19 @@ public class NetworkProviderSettings extends RestrictedSettingsFragment
                 }
             }
         } else {
-            connectedWifiPreferenceCategory.removeAll();
+            removeAllIfNotEmpty(connectedWifiPreferenceCategory);
+        }
+
+        final List<WifiEntry> wifiEntries = mWifiPickerTracker.getWifiEntries();
+        if (!isWifiEntryListChanged(wifiEntries)) {
+            // Each preference refreshes itself on the changes of its entry, only the changes
+            // of the list itself need an update.
+            setAdditionalSettingsSummaries();
+            return;
         }
 
         int index = 0;
         cacheRemoveAllPrefs(mWifiEntryPreferenceCategory);
-        List<WifiEntry> wifiEntries = mWifiPickerTracker.getWifiEntries();
         for (WifiEntry wifiEntry : wifiEntries) {
             hasAvailableWifiEntries = true;
 
@@ -1062,6 +1096,7 @@ public class NetworkProviderSettings extends RestrictedSettingsFragment
                     (LongPressWifiEntryPreference) getCachedPreference(key);
             if (pref != null) {
                 if (pref.getWifiEntry() == wifiEntry) {
+                    // Only notifies a change if the entry moved.
                     pref.setOrder(index++);
                     continue;
                 } else {
@@ -1070,10 +1105,10 @@ public class NetworkProviderSettings extends RestrictedSettingsFragment
                 }
             }
 
+            // The preference refreshes itself when it is bound to its entry.
             pref = createLongPressWifiEntryPreference(wifiEntry);
             pref.setKey(wifiEntry.getKey());
             pref.setOrder(index++);
-            pref.refresh();
 
             if (wifiEntry.getHelpUriString() != null) {
                 pref.setOnButtonClickListener(preference -> {
@@ -1082,35 +1117,70 @@ public class NetworkProviderSettings extends RestrictedSettingsFragment
             }
             mWifiEntryPreferenceCategory.addPreference(pref);
         }
-        removeCachedPrefs(mWifiEntryPreferenceCategory);
 
         if (!hasAvailableWifiEntries) {
-            Preference pref = new Preference(getPrefContext());
-            pref.setSelectable(false);
-            pref.setSummary(R.string.wifi_empty_list_wifi_on);
+            Preference pref = getCachedPreference(PREF_KEY_EMPTY_WIFI_LIST);
+            if (pref == null) {
+                pref = new Preference(getPrefContext());
+                pref.setSelectable(false);
+                pref.setSummary(R.string.wifi_empty_list_wifi_on);
+                pref.setKey(PREF_KEY_EMPTY_WIFI_LIST);
+                mWifiEntryPreferenceCategory.addPreference(pref);
+            }
             pref.setOrder(index++);
-            pref.setKey(PREF_KEY_EMPTY_WIFI_LIST);
-            mWifiEntryPreferenceCategory.addPreference(pref);
         }
 
+        // Kept rather than removed and added back.
+        getCachedPreference(mAddWifiNetworkPreference.getKey());
+        removeCachedPrefs(mWifiEntryPreferenceCategory);
         mAddWifiNetworkPreference.setOrder(index++);
         mWifiEntryPreferenceCategory.addPreference(mAddWifiNetworkPreference);
+        mShownWifiEntries.clear();
+        mShownWifiEntries.addAll(wifiEntries);
         setAdditionalSettingsSummaries();
     }
 
+    /**
+     * Returns true if the entries are not the ones shown in this order, or if the list was
+     * changed by other updates.
+     */
+    private boolean isWifiEntryListChanged(List<WifiEntry> wifiEntries) {
+        final int size = wifiEntries.size();
+        if (size != mShownWifiEntries.size()) {
+            return true;
+        }
+        for (int i = 0; i < size; i++) {
+            if (wifiEntries.get(i) != mShownWifiEntries.get(i)) {
+                return true;
+            }
+        }
+        // The entries, plus the add network preference, plus the empty list one if no entry.
+        final int expectedCount = size + (size == 0 ? 2 : 1);
+        return mWifiEntryPreferenceCategory.getPreferenceCount() != expectedCount
+                || mWifiEntryPreferenceCategory.findPreference(
+                        mAddWifiNetworkPreference.getKey()) == null;
+    }
+
     @VisibleForTesting
     PreferenceCategory getConnectedWifiPreferenceCategory() {
         if (mInternetUpdater.getInternetType() == InternetUpdater.INTERNET_WIFI) {
             mFirstWifiEntryPreferenceCategory.setVisible(false);
-            mFirstWifiEntryPreferenceCategory.removeAll();
+            removeAllIfNotEmpty(mFirstWifiEntryPreferenceCategory);
             return mConnectedWifiEntryPreferenceCategory;
         }
 
         mConnectedWifiEntryPreferenceCategory.setVisible(false);
-        mConnectedWifiEntryPreferenceCategory.removeAll();
+        removeAllIfNotEmpty(mConnectedWifiEntryPreferenceCategory);
         return mFirstWifiEntryPreferenceCategory;
     }
 
+    // Does not notify a change of the hierarchy for an empty category.
+    private static void removeAllIfNotEmpty(PreferenceCategory category) {
+        if (category.getPreferenceCount() > 0) {
+            category.removeAll();
+        }
+    }
+
     @VisibleForTesting
     ConnectedWifiEntryPreference createConnectedWifiEntryPreference(WifiEntry wifiEntry) {
         if (mInternetUpdater.getInternetType() == InternetUpdater.INTERNET_WIFI) {
@@ -1159,6 +1229,7 @@ public class NetworkProviderSettings extends RestrictedSettingsFragment
     }
 
     private void removeWifiEntryPreference() {
+        mShownWifiEntries.clear();
         mWifiEntryPreferenceCategory.removeAll();
         mWifiEntryPreferenceCategory.setVisible(false);
     }
@@ -71,7 +71,9 @@ public class PrivateDnsPreferenceController extends BasePreferenceController
     private final Handler mHandler;
     private final ContentObserver mSettingsObserver;
     private final ConnectivityManager mConnectivityManager;
-    private LinkProperties mLatestLinkProperties;
+    private volatile LinkProperties mLatestLinkProperties;
+    // Admin restriction loaded off the main thread, null if not loaded.
+    private volatile Boolean mLoadedManagedByAdmin;
     private Preference mPreference;
 
     public PrivateDnsPreferenceController(Context context) {
@@ -154,10 +156,24 @@ public class PrivateDnsPreferenceController extends BasePreferenceController
         return "";
     }
 
+    @Override
+    public void loadStateInBackground() {
+        super.loadStateInBackground();
+        mLoadedManagedByAdmin = isManagedByAdmin();
+    }
+
+    @Override
+    public void discardLoadedState() {
+        super.discardLoadedState();
+        mLoadedManagedByAdmin = null;
+    }
+
     @Override
     public void updateState(Preference preference) {
         super.updateState(preference);
-        preference.setEnabled(!isManagedByAdmin());
+        final Boolean loadedManagedByAdmin = mLoadedManagedByAdmin;
+        preference.setEnabled(!(loadedManagedByAdmin != null
+                ? loadedManagedByAdmin : isManagedByAdmin()));
     }
 
     private boolean isManagedByAdmin() {
@@ -46,6 +46,7 @@ import com.android.internal.telephony.flags.Flags;
 import com.android.settings.R;
 import com.android.settings.network.AllowedNetworkTypesListener;
 import com.android.settings.network.CarrierConfigCache;
+import com.android.settings.network.MobileNetworkRepository;
 import com.android.settings.network.SubscriptionsChangeListener;
 import com.android.settings.network.telephony.NetworkModeChoicesProto.EnabledNetworks;
 import com.android.settings.network.telephony.NetworkModeChoicesProto.UiOptions;
@@ -218,9 +219,8 @@ public class EnabledNetworkModePreferenceController extends
     }
 
     private final class PreferenceEntriesBuilder {
-        private CarrierConfigCache mCarrierConfigCache;
         private Context mContext;
-        private TelephonyManager mTelephonyManager;
+        private TelephonySnapshot mSnapshot;
 
         private boolean mAllowed5gNetworkType;
         private boolean mIsGlobalCdma;
@@ -240,35 +240,26 @@ public class EnabledNetworkModePreferenceController extends
         PreferenceEntriesBuilder(Context context, int subId) {
             this.mContext = context;
             this.mSubId = subId;
-            mCarrierConfigCache = CarrierConfigCache.getInstance(context);
-            mTelephonyManager = mContext.getSystemService(TelephonyManager.class)
-                    .createForSubscriptionId(mSubId);
-            updateConfig();
+            // The page may have loaded the snapshot already.
+            updateConfig(MobileNetworkRepository.getTelephonySnapshot(mContext, mSubId));
         }
 
         public void updateConfig() {
-            mTelephonyManager = mTelephonyManager.createForSubscriptionId(mSubId);
-            final PersistableBundle carrierConfig = mCarrierConfigCache.getConfigForSubId(mSubId);
+            updateConfig(MobileNetworkRepository.loadTelephonySnapshot(mContext, mSubId));
+        }
+
+        private void updateConfig(TelephonySnapshot snapshot) {
+            mSnapshot = snapshot;
             final boolean flagHidePrefer3gItem = Flags.hidePrefer3gItem();
-            mAllowed5gNetworkType = checkSupportedRadioBitmask(
-                    mTelephonyManager.getAllowedNetworkTypesForReason(
-                            TelephonyManager.ALLOWED_NETWORK_TYPES_REASON_CARRIER),
-                    TelephonyManager.NETWORK_TYPE_BITMASK_NR);
-            mSupported5gRadioAccessFamily = checkSupportedRadioBitmask(
-                    mTelephonyManager.getSupportedRadioAccessFamily(),
-                    TelephonyManager.NETWORK_TYPE_BITMASK_NR);
-            if (carrierConfig != null) {
-                mIsGlobalCdma = mTelephonyManager.isLteCdmaEvdoGsmWcdmaEnabled()
-                        && carrierConfig.getBoolean(
-                        CarrierConfigManager.KEY_SHOW_CDMA_CHOICES_BOOL);
-                mShow4gForLTE = carrierConfig.getBoolean(
-                        CarrierConfigManager.KEY_SHOW_4G_FOR_LTE_DATA_ICON_BOOL);
-                mDisplay2gOptions = carrierConfig.getBoolean(
-                        CarrierConfigManager.KEY_PREFER_2G_BOOL);
+            mAllowed5gNetworkType = snapshot.is5gAllowedByCarrier();
+            mSupported5gRadioAccessFamily = snapshot.is5gSupported();
+            if (snapshot.hasCarrierConfig()) {
+                mIsGlobalCdma = snapshot.isGlobalCdma();
+                mShow4gForLTE = snapshot.isShow4gForLte();
+                mDisplay2gOptions = snapshot.isPrefer2g();
 
                 if (flagHidePrefer3gItem) {
-                    mDisplay3gOptions = carrierConfig.getBoolean(
-                        CarrierConfigManager.KEY_PREFER_3G_VISIBILITY_BOOL);
+                    mDisplay3gOptions = snapshot.isPrefer3gVisible();
                 } else {
                     mDisplay3gOptions = getResourcesForSubId().getBoolean(
                             R.bool.config_display_network_mode_3g_option);
@@ -292,7 +283,7 @@ public class EnabledNetworkModePreferenceController extends
                     }
                 }
 
-                mLteEnabled = carrierConfig.getBoolean(CarrierConfigManager.KEY_LTE_ENABLED_BOOL);
+                mLteEnabled = snapshot.isLteEnabled();
             }
             Log.d(LOG_TAG, "PreferenceEntriesBuilder: subId" + mSubId
                     + " ,Supported5gRadioAccessFamily :" + mSupported5gRadioAccessFamily
@@ -305,7 +296,7 @@ public class EnabledNetworkModePreferenceController extends
         }
 
         void setPreferenceEntries() {
-            mTelephonyManager = mTelephonyManager.createForSubscriptionId(mSubId);
+            mSnapshot = MobileNetworkRepository.getTelephonySnapshot(mContext, mSubId);
 
             clearAllEntries();
             UiOptions.Builder uiOptions = UiOptions.newBuilder();
@@ -461,9 +452,7 @@ public class EnabledNetworkModePreferenceController extends
         }
 
         private int getPreferredNetworkMode() {
-            int networkMode = MobileNetworkUtils.getNetworkTypeFromRaf(
-                    (int) mTelephonyManager.getAllowedNetworkTypesForReason(
-                            TelephonyManager.ALLOWED_NETWORK_TYPES_REASON_USER));
+            int networkMode = mSnapshot.getPreferredNetworkMode();
             if (!showNrList()) {
                 Log.d(LOG_TAG, "Network mode :" + networkMode + " reduce NR");
                 networkMode = reduceNrToLteNetworkType(networkMode);
@@ -474,7 +463,7 @@ public class EnabledNetworkModePreferenceController extends
 
         private EnabledNetworks getEnabledNetworkType() {
             EnabledNetworks enabledNetworkType = EnabledNetworks.ENABLED_NETWORKS_UNKNOWN;
-            final int phoneType = mTelephonyManager.getPhoneType();
+            final int phoneType = mSnapshot.getPhoneType();
 
             if (phoneType == TelephonyManager.PHONE_TYPE_CDMA) {
                 final int lteForced = android.provider.Settings.Global.getInt(
@@ -482,7 +471,7 @@ public class EnabledNetworkModePreferenceController extends
                         android.provider.Settings.Global.LTE_SERVICE_FORCED + mSubId,
                         0);
                 final int settingsNetworkMode = getPreferredNetworkMode();
-                if (mTelephonyManager.isLteCdmaEvdoGsmWcdmaEnabled()) {
+                if (mSnapshot.isLteCdmaEvdoGsmWcdmaEnabled()) {
                     if (lteForced == 0) {
                         enabledNetworkType = EnabledNetworks.ENABLED_NETWORKS_CDMA_CHOICES;
                     } else {
@@ -509,7 +498,7 @@ public class EnabledNetworkModePreferenceController extends
             } else if (phoneType == TelephonyManager.PHONE_TYPE_GSM) {
                 if (mIsGlobalCdma) {
                     enabledNetworkType = EnabledNetworks.ENABLED_NETWORKS_CDMA_CHOICES;
-                } else if (MobileNetworkUtils.isTdscdmaSupported(mContext, mSubId)) {
+                } else if (mSnapshot.isTdscdmaSupported()) {
                     enabledNetworkType = EnabledNetworks.ENABLED_NETWORKS_TDSCDMA_CHOICES;
                 } else if (!mDisplay2gOptions && !mDisplay3gOptions) {
                     enabledNetworkType = mShow4gForLTE
@@ -530,7 +519,7 @@ public class EnabledNetworkModePreferenceController extends
             }
             //TODO(b/117881708): figure out what world mode is, then we can optimize code. Otherwise
             // I prefer to keep this old code
-            if (MobileNetworkUtils.isWorldMode(mContext, mSubId)) {
+            if (mSnapshot.isWorldMode()) {
                 enabledNetworkType = EnabledNetworks.PREFERRED_NETWORK_MODE_CHOICES_WORLD_MODE;
             }
 
@@ -584,7 +573,7 @@ public class EnabledNetworkModePreferenceController extends
                     }
                     break;
                 case TelephonyManagerConstants.NETWORK_MODE_LTE_GSM_WCDMA:
-                    if (MobileNetworkUtils.isWorldMode(mContext, mSubId)) {
+                    if (mSnapshot.isWorldMode()) {
                         setSummary(
                                 R.string.preferred_network_mode_lte_gsm_umts_summary);
                         break;
@@ -608,7 +597,7 @@ public class EnabledNetworkModePreferenceController extends
                     }
                     break;
                 case TelephonyManagerConstants.NETWORK_MODE_LTE_CDMA_EVDO:
-                    if (MobileNetworkUtils.isWorldMode(mContext, mSubId)) {
+                    if (mSnapshot.isWorldMode()) {
                         setSummary(
                                 R.string.preferred_network_mode_lte_cdma_summary);
                     } else {
@@ -643,7 +632,7 @@ public class EnabledNetworkModePreferenceController extends
                 case TelephonyManagerConstants.NETWORK_MODE_LTE_TDSCDMA_WCDMA:
                 case TelephonyManagerConstants.NETWORK_MODE_LTE_TDSCDMA_CDMA_EVDO_GSM_WCDMA:
                 case TelephonyManagerConstants.NETWORK_MODE_LTE_CDMA_EVDO_GSM_WCDMA:
-                    if (MobileNetworkUtils.isTdscdmaSupported(mContext, mSubId)) {
+                    if (mSnapshot.isTdscdmaSupported()) {
                         setSelectedEntry(TelephonyManagerConstants
                                 .NETWORK_MODE_LTE_TDSCDMA_CDMA_EVDO_GSM_WCDMA);
                         setSummary(is5gEntryDisplayed()
@@ -651,9 +640,9 @@ public class EnabledNetworkModePreferenceController extends
                     } else {
                         setSelectedEntry(
                                 TelephonyManagerConstants.NETWORK_MODE_LTE_CDMA_EVDO_GSM_WCDMA);
-                        if (mTelephonyManager.getPhoneType() == TelephonyManager.PHONE_TYPE_CDMA
+                        if (mSnapshot.getPhoneType() == TelephonyManager.PHONE_TYPE_CDMA
                                 || mIsGlobalCdma
-                                || MobileNetworkUtils.isWorldMode(mContext, mSubId)) {
+                                || mSnapshot.isWorldMode()) {
                             setSummary(R.string.network_global);
                         } else {
                             if (is5gEntryDisplayed()) {
@@ -691,9 +680,9 @@ public class EnabledNetworkModePreferenceController extends
                 case TelephonyManagerConstants.NETWORK_MODE_NR_LTE_CDMA_EVDO_GSM_WCDMA:
                     setSelectedEntry(
                             TelephonyManagerConstants.NETWORK_MODE_NR_LTE_CDMA_EVDO_GSM_WCDMA);
-                    if (mTelephonyManager.getPhoneType() == TelephonyManager.PHONE_TYPE_CDMA
+                    if (mSnapshot.getPhoneType() == TelephonyManager.PHONE_TYPE_CDMA
                             || mIsGlobalCdma
-                            || MobileNetworkUtils.isWorldMode(mContext, mSubId)) {
+                            || mSnapshot.isWorldMode()) {
                         setSummary(R.string.network_global);
                     } else {
                         setSummary(getResourcesForSubId().getString(
@@ -779,10 +768,6 @@ public class EnabledNetworkModePreferenceController extends
             setPreferenceValueAndSummary(getPreferredNetworkMode());
         }
 
-        private boolean checkSupportedRadioBitmask(long supportedRadioBitmask, long targetBitmask) {
-            return (targetBitmask & supportedRadioBitmask) > 0;
-        }
-
         /**
          * Add 5G option. Only show the UI when device supported 5G and allowed 5G.
          */
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network.telephony;
+
+import android.content.Context;
+import android.os.PersistableBundle;
+import android.telephony.CarrierConfigManager;
+import android.telephony.TelephonyManager;
+
+import androidx.annotation.NonNull;
+
+import com.android.settings.network.CarrierConfigCache;
+
+/**
+ * Immutable state of a subscription read by the mobile network preferences.
+ *
+ * <p>All the values are read together by {@link #load}, so rendering a preference costs one
+ * round of binder calls instead of one per value and per use. The snapshots of the subscriptions
+ * shown by the mobile network pages are cached and kept up to date by
+ * {@link com.android.settings.network.MobileNetworkRepository}.
+ */
+public final class TelephonySnapshot {
+
+    private final int mSubId;
+    private final int mPhoneType;
+    private final long mAllowedNetworkTypesForUser;
+    private final long mAllowedNetworkTypesForCarrier;
+    private final long mSupportedRadioAccessFamily;
+    private final boolean mLteCdmaEvdoGsmWcdmaEnabled;
+    private final boolean mTdscdmaSupported;
+    private final boolean mHasCarrierConfig;
+    private final boolean mWorldModeEnabled;
+    private final boolean mShowCdmaChoices;
+    private final boolean mShow4gForLte;
+    private final boolean mPrefer2g;
+    private final boolean mPrefer3gVisible;
+    private final boolean mLteEnabled;
+
+    private TelephonySnapshot(int subId, TelephonyManager telephonyManager,
+            PersistableBundle carrierConfig, boolean tdscdmaSupported) {
+        mSubId = subId;
+        mPhoneType = telephonyManager.getPhoneType();
+        mAllowedNetworkTypesForUser = telephonyManager.getAllowedNetworkTypesForReason(
+                TelephonyManager.ALLOWED_NETWORK_TYPES_REASON_USER);
+        mAllowedNetworkTypesForCarrier = telephonyManager.getAllowedNetworkTypesForReason(
+                TelephonyManager.ALLOWED_NETWORK_TYPES_REASON_CARRIER);
+        mSupportedRadioAccessFamily = telephonyManager.getSupportedRadioAccessFamily();
+        mLteCdmaEvdoGsmWcdmaEnabled = telephonyManager.isLteCdmaEvdoGsmWcdmaEnabled();
+        mTdscdmaSupported = tdscdmaSupported;
+        mHasCarrierConfig = carrierConfig != null;
+        mWorldModeEnabled = mHasCarrierConfig
+                && carrierConfig.getBoolean(CarrierConfigManager.KEY_WORLD_MODE_ENABLED_BOOL);
+        mShowCdmaChoices = mHasCarrierConfig
+                && carrierConfig.getBoolean(CarrierConfigManager.KEY_SHOW_CDMA_CHOICES_BOOL);
+        mShow4gForLte = mHasCarrierConfig
+                && carrierConfig.getBoolean(
+                        CarrierConfigManager.KEY_SHOW_4G_FOR_LTE_DATA_ICON_BOOL);
+        mPrefer2g = mHasCarrierConfig
+                && carrierConfig.getBoolean(CarrierConfigManager.KEY_PREFER_2G_BOOL);
+        mPrefer3gVisible = mHasCarrierConfig
+                && carrierConfig.getBoolean(CarrierConfigManager.KEY_PREFER_3G_VISIBILITY_BOOL);
+        mLteEnabled = mHasCarrierConfig
+                && carrierConfig.getBoolean(CarrierConfigManager.KEY_LTE_ENABLED_BOOL);
+    }
+
+    /** Reads the current state of the subscription. */
+    @NonNull
+    public static TelephonySnapshot load(@NonNull Context context, int subId) {
+        final TelephonyManager telephonyManager = context.getSystemService(TelephonyManager.class)
+                .createForSubscriptionId(subId);
+        final PersistableBundle carrierConfig =
+                CarrierConfigCache.getInstance(context).getConfigForSubId(subId);
+        return new TelephonySnapshot(subId, telephonyManager, carrierConfig,
+                MobileNetworkUtils.isTdscdmaSupported(context, subId));
+    }
+
+    public int getSubId() {
+        return mSubId;
+    }
+
+    public int getPhoneType() {
+        return mPhoneType;
+    }
+
+    /** Returns the network types allowed by the user, as a bitmask. */
+    public long getAllowedNetworkTypesForUser() {
+        return mAllowedNetworkTypesForUser;
+    }
+
+    /** Returns the network types allowed by the carrier, as a bitmask. */
+    public long getAllowedNetworkTypesForCarrier() {
+        return mAllowedNetworkTypesForCarrier;
+    }
+
+    public long getSupportedRadioAccessFamily() {
+        return mSupportedRadioAccessFamily;
+    }
+
+    /** Returns the network mode matching the network types allowed by the user. */
+    public int getPreferredNetworkMode() {
+        return MobileNetworkUtils.getNetworkTypeFromRaf((int) mAllowedNetworkTypesForUser);
+    }
+
+    /** Returns {@code true} if the carrier allows 5G on the subscription. */
+    public boolean is5gAllowedByCarrier() {
+        return (mAllowedNetworkTypesForCarrier & TelephonyManager.NETWORK_TYPE_BITMASK_NR) > 0;
+    }
+
+    /** Returns {@code true} if the modem supports 5G. */
+    public boolean is5gSupported() {
+        return (mSupportedRadioAccessFamily & TelephonyManager.NETWORK_TYPE_BITMASK_NR) > 0;
+    }
+
+    public boolean isLteCdmaEvdoGsmWcdmaEnabled() {
+        return mLteCdmaEvdoGsmWcdmaEnabled;
+    }
+
+    /** Returns {@code true} if the global mode, including CDMA, is offered to the user. */
+    public boolean isGlobalCdma() {
+        return mLteCdmaEvdoGsmWcdmaEnabled && mShowCdmaChoices;
+    }
+
+    /** Same as {@link MobileNetworkUtils#isTdscdmaSupported(Context, int)}. */
+    public boolean isTdscdmaSupported() {
+        return mTdscdmaSupported;
+    }
+
+    /** Returns {@code true} if the carrier config of the subscription is loaded. */
+    public boolean hasCarrierConfig() {
+        return mHasCarrierConfig;
+    }
+
+    /** Same as {@link MobileNetworkUtils#isWorldMode(Context, int)}. */
+    public boolean isWorldMode() {
+        return mWorldModeEnabled;
+    }
+
+    public boolean isShow4gForLte() {
+        return mShow4gForLte;
+    }
+
+    public boolean isPrefer2g() {
+        return mPrefer2g;
+    }
+
+    public boolean isPrefer3gVisible() {
+        return mPrefer3gVisible;
+    }
+
+    public boolean isLteEnabled() {
+        return mLteEnabled;
+    }
+
+    @Override
+    public String toString() {
+        return "TelephonySnapshot{subId=" + mSubId
+                + ", phoneType=" + mPhoneType
+                + ", allowedForUser=" + mAllowedNetworkTypesForUser
+                + ", allowedForCarrier=" + mAllowedNetworkTypesForCarrier
+                + ", raf=" + mSupportedRadioAccessFamily
+                + ", globalCdma=" + isGlobalCdma()
+                + ", tdscdma=" + mTdscdmaSupported
+                + ", worldMode=" + mWorldModeEnabled
+                + ", carrierConfig=" + mHasCarrierConfig
+                + "}";
+    }
+}
@@ -27,7 +27,6 @@ import android.app.NotificationChannelGroup;
 import android.app.NotificationHistory;
 import android.app.NotificationManager;
 import android.app.usage.IUsageStatsManager;
-import android.app.usage.UsageEvents;
 import android.companion.ICompanionDeviceManager;
 import android.content.ComponentName;
 import android.content.Context;
@@ -46,11 +45,11 @@ import android.os.ServiceManager;
 import android.os.UserHandle;
 import android.service.notification.ConversationChannelWrapper;
 import android.service.notification.NotificationListenerFilter;
-import android.text.format.DateUtils;
 import android.util.IconDrawableFactory;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 
 import com.android.internal.util.CollectionUtils;
 import com.android.settings.R;
@@ -72,7 +71,7 @@ public class NotificationBackend {
 
     static IUsageStatsManager sUsageStatsManager = IUsageStatsManager.Stub.asInterface(
             ServiceManager.getService(Context.USAGE_STATS_SERVICE));
-    private static final int DAYS_TO_CHECK = 7;
+    private static final int DAYS_TO_CHECK = NotificationSentAggregator.DAYS_TO_CHECK;
     static INotificationManager sINM = INotificationManager.Stub.asInterface(
             ServiceManager.getService(Context.NOTIFICATION_SERVICE));
 
@@ -94,7 +93,8 @@ public class NotificationBackend {
         row.blockedChannelCount = getBlockedChannelCount(row.pkg, row.uid);
         row.channelCount = getChannelCount(row.pkg, row.uid);
         row.soundTimeout = getNotificationSoundTimeout(row.pkg, row.uid);
-        recordAggregatedUsageEvents(context, row);
+        // The sent counts are read off the main thread, see recordSentStats.
+        row.sentByChannel = new HashMap<>();
         return row;
     }
 
@@ -467,48 +467,23 @@ public class NotificationBackend {
         return new NotificationHistory();
     }
 
-    protected void recordAggregatedUsageEvents(Context context, AppRow appRow) {
-        long now = System.currentTimeMillis();
-        long startTime = now - (DateUtils.DAY_IN_MILLIS * DAYS_TO_CHECK);
-        UsageEvents events = null;
-        try {
-            events = sUsageStatsManager.queryEventsForPackageForUser(
-                    startTime, now, appRow.userId, appRow.pkg, context.getPackageName());
-        } catch (RemoteException e) {
-            e.printStackTrace();
-        }
-        recordAggregatedUsageEvents(events, appRow);
+    /**
+     * Returns the notifications sent by the packages of the user, as counted by
+     * {@link NotificationSentAggregator}, which only reads the usage events since its last update.
+     */
+    @WorkerThread
+    public NotificationSentAggregator.UserStats loadSentStats(Context context, int userId) {
+        return new NotificationSentAggregator(context, sUsageStatsManager).update(userId);
     }
 
-    protected void recordAggregatedUsageEvents(UsageEvents events, AppRow appRow) {
-        appRow.sentByChannel = new HashMap<>();
-        appRow.sentByApp = new NotificationsSentState();
-        if (events != null) {
-            UsageEvents.Event event = new UsageEvents.Event();
-            while (events.hasNextEvent()) {
-                events.getNextEvent(event);
-
-                if (event.getEventType() == UsageEvents.Event.NOTIFICATION_INTERRUPTION) {
-                    String channelId = event.mNotificationChannelId;
-                    if (channelId != null) {
-                        NotificationsSentState stats = appRow.sentByChannel.get(channelId);
-                        if (stats == null) {
-                            stats = new NotificationsSentState();
-                            appRow.sentByChannel.put(channelId, stats);
-                        }
-                        if (event.getTimeStamp() > stats.lastSent) {
-                            stats.lastSent = event.getTimeStamp();
-                            appRow.sentByApp.lastSent = event.getTimeStamp();
-                        }
-                        stats.sentCount++;
-                        appRow.sentByApp.sentCount++;
-                        calculateAvgSentCounts(stats);
-                    }
-                }
-
-            }
-            calculateAvgSentCounts(appRow.sentByApp);
+    /** Fills the sent counts of the app row from the counts of its user. */
+    public void recordSentStats(NotificationSentAggregator.UserStats stats, AppRow appRow) {
+        appRow.sentByChannel = stats.getSentByChannel(appRow.pkg);
+        for (NotificationsSentState channelStats : appRow.sentByChannel.values()) {
+            calculateAvgSentCounts(channelStats);
         }
+        appRow.sentByApp = stats.getSentByApp(appRow.pkg);
+        calculateAvgSentCounts(appRow.sentByApp);
     }
 
     public static CharSequence getSentSummary(Context context, NotificationsSentState state,
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.notification;
+
+import android.app.usage.IUsageStatsManager;
+import android.app.usage.UsageEvents;
+import android.content.Context;
+import android.os.RemoteException;
+import android.text.format.DateUtils;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.notification.NotificationBackend.NotificationsSentState;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the hourly counts of the notifications sent by each package and channel of a user, over
+ * the last {@link #DAYS_TO_CHECK} times 24 hours. The oldest hour kept may start up to an hour
+ * before that window, so the counts match a query of the whole window within an hour, whatever
+ * the time of day.
+ *
+ * <p>The counts are persisted with the time they were last updated, so each {@link #update} only
+ * folds in the usage events which happened since, instead of reading the whole week of events.
+ */
+public class NotificationSentAggregator {
+    private static final String TAG = "NotificationSentAggregator";
+    private static final String FILE_PREFIX = "notification_sent_stats_";
+    // Version 1 counted the notifications per UTC day.
+    private static final int VERSION = 2;
+
+    public static final int DAYS_TO_CHECK = 7;
+
+    // Serializes the updates of the same file by the app lists of the different screens.
+    private static final Object sLock = new Object();
+
+    private final Context mContext;
+    private final IUsageStatsManager mUsageStatsManager;
+    private final Clock mClock;
+
+    public NotificationSentAggregator(Context context, IUsageStatsManager usageStatsManager) {
+        this(context, usageStatsManager, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    NotificationSentAggregator(Context context, IUsageStatsManager usageStatsManager,
+            Clock clock) {
+        mContext = context;
+        mUsageStatsManager = usageStatsManager;
+        mClock = clock;
+    }
+
+    /** Folds in the events since the last update, and returns the counts of the user. */
+    @NonNull
+    public UserStats update(int userId) {
+        synchronized (sLock) {
+            final AtomicFile file = getFile(userId);
+            final long now = mClock.currentTimeMillis();
+            final long windowStart = now - DAYS_TO_CHECK * DateUtils.DAY_IN_MILLIS;
+            final int firstHour = toHour(windowStart);
+            UserStats stats = read(file);
+            if (stats == null || stats.mHighWaterMark > now) {
+                // Nothing usable stored, or the clock went back: start over.
+                stats = new UserStats();
+            }
+            final long startTime = Math.max(stats.mHighWaterMark, windowStart);
+            UsageEvents events = null;
+            try {
+                events = mUsageStatsManager.queryEventsForUser(
+                        startTime, now, userId, mContext.getPackageName());
+            } catch (RemoteException e) {
+                Log.w(TAG, "Error querying usage events", e);
+            }
+            if (events == null) {
+                // Keep the high-water mark so the missed events are read next time.
+                stats.prune(firstHour);
+                return stats;
+            }
+            stats.fold(events, startTime);
+            stats.prune(firstHour);
+            stats.mHighWaterMark = now;
+            write(file, stats);
+            return stats;
+        }
+    }
+
+    private AtomicFile getFile(int userId) {
+        return new AtomicFile(new File(mContext.getFilesDir(), FILE_PREFIX + userId));
+    }
+
+    private static UserStats read(AtomicFile file) {
+        try (DataInputStream in = new DataInputStream(file.openRead())) {
+            return UserStats.readFrom(in);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading " + file.getBaseFile(), e);
+            return null;
+        }
+    }
+
+    private static void write(AtomicFile file, UserStats stats) {
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            final DataOutputStream dataOut = new DataOutputStream(out);
+            stats.writeTo(dataOut);
+            dataOut.flush();
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Error writing " + file.getBaseFile(), e);
+            file.failWrite(out);
+        }
+    }
+
+    private static int toHour(long timestamp) {
+        return (int) (timestamp / DateUtils.HOUR_IN_MILLIS);
+    }
+
+    /** Source of the current time, to be replaced in tests. */
+    @VisibleForTesting
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    /** The notifications sent by the packages of a user. */
+    public static class UserStats {
+        private final ArrayMap<String, PackageCounts> mPackages = new ArrayMap<>();
+        private long mHighWaterMark;
+
+        /** Returns the packages which sent notifications. */
+        @NonNull
+        public Set<String> getPackages() {
+            return mPackages.keySet();
+        }
+
+        /** Returns the notifications sent by the package, on any channel. */
+        @NonNull
+        public NotificationsSentState getSentByApp(String pkg) {
+            final PackageCounts counts = mPackages.get(pkg);
+            return counts == null ? new NotificationsSentState() : counts.mTotal.toState();
+        }
+
+        /** Returns the notifications sent by the package, by channel id. */
+        @NonNull
+        public Map<String, NotificationsSentState> getSentByChannel(String pkg) {
+            final Map<String, NotificationsSentState> sentByChannel = new HashMap<>();
+            final PackageCounts counts = mPackages.get(pkg);
+            if (counts != null) {
+                for (Map.Entry<String, Counts> entry : counts.mChannels.entrySet()) {
+                    sentByChannel.put(entry.getKey(), entry.getValue().toState());
+                }
+            }
+            return sentByChannel;
+        }
+
+        private void fold(UsageEvents events, long startTime) {
+            final UsageEvents.Event event = new UsageEvents.Event();
+            while (events.hasNextEvent()) {
+                events.getNextEvent(event);
+                if (event.getEventType() != UsageEvents.Event.NOTIFICATION_INTERRUPTION) {
+                    continue;
+                }
+                PackageCounts counts = mPackages.get(event.getPackageName());
+                if (counts == null) {
+                    counts = new PackageCounts();
+                    mPackages.put(event.getPackageName(), counts);
+                }
+                // Events are expected within the queried range, count any stray one in its
+                // first hour rather than letting it be pruned right away.
+                final long timestamp = event.getTimeStamp();
+                final int hour = toHour(Math.max(timestamp, startTime));
+                counts.mTotal.add(timestamp, hour);
+                final String channelId = event.mNotificationChannelId;
+                if (channelId != null) {
+                    Counts channelCounts = counts.mChannels.get(channelId);
+                    if (channelCounts == null) {
+                        channelCounts = new Counts();
+                        counts.mChannels.put(channelId, channelCounts);
+                    }
+                    channelCounts.add(timestamp, hour);
+                }
+            }
+        }
+
+        private void prune(int firstHour) {
+            for (int i = mPackages.size() - 1; i >= 0; i--) {
+                final PackageCounts counts = mPackages.valueAt(i);
+                if (counts.mTotal.prune(firstHour)) {
+                    mPackages.removeAt(i);
+                    continue;
+                }
+                counts.mChannels.values().removeIf(
+                        channelCounts -> channelCounts.prune(firstHour));
+            }
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(VERSION);
+            out.writeLong(mHighWaterMark);
+            out.writeInt(mPackages.size());
+            for (Map.Entry<String, PackageCounts> entry : mPackages.entrySet()) {
+                out.writeUTF(entry.getKey());
+                final PackageCounts counts = entry.getValue();
+                counts.mTotal.writeTo(out);
+                out.writeInt(counts.mChannels.size());
+                for (Map.Entry<String, Counts> channel : counts.mChannels.entrySet()) {
+                    out.writeUTF(channel.getKey());
+                    channel.getValue().writeTo(out);
+                }
+            }
+        }
+
+        private static UserStats readFrom(DataInputStream in) throws IOException {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            final UserStats stats = new UserStats();
+            stats.mHighWaterMark = in.readLong();
+            final int packageCount = in.readInt();
+            for (int i = 0; i < packageCount; i++) {
+                final String pkg = in.readUTF();
+                final PackageCounts counts = new PackageCounts();
+                counts.mTotal.readFrom(in);
+                final int channelCount = in.readInt();
+                for (int j = 0; j < channelCount; j++) {
+                    final String channelId = in.readUTF();
+                    final Counts channelCounts = new Counts();
+                    channelCounts.readFrom(in);
+                    counts.mChannels.put(channelId, channelCounts);
+                }
+                stats.mPackages.put(pkg, counts);
+            }
+            return stats;
+        }
+    }
+
+    private static class PackageCounts {
+        private final Counts mTotal = new Counts();
+        private final Map<String, Counts> mChannels = new ArrayMap<>();
+    }
+
+    /** The number of notifications sent each hour, and the time of the last one. */
+    private static class Counts {
+        private final SparseIntArray mHourlyCounts = new SparseIntArray();
+        private long mLastSent;
+
+        void add(long timestamp, int hour) {
+            mHourlyCounts.put(hour, mHourlyCounts.get(hour) + 1);
+            mLastSent = Math.max(mLastSent, timestamp);
+        }
+
+        /** Drops the hours before the given one, returns {@code true} if nothing is left. */
+        boolean prune(int firstHour) {
+            while (mHourlyCounts.size() > 0 && mHourlyCounts.keyAt(0) < firstHour) {
+                mHourlyCounts.removeAt(0);
+            }
+            return mHourlyCounts.size() == 0;
+        }
+
+        NotificationsSentState toState() {
+            final NotificationsSentState state = new NotificationsSentState();
+            for (int i = 0; i < mHourlyCounts.size(); i++) {
+                state.sentCount += mHourlyCounts.valueAt(i);
+            }
+            state.lastSent = mLastSent;
+            return state;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeLong(mLastSent);
+            out.writeInt(mHourlyCounts.size());
+            for (int i = 0; i < mHourlyCounts.size(); i++) {
+                out.writeInt(mHourlyCounts.keyAt(i));
+                out.writeInt(mHourlyCounts.valueAt(i));
+            }
+        }
+
+        void readFrom(DataInputStream in) throws IOException {
+            mLastSent = in.readLong();
+            final int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                mHourlyCounts.put(in.readInt(), in.readInt());
+            }
+        }
+    }
+}
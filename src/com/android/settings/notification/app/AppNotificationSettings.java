@@ -29,7 +29,10 @@ import android.view.MenuItem;
 
 import com.android.internal.widget.LockPatternUtils;
 import com.android.settings.R;
+import com.android.settings.notification.NotificationBackend;
+import com.android.settings.notification.NotificationSentAggregator;
 import com.android.settingslib.core.AbstractPreferenceController;
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -65,6 +68,32 @@ public class AppNotificationSettings extends NotificationSettings {
             controller.displayPreference(getPreferenceScreen());
         }
         updatePreferenceStates();
+        loadSentStats();
+    }
+
+    /**
+     * Reads the notifications sent by the app off the main thread, and shows them on the channel
+     * list once loaded.
+     */
+    private void loadSentStats() {
+        final NotificationBackend.AppRow appRow = mAppRow;
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final NotificationSentAggregator.UserStats stats =
+                    mBackend.loadSentStats(mContext, appRow.userId);
+            ThreadUtils.postOnMainThread(() -> {
+                // The row is reloaded on each resume, drop the counts of a stale one.
+                if (appRow != mAppRow || !isAdded()) {
+                    return;
+                }
+                mBackend.recordSentStats(stats, appRow);
+                updateChannelList();
+            });
+        });
+    }
+
+    private void updateChannelList() {
+        ChannelListPreferenceController list = use(ChannelListPreferenceController.class);
+        list.updateState(findPreference(list.getPreferenceKey()));
     }
 
     @Override
@@ -133,10 +162,8 @@ public class AppNotificationSettings extends NotificationSettings {
                 item.setTitle(mShowAll
                         ? R.string.hide_unused_channels
                         : R.string.show_unused_channels);
-                ChannelListPreferenceController list =
-                        use(ChannelListPreferenceController.class);
-                list.setShowAll(mShowAll);
-                list.updateState(findPreference(list.getPreferenceKey()));
+                use(ChannelListPreferenceController.class).setShowAll(mShowAll);
+                updateChannelList();
                 return true;
             default:
                 return super.onOptionsItemSelected(item);
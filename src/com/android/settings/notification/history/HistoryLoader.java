@@ -22,22 +22,32 @@ import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.os.UserHandle;
+import android.util.ArrayMap;
 import android.util.Slog;
+import android.util.SparseArray;
 
 import com.android.settings.notification.NotificationBackend;
 import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * Loads the notification history, grouped by package.
+ *
+ * <p>The packages are delivered by pages, the most recent ones first. The label and icon of a
+ * package are only resolved when its page is about to be delivered, so the first rows are shown
+ * without waiting for the packages of weeks of history.
+ */
 public class HistoryLoader {
     private static final String TAG = "HistoryLoader";
+
+    private static final int PAGE_SIZE = 10;
+
     private final Context mContext;
     private final NotificationBackend mBackend;
     private final PackageManager mPm;
+    private volatile boolean mCancelled;
 
     public HistoryLoader(Context context, NotificationBackend backend, PackageManager pm) {
         mContext = context;
@@ -48,52 +58,97 @@ public class HistoryLoader {
     public void load(OnHistoryLoaderListener listener) {
         ThreadUtils.postOnBackgroundThread(() -> {
             try {
-                Map<String, NotificationHistoryPackage> historicalNotifications = new HashMap<>();
-                NotificationHistory history =
+                final List<NotificationHistoryPackage> packages = groupByPackage(
                         mBackend.getNotificationHistory(mContext.getPackageName(),
-                                mContext.getAttributionTag());
-                while (history.hasNextNotification()) {
-                    HistoricalNotification hn = history.getNextNotification();
-
-                    String key = hn.getPackage() + "|" + hn.getUid();
-                    NotificationHistoryPackage hnsForPackage = historicalNotifications.getOrDefault(
-                            key,
-                            new NotificationHistoryPackage(hn.getPackage(), hn.getUid()));
-                    hnsForPackage.notifications.add(hn);
-                    historicalNotifications.put(key, hnsForPackage);
-                }
-                List<NotificationHistoryPackage> packages =
-                        new ArrayList<>(historicalNotifications.values());
-                Collections.sort(packages,
-                        (o1, o2) -> -1 * Long.compare(o1.getMostRecent(), o2.getMostRecent()));
-                for (NotificationHistoryPackage nhp : packages) {
-                    ApplicationInfo info;
-                    try {
-                        info = mPm.getApplicationInfoAsUser(
-                                nhp.pkgName,
-                                PackageManager.MATCH_UNINSTALLED_PACKAGES
-                                        | PackageManager.MATCH_DISABLED_COMPONENTS
-                                        | PackageManager.MATCH_DIRECT_BOOT_UNAWARE
-                                        | PackageManager.MATCH_DIRECT_BOOT_AWARE,
-                                UserHandle.getUserId(nhp.uid));
-                        if (info != null) {
-                            nhp.label = String.valueOf(mPm.getApplicationLabel(info));
-                            nhp.icon = mPm.getUserBadgedIcon(mPm.getApplicationIcon(info),
-                                    UserHandle.of(UserHandle.getUserId(nhp.uid)));
+                                mContext.getAttributionTag()));
+                packages.sort(
+                        (o1, o2) -> Long.compare(o2.getMostRecent(), o1.getMostRecent()));
+                // Always deliver the first page, so the listener knows when loading is done even
+                // if there is no history.
+                int start = 0;
+                do {
+                    final int end = Math.min(start + PAGE_SIZE, packages.size());
+                    final List<NotificationHistoryPackage> page =
+                            new ArrayList<>(packages.subList(start, end));
+                    for (NotificationHistoryPackage nhp : page) {
+                        if (mCancelled) {
+                            return;
                         }
-                    } catch (PackageManager.NameNotFoundException e) {
-                        // app is gone, just show package name and generic icon
-                        nhp.icon = mPm.getDefaultActivityIcon();
+                        loadLabelAndIcon(nhp);
                     }
-                }
-                ThreadUtils.postOnMainThread(() -> listener.onHistoryLoaded(packages));
+                    final boolean isFirstPage = start == 0;
+                    ThreadUtils.postOnMainThread(() -> {
+                        if (mCancelled) {
+                            return;
+                        }
+                        if (isFirstPage) {
+                            listener.onHistoryLoaded(page);
+                        } else {
+                            listener.onHistoryPageLoaded(page);
+                        }
+                    });
+                    start = end;
+                } while (start < packages.size());
             } catch (Exception e) {
                 Slog.e(TAG, "Error loading history", e);
             }
         });
     }
 
+    /** Stops delivering pages, for example when the history is loaded again. */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    private static List<NotificationHistoryPackage> groupByPackage(NotificationHistory history) {
+        final List<NotificationHistoryPackage> packages = new ArrayList<>();
+        // uid -> package name -> notifications, since a package may run as several uids.
+        final SparseArray<ArrayMap<String, NotificationHistoryPackage>> packagesByUid =
+                new SparseArray<>();
+        while (history.hasNextNotification()) {
+            final HistoricalNotification hn = history.getNextNotification();
+            ArrayMap<String, NotificationHistoryPackage> packagesForUid =
+                    packagesByUid.get(hn.getUid());
+            if (packagesForUid == null) {
+                packagesForUid = new ArrayMap<>();
+                packagesByUid.put(hn.getUid(), packagesForUid);
+            }
+            NotificationHistoryPackage nhp = packagesForUid.get(hn.getPackage());
+            if (nhp == null) {
+                nhp = new NotificationHistoryPackage(hn.getPackage(), hn.getUid());
+                packagesForUid.put(hn.getPackage(), nhp);
+                packages.add(nhp);
+            }
+            nhp.notifications.add(hn);
+        }
+        return packages;
+    }
+
+    private void loadLabelAndIcon(NotificationHistoryPackage nhp) {
+        try {
+            final ApplicationInfo info = mPm.getApplicationInfoAsUser(
+                    nhp.pkgName,
+                    PackageManager.MATCH_UNINSTALLED_PACKAGES
+                            | PackageManager.MATCH_DISABLED_COMPONENTS
+                            | PackageManager.MATCH_DIRECT_BOOT_UNAWARE
+                            | PackageManager.MATCH_DIRECT_BOOT_AWARE,
+                    UserHandle.getUserId(nhp.uid));
+            if (info != null) {
+                nhp.label = String.valueOf(mPm.getApplicationLabel(info));
+                nhp.icon = mPm.getUserBadgedIcon(mPm.getApplicationIcon(info),
+                        UserHandle.of(UserHandle.getUserId(nhp.uid)));
+            }
+        } catch (PackageManager.NameNotFoundException e) {
+            // app is gone, just show package name and generic icon
+            nhp.icon = mPm.getDefaultActivityIcon();
+        }
+    }
+
     interface OnHistoryLoaderListener {
+        /** Called with the first page of packages, which is empty if there is no history. */
         void onHistoryLoaded(List<NotificationHistoryPackage> notificationsByPackage);
+
+        /** Called with each following page of packages, in order. */
+        void onHistoryPageLoaded(List<NotificationHistoryPackage> notificationsByPackage);
     }
 }
@@ -68,6 +68,7 @@ import com.android.settingslib.widget.MainSwitchBar;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -156,17 +157,29 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
         }
     }
 
-    private HistoryLoader.OnHistoryLoaderListener mOnHistoryLoaderListener = notifications -> {
-        findViewById(R.id.today_list).setVisibility(
-                notifications.isEmpty() ? View.GONE : View.VISIBLE);
-        mCountdownLatch.countDown();
-        View recyclerView = mTodayView.findViewById(R.id.apps);
-        recyclerView.setClipToOutline(true);
-        mTodayView.setOutlineProvider(mOutlineProvider);
-        mSnoozeView.setOutlineProvider(mOutlineProvider);
+    private HistoryLoader.OnHistoryLoaderListener mOnHistoryLoaderListener =
+            new HistoryLoader.OnHistoryLoaderListener() {
+        @Override
+        public void onHistoryLoaded(List<NotificationHistoryPackage> notifications) {
+            findViewById(R.id.today_list).setVisibility(
+                    notifications.isEmpty() ? View.GONE : View.VISIBLE);
+            mCountdownLatch.countDown();
+            View recyclerView = mTodayView.findViewById(R.id.apps);
+            recyclerView.setClipToOutline(true);
+            mTodayView.setOutlineProvider(mOutlineProvider);
+            mSnoozeView.setOutlineProvider(mOutlineProvider);
+            addPackageViews(notifications);
+        }
+
+        @Override
+        public void onHistoryPageLoaded(List<NotificationHistoryPackage> notifications) {
+            addPackageViews(notifications);
+        }
+    };
+
+    private void addPackageViews(List<NotificationHistoryPackage> notifications) {
         // for each package, new header and recycler view
-        for (int i = 0, notificationsSize = notifications.size(); i < notificationsSize; i++) {
-            NotificationHistoryPackage nhp = notifications.get(i);
+        for (NotificationHistoryPackage nhp : notifications) {
             View viewForPackage = LayoutInflater.from(this)
                     .inflate(R.layout.notification_history_app_layout, null);
 
@@ -184,7 +197,7 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
             header.setStateDescription(container.getVisibility() == View.VISIBLE
                     ? getString(R.string.condition_expand_hide)
                     : getString(R.string.condition_expand_show));
-            int finalI = i;
+            int finalI = mTodayView.getChildCount();
             header.setOnClickListener(v -> {
                 container.setVisibility(container.getVisibility() == View.VISIBLE
                         ? View.GONE : View.VISIBLE);
@@ -225,7 +238,7 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
 
             mTodayView.addView(viewForPackage);
         }
-    };
+    }
 
     private void configureNotificationList(View recyclerView) {
         recyclerView.setClipToOutline(true);
@@ -266,7 +279,7 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
         // wait for history loading and recent/snooze loading
         mCountdownLatch = new CountDownLatch(2);
 
-        mTodayView.removeAllViews();
+        clearHistoryViews();
         mHistoryLoader = new HistoryLoader(this, new NotificationBackend(), mPm);
         mHistoryLoader.load(mOnHistoryLoaderListener);
 
@@ -314,6 +327,9 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
 
     @Override
     public void onDestroy() {
+        if (mHistoryLoader != null) {
+            mHistoryLoader.cancel();
+        }
         if (mCountdownFuture != null) {
             mCountdownFuture.cancel(true);
         }
@@ -350,11 +366,19 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
         } else {
             mHistoryOn.setVisibility(View.GONE);
             mHistoryOff.setVisibility(View.VISIBLE);
-            mTodayView.removeAllViews();
+            clearHistoryViews();
         }
         mHistoryEmpty.setVisibility(View.GONE);
     }
 
+    /** Removes the loaded history, and stops the pages still loading from being added back. */
+    private void clearHistoryViews() {
+        if (mHistoryLoader != null) {
+            mHistoryLoader.cancel();
+        }
+        mTodayView.removeAllViews();
+    }
+
     private final OnCheckedChangeListener mOnSwitchClickListener =
             (switchView, isChecked) -> {
                 int oldState = 0;
@@ -380,7 +404,12 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
                     mHistoryOff.setVisibility(View.VISIBLE);
                     mHistoryEmpty.setVisibility(View.GONE);
                 }
-                mTodayView.removeAllViews();
+                if (isChecked) {
+                    // The history loaded by onResume is still wanted when it is bound on.
+                    mTodayView.removeAllViews();
+                } else {
+                    clearHistoryViews();
+                }
             };
 
     private final NotificationListenerService mListener = new NotificationListenerService() {
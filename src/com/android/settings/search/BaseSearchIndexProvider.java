@@ -89,6 +89,45 @@ public class BaseSearchIndexProvider implements Indexable.SearchIndexProvider {
         return raws;
     }
 
+    /**
+     * Returns true if the raw data to index doesn't depend on the device state, so it doesn't
+     * need to be computed again until the package or the resources change.
+     *
+     * <p>The raw data of this class only comes from the controllers which override
+     * {@code updateRawDataToIndex}, and these read the device state, e.g. the accounts. So the raw
+     * data is static, and empty, if neither this provider nor its controllers provide any.
+     */
+    boolean hasStaticRawData(Context context) {
+        if (!isDeclaredBy(getClass(), BaseSearchIndexProvider.class,
+                "getRawDataToIndex", Context.class, boolean.class)) {
+            return false;
+        }
+        final List<AbstractPreferenceController> controllers = getPreferenceControllers(context);
+        if (controllers == null) {
+            return true;
+        }
+        for (AbstractPreferenceController controller : controllers) {
+            if ((controller instanceof PreferenceControllerMixin
+                    || controller instanceof BasePreferenceController)
+                    && !isDeclaredBy(controller.getClass(), BasePreferenceController.class,
+                            "updateRawDataToIndex", List.class)
+                    && !isDeclaredBy(controller.getClass(), PreferenceControllerMixin.class,
+                            "updateRawDataToIndex", List.class)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDeclaredBy(Class<?> clazz, Class<?> declaringClass, String name,
+            Class<?>... parameterTypes) {
+        try {
+            return clazz.getMethod(name, parameterTypes).getDeclaringClass() == declaringClass;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
     @Override
     @CallSuper
     public List<SearchIndexableRaw> getDynamicRawDataToIndex(Context context, boolean enabled) {
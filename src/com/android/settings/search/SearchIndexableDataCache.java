@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.provider.SearchIndexableResource;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Caches the static search index data of each search index provider.
+ *
+ * <p>The XML resources to index only change with the package version, the user and the resource
+ * configuration (locale, mcc/mnc, density and ui mode). These inputs form the fingerprint of the
+ * cached data, so a re-index only recomputes the providers whose fingerprint changed.
+ *
+ * <p>The raw data is computed from the device state, e.g. the accounts or the users, so only
+ * whether a provider has static raw data is cached: such a provider has none, and its controllers
+ * no longer need to be created on every re-index. The non-indexable keys are never cached.
+ */
+class SearchIndexableDataCache {
+    private static final String TAG = "SearchIndexableDataCache";
+
+    private final Map<Class<?>, Entry<List<SearchIndexableResource>>> mXmlResources =
+            new ConcurrentHashMap<>();
+    private final Map<Class<?>, Entry<Boolean>> mStaticRawData = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the cached XML resources of the {@code targetClass}, or loads them. The returned
+     * list is shared by all the callers and can't be modified.
+     */
+    @Nullable
+    List<SearchIndexableResource> getXmlResources(
+            @NonNull String fingerprint,
+            @NonNull Class<?> targetClass,
+            @NonNull Supplier<List<SearchIndexableResource>> loader) {
+        return getOrLoad(mXmlResources, fingerprint, targetClass, () -> {
+            final List<SearchIndexableResource> resources = loader.get();
+            return resources != null
+                    ? Collections.unmodifiableList(new ArrayList<>(resources))
+                    : null;
+        });
+    }
+
+    /**
+     * Returns whether the raw data of the {@code targetClass} doesn't depend on the device state,
+     * checks it with the {@code checker} if not cached.
+     */
+    boolean hasStaticRawData(
+            @NonNull String fingerprint,
+            @NonNull Class<?> targetClass,
+            @NonNull Supplier<Boolean> checker) {
+        return Boolean.TRUE.equals(getOrLoad(mStaticRawData, fingerprint, targetClass, checker));
+    }
+
+    /** Clears all cached data. */
+    void clear() {
+        mXmlResources.clear();
+        mStaticRawData.clear();
+    }
+
+    /**
+     * Computes the fingerprint of the inputs of the static search index data.
+     */
+    @NonNull
+    static String computeFingerprint(@NonNull Context context) {
+        long versionCode = 0L;
+        try {
+            versionCode =
+                    context.getPackageManager()
+                            .getPackageInfo(context.getPackageName(), /* flags= */ 0)
+                            .getLongVersionCode();
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "Cannot find package " + context.getPackageName(), e);
+        }
+        final Configuration configuration = context.getResources().getConfiguration();
+        return versionCode
+                + "|" + context.getUserId()
+                + "|" + configuration.getLocales().toLanguageTags()
+                + "|" + configuration.mcc
+                + "|" + configuration.mnc
+                + "|" + configuration.densityDpi
+                + "|" + configuration.uiMode;
+    }
+
+    private static <T> T getOrLoad(
+            Map<Class<?>, Entry<T>> cache,
+            String fingerprint,
+            Class<?> targetClass,
+            Supplier<T> loader) {
+        final Entry<T> entry = cache.get(targetClass);
+        if (entry != null && Objects.equals(entry.mFingerprint, fingerprint)) {
+            return entry.mData;
+        }
+        final T data = loader.get();
+        cache.put(targetClass, new Entry<>(fingerprint, data));
+        return data;
+    }
+
+    private static final class Entry<T> {
+        private final String mFingerprint;
+        @Nullable private final T mData;
+
+        Entry(String fingerprint, @Nullable T data) {
+            mFingerprint = fingerprint;
+            mData = data;
+        }
+    }
+}
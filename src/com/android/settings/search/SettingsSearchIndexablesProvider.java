@@ -50,6 +50,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Process;
 import android.provider.SearchIndexableResource;
 import android.provider.SearchIndexablesContract;
 import android.provider.SearchIndexablesProvider;
@@ -79,8 +80,16 @@ import com.android.settingslib.search.SearchIndexableRaw;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
 
@@ -97,6 +106,14 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
 
     private static final Collection<String> INVALID_KEYS;
 
+    // The providers are mostly bound by parsing XML and creating controllers.
+    private static final int MAX_INDEXING_THREADS = 4;
+    private static final long INDEXING_THREAD_KEEP_ALIVE_SECONDS = 30L;
+
+    private static ExecutorService sIndexingExecutor;
+
+    private final SearchIndexableDataCache mIndexableDataCache = new SearchIndexableDataCache();
+
     // Search enabled states for injection (key: category key, value: search enabled)
     private Map<String, Boolean> mSearchEnabledByCategoryKeyMap;
 
@@ -275,101 +292,189 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
 
         final List<String> nonIndexableKeys = new ArrayList<>();
+        for (List<String> providerNonIndexableKeys : loadFromProviders(bundles,
+                bundle -> getNonIndexableKeysFromBundle(context, bundle))) {
+            nonIndexableKeys.addAll(providerNonIndexableKeys);
+        }
 
-        for (SearchIndexableData bundle : bundles) {
-            final long startTime = System.currentTimeMillis();
-            Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
-            List<String> providerNonIndexableKeys;
-            try {
-                providerNonIndexableKeys = provider.getNonIndexableKeys(context);
-            } catch (Exception e) {
-                // Catch a generic crash. In the absence of the catch, the background thread will
-                // silently fail anyway, so we aren't losing information by catching the exception.
-                // We crash when the system property exists so that we can test if crashes need to
-                // be fixed.
-                // The gain is that if there is a crash in a specific controller, we don't lose all
-                // non-indexable keys, but we can still find specific crashes in development.
-                if (System.getProperty(SYSPROP_CRASH_ON_ERROR) != null) {
-                    throw new RuntimeException(e);
-                }
-                Log.e(TAG, "Error trying to get non-indexable keys from: "
-                        + bundle.getTargetClass().getName(), e);
-                continue;
-            }
-
-            if (providerNonIndexableKeys == null || providerNonIndexableKeys.isEmpty()) {
-                if (DEBUG) {
-                    final long totalTime = System.currentTimeMillis() - startTime;
-                    Log.d(TAG, "No indexable, total time " + totalTime);
-                }
-                continue;
-            }
+        return nonIndexableKeys;
+    }
 
-            if (providerNonIndexableKeys.removeAll(INVALID_KEYS)) {
-                Log.v(TAG, provider + " tried to add an empty non-indexable key");
+    private List<String> getNonIndexableKeysFromBundle(Context context,
+            SearchIndexableData bundle) {
+        final long startTime = System.currentTimeMillis();
+        Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
+        List<String> providerNonIndexableKeys;
+        try {
+            providerNonIndexableKeys = provider.getNonIndexableKeys(context);
+        } catch (Exception e) {
+            // Catch a generic crash. In the absence of the catch, the background thread will
+            // silently fail anyway, so we aren't losing information by catching the exception.
+            // We crash when the system property exists so that we can test if crashes need to
+            // be fixed.
+            // The gain is that if there is a crash in a specific controller, we don't lose all
+            // non-indexable keys, but we can still find specific crashes in development.
+            if (System.getProperty(SYSPROP_CRASH_ON_ERROR) != null) {
+                throw new RuntimeException(e);
             }
+            Log.e(TAG, "Error trying to get non-indexable keys from: "
+                    + bundle.getTargetClass().getName(), e);
+            return Collections.emptyList();
+        }
 
+        if (providerNonIndexableKeys == null || providerNonIndexableKeys.isEmpty()) {
             if (DEBUG) {
                 final long totalTime = System.currentTimeMillis() - startTime;
-                Log.d(TAG, "Non-indexables " + providerNonIndexableKeys.size() + ", total time "
-                        + totalTime);
+                Log.d(TAG, "No indexable, total time " + totalTime);
             }
+            return Collections.emptyList();
+        }
 
-            nonIndexableKeys.addAll(providerNonIndexableKeys);
+        if (providerNonIndexableKeys.removeAll(INVALID_KEYS)) {
+            Log.v(TAG, provider + " tried to add an empty non-indexable key");
         }
 
-        return nonIndexableKeys;
+        if (DEBUG) {
+            final long totalTime = System.currentTimeMillis() - startTime;
+            Log.d(TAG, "Non-indexables " + providerNonIndexableKeys.size() + ", total time "
+                    + totalTime);
+        }
+        return providerNonIndexableKeys;
     }
 
     private List<SearchIndexableResource> getSearchIndexableResourcesFromProvider(Context context) {
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFeatureFactory()
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
+        final String fingerprint = SearchIndexableDataCache.computeFingerprint(context);
         List<SearchIndexableResource> resourceList = new ArrayList<>();
 
-        for (SearchIndexableData bundle : bundles) {
-            Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
-            final List<SearchIndexableResource> resList =
-                    provider.getXmlResourcesToIndex(context, true);
-
-            if (resList == null) {
-                continue;
+        for (List<SearchIndexableResource> resList : loadFromProviders(bundles,
+                bundle -> mIndexableDataCache.getXmlResources(fingerprint,
+                        bundle.getTargetClass(),
+                        () -> getSearchIndexableResourcesFromBundle(context, bundle)))) {
+            if (resList != null) {
+                resourceList.addAll(resList);
             }
+        }
 
-            for (SearchIndexableResource item : resList) {
-                item.className = TextUtils.isEmpty(item.className)
-                        ? bundle.getTargetClass().getName()
-                        : item.className;
-            }
+        return resourceList;
+    }
 
-            resourceList.addAll(resList);
+    @Nullable
+    private static List<SearchIndexableResource> getSearchIndexableResourcesFromBundle(
+            Context context, SearchIndexableData bundle) {
+        Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
+        final List<SearchIndexableResource> resList =
+                provider.getXmlResourcesToIndex(context, true);
+
+        if (resList == null) {
+            return null;
         }
 
-        return resourceList;
+        for (SearchIndexableResource item : resList) {
+            item.className = TextUtils.isEmpty(item.className)
+                    ? bundle.getTargetClass().getName()
+                    : item.className;
+        }
+        return resList;
     }
 
     private List<SearchIndexableRaw> getSearchIndexableRawFromProvider(Context context) {
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFeatureFactory()
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
+        final String fingerprint = SearchIndexableDataCache.computeFingerprint(context);
         final List<SearchIndexableRaw> rawList = new ArrayList<>();
 
-        for (SearchIndexableData bundle : bundles) {
-            Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
-            final List<SearchIndexableRaw> providerRaws = provider.getRawDataToIndex(context,
-                    true /* enabled */);
-
-            if (providerRaws == null) {
-                continue;
+        for (List<SearchIndexableRaw> providerRaws : loadFromProviders(bundles,
+                bundle -> mIndexableDataCache.hasStaticRawData(fingerprint,
+                        bundle.getTargetClass(), () -> hasStaticRawData(context, bundle))
+                        ? null
+                        : getSearchIndexableRawFromBundle(context, bundle))) {
+            if (providerRaws != null) {
+                rawList.addAll(providerRaws);
             }
+        }
+
+        return rawList;
+    }
 
-            for (SearchIndexableRaw raw : providerRaws) {
-                // The classname and intent information comes from the PreIndexData
-                // This will be more clear when provider conversion is done at PreIndex time.
-                raw.className = bundle.getTargetClass().getName();
+    private static boolean hasStaticRawData(Context context, SearchIndexableData bundle) {
+        final Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
+        return provider instanceof BaseSearchIndexProvider
+                && ((BaseSearchIndexProvider) provider).hasStaticRawData(context);
+    }
+
+    @Nullable
+    private static List<SearchIndexableRaw> getSearchIndexableRawFromBundle(Context context,
+            SearchIndexableData bundle) {
+        Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
+        final List<SearchIndexableRaw> providerRaws = provider.getRawDataToIndex(context,
+                true /* enabled */);
+
+        if (providerRaws == null) {
+            return null;
+        }
+
+        for (SearchIndexableRaw raw : providerRaws) {
+            // The classname and intent information comes from the PreIndexData
+            // This will be more clear when provider conversion is done at PreIndex time.
+            raw.className = bundle.getTargetClass().getName();
+        }
+        return providerRaws;
+    }
+
+    /**
+     * Runs the {@code loader} for each provider on the indexing executor, and returns the results
+     * in the same order as the {@code bundles}.
+     */
+    private static <T> List<T> loadFromProviders(Collection<SearchIndexableData> bundles,
+            Function<SearchIndexableData, T> loader) {
+        final long startTime = System.currentTimeMillis();
+        final List<Future<T>> futures = new ArrayList<>(bundles.size());
+        final ExecutorService executor = getIndexingExecutor();
+        for (SearchIndexableData bundle : bundles) {
+            futures.add(executor.submit(() -> loader.apply(bundle)));
+        }
+
+        final List<T> results = new ArrayList<>(futures.size());
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException
+                        ? (RuntimeException) cause
+                        : new RuntimeException(cause);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted while loading the search index data", e);
+                Thread.currentThread().interrupt();
+                for (Future<T> remaining : futures) {
+                    remaining.cancel(true /* mayInterruptIfRunning */);
+                }
+                break;
             }
-            rawList.addAll(providerRaws);
         }
+        if (DEBUG) {
+            Log.d(TAG, "Loaded " + bundles.size() + " providers, total time "
+                    + (System.currentTimeMillis() - startTime));
+        }
+        return results;
+    }
 
-        return rawList;
+    private static synchronized ExecutorService getIndexingExecutor() {
+        if (sIndexingExecutor == null) {
+            final int threadCount = Math.max(1,
+                    Math.min(MAX_INDEXING_THREADS, Runtime.getRuntime().availableProcessors()));
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount,
+                    INDEXING_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }, TAG));
+            executor.allowCoreThreadTimeOut(true);
+            sIndexingExecutor = executor;
+        }
+        return sIndexingExecutor;
     }
 
     private List<SearchIndexableRaw> getDynamicSearchIndexableRawData(Context context,
@@ -29,6 +29,7 @@ import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Binder;
+import android.os.Process;
 import android.os.StrictMode;
 import android.os.UserManager;
 import android.provider.Settings;
@@ -56,6 +57,8 @@ import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.SliceBroadcastRelay;
 import com.android.settingslib.utils.ThreadUtils;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -210,6 +213,10 @@ public class SettingsSliceProvider extends SliceProvider {
         if (!mFirstSliceBound) {
             Log.d(TAG, "onBindSlice start: " + sliceUri);
         }
+        // Bindings from the Settings process come from the homepage cards. Settings shares its
+        // uid with the system server, so tell them apart by pid.
+        SliceUpdateScheduler.notifySliceBound(sliceUri,
+                Binder.getCallingPid() == Process.myPid());
         final StrictMode.ThreadPolicy oldPolicy = StrictMode.getThreadPolicy();
         try {
             if (!ThreadUtils.isMainThread()) {
@@ -400,6 +407,12 @@ public class SettingsSliceProvider extends SliceProvider {
         });
     }
 
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(fd, writer, args);
+        SliceUpdateScheduler.dumpInstance(writer);
+    }
+
     @VisibleForTesting
     void loadSlice(Uri uri) {
         if (mSliceWeakDataCache.containsKey(uri)) {
@@ -19,12 +19,6 @@ package com.android.settings.slices;
 import android.annotation.MainThread;
 import android.content.Context;
 import android.net.Uri;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Looper;
-import android.os.Message;
-import android.os.Process;
-import android.os.SystemClock;
 import android.util.ArrayMap;
 import android.util.Log;
 
@@ -35,7 +29,6 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -176,7 +169,16 @@ public abstract class SliceBackgroundWorker<E> implements Closeable {
      */
     @VisibleForTesting
     public final void notifySliceChange() {
-        NotifySliceChangeHandler.getInstance().updateSlice(this);
+        SliceUpdateScheduler.getInstance().requestUpdate(this);
+    }
+
+    /**
+     * @return the minimum interval in milliseconds between two change notifications of the
+     * Slice. Workers with frequent data changes can return a longer interval so they don't delay
+     * the updates of the other Slices.
+     */
+    protected long getSliceUpdateInterval() {
+        return SLICE_UPDATE_THROTTLE_INTERVAL;
     }
 
     void pin() {
@@ -185,67 +187,6 @@ public abstract class SliceBackgroundWorker<E> implements Closeable {
 
     void unpin() {
         onSliceUnpinned();
-        NotifySliceChangeHandler.getInstance().cancelSliceUpdate(this);
+        SliceUpdateScheduler.getInstance().cancelUpdate(this);
     }
-
-    private static class NotifySliceChangeHandler extends Handler {
-
-        private static final int MSG_UPDATE_SLICE = 1000;
-
-        private static NotifySliceChangeHandler sHandler;
-
-        private final Map<Uri, Long> mLastUpdateTimeLookup = Collections.synchronizedMap(
-                new ArrayMap<>());
-
-        private static NotifySliceChangeHandler getInstance() {
-            if (sHandler == null) {
-                final HandlerThread workerThread = new HandlerThread("NotifySliceChangeHandler",
-                        Process.THREAD_PRIORITY_BACKGROUND);
-                workerThread.start();
-                sHandler = new NotifySliceChangeHandler(workerThread.getLooper());
-            }
-            return sHandler;
-        }
-
-        private NotifySliceChangeHandler(Looper looper) {
-            super(looper);
-        }
-
-        @Override
-        public void handleMessage(Message msg) {
-            if (msg.what != MSG_UPDATE_SLICE) {
-                return;
-            }
-
-            final SliceBackgroundWorker worker = (SliceBackgroundWorker) msg.obj;
-            final Uri uri = worker.getUri();
-            final Context context = worker.getContext();
-            mLastUpdateTimeLookup.put(uri, SystemClock.uptimeMillis());
-            context.getContentResolver().notifyChange(uri, null);
-        }
-
-        private void updateSlice(SliceBackgroundWorker worker) {
-            if (hasMessages(MSG_UPDATE_SLICE, worker)) {
-                return;
-            }
-
-            final Message message = obtainMessage(MSG_UPDATE_SLICE, worker);
-            final long lastUpdateTime = mLastUpdateTimeLookup.getOrDefault(worker.getUri(), 0L);
-            if (lastUpdateTime == 0L) {
-                // Postpone the first update triggering by onSlicePinned() to avoid being too close
-                // to the first Slice bind.
-                sendMessageDelayed(message, SLICE_UPDATE_THROTTLE_INTERVAL);
-            } else if (SystemClock.uptimeMillis() - lastUpdateTime
-                    > SLICE_UPDATE_THROTTLE_INTERVAL) {
-                sendMessage(message);
-            } else {
-                sendMessageAtTime(message, lastUpdateTime + SLICE_UPDATE_THROTTLE_INTERVAL);
-            }
-        }
-
-        private void cancelSliceUpdate(SliceBackgroundWorker worker) {
-            removeMessages(MSG_UPDATE_SLICE, worker);
-            mLastUpdateTimeLookup.remove(worker.getUri());
-        }
-    };
 }
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.slices;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+import android.util.ArrayMap;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schedules the change notifications of the {@link SliceBackgroundWorker}s.
+ *
+ * <ul>
+ * <li>The updates of a worker are coalesced over its
+ * {@link SliceBackgroundWorker#getSliceUpdateInterval() update interval}.
+ * <li>The slices bound by Settings itself, i.e. the homepage cards, and the slices recently bound
+ * by their host are prioritized. When some of them are due, the other due slices are deferred by
+ * {@link #NOT_PRIORITIZED_DEFER_MS}, once, so the host handles the visible slices first.
+ * <li>After a notification, the next one waits for the host to bind the slice again, up to
+ * {@link #MAX_BIND_WAIT_MS}, so a slow host is not flooded with notifications.
+ * </ul>
+ */
+class SliceUpdateScheduler extends Handler {
+
+    private static final int MSG_DISPATCH = 1000;
+
+    /** How long a host which bound its slice is considered to be showing it. */
+    @VisibleForTesting
+    static final long VISIBLE_TIMEOUT_MS = 10 * DateUtils.SECOND_IN_MILLIS;
+
+    /** The longest a notification waits for the previous one to be handled by the host. */
+    @VisibleForTesting
+    static final long MAX_BIND_WAIT_MS = 2 * DateUtils.SECOND_IN_MILLIS;
+
+    /** How long a slice which is not prioritized gives way to the prioritized ones due with it. */
+    @VisibleForTesting
+    static final long NOT_PRIORITIZED_DEFER_MS = 200L;
+
+    private static SliceUpdateScheduler sInstance;
+
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private final Map<Uri, SliceState> mStates = new ArrayMap<>();
+    // Kept after the slices are unpinned, for dump.
+    @GuardedBy("mLock")
+    private final Map<Uri, SliceStats> mStats = new ArrayMap<>();
+    @GuardedBy("mLock")
+    private long mScheduledDispatchTime = Long.MAX_VALUE;
+
+    static synchronized SliceUpdateScheduler getInstance() {
+        if (sInstance == null) {
+            final HandlerThread workerThread = new HandlerThread("NotifySliceChangeHandler",
+                    Process.THREAD_PRIORITY_BACKGROUND);
+            workerThread.start();
+            sInstance = new SliceUpdateScheduler(workerThread.getLooper());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    SliceUpdateScheduler(Looper looper) {
+        super(looper);
+    }
+
+    /** Called when a slice is bound, does nothing if no worker asked for an update yet. */
+    static void notifySliceBound(Uri uri, boolean boundBySettings) {
+        final SliceUpdateScheduler scheduler;
+        synchronized (SliceUpdateScheduler.class) {
+            scheduler = sInstance;
+        }
+        if (scheduler != null) {
+            scheduler.onSliceBound(uri, boundBySettings);
+        }
+    }
+
+    /** Dumps the notification stats of the slices, if any worker asked for an update. */
+    static void dumpInstance(PrintWriter writer) {
+        final SliceUpdateScheduler scheduler;
+        synchronized (SliceUpdateScheduler.class) {
+            scheduler = sInstance;
+        }
+        if (scheduler != null) {
+            scheduler.dump(writer);
+        }
+    }
+
+    /** Schedules a change notification of the worker's slice. */
+    void requestUpdate(SliceBackgroundWorker worker) {
+        final Uri uri = worker.getUri();
+        final long now = SystemClock.uptimeMillis();
+        synchronized (mLock) {
+            SliceState state = mStates.get(uri);
+            if (state == null) {
+                state = new SliceState(worker);
+                mStates.put(uri, state);
+            }
+            final SliceStats stats = getStatsLocked(uri);
+            stats.mRequestCount++;
+            if (state.mRequestTime != 0L) {
+                // Coalesced with the pending notification.
+                return;
+            }
+            state.mRequestTime = now;
+            if (state.mLastNotifyTime == 0L) {
+                // Postpone the first update triggering by onSlicePinned() to avoid being too close
+                // to the first Slice bind.
+                state.mDueTime = now + state.mInterval;
+            } else {
+                state.mDueTime = getNextDueTimeLocked(state, now);
+            }
+            scheduleDispatchLocked(state.mDueTime);
+        }
+    }
+
+    /** Drops the pending notification of the worker's slice. */
+    void cancelUpdate(SliceBackgroundWorker worker) {
+        synchronized (mLock) {
+            mStates.remove(worker.getUri());
+        }
+    }
+
+    void onSliceBound(Uri uri, boolean boundBySettings) {
+        final long now = SystemClock.uptimeMillis();
+        synchronized (mLock) {
+            final SliceState state = mStates.get(uri);
+            if (state == null) {
+                return;
+            }
+            state.mLastBindTime = now;
+            // Only the latest caller counts, a card removed from the homepage is not kept
+            // prioritized by its former binds.
+            state.mBoundBySettings = boundBySettings;
+            if (state.mAwaitingBind) {
+                state.mAwaitingBind = false;
+                getStatsLocked(uri).addBindLatency(now - state.mLastNotifyTime);
+                if (state.mRequestTime != 0L) {
+                    // The host caught up, the pending notification no longer has to wait.
+                    state.mDueTime = Math.max(state.mLastNotifyTime + state.mInterval, now);
+                    scheduleDispatchLocked(state.mDueTime);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void handleMessage(Message msg) {
+        if (msg.what != MSG_DISPATCH) {
+            return;
+        }
+        final long now = SystemClock.uptimeMillis();
+        final List<SliceState> dueStates = new ArrayList<>();
+        synchronized (mLock) {
+            mScheduledDispatchTime = Long.MAX_VALUE;
+            long nextDueTime = Long.MAX_VALUE;
+            for (SliceState state : mStates.values()) {
+                if (state.mRequestTime == 0L) {
+                    continue;
+                }
+                if (state.mDueTime <= now) {
+                    dueStates.add(state);
+                } else {
+                    nextDueTime = Math.min(nextDueTime, state.mDueTime);
+                }
+            }
+            dueStates.sort((a, b) -> {
+                final boolean aPrioritized = a.isPrioritized(now);
+                if (aPrioritized != b.isPrioritized(now)) {
+                    return aPrioritized ? -1 : 1;
+                }
+                return Long.compare(a.mDueTime, b.mDueTime);
+            });
+            final boolean hasPrioritized =
+                    !dueStates.isEmpty() && dueStates.get(0).isPrioritized(now);
+            for (int i = dueStates.size() - 1; i >= 0; i--) {
+                final SliceState state = dueStates.get(i);
+                if (hasPrioritized && !state.mDeferred && !state.isPrioritized(now)) {
+                    state.mDeferred = true;
+                    state.mDueTime = now + NOT_PRIORITIZED_DEFER_MS;
+                    nextDueTime = Math.min(nextDueTime, state.mDueTime);
+                    dueStates.remove(i);
+                    continue;
+                }
+                getStatsLocked(state.mWorker.getUri()).addNotifyLatency(now - state.mRequestTime);
+                state.mRequestTime = 0L;
+                state.mLastNotifyTime = now;
+                state.mAwaitingBind = true;
+                state.mDeferred = false;
+            }
+            if (nextDueTime != Long.MAX_VALUE) {
+                scheduleDispatchLocked(nextDueTime);
+            }
+        }
+        for (SliceState state : dueStates) {
+            state.mWorker.getContext().getContentResolver().notifyChange(
+                    state.mWorker.getUri(), null /* observer */);
+        }
+    }
+
+    void dump(PrintWriter writer) {
+        final long now = SystemClock.uptimeMillis();
+        synchronized (mLock) {
+            writer.println("Slice notifications:");
+            for (Map.Entry<Uri, SliceStats> entry : mStats.entrySet()) {
+                final SliceStats stats = entry.getValue();
+                final SliceState state = mStates.get(entry.getKey());
+                final long elapsedMinutes = Math.max(1L,
+                        (now - stats.mFirstRequestTime) / DateUtils.MINUTE_IN_MILLIS);
+                writer.println("  " + entry.getKey()
+                        + (state == null ? " (unpinned)"
+                                : state.isPrioritized(now) ? " (prioritized)" : ""));
+                writer.println("    requests=" + stats.mRequestCount
+                        + " notifies=" + stats.mNotifyCount
+                        + " notifiesPerMinute=" + (stats.mNotifyCount / elapsedMinutes));
+                writer.println("    notifyLatencyMs avg=" + stats.getAverageNotifyLatency()
+                        + " max=" + stats.mMaxNotifyLatency
+                        + " bindLatencyMs avg=" + stats.getAverageBindLatency()
+                        + " max=" + stats.mMaxBindLatency);
+            }
+        }
+    }
+
+    @GuardedBy("mLock")
+    private long getNextDueTimeLocked(SliceState state, long now) {
+        long dueTime = Math.max(now, state.mLastNotifyTime + state.mInterval);
+        if (state.mAwaitingBind) {
+            dueTime = Math.max(dueTime, state.mLastNotifyTime + MAX_BIND_WAIT_MS);
+        }
+        return dueTime;
+    }
+
+    @GuardedBy("mLock")
+    private void scheduleDispatchLocked(long dueTime) {
+        if (dueTime >= mScheduledDispatchTime) {
+            return;
+        }
+        removeMessages(MSG_DISPATCH);
+        mScheduledDispatchTime = dueTime;
+        sendMessageAtTime(obtainMessage(MSG_DISPATCH), dueTime);
+    }
+
+    @GuardedBy("mLock")
+    private SliceStats getStatsLocked(Uri uri) {
+        SliceStats stats = mStats.get(uri);
+        if (stats == null) {
+            stats = new SliceStats(SystemClock.uptimeMillis());
+            mStats.put(uri, stats);
+        }
+        return stats;
+    }
+
+    private static class SliceState {
+        private final SliceBackgroundWorker mWorker;
+        private final long mInterval;
+        // Time of the first request coalesced in the pending notification, 0 if none.
+        private long mRequestTime;
+        private long mDueTime;
+        private long mLastNotifyTime;
+        private long mLastBindTime;
+        private boolean mAwaitingBind;
+        private boolean mBoundBySettings;
+        // Whether the pending notification already gave way to the prioritized slices.
+        private boolean mDeferred;
+
+        SliceState(SliceBackgroundWorker worker) {
+            mWorker = worker;
+            mInterval = worker.getSliceUpdateInterval();
+        }
+
+        boolean isPrioritized(long now) {
+            return mBoundBySettings
+                    || (mLastBindTime != 0L && now - mLastBindTime < VISIBLE_TIMEOUT_MS);
+        }
+    }
+
+    private static class SliceStats {
+        private final long mFirstRequestTime;
+        private long mRequestCount;
+        private long mNotifyCount;
+        private long mTotalNotifyLatency;
+        private long mMaxNotifyLatency;
+        private long mBindCount;
+        private long mTotalBindLatency;
+        private long mMaxBindLatency;
+
+        SliceStats(long firstRequestTime) {
+            mFirstRequestTime = firstRequestTime;
+        }
+
+        void addNotifyLatency(long latency) {
+            mNotifyCount++;
+            mTotalNotifyLatency += latency;
+            mMaxNotifyLatency = Math.max(mMaxNotifyLatency, latency);
+        }
+
+        void addBindLatency(long latency) {
+            mBindCount++;
+            mTotalBindLatency += latency;
+            mMaxBindLatency = Math.max(mMaxBindLatency, latency);
+        }
+
+        long getAverageNotifyLatency() {
+            return mNotifyCount == 0 ? 0 : mTotalNotifyLatency / mNotifyCount;
+        }
+
+        long getAverageBindLatency() {
+            return mBindCount == 0 ? 0 : mTotalBindLatency / mBindCount;
+        }
+    }
+}
@@ -26,8 +26,6 @@ import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
 import com.android.settingslib.applications.ApplicationsState.AppFilter;
 
-import java.util.List;
-
 /*
  * Connects info of apps that change wifi state to the ApplicationsState. Wraps around the generic
  * AppStateAppOpsBridge class to tailor to the semantics of CHANGE_WIFI_STATE. Also provides app
@@ -55,11 +53,8 @@ public class AppStateChangeWifiStateBridge extends AppStateAppOpsBridge {
     }
 
     @Override
-    protected void loadAllExtraInfo() {
-        final List<AppEntry> allApps = mAppSession.getAllApps();
-        for (AppEntry entry : allApps) {
-            updateExtraInfo(entry, entry.info.packageName, entry.info.uid);
-        }
+    protected boolean shouldLoadExtraInfoInChunks() {
+        return true;
     }
 
     public WifiSettingsState getWifiSettingsInfo(String pkg, int uid) {
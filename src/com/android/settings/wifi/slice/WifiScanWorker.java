@@ -47,6 +47,7 @@ public class WifiScanWorker extends SliceBackgroundWorker<WifiSliceItem> impleme
         WifiPickerTracker.WifiPickerTrackerCallback, LifecycleOwner, WifiEntryCallback {
 
     private static final String TAG = "WifiScanWorker";
+    private static final long SLICE_UPDATE_INTERVAL_MS = 1000L;
 
     @VisibleForTesting
     final LifecycleRegistry mLifecycleRegistry;
@@ -89,6 +90,12 @@ public class WifiScanWorker extends SliceBackgroundWorker<WifiSliceItem> impleme
         return mLifecycleRegistry;
     }
 
+    @Override
+    protected long getSliceUpdateInterval() {
+        // Scan results keep changing, don't let them delay the other Slices.
+        return SLICE_UPDATE_INTERVAL_MS;
+    }
+
     /** Called when the state of Wifi has changed. */
     @Override
     public void onWifiStateChanged() {
@@ -24,13 +24,25 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
+import android.app.role.RoleManager;
 import android.content.Context;
 import android.os.Bundle;
+import android.os.UserManager;
+
+import androidx.preference.Preference;
+import androidx.preference.PreferenceCategory;
+import androidx.preference.PreferenceScreen;
 
 import com.android.settings.applications.appcompat.UserAspectRatioAppsPreferenceController;
+import com.android.settings.testutils.FakeFeatureFactory;
 import com.android.settings.testutils.XmlTestUtils;
 import com.android.settings.testutils.shadow.ShadowUserManager;
 import com.android.settings.widget.PreferenceCategoryController;
@@ -45,9 +57,14 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.androidx.fragment.FragmentController;
+import org.robolectric.util.ReflectionHelpers;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 @RunWith(RobolectricTestRunner.class)
 public class AppDashboardFragmentTest {
@@ -81,6 +98,38 @@ public class AppDashboardFragmentTest {
         assertThat(preferenceScreenKeys).containsAtLeastElementsIn(preferenceKeys);
     }
 
+    @Test
+    @Config(shadows = ShadowUserManager.class)
+    public void updatePreferenceStates_loadsControllerStatesOffTheMainThread() {
+        final Thread mainThread = Thread.currentThread();
+        final List<Thread> loadingThreads = Collections.synchronizedList(new ArrayList<>());
+        final Context context = spy(mContext);
+        final RoleManager roleManager = mock(RoleManager.class);
+        final UserManager userManager = mock(UserManager.class);
+        doReturn(roleManager).when(context).getSystemService(RoleManager.class);
+        doReturn(userManager).when(context).getSystemService(UserManager.class);
+        doAnswer(invocation -> {
+            loadingThreads.add(Thread.currentThread());
+            return Collections.emptyList();
+        }).when(roleManager).getRoleHolders(anyString());
+        doAnswer(invocation -> {
+            loadingThreads.add(Thread.currentThread());
+            return Collections.emptyList();
+        }).when(userManager).getUserProfiles();
+        FakeFeatureFactory.setupForTest();
+        final TestAppDashboardFragment fragment = new TestAppDashboardFragment(context);
+        fragment.onAttach(context);
+        fragment.displayPreferences();
+        // The recent apps are loaded again once the page was paused.
+        fragment.pause();
+        loadingThreads.clear();
+
+        fragment.updatePreferenceStates();
+
+        assertThat(loadingThreads).isNotEmpty();
+        assertThat(loadingThreads).doesNotContain(mainThread);
+    }
+
     @Ignore("b/313578776")
     @Test
     @Config(shadows = ShadowUserManager.class)
@@ -99,4 +148,54 @@ public class AppDashboardFragmentTest {
         when(controller.getAvailabilityStatus()).thenReturn(CONDITIONALLY_UNAVAILABLE);
         assertFalse(advancedController.isAvailable());
     }
+
+    /** The apps page, shown on a screen which has a preference for each key. */
+    private static class TestAppDashboardFragment extends AppDashboardFragment {
+        private final Context mContext;
+        private final PreferenceScreen mScreen = mock(PreferenceScreen.class);
+        private final Map<String, Preference> mPreferences = new ConcurrentHashMap<>();
+
+        TestAppDashboardFragment(Context context) {
+            mContext = context;
+            when(mScreen.findPreference(any())).thenAnswer(invocation -> {
+                final String key = invocation.getArgument(0).toString();
+                return mPreferences.computeIfAbsent(key, k -> k.endsWith("_category")
+                        ? new PreferenceCategory(mContext) : new Preference(mContext));
+            });
+            // Runs each load on its own thread, and waits for it.
+            final Executor executor = command -> {
+                final Thread thread = new Thread(command);
+                thread.start();
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+            ReflectionHelpers.setField(this, "mPreferenceStateExecutor", executor);
+        }
+
+        @Override
+        public Context getContext() {
+            return mContext;
+        }
+
+        @Override
+        public PreferenceScreen getPreferenceScreen() {
+            return mScreen;
+        }
+
+        @Override
+        public void updatePreferenceStates() {
+            super.updatePreferenceStates();
+        }
+
+        void displayPreferences() {
+            displayResourceTilesToScreen(mScreen);
+        }
+
+        void pause() {
+            use(AppsPreferenceController.class).onPause();
+        }
+    }
 }
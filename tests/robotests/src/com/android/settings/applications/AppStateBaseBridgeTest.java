@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.pm.ApplicationInfo;
+import android.os.Looper;
+
+import com.android.settingslib.applications.ApplicationsState;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppStateBaseBridgeTest {
+
+    private static final int APP_COUNT = AppStateBaseBridge.LOAD_CHUNK_SIZE * 2 + 1;
+
+    @Mock
+    private ApplicationsState mState;
+    @Mock
+    private ApplicationsState.Session mSession;
+
+    private ArrayList<AppEntry> mApps;
+    private List<Integer> mLoadedCountOnUpdate;
+    private List<Integer> mLoadedCountOnComplete;
+    private TestBridge mBridge;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mApps = new ArrayList<>();
+        // Added in reverse order, the chunks are loaded in label order.
+        for (int i = APP_COUNT - 1; i >= 0; i--) {
+            final AppEntry app = mock(AppEntry.class);
+            app.label = String.format("App %03d", i);
+            app.info = new ApplicationInfo();
+            app.info.packageName = "com.android.app" + i;
+            mApps.add(app);
+        }
+        when(mState.newSession(any())).thenReturn(mSession);
+        when(mState.getBackgroundLooper()).thenReturn(Looper.getMainLooper());
+        when(mSession.getAllApps()).thenReturn(mApps);
+        mLoadedCountOnUpdate = new ArrayList<>();
+        mLoadedCountOnComplete = new ArrayList<>();
+        mBridge = new TestBridge(mState, new AppStateBaseBridge.Callback() {
+            @Override
+            public void onExtraInfoUpdated() {
+                mLoadedCountOnUpdate.add(mBridge.mLoadedApps.size());
+            }
+
+            @Override
+            public void onExtraInfoLoadCompleted() {
+                mLoadedCountOnComplete.add(mBridge.mLoadedApps.size());
+                onExtraInfoUpdated();
+            }
+        });
+    }
+
+    @Test
+    public void loadAll_inChunks_updateAfterFirstAndLastChunks() {
+        mBridge.mLoadInChunks = true;
+
+        mBridge.onLoadEntriesCompleted();
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mBridge.mPrefetchCount).isEqualTo(1);
+        assertThat(mBridge.mLoadedApps).hasSize(APP_COUNT);
+        assertThat(mBridge.mLoadedApps.get(0).label).isEqualTo("App 000");
+        assertThat(mLoadedCountOnUpdate)
+                .containsExactly(AppStateBaseBridge.LOAD_CHUNK_SIZE, APP_COUNT).inOrder();
+    }
+
+    @Test
+    public void loadAll_inChunks_completeAfterLastChunkOnly() {
+        mBridge.mLoadInChunks = true;
+
+        mBridge.onLoadEntriesCompleted();
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mLoadedCountOnComplete).containsExactly(APP_COUNT);
+    }
+
+    @Test
+    public void loadAll_inChunksWithoutApps_completeOnce() {
+        mBridge.mLoadInChunks = true;
+        mApps.clear();
+
+        mBridge.onLoadEntriesCompleted();
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mLoadedCountOnComplete).containsExactly(0);
+        assertThat(mLoadedCountOnUpdate).containsExactly(0);
+    }
+
+    @Test
+    public void loadAll_twiceInChunks_completeForLastLoadOnly() {
+        mBridge.mLoadInChunks = true;
+
+        mBridge.onLoadEntriesCompleted();
+        mBridge.onPackageListChanged();
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mLoadedCountOnComplete)
+                .containsExactly(APP_COUNT + AppStateBaseBridge.LOAD_CHUNK_SIZE);
+    }
+
+    @Test
+    public void loadAll_notInChunks_updateOnce() {
+        mBridge.onLoadEntriesCompleted();
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mBridge.mPrefetchCount).isEqualTo(1);
+        assertThat(mBridge.mLoadedApps).hasSize(APP_COUNT);
+        assertThat(mLoadedCountOnUpdate).containsExactly(APP_COUNT);
+        assertThat(mLoadedCountOnComplete).containsExactly(APP_COUNT);
+    }
+
+    @Test
+    public void loadAll_twice_dropFirstLoadChunks() {
+        mBridge.mLoadInChunks = true;
+
+        mBridge.onLoadEntriesCompleted();
+        mBridge.onPackageListChanged();
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mBridge.mPrefetchCount).isEqualTo(2);
+        // The first load is replaced after its first chunk.
+        assertThat(mBridge.mLoadedApps)
+                .hasSize(APP_COUNT + AppStateBaseBridge.LOAD_CHUNK_SIZE);
+    }
+
+    private static class TestBridge extends AppStateBaseBridge {
+        private final List<AppEntry> mLoadedApps = new ArrayList<>();
+        private boolean mLoadInChunks;
+        private int mPrefetchCount;
+
+        TestBridge(ApplicationsState appState, Callback callback) {
+            super(appState, callback);
+        }
+
+        @Override
+        protected void prefetchExtraInfo(List<AppEntry> apps) {
+            mPrefetchCount++;
+        }
+
+        @Override
+        protected void updateExtraInfo(AppEntry app, String pkg, int uid) {
+            app.extraInfo = Boolean.TRUE;
+            mLoadedApps.add(app);
+        }
+
+        @Override
+        protected boolean shouldLoadExtraInfoInChunks() {
+            return mLoadInChunks;
+        }
+    }
+}
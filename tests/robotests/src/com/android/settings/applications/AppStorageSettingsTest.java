@@ -21,6 +21,7 @@ import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -35,6 +36,7 @@ import android.content.pm.PackageManager;
 import android.view.View;
 import android.widget.Button;
 
+import com.android.settings.deviceinfo.storage.StorageSizeCache;
 import com.android.settingslib.applications.StorageStatsSource.AppStorageStats;
 import com.android.settingslib.widget.ActionButtonsPreference;
 
@@ -57,6 +59,8 @@ public class AppStorageSettingsTest {
     private Button mRightButton;
     @Mock
     private PackageManager mPackageManager;
+    @Mock
+    private StorageSizeCache mStorageSizeCache;
 
     @Before
     public void setUp() {
@@ -66,6 +70,7 @@ public class AppStorageSettingsTest {
         mSettings = spy(new AppStorageSettings());
         mSettings.mPm = mPackageManager;
         mSettings.mPackageName = "Package";
+        mSettings.mUserId = 10;
         mSettings.mSizeController = mSizesController;
         mButtonsPref = createMock();
         mSettings.mButtonsPref = mButtonsPref;
@@ -134,6 +139,33 @@ public class AppStorageSettingsTest {
         verify(mButtonsPref).setButton2Enabled(false);
     }
 
+    @Test
+    public void clearCache_succeeded_shouldInvalidateCachedStorageSize() {
+        doReturn(mStorageSizeCache).when(mSettings).getStorageSizeCache();
+
+        mSettings.new ClearCacheObserver().onRemoveCompleted("Package", true /* succeeded */);
+
+        verify(mStorageSizeCache).invalidatePackage(10, "Package");
+    }
+
+    @Test
+    public void clearCache_failed_shouldKeepCachedStorageSize() {
+        doReturn(mStorageSizeCache).when(mSettings).getStorageSizeCache();
+
+        mSettings.new ClearCacheObserver().onRemoveCompleted("Package", false /* succeeded */);
+
+        verify(mStorageSizeCache, never()).invalidatePackage(anyInt(), any());
+    }
+
+    @Test
+    public void clearData_succeeded_shouldInvalidateCachedStorageSize() {
+        doReturn(mStorageSizeCache).when(mSettings).getStorageSizeCache();
+
+        mSettings.new ClearUserDataObserver().onRemoveCompleted("Package", true /* succeeded */);
+
+        verify(mStorageSizeCache).invalidatePackage(10, "Package");
+    }
+
     private ActionButtonsPreference createMock() {
         final ActionButtonsPreference pref = mock(ActionButtonsPreference.class);
         when(pref.setButton1Text(anyInt())).thenReturn(pref);
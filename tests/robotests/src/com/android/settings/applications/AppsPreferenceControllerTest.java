@@ -140,6 +140,21 @@ public class AppsPreferenceControllerTest {
         verify(mController).refreshUi();
     }
 
+    @Test
+    public void updateState_stateLoadedInBackground_showsLoadedRecentApps() {
+        doNothing().when(mController).loadAllAppsCount();
+        doReturn(true).when(mRecentAppsCategory).addPreference(any());
+        initRecentApps();
+        doReturn(mUsageStats).when(mController).loadRecentApps();
+        mController.loadStateInBackground();
+
+        mController.updateState(mRecentAppsCategory);
+
+        verify(mController).loadRecentApps();
+        assertThat(mRecentAppsCategory.isVisible()).isTrue();
+        assertThat(mAllAppsInfoPref.isVisible()).isFalse();
+    }
+
     private void initRecentApps() {
         mUsageStats = new ArrayList<>();
         final UsageStats stat1 = new UsageStats();
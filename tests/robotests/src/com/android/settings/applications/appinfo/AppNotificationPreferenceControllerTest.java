@@ -37,6 +37,7 @@ import androidx.preference.PreferenceScreen;
 
 import com.android.settings.notification.NotificationBackend;
 import com.android.settings.notification.app.AppNotificationSettings;
+import com.android.settings.testutils.shadow.ShadowThreadUtils;
 import com.android.settingslib.applications.ApplicationsState;
 
 import org.junit.Before;
@@ -52,6 +53,7 @@ import org.robolectric.util.ReflectionHelpers;
 @RunWith(RobolectricTestRunner.class)
 @Config(shadows = {
         com.android.settings.testutils.shadow.ShadowFragment.class,
+        ShadowThreadUtils.class,
 })
 public class AppNotificationPreferenceControllerTest {
 
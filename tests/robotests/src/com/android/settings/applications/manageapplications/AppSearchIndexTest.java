@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import android.content.pm.ApplicationInfo;
+
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppSearchIndexTest {
+
+    private ArrayList<AppEntry> mEntries;
+    private AppSearchIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mEntries = new ArrayList<>();
+        mEntries.add(createAppEntry("Café Finder", "com.example.cafe"));
+        mEntries.add(createAppEntry("Chrome", "com.android.chrome"));
+        mEntries.add(createAppEntry("Calendar", "com.google.android.calendar"));
+        mEntries.add(createAppEntry("Maps", "com.google.android.apps.maps"));
+        mIndex = new AppSearchIndex(mEntries, Locale.US);
+    }
+
+    @Test
+    public void search_emptyQuery_returnAllEntries() {
+        final AppSearchIndex.Result result = mIndex.search("", null /* previous */);
+
+        assertThat(result.getCount()).isEqualTo(4);
+        assertThat(result.getEntries()).isSameInstanceAs(mEntries);
+    }
+
+    @Test
+    public void search_ignoreCaseAndAccents() {
+        final AppSearchIndex.Result result = mIndex.search("CAFE", null /* previous */);
+
+        assertThat(result.getEntries()).containsExactly(mEntries.get(0));
+    }
+
+    @Test
+    public void search_packageNameSegmentPrefix_matched() {
+        assertThat(mIndex.search("com.google", null /* previous */).getEntries())
+                .containsExactly(mEntries.get(2), mEntries.get(3)).inOrder();
+        assertThat(mIndex.search("apps.ma", null /* previous */).getEntries())
+                .containsExactly(mEntries.get(3));
+        // Not the start of a segment.
+        assertThat(mIndex.search("oogle", null /* previous */).getEntries()).isEmpty();
+    }
+
+    @Test
+    public void search_commonPackageSegments_notMatchedAlone() {
+        // Only the labels containing "a", not com.android.chrome.
+        assertThat(mIndex.search("a", null /* previous */).getEntries())
+                .containsExactly(mEntries.get(0), mEntries.get(2), mEntries.get(3)).inOrder();
+        assertThat(mIndex.search("andr", null /* previous */).getEntries()).isEmpty();
+        assertThat(mIndex.search("google.android", null /* previous */).getEntries())
+                .containsExactly(mEntries.get(2), mEntries.get(3)).inOrder();
+    }
+
+    @Test
+    public void search_oneLetterQuery_packageNameNotMatched() {
+        final ArrayList<AppEntry> entries = new ArrayList<>();
+        entries.add(createAppEntry("Music", "com.xylophone.music"));
+        final AppSearchIndex index = new AppSearchIndex(entries, Locale.US);
+
+        assertThat(index.search("x", null /* previous */).getEntries()).isEmpty();
+        assertThat(index.search("xy", null /* previous */).getEntries())
+                .containsExactly(entries.get(0));
+        // Refining the one-letter result must not miss the package name matches.
+        assertThat(index.search("xy", index.search("x", null /* previous */)).getEntries())
+                .containsExactly(entries.get(0));
+    }
+
+    @Test
+    public void search_extendedQuery_refinePreviousResult() {
+        final AppSearchIndex.Result previous = mIndex.search("ca", null /* previous */);
+        assertThat(previous.getEntries())
+                .containsExactly(mEntries.get(0), mEntries.get(2)).inOrder();
+
+        final AppSearchIndex.Result result = mIndex.search("cal", previous);
+
+        assertThat(result.getEntries()).containsExactly(mEntries.get(2));
+        // The previous result is left untouched.
+        assertThat(previous.getEntries())
+                .containsExactly(mEntries.get(0), mEntries.get(2)).inOrder();
+    }
+
+    @Test
+    public void search_shorterQuery_searchAllEntries() {
+        final AppSearchIndex.Result previous = mIndex.search("chrome", null /* previous */);
+
+        final AppSearchIndex.Result result = mIndex.search("ma", previous);
+
+        assertThat(result.getEntries()).containsExactly(mEntries.get(3));
+    }
+
+    @Test
+    public void isIndexOf_otherList_returnFalse() {
+        assertThat(mIndex.isIndexOf(mEntries)).isTrue();
+        assertThat(mIndex.isIndexOf(new ArrayList<>(mEntries))).isFalse();
+    }
+
+    private static AppEntry createAppEntry(String label, String packageName) {
+        final AppEntry entry = mock(AppEntry.class);
+        entry.label = label;
+        entry.info = new ApplicationInfo();
+        entry.info.packageName = packageName;
+        return entry;
+    }
+}
@@ -20,6 +20,7 @@ import static androidx.recyclerview.widget.RecyclerView.SCROLL_STATE_DRAGGING;
 import static androidx.recyclerview.widget.RecyclerView.SCROLL_STATE_IDLE;
 
 import static com.android.settings.applications.manageapplications.AppFilterRegistry.FILTER_APPS_ALL;
+import static com.android.settings.applications.manageapplications.AppFilterRegistry.FILTER_APPS_BLOCKED;
 import static com.android.settings.applications.manageapplications.ManageApplications.LIST_TYPE_MAIN;
 import static com.android.settings.applications.manageapplications.ManageApplications.LIST_TYPE_NOTIFICATION;
 
@@ -285,6 +286,37 @@ public class ManageApplicationsTest {
         verify(loadingViewController).showEmpty(false /* animate */);
     }
 
+    @Test
+    public void onRebuildComplete_filteredListEmptyBeforeExtraInfoLoaded_shouldNotShowEmpty() {
+        when(mUserManager.getProfileIdsWithDisabled(anyInt())).thenReturn(new int[]{});
+        ReflectionHelpers.setField(mFragment, "mUserManager", mUserManager);
+        mFragment.mListType = LIST_TYPE_NOTIFICATION;
+        ReflectionHelpers.setField(mFragment, "mRecyclerView", mock(RecyclerView.class));
+        ReflectionHelpers.setField(
+                mFragment, "mFilterAdapter", mock(ManageApplications.FilterSpinnerAdapter.class));
+        final ManageApplications.ApplicationsAdapter adapter =
+                spy(new ManageApplications.ApplicationsAdapter(mState, mFragment,
+                        AppFilterRegistry.getInstance().get(FILTER_APPS_BLOCKED), new Bundle()));
+        final LoadingViewController loadingViewController =
+                mock(LoadingViewController.class);
+        ReflectionHelpers.setField(adapter, "mLoadingViewController", loadingViewController);
+        ReflectionHelpers.setField(adapter, "mContext", mContext);
+        doNothing().when(adapter).rebuild();
+
+        // The first chunk of apps has none blocked.
+        adapter.onExtraInfoUpdated();
+        adapter.onRebuildComplete(new ArrayList<>());
+
+        verify(loadingViewController, never()).showEmpty(anyBoolean());
+        verify(loadingViewController).showLoadingViewDelayed();
+
+        // None of the other apps is blocked either.
+        adapter.onExtraInfoLoadCompleted();
+        adapter.onRebuildComplete(new ArrayList<>());
+
+        verify(loadingViewController).showEmpty(false /* animate */);
+    }
+
     @Test
     public void onRebuildComplete_hasSearchQuery_shouldFilterSearch() {
         final String query = "Test";
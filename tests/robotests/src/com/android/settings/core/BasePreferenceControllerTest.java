@@ -215,9 +215,38 @@ public class BasePreferenceControllerTest {
         assertThat(category).isEqualTo(SettingsEnums.DISPLAY);
     }
 
+    @Test
+    public void updateState_summaryLoadedInBackground_showsLoadedSummary() {
+        final Preference preference = new Preference(mContext);
+        mPreferenceController.mSummary = "loaded";
+        mPreferenceController.loadStateInBackground();
+        mPreferenceController.mSummary = "changed";
+
+        mPreferenceController.updateState(preference);
+
+        assertThat(preference.getSummary().toString()).isEqualTo("loaded");
+        assertThat(mPreferenceController.mSummaryReads).isEqualTo(1);
+    }
+
+    @Test
+    public void updateState_loadedStateDiscarded_readsSummaryAgain() {
+        final Preference preference = new Preference(mContext);
+        mPreferenceController.mSummary = "loaded";
+        mPreferenceController.loadStateInBackground();
+        mPreferenceController.discardLoadedState();
+        mPreferenceController.mSummary = "changed";
+
+        mPreferenceController.updateState(preference);
+
+        assertThat(preference.getSummary().toString()).isEqualTo("changed");
+        assertThat(mPreferenceController.mSummaryReads).isEqualTo(2);
+    }
+
     private class FakeBasePreferenceController extends BasePreferenceController {
 
         private int mAvailable;
+        private CharSequence mSummary;
+        private int mSummaryReads;
 
         private FakeBasePreferenceController(Context context, String preferenceKey) {
             super(context, preferenceKey);
@@ -229,6 +258,12 @@ public class BasePreferenceControllerTest {
             return mAvailable;
         }
 
+        @Override
+        public CharSequence getSummary() {
+            mSummaryReads++;
+            return mSummary;
+        }
+
         private void setAvailability(int availability) {
             mAvailable = availability;
         }
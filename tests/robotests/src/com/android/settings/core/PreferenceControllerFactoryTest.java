@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.settings.communal.CommunalPreferenceController;
+import com.android.settings.slices.FakePreferenceController;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class PreferenceControllerFactoryTest {
+
+    private static final String KEY = "key";
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        PreferenceControllerFactory.clear();
+    }
+
+    @After
+    public void tearDown() {
+        PreferenceControllerFactory.clear();
+    }
+
+    @Test
+    public void get_keyedController_requiresKey() {
+        final PreferenceControllerFactory factory =
+                PreferenceControllerFactory.get(FakePreferenceController.class.getName());
+
+        assertThat(factory.requiresKey()).isTrue();
+        final BasePreferenceController controller =
+                factory.create(mContext, KEY, /* isWorkProfile= */ true);
+        assertThat(controller).isInstanceOf(FakePreferenceController.class);
+        assertThat(controller.getPreferenceKey()).isEqualTo(KEY);
+    }
+
+    @Test
+    public void get_registeredController_createdWithKey() {
+        final PreferenceControllerFactory factory =
+                PreferenceControllerFactory.get(CommunalPreferenceController.class.getName());
+
+        assertThat(factory.requiresKey()).isTrue();
+        final BasePreferenceController controller =
+                factory.create(mContext, KEY, /* isWorkProfile= */ false);
+        assertThat(controller).isInstanceOf(CommunalPreferenceController.class);
+        assertThat(controller.getPreferenceKey()).isEqualTo(KEY);
+    }
+
+    @Test
+    public void get_sameController_returnCachedFactory() {
+        final String controllerName = FakePreferenceController.class.getName();
+
+        assertThat(PreferenceControllerFactory.get(controllerName))
+                .isSameInstanceAs(PreferenceControllerFactory.get(controllerName));
+    }
+
+    @Test
+    public void get_unknownClass_returnNull() {
+        assertThat(PreferenceControllerFactory.get("com.android.settings.UnknownController"))
+                .isNull();
+        assertThat(PreferenceControllerFactory.get(String.class.getName())).isNull();
+    }
+}
@@ -33,6 +33,7 @@ import android.text.TextUtils;
 import com.android.settings.R;
 import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -58,6 +59,42 @@ public class PreferenceXmlParserUtilsTest {
     @Before
     public void setUp() {
         mContext = getApplicationContext();
+        PreferenceMetadataCache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        PreferenceMetadataCache.clear();
+    }
+
+    @Test
+    public void extractMetadata_calledTwice_returnCachedCopy()
+            throws IOException, XmlPullParserException {
+        final List<Bundle> metadata = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.top_level_settings, MetadataFlag.FLAG_NEED_KEY);
+        metadata.get(0).putString(PreferenceXmlParserUtils.METADATA_KEY, "modified_key");
+
+        final List<Bundle> cachedMetadata = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.top_level_settings, MetadataFlag.FLAG_NEED_KEY);
+
+        assertThat(PreferenceMetadataCache.size()).isEqualTo(1);
+        assertThat(cachedMetadata).hasSize(metadata.size());
+        assertThat(cachedMetadata.get(0).getString(PreferenceXmlParserUtils.METADATA_KEY))
+                .isNotEqualTo("modified_key");
+    }
+
+    @Test
+    public void extractMetadata_differentFlags_cachedSeparately()
+            throws IOException, XmlPullParserException {
+        PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.top_level_settings, MetadataFlag.FLAG_NEED_KEY);
+        final List<Bundle> metadata = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.top_level_settings,
+                MetadataFlag.FLAG_NEED_KEY | MetadataFlag.FLAG_NEED_PREF_TITLE);
+
+        assertThat(PreferenceMetadataCache.size()).isEqualTo(2);
+        assertThat(metadata.get(0).containsKey(PreferenceXmlParserUtils.METADATA_TITLE))
+                .isTrue();
     }
 
     @Test
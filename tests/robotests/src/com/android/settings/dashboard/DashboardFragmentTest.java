@@ -54,6 +54,7 @@ import androidx.test.core.app.ApplicationProvider;
 
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.settings.R;
+import com.android.settings.core.BasePreferenceController;
 import com.android.settings.core.PreferenceControllerMixin;
 import com.android.settings.slices.BlockingSlicePrefController;
 import com.android.settings.testutils.FakeFeatureFactory;
@@ -325,6 +326,50 @@ public class DashboardFragmentTest {
         verify(mockController2).getPreferenceKey();
     }
 
+    @Test
+    public void updatePreferenceStates_inBackground_updateAvailablePrefsOnly() {
+        final BasePreferenceController availableController = mock(BasePreferenceController.class);
+        final BasePreferenceController unavailableController =
+                mock(BasePreferenceController.class);
+        final Preference preference = new Preference(mContext);
+        when(availableController.getPreferenceKey()).thenReturn("key1");
+        when(unavailableController.getPreferenceKey()).thenReturn("key2");
+        when(availableController.getAvailabilityStatus())
+                .thenReturn(BasePreferenceController.AVAILABLE);
+        when(unavailableController.getAvailabilityStatus())
+                .thenReturn(BasePreferenceController.UNSUPPORTED_ON_DEVICE);
+        when(mTestFragment.mScreen.findPreference("key1")).thenReturn(preference);
+        mTestFragment.addPreferenceController(availableController);
+        mTestFragment.addPreferenceController(unavailableController);
+        mTestFragment.mUpdateInBackground = true;
+        mTestFragment.mPreferenceStateExecutor = Runnable::run;
+
+        mTestFragment.updatePreferenceStates();
+
+        verify(availableController).loadStateInBackground();
+        verify(availableController).updateState(preference);
+        verify(availableController).discardLoadedState();
+        verify(unavailableController, never()).loadStateInBackground();
+        verify(unavailableController, never()).updateState(any(Preference.class));
+    }
+
+    @Test
+    public void updatePreferenceStates_inBackgroundFailed_checkOnMainThread() {
+        final AbstractPreferenceController controller = mock(AbstractPreferenceController.class);
+        final Preference preference = new Preference(mContext);
+        when(controller.getPreferenceKey()).thenReturn("key1");
+        when(controller.isAvailable()).thenThrow(new IllegalStateException()).thenReturn(true);
+        when(mTestFragment.mScreen.findPreference("key1")).thenReturn(preference);
+        mTestFragment.addPreferenceController(controller);
+        mTestFragment.mUpdateInBackground = true;
+        mTestFragment.mPreferenceStateExecutor = Runnable::run;
+
+        mTestFragment.updatePreferenceStates();
+
+        verify(controller, times(2)).isAvailable();
+        verify(controller).updateState(preference);
+    }
+
     @Test
     public void onExpandButtonClick_shouldLogAdvancedButtonExpand() {
         final MetricsFeatureProvider metricsFeatureProvider
@@ -543,6 +588,7 @@ public class DashboardFragmentTest {
         private final ContentResolver mContentResolver;
 
         public final PreferenceScreen mScreen;
+        public boolean mUpdateInBackground;
 
         public TestFragment(Context context) {
             mContext = context;
@@ -576,6 +622,11 @@ public class DashboardFragmentTest {
             return "TEST_FRAG";
         }
 
+        @Override
+        protected boolean shouldUpdatePreferenceStatesInBackground() {
+            return mUpdateInBackground;
+        }
+
         @Override
         protected int getPreferenceScreenResId() {
             return 0;
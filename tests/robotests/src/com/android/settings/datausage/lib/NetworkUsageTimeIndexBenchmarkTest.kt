@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage.lib
+
+import android.text.format.DateUtils
+import android.util.Log
+import com.android.settings.datausage.lib.NetworkStatsRepository.Companion.Bucket
+import com.android.settings.datausage.lib.NetworkStatsRepository.Companion.aggregate
+import com.android.settings.datausage.lib.NetworkStatsRepository.Companion.filterTime
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+/**
+ * Benchmarks the cycle and daily usage of a year of hourly buckets, as shown by the data usage
+ * cycle spinner and chart.
+ *
+ * The [NetworkUsageTimeIndex] is verified to return the same usage as filtering the bucket list,
+ * and the average time of both is logged with the [TAG] for tracking.
+ */
+@RunWith(RobolectricTestRunner::class)
+class NetworkUsageTimeIndexBenchmarkTest {
+    private val buckets = List(HOURS) { hour ->
+        Bucket(
+            uid = 0,
+            // Some hours have no usage, as on a real device.
+            bytes = if (hour % 7 == 0) 0L else (hour % 24 + 1) * 1_000_000L,
+            startTimeStamp = START_TIME + hour * DateUtils.HOUR_IN_MILLIS,
+            endTimeStamp = START_TIME + (hour + 1) * DateUtils.HOUR_IN_MILLIS,
+        )
+    }
+
+    /** The monthly cycles and, for each of them, the days shown by the chart. */
+    private val ranges = buildList {
+        for (cycle in 0 until CYCLES) {
+            val cycleStart = START_TIME + cycle * CYCLE_DAYS * DateUtils.DAY_IN_MILLIS
+            add(cycleStart to cycleStart + CYCLE_DAYS * DateUtils.DAY_IN_MILLIS)
+            for (day in 0 until CYCLE_DAYS) {
+                val dayStart = cycleStart + day * DateUtils.DAY_IN_MILLIS
+                add(dayStart to dayStart + DateUtils.DAY_IN_MILLIS)
+            }
+        }
+    }
+
+    @Test
+    fun getUsage_sameAsFilterTime() {
+        val index = NetworkUsageTimeIndex(buckets)
+
+        for ((startTime, endTime) in ranges) {
+            assertThat(index.getUsage(startTime, endTime))
+                .isEqualTo(buckets.filterTime(startTime, endTime).aggregate()?.usage ?: 0)
+        }
+    }
+
+    @Test
+    fun getUsage_benchmark() {
+        val filterTimeUsage = benchmark("filterTime") {
+            ranges.sumOf { (startTime, endTime) ->
+                buckets.filterTime(startTime, endTime).aggregate()?.usage ?: 0
+            }
+        }
+        val indexUsage = benchmark("NetworkUsageTimeIndex") {
+            // Includes building the index, as done once per repository.
+            val index = NetworkUsageTimeIndex(buckets)
+            ranges.sumOf { (startTime, endTime) -> index.getUsage(startTime, endTime) }
+        }
+
+        assertThat(indexUsage).isEqualTo(filterTimeUsage)
+        assertThat(indexUsage).isGreaterThan(0L)
+    }
+
+    private fun benchmark(name: String, block: () -> Long): Long {
+        var result = block()
+        val startTime = System.nanoTime()
+        repeat(BENCHMARK_ITERATIONS) { result = block() }
+        val averageTime = (System.nanoTime() - startTime) / BENCHMARK_ITERATIONS
+        Log.d(TAG, "$name: ${averageTime / 1000} us/op")
+        return result
+    }
+
+    private companion object {
+        const val TAG = "NetworkUsageTimeIndexBenchmark"
+        const val START_TIME = 1640995200000L
+        const val CYCLES = 12
+        const val CYCLE_DAYS = 30
+        const val HOURS = 365 * 24
+        const val BENCHMARK_ITERATIONS = 5
+    }
+}
@@ -212,6 +212,26 @@ public class NonCurrentUserControllerTest {
         assertThat(preference.getSummary()).isEqualTo("30 MB");
     }
 
+    @Test
+    public void handleResult_profileStillLoading_sizeNotUpdated() {
+        mPrimaryUser.id = 10;
+        int[] profiles = {mPrimaryUser.id, 11};
+        mController = new NonCurrentUserController(mContext, mPrimaryUser, profiles);
+        final StorageCacheHelper cacheHelper = new StorageCacheHelper(mContext, mPrimaryUser.id);
+        final SparseArray<StorageAsyncLoader.StorageResult> result = new SparseArray<>();
+        result.put(10, createStorageResult(MEGABYTE_IN_BYTES * 30));
+
+        // Partial result of StorageAsyncLoader, profile 11 is still loading.
+        mController.handleResult(result);
+
+        assertThat(cacheHelper.retrieveUsedSize()).isEqualTo(0);
+
+        result.put(11, createStorageResult(MEGABYTE_IN_BYTES * 10));
+        mController.handleResult(result);
+
+        assertThat(cacheHelper.retrieveUsedSize()).isEqualTo(MEGABYTE_IN_BYTES * 40);
+    }
+
     @Test
     public void dontAddPrimaryProfileAsASecondaryProfile() {
         final ArrayList<UserInfo> userInfos = new ArrayList<>();
@@ -288,4 +308,11 @@ public class NonCurrentUserControllerTest {
         assertThat(controllers).hasSize(2);
         assertThat(controllers.get(0).getUser().id == mPrimaryUser.id).isTrue();
     }
+
+    private static StorageAsyncLoader.StorageResult createStorageResult(long totalBytes) {
+        final StorageAsyncLoader.StorageResult result = new StorageAsyncLoader.StorageResult();
+        result.externalStats =
+                new StorageStatsSource.ExternalStorageStats(totalBytes, 0, 0, 0, 0);
+        return result;
+    }
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.deviceinfo.storage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Files.FileColumns;
+import android.provider.MediaStore.MediaColumns;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Benchmarks the MediaStore category sizing of {@link StorageAsyncLoader} on a synthetic photo
+ * library.
+ *
+ * <p>The grouped query is verified to return the same sizes as the per-category queries with a
+ * single pass over the files table, and the average time of both modes is logged with the
+ * {@link #TAG} for tracking.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class StorageMediaSizesBenchmarkTest {
+    private static final String TAG = "StorageMediaSizesBenchmark";
+    private static final int IMAGES = 20000;
+    private static final int VIDEOS = 2000;
+    private static final int AUDIO = 1000;
+    private static final int DOCUMENTS = 1000;
+    private static final int OTHERS = 1000;
+    private static final int BENCHMARK_ITERATIONS = 10;
+
+    private FakeMediaProvider mProvider;
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mProvider = new FakeMediaProvider();
+        mProvider.populate();
+        ShadowContentResolver.registerProviderInternal(MediaStore.AUTHORITY, mProvider);
+        mResolver = ApplicationProvider.getApplicationContext().getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.close();
+    }
+
+    @Test
+    public void queryGroupedMediaSizes_sameSizesAsPerCategoryQueries() {
+        final StorageAsyncLoader.MediaSizes perCategory = queryPerCategory();
+        final StorageAsyncLoader.MediaSizes grouped =
+                StorageAsyncLoader.queryGroupedMediaSizes(mResolver);
+
+        assertThat(grouped.imagesSize).isEqualTo(perCategory.imagesSize);
+        assertThat(grouped.videosSize).isEqualTo(perCategory.videosSize);
+        assertThat(grouped.audioSize).isEqualTo(perCategory.audioSize);
+        assertThat(grouped.documentsSize).isEqualTo(perCategory.documentsSize);
+        assertThat(grouped.otherSize).isEqualTo(perCategory.otherSize);
+        assertThat(grouped.trashSize).isEqualTo(perCategory.trashSize);
+        assertThat(grouped.imagesSize).isGreaterThan(0L);
+        assertThat(grouped.trashSize).isGreaterThan(0L);
+    }
+
+    @Test
+    public void queryGroupedMediaSizes_singleQuery() {
+        mProvider.mQueryCount = 0;
+        benchmark("queryMediaSizesPerCategory", this::queryPerCategory);
+        final int perCategoryQueries = mProvider.mQueryCount / (BENCHMARK_ITERATIONS + 1);
+
+        mProvider.mQueryCount = 0;
+        benchmark("queryGroupedMediaSizes",
+                () -> StorageAsyncLoader.queryGroupedMediaSizes(mResolver));
+        final int groupedQueries = mProvider.mQueryCount / (BENCHMARK_ITERATIONS + 1);
+
+        assertThat(perCategoryQueries).isEqualTo(6);
+        assertThat(groupedQueries).isEqualTo(1);
+    }
+
+    @Test
+    public void queryGroupedMediaSizes_queryFailed_returnNull() {
+        mProvider.mFailQueries = true;
+
+        assertThat(StorageAsyncLoader.queryGroupedMediaSizes(mResolver)).isNull();
+    }
+
+    private StorageAsyncLoader.MediaSizes queryPerCategory() {
+        return StorageAsyncLoader.queryMediaSizesPerCategory(mResolver, Runnable::run).join();
+    }
+
+    private <T> T benchmark(String name, Supplier<T> query) {
+        T result = query.get();
+        final long startTime = System.nanoTime();
+        for (int iteration = 0; iteration < BENCHMARK_ITERATIONS; iteration++) {
+            result = query.get();
+        }
+        final long averageTime = (System.nanoTime() - startTime) / BENCHMARK_ITERATIONS;
+        Log.d(TAG, String.format("%s: %d us/op", name, averageTime / 1000));
+        return result;
+    }
+
+    /** MediaStore stand-in running the queries against an in-memory files table. */
+    private static final class FakeMediaProvider extends ContentProvider {
+        private final SQLiteDatabase mDatabase = SQLiteDatabase.create(null /* factory */);
+        private int mQueryCount;
+        private boolean mFailQueries;
+
+        void populate() {
+            mDatabase.execSQL("CREATE TABLE files (_id INTEGER PRIMARY KEY, volume_name TEXT,"
+                    + " media_type INTEGER, mime_type TEXT, size INTEGER, is_trashed INTEGER)");
+            final List<ContentValues> rows = new ArrayList<>();
+            addRows(rows, IMAGES, FileColumns.MEDIA_TYPE_IMAGE, "image/jpeg", 3_000_000L);
+            addRows(rows, VIDEOS, FileColumns.MEDIA_TYPE_VIDEO, "video/mp4", 50_000_000L);
+            addRows(rows, AUDIO, FileColumns.MEDIA_TYPE_AUDIO, "audio/mpeg", 5_000_000L);
+            addRows(rows, DOCUMENTS, FileColumns.MEDIA_TYPE_DOCUMENT, "application/pdf",
+                    200_000L);
+            addRows(rows, OTHERS, FileColumns.MEDIA_TYPE_NONE, "application/zip", 1_000_000L);
+            // Directories have no mime type and are not counted.
+            addRows(rows, OTHERS, FileColumns.MEDIA_TYPE_NONE, null /* mimeType */, 4096L);
+            mDatabase.beginTransaction();
+            try {
+                for (ContentValues row : rows) {
+                    mDatabase.insert("files", null /* nullColumnHack */, row);
+                }
+                mDatabase.setTransactionSuccessful();
+            } finally {
+                mDatabase.endTransaction();
+            }
+        }
+
+        void close() {
+            mDatabase.close();
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, Bundle queryArgs,
+                CancellationSignal cancellationSignal) {
+            mQueryCount++;
+            if (mFailQueries) {
+                throw new IllegalArgumentException("Unsupported query");
+            }
+            final List<String> where = new ArrayList<>();
+            final String path = uri.getPath();
+            if (path.contains("/images/")) {
+                where.add(FileColumns.MEDIA_TYPE + "=" + FileColumns.MEDIA_TYPE_IMAGE);
+            } else if (path.contains("/video/")) {
+                where.add(FileColumns.MEDIA_TYPE + "=" + FileColumns.MEDIA_TYPE_VIDEO);
+            } else if (path.contains("/audio/")) {
+                where.add(FileColumns.MEDIA_TYPE + "=" + FileColumns.MEDIA_TYPE_AUDIO);
+            }
+            switch (queryArgs.getInt(MediaStore.QUERY_ARG_MATCH_TRASHED,
+                    MediaStore.MATCH_EXCLUDE)) {
+                case MediaStore.MATCH_ONLY:
+                    where.add(MediaColumns.IS_TRASHED + "=1");
+                    break;
+                case MediaStore.MATCH_EXCLUDE:
+                    where.add(MediaColumns.IS_TRASHED + "=0");
+                    break;
+                default:
+                    break;
+            }
+            final String selection = queryArgs.getString(ContentResolver.QUERY_ARG_SQL_SELECTION);
+            if (selection != null) {
+                where.add("(" + selection + ")");
+            }
+            return mDatabase.query("files", projection, String.join(" AND ", where),
+                    null /* selectionArgs */,
+                    queryArgs.getString(ContentResolver.QUERY_ARG_SQL_GROUP_BY),
+                    null /* having */, null /* orderBy */);
+        }
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection,
+                String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+
+        private static void addRows(List<ContentValues> rows, int count, int mediaType,
+                String mimeType, long size) {
+            for (int i = 0; i < count; i++) {
+                final ContentValues row = new ContentValues();
+                row.put(MediaColumns.VOLUME_NAME, MediaStore.VOLUME_EXTERNAL_PRIMARY);
+                row.put(FileColumns.MEDIA_TYPE, mediaType);
+                row.put(MediaColumns.MIME_TYPE, mimeType);
+                row.put(MediaColumns.SIZE, size + i);
+                // One file out of twenty is in the trash.
+                row.put(MediaColumns.IS_TRASHED, i % 20 == 0 ? 1 : 0);
+                rows.add(row);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.deviceinfo.storage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class StorageSizeCacheTest {
+    private static final String PACKAGE_NAME = "com.android.test";
+    private static final String VOLUME_UUID = null;
+    private static final int USER_ID = 0;
+    private static final long GENERATION = 42L;
+
+    private Context mContext;
+    private long mCurrentTime;
+    private StorageSizeCache mCache;
+    private ApplicationInfo mApp;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mCurrentTime = 1000L;
+        mCache = new StorageSizeCache(mContext, () -> mCurrentTime);
+        mApp = new ApplicationInfo();
+        mApp.packageName = PACKAGE_NAME;
+        mApp.sourceDir = "/data/app/test-1/base.apk";
+    }
+
+    @After
+    public void tearDown() {
+        mCache.clear();
+    }
+
+    @Test
+    public void getAppEntry_cached_returnEntry() {
+        mCache.putAppEntry(VOLUME_UUID, USER_ID, mApp, 100L, 10L);
+
+        final StorageSizeCache.AppEntry entry = mCache.getAppEntry(VOLUME_UUID, USER_ID, mApp);
+
+        assertThat(entry.mBlamedSize).isEqualTo(100L);
+        assertThat(entry.mCodeBytes).isEqualTo(10L);
+    }
+
+    @Test
+    public void getAppEntry_packageUpdated_returnNull() {
+        mCache.putAppEntry(VOLUME_UUID, USER_ID, mApp, 100L, 10L);
+        mApp.sourceDir = "/data/app/test-2/base.apk";
+
+        assertThat(mCache.getAppEntry(VOLUME_UUID, USER_ID, mApp)).isNull();
+    }
+
+    @Test
+    public void getAppEntry_expired_returnNull() {
+        mCache.putAppEntry(VOLUME_UUID, USER_ID, mApp, 100L, 10L);
+        mCurrentTime += StorageSizeCache.APP_STATS_MAX_AGE_MILLIS + 1;
+
+        assertThat(mCache.getAppEntry(VOLUME_UUID, USER_ID, mApp)).isNull();
+    }
+
+    @Test
+    public void getAppEntry_invalidated_returnNull() {
+        mCache.putAppEntry(VOLUME_UUID, USER_ID, mApp, 100L, 10L);
+
+        mCache.invalidatePackage(USER_ID, PACKAGE_NAME);
+
+        assertThat(mCache.getAppEntry(VOLUME_UUID, USER_ID, mApp)).isNull();
+    }
+
+    @Test
+    public void retainPackages_removedPackage_dropEntry() {
+        mCache.putAppEntry(VOLUME_UUID, USER_ID, mApp, 100L, 10L);
+
+        mCache.retainPackages(VOLUME_UUID, USER_ID, List.of());
+
+        assertThat(mCache.getAppEntry(VOLUME_UUID, USER_ID, mApp)).isNull();
+    }
+
+    @Test
+    public void getMediaSizes_generationChanged_returnNull() {
+        final StorageAsyncLoader.MediaSizes sizes = new StorageAsyncLoader.MediaSizes();
+        sizes.imagesSize = 500L;
+        mCache.putMediaSizes(USER_ID, GENERATION, sizes);
+
+        assertThat(mCache.getMediaSizes(USER_ID, GENERATION).imagesSize).isEqualTo(500L);
+        assertThat(mCache.getMediaSizes(USER_ID, GENERATION + 1)).isNull();
+    }
+
+    @Test
+    public void persist_restoreFromDisk() {
+        final StorageAsyncLoader.MediaSizes sizes = new StorageAsyncLoader.MediaSizes();
+        sizes.trashSize = 300L;
+        mCache.putAppEntry(VOLUME_UUID, USER_ID, mApp, 100L, 10L);
+        mCache.putMediaSizes(USER_ID, GENERATION, sizes);
+
+        mCache.persist();
+        final StorageSizeCache restoredCache = new StorageSizeCache(mContext, () -> mCurrentTime);
+
+        assertThat(restoredCache.getAppEntry(VOLUME_UUID, USER_ID, mApp).mBlamedSize)
+                .isEqualTo(100L);
+        assertThat(restoredCache.getMediaSizes(USER_ID, GENERATION).trashSize).isEqualTo(300L);
+    }
+
+    @Test
+    public void dump_containsHitRate() throws Exception {
+        mCache.putAppEntry(VOLUME_UUID, USER_ID, mApp, 100L, 10L);
+        mCache.getAppEntry(VOLUME_UUID, USER_ID, mApp);
+        mCurrentTime += 500L;
+        mCache.invalidatePackage(USER_ID, PACKAGE_NAME);
+        mCache.getAppEntry(VOLUME_UUID, USER_ID, mApp);
+
+        final JSONObject dump = mCache.dump();
+
+        assertThat(dump.getLong("appHits")).isEqualTo(1L);
+        assertThat(dump.getLong("appMisses")).isEqualTo(1L);
+        assertThat(dump.getString("appHitRate")).isEqualTo("0.5");
+        assertThat(dump.getLong("invalidations")).isEqualTo(1L);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+import android.text.format.DateUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Tests for {@link BatteryHistoryTimeline}. */
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryHistoryTimelineTest {
+    private static final String FAKE_ENTRY_KEY = "fake_entry_key";
+    private static final String OTHER_ENTRY_KEY = "other_entry_key";
+    // Timezone GMT+8: 2022-01-01 00:05:00
+    private static final long START_TIMESTAMP = 1640966700000L;
+
+    @Test
+    public void toSortedArray_returnsSortedTimestamps() {
+        assertThat(BatteryHistoryTimeline.toSortedArray(List.of(30L, 10L, 20L)))
+                .isEqualTo(new long[] {10L, 20L, 30L});
+    }
+
+    @Test
+    public void getTimestampSlots_returnsHourlySlots() {
+        final long currentTime = START_TIMESTAMP + 2 * DateUtils.HOUR_IN_MILLIS;
+
+        assertThat(BatteryHistoryTimeline.getTimestampSlots(START_TIMESTAMP, currentTime))
+                .isEqualTo(
+                        new long[] {
+                            START_TIMESTAMP,
+                            1640970000000L, // 2022-01-01 01:00:00
+                            1640973600000L, // 2022-01-01 02:00:00
+                            currentTime
+                        });
+    }
+
+    @Test
+    public void getTimestampSlots_startLaterThanCurrentTime_returnsEmpty() {
+        assertThat(BatteryHistoryTimeline.getTimestampSlots(START_TIMESTAMP, START_TIMESTAMP))
+                .isEmpty();
+    }
+
+    @Test
+    public void findNearestTimestamp_unsortedTimestamps_returnsExpectedResult() {
+        final long[] timestamps = BatteryHistoryTimeline.toSortedArray(List.of(40L, 20L, 10L));
+
+        assertThat(BatteryHistoryTimeline.findNearestTimestamp(timestamps, /* target= */ 30L))
+                .isEqualTo(new long[] {20L, 40L});
+        assertThat(BatteryHistoryTimeline.findNearestTimestamp(timestamps, /* target= */ 5L))
+                .isEqualTo(new long[] {0L, 10L});
+        assertThat(BatteryHistoryTimeline.findNearestTimestamp(timestamps, /* target= */ 50L))
+                .isEqualTo(new long[] {40L, 0L});
+    }
+
+    @Test
+    public void interpolate_returnsInterpolatedEntriesForEachConsumer() {
+        final long upperTimestamp = START_TIMESTAMP + DateUtils.HOUR_IN_MILLIS;
+        final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap = new HashMap<>();
+        batteryHistoryMap.put(
+                START_TIMESTAMP,
+                Map.of(FAKE_ENTRY_KEY, createEntry(START_TIMESTAMP, /* usageTimeInMs= */ 0L)));
+        batteryHistoryMap.put(
+                upperTimestamp,
+                Map.of(
+                        FAKE_ENTRY_KEY,
+                        createEntry(upperTimestamp, /* usageTimeInMs= */ 600L),
+                        OTHER_ENTRY_KEY,
+                        createEntry(upperTimestamp, /* usageTimeInMs= */ 300L)));
+        final BatteryHistoryTimeline timeline = new BatteryHistoryTimeline(batteryHistoryMap);
+        final long[] timestampSlots =
+                BatteryHistoryTimeline.getTimestampSlots(START_TIMESTAMP, upperTimestamp);
+
+        final Map<Long, Map<String, BatteryHistEntry>> resultMap =
+                timeline.interpolate(timestampSlots);
+
+        // The last slot for the current time is excluded.
+        assertThat(resultMap).hasSize(timestampSlots.length - 1);
+        assertThat(resultMap.get(START_TIMESTAMP))
+                .isSameInstanceAs(batteryHistoryMap.get(START_TIMESTAMP));
+        final Map<String, BatteryHistEntry> slotEntryMap = resultMap.get(timestampSlots[1]);
+        assertThat(slotEntryMap.keySet()).containsExactly(FAKE_ENTRY_KEY, OTHER_ENTRY_KEY);
+        // 2022-01-01 01:00:00 is 55 minutes after the start timestamp.
+        assertThat(slotEntryMap.get(FAKE_ENTRY_KEY).mForegroundUsageTimeInMs).isEqualTo(550L);
+        assertThat(slotEntryMap.get(OTHER_ENTRY_KEY).mForegroundUsageTimeInMs).isEqualTo(275L);
+    }
+
+    @Test
+    public void interpolate_abnormalResetCondition_returnsUpperEntry() {
+        final long upperTimestamp = START_TIMESTAMP + DateUtils.HOUR_IN_MILLIS;
+        final BatteryHistEntry upperEntry = createEntry(upperTimestamp, /* usageTimeInMs= */ 10L);
+        final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap = new HashMap<>();
+        batteryHistoryMap.put(
+                START_TIMESTAMP,
+                Map.of(FAKE_ENTRY_KEY, createEntry(START_TIMESTAMP, /* usageTimeInMs= */ 600L)));
+        batteryHistoryMap.put(upperTimestamp, Map.of(FAKE_ENTRY_KEY, upperEntry));
+        final long[] timestampSlots =
+                BatteryHistoryTimeline.getTimestampSlots(START_TIMESTAMP, upperTimestamp);
+
+        final Map<Long, Map<String, BatteryHistEntry>> resultMap =
+                new BatteryHistoryTimeline(batteryHistoryMap).interpolate(timestampSlots);
+
+        assertThat(resultMap.get(timestampSlots[1]).get(FAKE_ENTRY_KEY))
+                .isSameInstanceAs(upperEntry);
+    }
+
+    private static BatteryHistEntry createEntry(final long timestamp, final long usageTimeInMs) {
+        final ContentValues values = new ContentValues();
+        values.put(BatteryHistEntry.KEY_TIMESTAMP, Long.valueOf(timestamp));
+        values.put(
+                BatteryHistEntry.KEY_BATTERY_INFORMATION,
+                ConvertUtils.convertBatteryInformationToString(
+                        BatteryInformation.newBuilder()
+                                .setBootTimestamp(timestamp)
+                                .setForegroundUsageTimeInMs(usageTimeInMs)
+                                .build()));
+        return new BatteryHistEntry(values);
+    }
+}
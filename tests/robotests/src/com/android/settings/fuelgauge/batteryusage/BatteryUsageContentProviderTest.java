@@ -19,6 +19,7 @@ package com.android.settings.fuelgauge.batteryusage;
 import static com.google.common.truth.Truth.assertThat;
 
 import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.when;
 
 import android.content.ContentResolver;
 import android.content.ContentValues;
@@ -32,9 +33,11 @@ import com.android.settings.fuelgauge.batteryusage.db.AppUsageEventEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryEventEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryState;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryStateDatabase;
+import com.android.settings.fuelgauge.batteryusage.db.BatteryStateSnapshotEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryUsageSlotEntity;
 import com.android.settings.testutils.BatteryTestUtils;
 import com.android.settings.testutils.FakeClock;
+import com.android.settings.testutils.FakeFeatureFactory;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -450,6 +453,137 @@ public final class BatteryUsageContentProviderTest {
         assertThat(cursor2.getCount()).isEqualTo(0);
     }
 
+    @Test
+    public void bulkInsert_batteryEvents_insertsAllRows() {
+        mProvider.onCreate();
+        final ContentValues[] valuesArray = new ContentValues[3];
+        for (int index = 0; index < valuesArray.length; index++) {
+            final ContentValues values = new ContentValues();
+            values.put(BatteryEventEntity.KEY_TIMESTAMP, 10001L + index);
+            values.put(
+                    BatteryEventEntity.KEY_BATTERY_EVENT_TYPE,
+                    BatteryEventType.POWER_CONNECTED.getNumber());
+            values.put(BatteryEventEntity.KEY_BATTERY_LEVEL, 60 + index);
+            valuesArray[index] = values;
+        }
+
+        final int size = mProvider.bulkInsert(DatabaseUtils.BATTERY_EVENT_URI, valuesArray);
+
+        assertThat(size).isEqualTo(3);
+        final List<BatteryEventEntity> entities =
+                BatteryStateDatabase.getInstance(mContext).batteryEventDao().getAll();
+        assertThat(entities).hasSize(3);
+        assertThat(entities.get(0).timestamp).isEqualTo(10003L);
+        assertThat(entities.get(0).batteryLevel).isEqualTo(62);
+    }
+
+    @Test
+    public void bulkInsert_batteryUsageSlots_insertsAllRows() {
+        mProvider.onCreate();
+        final ContentValues values1 = new ContentValues();
+        values1.put(BatteryUsageSlotEntity.KEY_TIMESTAMP, 10001L);
+        values1.put(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT, "TEST_STRING1");
+        final ContentValues values2 = new ContentValues();
+        values2.put(BatteryUsageSlotEntity.KEY_TIMESTAMP, 10002L);
+        values2.put(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT, "TEST_STRING2");
+
+        final int size =
+                mProvider.bulkInsert(
+                        DatabaseUtils.BATTERY_USAGE_SLOT_URI,
+                        new ContentValues[] {values1, values2});
+
+        assertThat(size).isEqualTo(2);
+        final List<BatteryUsageSlotEntity> entities =
+                BatteryStateDatabase.getInstance(mContext).batteryUsageSlotDao().getAll();
+        assertThat(entities).hasSize(2);
+        assertThat(entities.get(0).batteryUsageSlot).isEqualTo("TEST_STRING1");
+        assertThat(entities.get(1).batteryUsageSlot).isEqualTo("TEST_STRING2");
+    }
+
+    @Test
+    public void bulkInsert_batteryStatesInCompactStorage_insertsOneSnapshotPerTimestamp() {
+        enableCompactStorage();
+        mProvider.onCreate();
+
+        final int size =
+                mProvider.bulkInsert(
+                        VALID_BATTERY_STATE_CONTENT_URI,
+                        new ContentValues[] {
+                            createBatteryStateValues(TIMESTAMP1, 1001L, PACKAGE_NAME1),
+                            createBatteryStateValues(TIMESTAMP1, 1002L, PACKAGE_NAME2),
+                            createBatteryStateValues(TIMESTAMP2, 1001L, PACKAGE_NAME1)
+                        });
+
+        assertThat(size).isEqualTo(3);
+        final BatteryStateDatabase database = BatteryStateDatabase.getInstance(mContext);
+        assertThat(database.batteryStateDao().getAllAfter(0)).isEmpty();
+        final List<BatteryStateSnapshotEntity> snapshots =
+                database.batteryStateSnapshotDao().getAllAfter(0);
+        assertThat(snapshots).hasSize(2);
+        assertThat(snapshots.get(0).timestamp).isEqualTo(TIMESTAMP1);
+        assertThat(snapshots.get(0).consumerCount).isEqualTo(2);
+        assertThat(snapshots.get(1).timestamp).isEqualTo(TIMESTAMP2);
+        assertThat(snapshots.get(1).consumerCount).isEqualTo(1);
+    }
+
+    @Test
+    public void query_batteryStatesInBothStorages_mergesLegacyAndSnapshotRows() {
+        mProvider.onCreate();
+        final long currentTimestamp = Duration.ofHours(52).toMillis();
+        final FakeClock fakeClock = new FakeClock();
+        fakeClock.setCurrentTime(Duration.ofMillis(currentTimestamp));
+        mProvider.setClock(fakeClock);
+        BatteryTestUtils.insertDataToBatteryStateTable(
+                mContext, currentTimestamp - 4, PACKAGE_NAME1);
+        enableCompactStorage();
+        mProvider.bulkInsert(
+                VALID_BATTERY_STATE_CONTENT_URI,
+                new ContentValues[] {
+                    createBatteryStateValues(currentTimestamp - 2, 1002L, PACKAGE_NAME2),
+                    createBatteryStateValues(currentTimestamp - 2, 1003L, PACKAGE_NAME3)
+                });
+
+        final Cursor cursor =
+                query(
+                        new Uri.Builder()
+                                .scheme(ContentResolver.SCHEME_CONTENT)
+                                .authority(DatabaseUtils.AUTHORITY)
+                                .appendPath(DatabaseUtils.BATTERY_STATE_TABLE)
+                                .appendQueryParameter(
+                                        DatabaseUtils.QUERY_KEY_TIMESTAMP,
+                                        Long.toString(currentTimestamp - 8))
+                                .build());
+
+        assertThat(cursor.getCount()).isEqualTo(3);
+        // The column indexes read once are valid for both the legacy and the snapshot rows.
+        final int packageNameIndex = cursor.getColumnIndex(BatteryHistEntry.KEY_PACKAGE_NAME);
+        final int timestampIndex = cursor.getColumnIndex(BatteryHistEntry.KEY_TIMESTAMP);
+        final List<String> packageNames = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            packageNames.add(cursor.getString(packageNameIndex));
+            assertThat(cursor.getLong(timestampIndex)).isAtLeast(currentTimestamp - 4);
+        }
+        assertThat(packageNames)
+                .containsExactly(PACKAGE_NAME1, PACKAGE_NAME2, PACKAGE_NAME3)
+                .inOrder();
+        cursor.close();
+    }
+
+    @Test
+    public void bulkInsert_incorrectContentUri_throwsIllegalArgumentException() {
+        mProvider.onCreate();
+        final Uri uri =
+                new Uri.Builder()
+                        .scheme(ContentResolver.SCHEME_CONTENT)
+                        .authority(DatabaseUtils.AUTHORITY)
+                        .appendPath(DatabaseUtils.LAST_FULL_CHARGE_TIMESTAMP_PATH)
+                        .build();
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> mProvider.bulkInsert(uri, new ContentValues[] {new ContentValues()}));
+    }
+
     @Test
     public void delete_throwsUnsupportedOperationException() {
         assertThrows(
@@ -469,6 +603,36 @@ public final class BatteryUsageContentProviderTest {
                                 /* strings= */ null));
     }
 
+    private static void enableCompactStorage() {
+        when(FakeFeatureFactory.setupForTest()
+                        .powerUsageFeatureProvider
+                        .isBatteryStateCompactStorageEnabled())
+                .thenReturn(true);
+    }
+
+    private static ContentValues createBatteryStateValues(
+            long timestamp, long uid, String packageName) {
+        final BatteryInformation batteryInformation =
+                BatteryInformation.newBuilder()
+                        .setDeviceBatteryState(
+                                DeviceBatteryState.newBuilder().setBatteryLevel(60).build())
+                        .setBootTimestamp(timestamp - 1)
+                        .setTotalPower(100)
+                        .setConsumePower(1)
+                        .build();
+        final ContentValues values = new ContentValues();
+        values.put(BatteryHistEntry.KEY_UID, uid);
+        values.put(BatteryHistEntry.KEY_USER_ID, USER_ID1);
+        values.put(BatteryHistEntry.KEY_PACKAGE_NAME, packageName);
+        values.put(BatteryHistEntry.KEY_TIMESTAMP, timestamp);
+        values.put(BatteryHistEntry.KEY_CONSUMER_TYPE, 1);
+        values.put(BatteryHistEntry.KEY_IS_FULL_CHARGE_CYCLE_START, false);
+        values.put(
+                BatteryHistEntry.KEY_BATTERY_INFORMATION,
+                ConvertUtils.convertBatteryInformationToString(batteryInformation));
+        return values;
+    }
+
     private Cursor insertBatteryState(Duration currentTime, String queryTimestamp)
             throws Exception {
         mProvider.onCreate();
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Tests for {@link BatteryUsageSlotCache}. */
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryUsageSlotCacheTest {
+    private static final long START_TIMESTAMP = 1614463200000L;
+    private static final long END_TIMESTAMP = 1614466800000L;
+
+    private UserIdsSeries mUserIdsSeries;
+
+    @Before
+    public void setUp() {
+        final Context context = ApplicationProvider.getApplicationContext();
+        mUserIdsSeries = new UserIdsSeries(context, /* isNonUIRequest= */ false);
+        BatteryUsageSlotCache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        BatteryUsageSlotCache.clear();
+    }
+
+    @Test
+    public void get_afterPut_returnsCachedSlot() {
+        final BatteryUsageSlot batteryUsageSlot = createBatteryUsageSlot();
+
+        BatteryUsageSlotCache.put(mUserIdsSeries, /* hasScreenOnTime= */ true, batteryUsageSlot);
+
+        assertThat(
+                        BatteryUsageSlotCache.get(
+                                mUserIdsSeries,
+                                /* hasScreenOnTime= */ true,
+                                START_TIMESTAMP,
+                                END_TIMESTAMP))
+                .isEqualTo(batteryUsageSlot);
+    }
+
+    @Test
+    public void get_differentScreenOnTimeOrEndTimestamp_returnsNull() {
+        BatteryUsageSlotCache.put(
+                mUserIdsSeries, /* hasScreenOnTime= */ true, createBatteryUsageSlot());
+
+        assertThat(
+                        BatteryUsageSlotCache.get(
+                                mUserIdsSeries,
+                                /* hasScreenOnTime= */ false,
+                                START_TIMESTAMP,
+                                END_TIMESTAMP))
+                .isNull();
+        assertThat(
+                        BatteryUsageSlotCache.get(
+                                mUserIdsSeries,
+                                /* hasScreenOnTime= */ true,
+                                START_TIMESTAMP,
+                                END_TIMESTAMP + 1))
+                .isNull();
+    }
+
+    @Test
+    public void clear_removesAllCachedSlots() {
+        BatteryUsageSlotCache.put(
+                mUserIdsSeries, /* hasScreenOnTime= */ true, createBatteryUsageSlot());
+
+        BatteryUsageSlotCache.clear();
+
+        assertThat(BatteryUsageSlotCache.size()).isEqualTo(0);
+    }
+
+    private static BatteryUsageSlot createBatteryUsageSlot() {
+        return BatteryUsageSlot.newBuilder()
+                .setStartTimestamp(START_TIMESTAMP)
+                .setEndTimestamp(END_TIMESTAMP)
+                .setStartBatteryLevel(100)
+                .setEndBatteryLevel(96)
+                .setScreenOnTime(1800000L)
+                .build();
+    }
+}
@@ -36,6 +36,8 @@ import android.os.BatteryManager;
 import android.os.BatteryStatsManager;
 import android.os.BatteryUsageStats;
 import android.os.BatteryUsageStatsQuery;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Parcel;
 import android.os.RemoteException;
 import android.os.UserManager;
@@ -58,7 +60,6 @@ import org.mockito.junit.MockitoRule;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.android.util.concurrent.PausedExecutorService;
 import org.robolectric.shadows.ShadowLooper;
-import org.robolectric.shadows.ShadowPausedAsyncTask;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -90,7 +91,7 @@ public final class DataProcessManagerTest {
     @Before
     public void setUp() {
         mExecutorService = new PausedExecutorService();
-        ShadowPausedAsyncTask.overrideExecutor(mExecutorService);
+        DataProcessManager.sTestExecutor = mExecutorService;
         mContext = spy(ApplicationProvider.getApplicationContext());
         DataProcessor.sTestSystemAppsPackageNames = Set.of();
         DataProcessor.sUsageStatsManager = mUsageStatsManager;
@@ -124,6 +125,7 @@ public final class DataProcessManagerTest {
     public void cleanUp() {
         DatabaseUtils.sFakeSupplier = null;
         DataProcessManager.sFakeBatteryHistoryMap = null;
+        DataProcessManager.sTestExecutor = null;
     }
 
     @Test
@@ -161,6 +163,83 @@ public final class DataProcessManagerTest {
         assertThat(mDataProcessManager.getAppUsagePeriodMap()).isNull();
     }
 
+    @Test
+    public void start_recordStageTimings() {
+        final MatrixCursor cursor =
+                new MatrixCursor(
+                        new String[] {
+                            AppUsageEventEntity.KEY_UID,
+                            AppUsageEventEntity.KEY_PACKAGE_NAME,
+                            AppUsageEventEntity.KEY_TIMESTAMP
+                        });
+        DatabaseUtils.sFakeSupplier = () -> cursor;
+        doReturn(true).when(mUserManager).isUserUnlocked(anyInt());
+
+        mDataProcessManager.start();
+        mExecutorService.runAll();
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mDataProcessManager.getStageTimings().keySet())
+                .containsAtLeast(
+                        "loadCurrentBatteryHistoryMap",
+                        "loadCurrentAppUsageList",
+                        "loadDatabaseAppUsageList",
+                        "loadPowerConnectionBatteryEventList",
+                        "processAppUsageData",
+                        "generateFinalData");
+    }
+
+    @Test
+    public void start_cancelled_notLoadData() {
+        final MatrixCursor cursor =
+                new MatrixCursor(
+                        new String[] {
+                            AppUsageEventEntity.KEY_UID,
+                            AppUsageEventEntity.KEY_PACKAGE_NAME,
+                            AppUsageEventEntity.KEY_TIMESTAMP
+                        });
+        DatabaseUtils.sFakeSupplier = () -> cursor;
+        doReturn(true).when(mUserManager).isUserUnlocked(anyInt());
+
+        mDataProcessManager.start();
+        mDataProcessManager.cancel();
+        mExecutorService.runAll();
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mDataProcessManager.getIsCurrentAppUsageLoaded()).isFalse();
+        assertThat(mDataProcessManager.getIsDatabaseAppUsageLoaded()).isFalse();
+        assertThat(mDataProcessManager.getIsCurrentBatteryHistoryLoaded()).isFalse();
+        assertThat(mDataProcessManager.getStageTimings()).isEmpty();
+    }
+
+    @Test
+    public void start_stageFailed_callbackWithEmptyMap() {
+        DatabaseUtils.sFakeSupplier =
+                () -> {
+                    throw new IllegalStateException("fake database failure");
+                };
+        doReturn(true).when(mUserManager).isUserUnlocked(anyInt());
+        final List<Map<Long, BatteryDiffData>> results = new ArrayList<>();
+        final DataProcessManager dataProcessManager =
+                new DataProcessManager(
+                        mContext,
+                        new Handler(Looper.getMainLooper()),
+                        mUserIdsSeries,
+                        /* isFromPeriodJob= */ false,
+                        /* rawStartTimestamp= */ 0L,
+                        /* lastFullChargeTimestamp= */ 0L,
+                        results::add,
+                        /* hourlyBatteryLevelsPerDay= */ new ArrayList<>(),
+                        /* batteryHistoryMap= */ new HashMap<>());
+
+        dataProcessManager.start();
+        mExecutorService.runAll();
+        ShadowLooper.idleMainLooper();
+
+        assertThat(results).hasSize(1);
+        assertThat(results.get(0)).isEmpty();
+    }
+
     @Test
     public void start_loadExpectedAppUsageData() throws RemoteException {
         final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay =
@@ -2520,6 +2520,62 @@ public final class DataProcessorTest {
         assertThat(resultList).isEqualTo(expectedTimestamps);
     }
 
+    @Test
+    public void getClosedBatteryUsageSlot_storedSlotWithScreenOnTime_onlyReusedWith() {
+        BatteryUsageSlotCache.clear();
+        final BatteryUsageSlot storedSlot = createBatteryUsageSlot(/* screenOnTime= */ 1800000L);
+
+        assertThat(
+                        DataProcessor.getClosedBatteryUsageSlot(
+                                mUserIdsSeries,
+                                /* hasScreenOnTime= */ true,
+                                storedSlot.getStartTimestamp(),
+                                storedSlot.getEndTimestamp(),
+                                Map.of(storedSlot.getStartTimestamp(), storedSlot)))
+                .isEqualTo(storedSlot);
+        assertThat(
+                        DataProcessor.getClosedBatteryUsageSlot(
+                                mUserIdsSeries,
+                                /* hasScreenOnTime= */ false,
+                                storedSlot.getStartTimestamp(),
+                                storedSlot.getEndTimestamp(),
+                                Map.of(storedSlot.getStartTimestamp(), storedSlot)))
+                .isNull();
+    }
+
+    @Test
+    public void getClosedBatteryUsageSlot_storedSlotWithoutScreenOnTime_onlyReusedWithout() {
+        BatteryUsageSlotCache.clear();
+        final BatteryUsageSlot storedSlot = createBatteryUsageSlot(/* screenOnTime= */ 0L);
+
+        assertThat(
+                        DataProcessor.getClosedBatteryUsageSlot(
+                                mUserIdsSeries,
+                                /* hasScreenOnTime= */ true,
+                                storedSlot.getStartTimestamp(),
+                                storedSlot.getEndTimestamp(),
+                                Map.of(storedSlot.getStartTimestamp(), storedSlot)))
+                .isNull();
+        assertThat(
+                        DataProcessor.getClosedBatteryUsageSlot(
+                                mUserIdsSeries,
+                                /* hasScreenOnTime= */ false,
+                                storedSlot.getStartTimestamp(),
+                                storedSlot.getEndTimestamp(),
+                                Map.of(storedSlot.getStartTimestamp(), storedSlot)))
+                .isEqualTo(storedSlot);
+    }
+
+    private static BatteryUsageSlot createBatteryUsageSlot(final long screenOnTime) {
+        return BatteryUsageSlot.newBuilder()
+                .setStartTimestamp(1614463200000L)
+                .setEndTimestamp(1614466800000L)
+                .setStartBatteryLevel(100)
+                .setEndBatteryLevel(96)
+                .setScreenOnTime(screenOnTime)
+                .build();
+    }
+
     private static void assertBatteryDiffEntry(
             final BatteryDiffEntry entry,
             final long userId,
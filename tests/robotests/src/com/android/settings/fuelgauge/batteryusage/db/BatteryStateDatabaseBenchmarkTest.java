@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage.db;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.settings.testutils.BatteryTestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Benchmarks the battery usage queries on a synthetic six days database.
+ *
+ * <p>The query plans are verified to seek the indexes instead of scanning the tables, and the
+ * average execution time of each query is logged with the {@link #TAG} for tracking.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryStateDatabaseBenchmarkTest {
+    private static final String TAG = "BatteryStateDatabaseBenchmark";
+    private static final int DAYS = 6;
+    private static final int CONSUMERS_PER_SNAPSHOT = 60;
+    private static final int APP_USAGE_EVENTS_PER_HOUR = 40;
+    private static final int BENCHMARK_ITERATIONS = 20;
+    private static final long END_TIMESTAMP = 1640966400000L + DAYS * DateUtils.DAY_IN_MILLIS;
+    private static final long START_TIMESTAMP = END_TIMESTAMP - DAYS * DateUtils.DAY_IN_MILLIS;
+    // Queries the latest day as the battery usage chart does.
+    private static final long QUERY_TIMESTAMP = END_TIMESTAMP - DateUtils.DAY_IN_MILLIS;
+    private static final List<Long> USER_IDS = List.of(0L, 10L);
+
+    private BatteryStateDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        final Context context = ApplicationProvider.getApplicationContext();
+        mDatabase = BatteryTestUtils.setUpBatteryStateDatabase(context);
+        populateDatabase();
+    }
+
+    @After
+    public void closeDb() {
+        mDatabase.close();
+        BatteryStateDatabase.setBatteryStateDatabase(/* database= */ null);
+    }
+
+    @Test
+    public void batteryStateQueries_seekTimestampIndex() {
+        assertUseIndex(
+                "SELECT * FROM BatteryState WHERE timestamp >= ? ORDER BY timestamp ASC",
+                "index_BatteryState_timestamp");
+        assertUseIndex(
+                "SELECT DISTINCT timestamp FROM BatteryState WHERE timestamp > ?",
+                "index_BatteryState_timestamp");
+        assertUseIndex(
+                "SELECT MAX(timestamp) AS timestamp FROM BatteryState WHERE timestamp <= ?",
+                "index_BatteryState_timestamp");
+
+        final BatteryStateDao dao = mDatabase.batteryStateDao();
+        assertThat(benchmark("getDistinctTimestamps", () -> dao.getDistinctTimestamps(0)))
+                .hasSize(DAYS * 24);
+        assertThat(benchmark("getDistinctTimestampCount", () -> dao.getDistinctTimestampCount(0)))
+                .isEqualTo(DAYS * 24);
+        benchmarkCursor(
+                "getLatestTimestampBefore", () -> dao.getLatestTimestampBefore(QUERY_TIMESTAMP));
+        benchmarkCursor(
+                "getBatteryStatesAfter", () -> dao.getBatteryStatesAfter(QUERY_TIMESTAMP));
+    }
+
+    @Test
+    public void appUsageEventQueries_seekUserIdAndTimestampIndex() {
+        assertUseIndex(
+                "SELECT * FROM AppUsageEventEntity WHERE timestamp >= ?"
+                        + " AND userId IN (0, 10) ORDER BY timestamp ASC",
+                "index_AppUsageEventEntity_");
+        assertUseIndex(
+                "SELECT MAX(timestamp) as timestamp FROM AppUsageEventEntity WHERE userId = 0",
+                "index_AppUsageEventEntity_userId_timestamp");
+
+        final AppUsageEventDao dao = mDatabase.appUsageEventDao();
+        benchmarkCursor(
+                "getAllForUsersAfter", () -> dao.getAllForUsersAfter(USER_IDS, QUERY_TIMESTAMP));
+        benchmarkCursor("getLatestTimestampOfUser", () -> dao.getLatestTimestampOfUser(0L));
+    }
+
+    @Test
+    public void batteryEventQueries_seekEventTypeAndTimestampIndex() {
+        assertUseIndex(
+                "SELECT MAX(timestamp) FROM BatteryEventEntity WHERE batteryEventType = 3",
+                "index_BatteryEventEntity_batteryEventType_timestamp");
+        assertUseIndex(
+                "SELECT * FROM BatteryEventEntity WHERE timestamp >= ?"
+                        + " AND batteryEventType IN (1, 2) ORDER BY timestamp DESC",
+                "index_BatteryEventEntity_");
+
+        final BatteryEventDao dao = mDatabase.batteryEventDao();
+        benchmarkCursor("getLastFullChargeTimestamp", dao::getLastFullChargeTimestamp);
+        benchmarkCursor(
+                "getAllAfter", () -> dao.getAllAfter(QUERY_TIMESTAMP, List.of(1, 2)));
+    }
+
+    @Test
+    public void migration3To4_createIndexesIdempotently() {
+        final SupportSQLiteDatabase database = mDatabase.getOpenHelper().getWritableDatabase();
+
+        BatteryStateDatabase.MIGRATION_3_4.migrate(database);
+
+        assertThat(mDatabase.batteryStateDao().getDistinctTimestampCount(0)).isEqualTo(DAYS * 24);
+    }
+
+    private void populateDatabase() {
+        final List<BatteryState> states = new ArrayList<>();
+        final List<AppUsageEventEntity> events = new ArrayList<>();
+        final List<BatteryEventEntity> batteryEvents = new ArrayList<>();
+        for (long timestamp = START_TIMESTAMP;
+                timestamp < END_TIMESTAMP;
+                timestamp += DateUtils.HOUR_IN_MILLIS) {
+            for (int index = 0; index < CONSUMERS_PER_SNAPSHOT; index++) {
+                states.add(
+                        BatteryState.newBuilder()
+                                .setUid(10000 + index)
+                                .setUserId(USER_IDS.get(index % USER_IDS.size()))
+                                .setPackageName("com.android.package" + index)
+                                .setTimestamp(timestamp)
+                                .setConsumerType(1)
+                                .setBatteryInformation("")
+                                .build());
+            }
+            for (int index = 0; index < APP_USAGE_EVENTS_PER_HOUR; index++) {
+                events.add(
+                        AppUsageEventEntity.newBuilder()
+                                .setUid(10000 + index)
+                                .setUserId(USER_IDS.get(index % USER_IDS.size()))
+                                .setTimestamp(timestamp + index * DateUtils.MINUTE_IN_MILLIS)
+                                .setAppUsageEventType(index % 2 + 1)
+                                .setPackageName("com.android.package" + index)
+                                .build());
+            }
+            batteryEvents.add(
+                    BatteryEventEntity.newBuilder()
+                            .setTimestamp(timestamp)
+                            .setBatteryEventType((int) (timestamp / DateUtils.HOUR_IN_MILLIS % 4))
+                            .setBatteryLevel(50)
+                            .build());
+        }
+        mDatabase.batteryStateDao().insertAll(states);
+        mDatabase.appUsageEventDao().insertAll(events);
+        mDatabase.batteryEventDao().insertAll(batteryEvents);
+    }
+
+    private void assertUseIndex(final String query, final String indexName) {
+        final StringBuilder queryPlan = new StringBuilder();
+        try (Cursor cursor =
+                mDatabase
+                        .getOpenHelper()
+                        .getReadableDatabase()
+                        .query("EXPLAIN QUERY PLAN " + query.replace("?", "0"))) {
+            final int detailIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                queryPlan.append(cursor.getString(detailIndex)).append('\n');
+            }
+        }
+        Log.d(TAG, "query plan of " + query + ":\n" + queryPlan);
+        assertThat(queryPlan.toString()).contains(indexName);
+    }
+
+    private <T> T benchmark(final String name, final Supplier<T> query) {
+        T result = query.get();
+        final long startTime = System.nanoTime();
+        for (int iteration = 0; iteration < BENCHMARK_ITERATIONS; iteration++) {
+            result = query.get();
+        }
+        final long averageTime = (System.nanoTime() - startTime) / BENCHMARK_ITERATIONS;
+        Log.d(TAG, String.format("%s: %d us/op", name, averageTime / 1000));
+        return result;
+    }
+
+    private void benchmarkCursor(final String name, final Supplier<Cursor> query) {
+        benchmark(
+                name,
+                () -> {
+                    try (Cursor cursor = query.get()) {
+                        // Walks through the cursor to include the fetching time.
+                        while (cursor.moveToNext()) {}
+                        return cursor.getCount();
+                    }
+                });
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage.db;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.room.util.TableInfo;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.settings.testutils.BatteryTestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+/**
+ * Tests for the migrations of {@link BatteryStateDatabase}.
+ *
+ * <p>The schemas are not exported, so a version 2 database is rebuilt from the current schema by
+ * removing what the later versions added, and the migrated schema is compared with the one Room
+ * creates for the entities.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryStateDatabaseTest {
+    private static final String[] TABLES = {
+        "AppUsageEventEntity",
+        "BatteryEventEntity",
+        "BatteryState",
+        "BatteryStateSnapshotEntity",
+        "BatteryUsageSlotEntity",
+        "BatteryReattributeEntity"
+    };
+    private static final String[] INDEXES_SINCE_VERSION_4 = {
+        "index_AppUsageEventEntity_userId_timestamp",
+        "index_AppUsageEventEntity_timestamp",
+        "index_BatteryEventEntity_batteryEventType_timestamp",
+        "index_BatteryEventEntity_timestamp",
+        "index_BatteryState_timestamp",
+        "index_BatteryUsageSlotEntity_timestamp"
+    };
+    private static final long TIMESTAMP = System.currentTimeMillis();
+    private static final String PACKAGE_NAME = "com.android.apps.settings";
+
+    private Context mContext;
+    private BatteryStateDatabase mExpectedDatabase;
+    private BatteryStateDatabase mMigratedDatabase;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mExpectedDatabase =
+                Room.inMemoryDatabaseBuilder(mContext, BatteryStateDatabase.class)
+                        .allowMainThreadQueries()
+                        .build();
+        mMigratedDatabase = BatteryTestUtils.setUpBatteryStateDatabase(mContext);
+    }
+
+    @After
+    public void closeDb() {
+        mExpectedDatabase.close();
+        mMigratedDatabase.close();
+        BatteryStateDatabase.setBatteryStateDatabase(/* database= */ null);
+    }
+
+    @Test
+    public void migrate_fromVersion2_matchesCurrentSchema() {
+        final SupportSQLiteDatabase database = downgradeToVersion2();
+
+        BatteryStateDatabase.MIGRATION_2_3.migrate(database);
+        BatteryStateDatabase.MIGRATION_3_4.migrate(database);
+
+        final SupportSQLiteDatabase expectedDatabase =
+                mExpectedDatabase.getOpenHelper().getWritableDatabase();
+        for (String table : TABLES) {
+            assertThat(TableInfo.read(database, table))
+                    .isEqualTo(TableInfo.read(expectedDatabase, table));
+        }
+    }
+
+    @Test
+    public void migrate_fromVersion2_keepsBatteryStates() {
+        BatteryTestUtils.insertDataToBatteryStateTable(mContext, TIMESTAMP, PACKAGE_NAME);
+        final SupportSQLiteDatabase database = downgradeToVersion2();
+
+        BatteryStateDatabase.MIGRATION_2_3.migrate(database);
+        BatteryStateDatabase.MIGRATION_3_4.migrate(database);
+
+        final List<BatteryState> states =
+                mMigratedDatabase.batteryStateDao().getAllAfter(TIMESTAMP - 1);
+        assertThat(states).hasSize(1);
+        assertThat(states.get(0).packageName).isEqualTo(PACKAGE_NAME);
+        assertThat(mMigratedDatabase.batteryStateSnapshotDao().getAllAfter(0)).isEmpty();
+    }
+
+    @Test
+    public void migrate_indexesAlreadyCreated_keepsCurrentSchema() {
+        final SupportSQLiteDatabase database =
+                mMigratedDatabase.getOpenHelper().getWritableDatabase();
+
+        BatteryStateDatabase.MIGRATION_3_4.migrate(database);
+
+        final SupportSQLiteDatabase expectedDatabase =
+                mExpectedDatabase.getOpenHelper().getWritableDatabase();
+        for (String table : TABLES) {
+            assertThat(TableInfo.read(database, table))
+                    .isEqualTo(TableInfo.read(expectedDatabase, table));
+        }
+    }
+
+    private SupportSQLiteDatabase downgradeToVersion2() {
+        final SupportSQLiteDatabase database =
+                mMigratedDatabase.getOpenHelper().getWritableDatabase();
+        for (String index : INDEXES_SINCE_VERSION_4) {
+            database.execSQL("DROP INDEX `" + index + "`");
+        }
+        database.execSQL("DROP TABLE `BatteryStateSnapshotEntity`");
+        assertThat(TableInfo.read(database, "BatteryStateSnapshotEntity").columns).isEmpty();
+        return database;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.settings.fuelgauge.batteryusage.db;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.BatteryManager;
+
+import com.android.settings.fuelgauge.BatteryUtils;
+import com.android.settings.fuelgauge.batteryusage.BatteryInformation;
+import com.android.settings.fuelgauge.batteryusage.ConvertUtils;
+import com.android.settings.fuelgauge.batteryusage.DeviceBatteryState;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+/** Tests for {@link BatteryStateSnapshotEntity}. */
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryStateSnapshotEntityTest {
+    private static final long TIMESTAMP = 100001L;
+
+    @Test
+    public void create_encodesAllConsumers() {
+        final BatteryStateSnapshotEntity snapshot =
+                BatteryStateSnapshotEntity.create(
+                        List.of(
+                                createState(1001L, 0L, "com.android.settings", 3, 10),
+                                createState(1002L, 0L, "com.android.chrome", 4, 20)));
+
+        assertThat(snapshot.timestamp).isEqualTo(TIMESTAMP);
+        assertThat(snapshot.isFullChargeCycleStart).isTrue();
+        assertThat(snapshot.consumerCount).isEqualTo(2);
+    }
+
+    @Test
+    public void toBatteryStates_returnsExpectedResult() {
+        final BatteryState state1 = createState(10100L, 10L, "com.android.chrome", 4, 20);
+        final BatteryState state2 = createState(1001L, 0L, "com.android.settings", 3, 10);
+        final BatteryState state3 = createState(1000L, 0L, /* packageName= */ null, 1, 5);
+
+        final List<BatteryState> states =
+                BatteryStateSnapshotEntity.create(List.of(state1, state2, state3))
+                        .toBatteryStates();
+
+        // Consumers are sorted by user ID and uid in the snapshot.
+        assertThat(states).hasSize(3);
+        assertSameState(states.get(0), state3);
+        assertSameState(states.get(1), state2);
+        assertSameState(states.get(2), state1);
+    }
+
+    @Test
+    public void toBatteryStates_differentDeviceState_keepsOwnDeviceState() {
+        final BatteryState state1 = createState(1001L, 0L, "com.android.settings", 3, 10);
+        final BatteryState state2 =
+                createState(
+                        1002L,
+                        0L,
+                        "com.android.chrome",
+                        4,
+                        20,
+                        /* batteryLevel= */ 44);
+
+        final List<BatteryState> states =
+                BatteryStateSnapshotEntity.create(List.of(state1, state2)).toBatteryStates();
+
+        assertThat(getBatteryInformation(states.get(1)).getDeviceBatteryState().getBatteryLevel())
+                .isEqualTo(44);
+        assertSameState(states.get(0), state1);
+        assertSameState(states.get(1), state2);
+    }
+
+    @Test
+    public void decode_invalidBlob_returnsEmptyList() {
+        assertThat(
+                        BatteryStateSnapshotCodec.decode(
+                                TIMESTAMP, /* isFullChargeCycleStart= */ false, new byte[] {1, 9}))
+                .isEmpty();
+    }
+
+    private static void assertSameState(BatteryState actual, BatteryState expected) {
+        assertThat(actual.uid).isEqualTo(expected.uid);
+        assertThat(actual.userId).isEqualTo(expected.userId);
+        assertThat(actual.packageName).isEqualTo(expected.packageName);
+        assertThat(actual.timestamp).isEqualTo(expected.timestamp);
+        assertThat(actual.consumerType).isEqualTo(expected.consumerType);
+        assertThat(actual.isFullChargeCycleStart).isEqualTo(expected.isFullChargeCycleStart);
+        assertThat(getBatteryInformation(actual)).isEqualTo(getBatteryInformation(expected));
+    }
+
+    private static BatteryInformation getBatteryInformation(BatteryState state) {
+        return BatteryUtils.parseProtoFromString(
+                state.batteryInformation, BatteryInformation.getDefaultInstance());
+    }
+
+    private static BatteryState createState(
+            long uid, long userId, String packageName, int consumerType, double consumePower) {
+        return createState(
+                uid, userId, packageName, consumerType, consumePower, /* batteryLevel= */ 45);
+    }
+
+    private static BatteryState createState(
+            long uid,
+            long userId,
+            String packageName,
+            int consumerType,
+            double consumePower,
+            int batteryLevel) {
+        final DeviceBatteryState deviceBatteryState =
+                DeviceBatteryState.newBuilder()
+                        .setBatteryLevel(batteryLevel)
+                        .setBatteryStatus(BatteryManager.BATTERY_STATUS_DISCHARGING)
+                        .setBatteryHealth(BatteryManager.BATTERY_HEALTH_GOOD)
+                        .build();
+        final BatteryInformation batteryInformation =
+                BatteryInformation.newBuilder()
+                        .setDeviceBatteryState(deviceBatteryState)
+                        .setBootTimestamp(101L)
+                        .setZoneId("America/Los_Angeles")
+                        .setAppLabel("Label" + uid)
+                        .setTotalPower(100)
+                        .setConsumePower(consumePower)
+                        .setForegroundUsageTimeInMs(60000)
+                        .build();
+        return BatteryState.newBuilder()
+                .setUid(uid)
+                .setUserId(userId)
+                .setPackageName(packageName)
+                .setTimestamp(TIMESTAMP)
+                .setConsumerType(consumerType)
+                .setIsFullChargeCycleStart(true)
+                .setBatteryInformation(
+                        ConvertUtils.convertBatteryInformationToString(batteryInformation))
+                .build();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.homepage.contextualcards;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class EligibleCardCacheTest {
+
+    private static final Uri TEST_SLICE_URI = Uri.parse("content://test/test");
+
+    private long mCurrentTime;
+    private EligibleCardCache mCache;
+
+    @Before
+    public void setUp() {
+        mCurrentTime = 1000L;
+        mCache = new EligibleCardCache(() -> mCurrentTime);
+    }
+
+    @Test
+    public void get_eligibleCard_returnCandidateWithInlineAction() {
+        final ContextualCard candidate = getContextualCard(1L /* appVersion */, 0.5);
+        mCache.put(candidate, candidate.mutate().setHasInlineAction(true).build());
+
+        final ContextualCard updatedCandidate = getContextualCard(1L /* appVersion */, 0.8);
+        final ContextualCard card = mCache.get(updatedCandidate);
+
+        assertThat(card.hasInlineAction()).isTrue();
+        assertThat(card.getRankingScore()).isEqualTo(0.8);
+    }
+
+    @Test
+    public void get_notEligibleCard_returnNull() {
+        final ContextualCard candidate = getContextualCard(1L /* appVersion */, 0.5);
+        mCache.put(candidate, candidate);
+
+        mCache.put(candidate, null /* eligibleCard */);
+
+        assertThat(mCache.get(candidate)).isNull();
+    }
+
+    @Test
+    public void get_negativeRankingScore_returnNull() {
+        final ContextualCard candidate = getContextualCard(1L /* appVersion */, 0.5);
+        mCache.put(candidate, candidate);
+
+        assertThat(mCache.get(getContextualCard(1L /* appVersion */, -1.0))).isNull();
+    }
+
+    @Test
+    public void get_appUpdated_returnNull() {
+        final ContextualCard candidate = getContextualCard(1L /* appVersion */, 0.5);
+        mCache.put(candidate, candidate);
+
+        assertThat(mCache.get(getContextualCard(2L /* appVersion */, 0.5))).isNull();
+    }
+
+    @Test
+    public void get_expired_returnNull() {
+        final ContextualCard candidate = getContextualCard(1L /* appVersion */, 0.5);
+        mCache.put(candidate, candidate);
+
+        mCurrentTime += EligibleCardCache.MAX_AGE_MS + 1;
+
+        assertThat(mCache.get(candidate)).isNull();
+    }
+
+    private ContextualCard getContextualCard(long appVersion, double rankingScore) {
+        return new ContextualCard.Builder()
+                .setName("test_card")
+                .setRankingScore(rankingScore)
+                .setCardType(ContextualCard.CardType.SLICE)
+                .setSliceUri(TEST_SLICE_URI)
+                .setAppVersion(appVersion)
+                .build();
+    }
+}
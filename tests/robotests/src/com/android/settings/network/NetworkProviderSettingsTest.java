@@ -625,6 +625,19 @@ public class NetworkProviderSettingsTest {
         assertThat(p instanceof NetworkProviderSettings.FirstWifiEntryPreference).isTrue();
     }
 
+    @Test
+    public void scheduleWifiEntryPreferencesUpdate_calledTwice_postOneUpdatePerFrame() {
+        final View view = mock(View.class);
+        doReturn(view).when(mNetworkProviderSettings).getView();
+
+        mNetworkProviderSettings.scheduleWifiEntryPreferencesUpdate();
+        mNetworkProviderSettings.scheduleWifiEntryPreferencesUpdate();
+
+        verify(view, times(1)).postOnAnimation(
+                mNetworkProviderSettings.mWifiEntriesChangedRunnable);
+        verify(mNetworkProviderSettings, never()).updateWifiEntryPreferences();
+    }
+
     @Test
     public void updateWifiEntryPreferences_activityIsNull_ShouldNotCrash() {
         when(mNetworkProviderSettings.getActivity()).thenReturn(null);
@@ -653,6 +666,62 @@ public class NetworkProviderSettingsTest {
         verify(mNetworkProviderSettings.mWifiEntryPreferenceCategory, never()).setVisible(true);
     }
 
+    @Test
+    public void updateWifiEntryPreferences_sameEntriesShown_listNotRebuilt() {
+        final PreferenceCategory category = setUpWifiEntryList(List.of(mWifiEntry));
+        mNetworkProviderSettings.updateWifiEntryPreferences();
+        verify(mNetworkProviderSettings).createLongPressWifiEntryPreference(mWifiEntry);
+        showWifiEntryPreferences(category, mWifiEntry);
+
+        mNetworkProviderSettings.updateWifiEntryPreferences();
+
+        verify(mNetworkProviderSettings, times(1)).createLongPressWifiEntryPreference(any());
+        verify(category, never()).getPreference(anyInt());
+        verify(category, never()).removePreference(any());
+    }
+
+    @Test
+    public void updateWifiEntryPreferences_entryAdded_listRebuilt() {
+        final PreferenceCategory category = setUpWifiEntryList(List.of(mWifiEntry));
+        mNetworkProviderSettings.updateWifiEntryPreferences();
+        showWifiEntryPreferences(category, mWifiEntry);
+        final WifiEntry newWifiEntry = mock(WifiEntry.class);
+        when(newWifiEntry.getKey()).thenReturn("new_key");
+        when(mMockWifiPickerTracker.getWifiEntries()).thenReturn(List.of(mWifiEntry, newWifiEntry));
+
+        mNetworkProviderSettings.updateWifiEntryPreferences();
+
+        verify(mNetworkProviderSettings, times(1)).createLongPressWifiEntryPreference(mWifiEntry);
+        verify(mNetworkProviderSettings).createLongPressWifiEntryPreference(newWifiEntry);
+    }
+
+    private PreferenceCategory setUpWifiEntryList(List<WifiEntry> wifiEntries) {
+        doReturn(mock(FragmentActivity.class)).when(mNetworkProviderSettings).getActivity();
+        doReturn(mock(View.class)).when(mNetworkProviderSettings).getView();
+        when(mMockWifiPickerTracker.getWifiState()).thenReturn(WifiManager.WIFI_STATE_ENABLED);
+        when(mMockWifiPickerTracker.getWifiEntries()).thenReturn(wifiEntries);
+        when(mWifiEntry.getKey()).thenReturn("key");
+        doReturn(mock(LongPressWifiEntryPreference.class)).when(mNetworkProviderSettings)
+                .createLongPressWifiEntryPreference(any());
+        final PreferenceCategory category = mock(PreferenceCategory.class);
+        mNetworkProviderSettings.mWifiEntryPreferenceCategory = category;
+        return category;
+    }
+
+    // Makes the category hold the preference of the entry and the add network preference.
+    private void showWifiEntryPreferences(PreferenceCategory category, WifiEntry wifiEntry) {
+        final String key = wifiEntry.getKey();
+        final LongPressWifiEntryPreference pref = mock(LongPressWifiEntryPreference.class);
+        when(pref.getKey()).thenReturn(key);
+        when(pref.getWifiEntry()).thenReturn(wifiEntry);
+        when(category.getPreferenceCount()).thenReturn(2);
+        doReturn(pref).when(category).getPreference(0);
+        doReturn(mNetworkProviderSettings.mAddWifiNetworkPreference).when(category)
+                .getPreference(1);
+        doReturn(mNetworkProviderSettings.mAddWifiNetworkPreference).when(category)
+                .findPreference(any());
+    }
+
     @Test
     public void setWifiScanMessage_wifiOnScanOn_footerIsInvisible() {
         when(mWifiManager.isScanAlwaysAvailable()).thenReturn(true);
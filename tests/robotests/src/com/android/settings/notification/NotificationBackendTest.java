@@ -21,12 +21,14 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import android.app.INotificationManager;
 import android.app.role.RoleManager;
+import android.app.usage.IUsageStatsManager;
 import android.app.usage.UsageEvents;
 import android.bluetooth.BluetoothAdapter;
 import android.companion.AssociationInfo;
@@ -154,7 +156,7 @@ public class NotificationBackendTest {
     }
 
     @Test
-    public void testGetAggregatedUsageEvents_multipleEventsAgg() {
+    public void testRecordSentStats_multipleEventsAgg() throws Exception {
         List<UsageEvents.Event> events = new ArrayList<>();
         UsageEvents.Event good = new UsageEvents.Event();
         good.mEventType = UsageEvents.Event.NOTIFICATION_INTERRUPTION;
@@ -174,11 +176,21 @@ public class NotificationBackendTest {
         good1.mNotificationChannelId = "channel1";
         good1.mTimeStamp = 6;
         events.add(good1);
+        IUsageStatsManager usageStats = mock(IUsageStatsManager.class);
+        when(usageStats.queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString()))
+                .thenReturn(getUsageEvents(events));
+        IUsageStatsManager previousUsageStats = NotificationBackend.sUsageStatsManager;
+        NotificationBackend.sUsageStatsManager = usageStats;
         NotificationBackend backend = new NotificationBackend();
 
         AppRow appRow = new AppRow();
         appRow.pkg = "pkg";
-        backend.recordAggregatedUsageEvents(getUsageEvents(events), appRow);
+        try {
+            backend.recordSentStats(
+                    backend.loadSentStats(RuntimeEnvironment.application, 0), appRow);
+        } finally {
+            NotificationBackend.sUsageStatsManager = previousUsageStats;
+        }
 
         assertThat(appRow.sentByChannel.get("channel1").sentCount).isEqualTo(2);
         assertThat(appRow.sentByChannel.get("channel1").lastSent).isEqualTo(6);
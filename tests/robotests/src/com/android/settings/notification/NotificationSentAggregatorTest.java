@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.usage.IUsageStatsManager;
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageEvents.Event;
+import android.content.Context;
+import android.os.Parcel;
+import android.os.RemoteException;
+import android.text.format.DateUtils;
+
+import com.android.settings.notification.NotificationBackend.NotificationsSentState;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class NotificationSentAggregatorTest {
+
+    private static final String PKG = "pkg";
+    private static final int USER_ID = 0;
+    private static final long DAY = DateUtils.DAY_IN_MILLIS;
+    private static final long HOUR = DateUtils.HOUR_IN_MILLIS;
+    private static final long START = 100 * DAY;
+
+    @Mock
+    private IUsageStatsManager mUsageStats;
+
+    private Context mContext;
+    private long mNow = START;
+    private NotificationSentAggregator mAggregator;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        mAggregator = new NotificationSentAggregator(mContext, mUsageStats, () -> mNow);
+    }
+
+    @Test
+    public void update_countsOnlyNotificationInterruptions() throws RemoteException {
+        returnEvents(
+                notification("channel1", START - 2 * DAY),
+                event(Event.CHOOSER_ACTION, START - DAY),
+                notification("channel1", START - DAY),
+                notification("channel2", START - 1));
+
+        final NotificationSentAggregator.UserStats stats = mAggregator.update(USER_ID);
+
+        assertThat(stats.getSentByApp(PKG).sentCount).isEqualTo(3);
+        assertThat(stats.getSentByApp(PKG).lastSent).isEqualTo(START - 1);
+        final Map<String, NotificationsSentState> sentByChannel = stats.getSentByChannel(PKG);
+        assertThat(sentByChannel.get("channel1").sentCount).isEqualTo(2);
+        assertThat(sentByChannel.get("channel2").sentCount).isEqualTo(1);
+    }
+
+    @Test
+    public void update_secondTime_onlyQueriesNewEvents() throws RemoteException {
+        returnEvents(notification("channel1", START - DAY));
+        mAggregator.update(USER_ID);
+
+        mNow = START + DAY;
+        returnEvents(notification("channel1", START + 1));
+        final NotificationSentAggregator.UserStats stats = mAggregator.update(USER_ID);
+
+        verify(mUsageStats).queryEventsForUser(eq(START), eq(START + DAY), eq(USER_ID),
+                anyString());
+        assertThat(stats.getSentByApp(PKG).sentCount).isEqualTo(2);
+        assertThat(stats.getSentByApp(PKG).lastSent).isEqualTo(START + 1);
+    }
+
+    @Test
+    public void update_persistedAcrossInstances() throws RemoteException {
+        returnEvents(notification("channel1", START - DAY));
+        mAggregator.update(USER_ID);
+
+        returnEvents();
+        final NotificationSentAggregator.UserStats stats =
+                new NotificationSentAggregator(mContext, mUsageStats, () -> mNow)
+                        .update(USER_ID);
+
+        assertThat(stats.getSentByApp(PKG).sentCount).isEqualTo(1);
+    }
+
+    @Test
+    public void update_daysOutOfWindow_pruned() throws RemoteException {
+        returnEvents(notification("channel1", START - 6 * DAY));
+        mAggregator.update(USER_ID);
+
+        mNow = START + 2 * DAY;
+        returnEvents();
+        final NotificationSentAggregator.UserStats stats = mAggregator.update(USER_ID);
+
+        assertThat(stats.getPackages()).isEmpty();
+        assertThat(stats.getSentByApp(PKG).sentCount).isEqualTo(0);
+        assertThat(stats.getSentByChannel(PKG)).isEmpty();
+    }
+
+    @Test
+    public void update_firstTime_queriesTheDaysToCheck() throws RemoteException {
+        mNow = START + DAY / 2;
+        returnEvents();
+
+        mAggregator.update(USER_ID);
+
+        verify(mUsageStats).queryEventsForUser(eq(START + DAY / 2 - 7 * DAY),
+                eq(START + DAY / 2), eq(USER_ID), anyString());
+    }
+
+    @Test
+    public void update_hoursOutOfWindow_pruned() throws RemoteException {
+        returnEvents(
+                notification("channel1", START - 7 * DAY + HOUR),
+                notification("channel1", START - 6 * DAY));
+        mAggregator.update(USER_ID);
+
+        mNow = START + 2 * HOUR;
+        returnEvents();
+        final NotificationSentAggregator.UserStats stats = mAggregator.update(USER_ID);
+
+        assertThat(stats.getSentByApp(PKG).sentCount).isEqualTo(1);
+    }
+
+    @Test
+    public void update_shortlyAfterMidnight_keepsTheWholeWindow() throws RemoteException {
+        mNow = START + DateUtils.MINUTE_IN_MILLIS;
+        returnEvents(notification("channel1", START - 6 * DAY - HOUR));
+
+        final NotificationSentAggregator.UserStats stats = mAggregator.update(USER_ID);
+
+        assertThat(stats.getSentByApp(PKG).sentCount).isEqualTo(1);
+    }
+
+    private void returnEvents(Event... events) throws RemoteException {
+        final List<Event> eventList = new ArrayList<>(List.of(events));
+        final UsageEvents usageEvents = new UsageEvents(eventList, new String[] {PKG});
+        final Parcel parcel = Parcel.obtain();
+        parcel.setDataPosition(0);
+        usageEvents.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString()))
+                .thenReturn(UsageEvents.CREATOR.createFromParcel(parcel));
+    }
+
+    private static Event notification(String channelId, long timestamp) {
+        final Event event = event(Event.NOTIFICATION_INTERRUPTION, timestamp);
+        event.mNotificationChannelId = channelId;
+        return event;
+    }
+
+    private static Event event(int type, long timestamp) {
+        final Event event = new Event();
+        event.mEventType = type;
+        event.mPackage = PKG;
+        event.mTimeStamp = timestamp;
+        return event;
+    }
+}
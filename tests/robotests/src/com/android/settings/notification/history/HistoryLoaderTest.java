@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.notification.history;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import android.app.NotificationHistory;
+import android.app.NotificationHistory.HistoricalNotification;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Parcel;
+
+import com.android.settings.notification.NotificationBackend;
+import com.android.settings.testutils.shadow.ShadowThreadUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = ShadowThreadUtils.class)
+public class HistoryLoaderTest {
+
+    private static final int UID = 10001;
+
+    @Mock
+    private NotificationBackend mBackend;
+    @Mock
+    private PackageManager mPm;
+
+    private Context mContext;
+    private HistoryLoader mLoader;
+    private final List<List<NotificationHistoryPackage>> mFirstPages = new ArrayList<>();
+    private final List<List<NotificationHistoryPackage>> mNextPages = new ArrayList<>();
+    private final HistoryLoader.OnHistoryLoaderListener mListener =
+            new HistoryLoader.OnHistoryLoaderListener() {
+                @Override
+                public void onHistoryLoaded(List<NotificationHistoryPackage> packages) {
+                    mFirstPages.add(packages);
+                }
+
+                @Override
+                public void onHistoryPageLoaded(List<NotificationHistoryPackage> packages) {
+                    mNextPages.add(packages);
+                }
+            };
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        mLoader = new HistoryLoader(mContext, mBackend, mPm);
+    }
+
+    @Test
+    public void load_morePackagesThanPageSize_deliveredByPagesOfTen() {
+        returnHistory(notificationsFromPackages(25));
+
+        mLoader.load(mListener);
+
+        assertThat(mFirstPages).hasSize(1);
+        assertThat(mFirstPages.get(0)).hasSize(10);
+        assertThat(mNextPages).hasSize(2);
+        assertThat(mNextPages.get(0)).hasSize(10);
+        assertThat(mNextPages.get(1)).hasSize(5);
+    }
+
+    @Test
+    public void load_mostRecentPackagesFirst() {
+        returnHistory(notification("pkg.old", 100), notification("pkg.new", 300),
+                notification("pkg.middle", 200), notification("pkg.old", 150));
+
+        mLoader.load(mListener);
+
+        assertThat(packageNames(mFirstPages.get(0)))
+                .containsExactly("pkg.new", "pkg.middle", "pkg.old").inOrder();
+        assertThat(mFirstPages.get(0).get(2).notifications).hasSize(2);
+    }
+
+    @Test
+    public void load_pagesInOrder_mostRecentFirst() {
+        returnHistory(notificationsFromPackages(12));
+
+        mLoader.load(mListener);
+
+        assertThat(packageNames(mFirstPages.get(0)).get(0)).isEqualTo("pkg11");
+        assertThat(packageNames(mFirstPages.get(0)).get(9)).isEqualTo("pkg2");
+        assertThat(packageNames(mNextPages.get(0))).containsExactly("pkg1", "pkg0").inOrder();
+    }
+
+    @Test
+    public void load_noHistory_emptyFirstPageOnly() {
+        returnHistory();
+
+        mLoader.load(mListener);
+
+        assertThat(mFirstPages).hasSize(1);
+        assertThat(mFirstPages.get(0)).isEmpty();
+        assertThat(mNextPages).isEmpty();
+    }
+
+    @Test
+    public void load_fewerPackagesThanPageSize_firstPageOnly() {
+        returnHistory(notificationsFromPackages(3));
+
+        mLoader.load(mListener);
+
+        assertThat(mFirstPages).hasSize(1);
+        assertThat(mFirstPages.get(0)).hasSize(3);
+        assertThat(mNextPages).isEmpty();
+    }
+
+    @Test
+    public void cancel_afterFirstPage_nextPagesNotDelivered() {
+        returnHistory(notificationsFromPackages(25));
+
+        mLoader.load(new HistoryLoader.OnHistoryLoaderListener() {
+            @Override
+            public void onHistoryLoaded(List<NotificationHistoryPackage> packages) {
+                mFirstPages.add(packages);
+                mLoader.cancel();
+            }
+
+            @Override
+            public void onHistoryPageLoaded(List<NotificationHistoryPackage> packages) {
+                mNextPages.add(packages);
+            }
+        });
+
+        assertThat(mFirstPages).hasSize(1);
+        assertThat(mNextPages).isEmpty();
+    }
+
+    @Test
+    public void cancel_beforeLoad_nothingDelivered() {
+        returnHistory(notificationsFromPackages(3));
+
+        mLoader.cancel();
+        mLoader.load(mListener);
+
+        assertThat(mFirstPages).isEmpty();
+        assertThat(mNextPages).isEmpty();
+    }
+
+    private void returnHistory(HistoricalNotification... notifications) {
+        final NotificationHistory history = new NotificationHistory();
+        for (HistoricalNotification notification : notifications) {
+            history.addNotificationToWrite(notification);
+        }
+        history.poolStringsFromNotifications();
+        // Round trip through a parcel, as the history is read the way it comes over binder.
+        final Parcel parcel = Parcel.obtain();
+        history.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        when(mBackend.getNotificationHistory(any(), any()))
+                .thenReturn(NotificationHistory.CREATOR.createFromParcel(parcel));
+    }
+
+    /** One notification for each of {@code count} packages, pkg0 being the oldest. */
+    private static HistoricalNotification[] notificationsFromPackages(int count) {
+        final HistoricalNotification[] notifications = new HistoricalNotification[count];
+        for (int i = 0; i < count; i++) {
+            notifications[i] = notification("pkg" + i, 1000 + i);
+        }
+        return notifications;
+    }
+
+    private static HistoricalNotification notification(String pkg, long postedTimeMs) {
+        return new HistoricalNotification.Builder()
+                .setPackage(pkg)
+                .setChannelName("channel")
+                .setChannelId("channel_id")
+                .setUid(UID)
+                .setUserId(0)
+                .setPostedTimeMs(postedTimeMs)
+                .setTitle("title")
+                .setText("text")
+                .build();
+    }
+
+    private static List<String> packageNames(List<NotificationHistoryPackage> packages) {
+        final List<String> names = new ArrayList<>();
+        for (NotificationHistoryPackage nhp : packages) {
+            names.add(nhp.pkgName);
+        }
+        return names;
+    }
+}
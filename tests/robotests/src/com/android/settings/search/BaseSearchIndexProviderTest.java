@@ -232,4 +232,54 @@ public class BaseSearchIndexProviderTest {
 
         assertThat(mIndexProvider.getDynamicRawDataToIndex(mContext, true)).isNotEmpty();
     }
+
+    public static class RawDataPreferenceController extends AvailablePreferenceController {
+        private RawDataPreferenceController(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void updateRawDataToIndex(List<SearchIndexableRaw> rawData) {
+            rawData.add(new SearchIndexableRaw(this.mContext));
+        }
+    }
+
+    @Test
+    public void hasStaticRawData_noRawDataFromControllers_shouldReturnTrue() {
+        final BaseSearchIndexProvider provider =
+                createProvider(new AvailablePreferenceController(mContext));
+
+        assertThat(provider.hasStaticRawData(mContext)).isTrue();
+    }
+
+    @Test
+    public void hasStaticRawData_controllerProvidesRawData_shouldReturnFalse() {
+        final BaseSearchIndexProvider provider =
+                createProvider(new RawDataPreferenceController(mContext));
+
+        assertThat(provider.hasStaticRawData(mContext)).isFalse();
+    }
+
+    @Test
+    public void hasStaticRawData_providerOverridesRawData_shouldReturnFalse() {
+        final BaseSearchIndexProvider provider = new BaseSearchIndexProvider() {
+            @Override
+            public List<SearchIndexableRaw> getRawDataToIndex(Context context, boolean enabled) {
+                return new ArrayList<>();
+            }
+        };
+
+        assertThat(provider.hasStaticRawData(mContext)).isFalse();
+    }
+
+    private static BaseSearchIndexProvider createProvider(
+            AbstractPreferenceController controller) {
+        return new BaseSearchIndexProvider() {
+            @Override
+            public List<AbstractPreferenceController> createPreferenceControllers(
+                    Context context) {
+                return List.of(controller);
+            }
+        };
+    }
 }
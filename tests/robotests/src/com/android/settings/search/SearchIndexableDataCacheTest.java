@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.provider.SearchIndexableResource;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class SearchIndexableDataCacheTest {
+
+    private static final String FINGERPRINT = "fingerprint";
+
+    private Context mContext;
+    private SearchIndexableDataCache mCache;
+    private AtomicInteger mLoadCount;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mCache = new SearchIndexableDataCache();
+        mLoadCount = new AtomicInteger();
+    }
+
+    @Test
+    public void getXmlResources_sameFingerprint_loadOnce() {
+        final List<SearchIndexableResource> first = getXmlResources(FINGERPRINT);
+        final List<SearchIndexableResource> second = getXmlResources(FINGERPRINT);
+
+        assertThat(second).isSameInstanceAs(first);
+        assertThat(mLoadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void getXmlResources_differentFingerprint_reload() {
+        getXmlResources(FINGERPRINT);
+        getXmlResources("other_fingerprint");
+
+        assertThat(mLoadCount.get()).isEqualTo(2);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getXmlResources_cached_cannotBeModified() {
+        getXmlResources(FINGERPRINT).clear();
+    }
+
+    @Test
+    public void hasStaticRawData_sameFingerprint_checkOnce() {
+        assertThat(hasStaticRawData(FINGERPRINT, true)).isTrue();
+        assertThat(hasStaticRawData(FINGERPRINT, false)).isTrue();
+
+        assertThat(mLoadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void hasStaticRawData_stateDependent_cachedAsNotStatic() {
+        assertThat(hasStaticRawData(FINGERPRINT, false)).isFalse();
+        assertThat(hasStaticRawData(FINGERPRINT, true)).isFalse();
+
+        assertThat(mLoadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void hasStaticRawData_afterClear_checkAgain() {
+        hasStaticRawData(FINGERPRINT, true);
+        mCache.clear();
+        hasStaticRawData(FINGERPRINT, true);
+
+        assertThat(mLoadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void computeFingerprint_sameConfiguration_returnSameValue() {
+        assertThat(SearchIndexableDataCache.computeFingerprint(mContext))
+                .isEqualTo(SearchIndexableDataCache.computeFingerprint(mContext));
+    }
+
+    @Test
+    @Config(qualifiers = "fr")
+    public void computeFingerprint_containsLocale() {
+        assertThat(SearchIndexableDataCache.computeFingerprint(mContext)).contains("fr");
+    }
+
+    private List<SearchIndexableResource> getXmlResources(String fingerprint) {
+        return mCache.getXmlResources(fingerprint, FakeSettingsFragment.class, () -> {
+            mLoadCount.incrementAndGet();
+            return List.of(new SearchIndexableResource(mContext));
+        });
+    }
+
+    private boolean hasStaticRawData(String fingerprint, boolean isStatic) {
+        return mCache.hasStaticRawData(fingerprint, FakeSettingsFragment.class, () -> {
+            mLoadCount.incrementAndGet();
+            return isStatic;
+        });
+    }
+}
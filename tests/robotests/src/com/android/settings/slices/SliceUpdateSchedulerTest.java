@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.slices;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public class SliceUpdateSchedulerTest {
+
+    private static final long INTERVAL_MS = 300L;
+    private static final Uri URI_1 = Uri.parse("content://test/slice1");
+    private static final Uri URI_2 = Uri.parse("content://test/slice2");
+
+    @Mock
+    private Context mContext;
+    @Mock
+    private ContentResolver mContentResolver;
+
+    private SliceUpdateScheduler mScheduler;
+    private TestWorker mWorker1;
+    private TestWorker mWorker2;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mContext.getContentResolver()).thenReturn(mContentResolver);
+        mScheduler = new SliceUpdateScheduler(Looper.getMainLooper());
+        mWorker1 = new TestWorker(mContext, URI_1);
+        mWorker2 = new TestWorker(mContext, URI_2);
+    }
+
+    @Test
+    public void requestUpdate_severalTimesInInterval_notifyOnce() {
+        mScheduler.requestUpdate(mWorker1);
+        mScheduler.requestUpdate(mWorker1);
+        mScheduler.requestUpdate(mWorker1);
+
+        idleFor(INTERVAL_MS - 1);
+        verify(mContentResolver, never()).notifyChange(any(Uri.class), any());
+
+        idleFor(1);
+        verify(mContentResolver).notifyChange(eq(URI_1), any());
+    }
+
+    @Test
+    public void requestUpdate_hostNotBound_waitForBind() {
+        mScheduler.requestUpdate(mWorker1);
+        idleFor(INTERVAL_MS);
+
+        mScheduler.requestUpdate(mWorker1);
+        idleFor(INTERVAL_MS);
+        verify(mContentResolver, times(1)).notifyChange(eq(URI_1), any());
+
+        mScheduler.onSliceBound(URI_1, false /* boundBySettings */);
+        idleFor(0);
+        verify(mContentResolver, times(2)).notifyChange(eq(URI_1), any());
+    }
+
+    @Test
+    public void requestUpdate_hostNeverBound_notifyAfterMaxBindWait() {
+        mScheduler.requestUpdate(mWorker1);
+        idleFor(INTERVAL_MS);
+
+        mScheduler.requestUpdate(mWorker1);
+        idleFor(SliceUpdateScheduler.MAX_BIND_WAIT_MS);
+
+        verify(mContentResolver, times(2)).notifyChange(eq(URI_1), any());
+    }
+
+    @Test
+    public void requestUpdate_dueTogether_deferNotPrioritized() {
+        // Make both slices known to the scheduler, then bind the second one from Settings.
+        mScheduler.requestUpdate(mWorker1);
+        mScheduler.requestUpdate(mWorker2);
+        idleFor(INTERVAL_MS);
+        mScheduler.onSliceBound(URI_1, false /* boundBySettings */);
+        mScheduler.onSliceBound(URI_2, true /* boundBySettings */);
+        idleFor(SliceUpdateScheduler.VISIBLE_TIMEOUT_MS);
+
+        mScheduler.requestUpdate(mWorker1);
+        mScheduler.requestUpdate(mWorker2);
+        idleFor(0);
+        verify(mContentResolver, times(2)).notifyChange(eq(URI_2), any());
+        verify(mContentResolver, times(1)).notifyChange(eq(URI_1), any());
+
+        idleFor(SliceUpdateScheduler.NOT_PRIORITIZED_DEFER_MS);
+        final InOrder inOrder = inOrder(mContentResolver);
+        inOrder.verify(mContentResolver, times(2)).notifyChange(eq(URI_2), any());
+        inOrder.verify(mContentResolver).notifyChange(eq(URI_1), any());
+    }
+
+    @Test
+    public void requestUpdate_onlyNotPrioritizedDue_notDeferred() {
+        mScheduler.requestUpdate(mWorker1);
+        idleFor(INTERVAL_MS);
+        mScheduler.onSliceBound(URI_1, false /* boundBySettings */);
+        idleFor(SliceUpdateScheduler.VISIBLE_TIMEOUT_MS);
+
+        mScheduler.requestUpdate(mWorker1);
+        idleFor(0);
+
+        verify(mContentResolver, times(2)).notifyChange(eq(URI_1), any());
+    }
+
+    @Test
+    public void onSliceBound_boundByHostAfterSettings_noLongerPrioritized() {
+        mScheduler.requestUpdate(mWorker1);
+        mScheduler.onSliceBound(URI_1, true /* boundBySettings */);
+        mScheduler.onSliceBound(URI_1, false /* boundBySettings */);
+        idleFor(SliceUpdateScheduler.VISIBLE_TIMEOUT_MS);
+        final StringWriter stringWriter = new StringWriter();
+
+        mScheduler.dump(new PrintWriter(stringWriter));
+
+        assertThat(stringWriter.toString()).doesNotContain("(prioritized)");
+    }
+
+    @Test
+    public void cancelUpdate_pendingUpdate_notNotified() {
+        mScheduler.requestUpdate(mWorker1);
+
+        mScheduler.cancelUpdate(mWorker1);
+        idleFor(INTERVAL_MS);
+
+        verify(mContentResolver, never()).notifyChange(any(Uri.class), any());
+    }
+
+    @Test
+    public void dump_containsNotifyStats() {
+        mScheduler.requestUpdate(mWorker1);
+        mScheduler.requestUpdate(mWorker1);
+        idleFor(INTERVAL_MS);
+        final StringWriter stringWriter = new StringWriter();
+
+        mScheduler.dump(new PrintWriter(stringWriter));
+
+        final String dump = stringWriter.toString();
+        assertThat(dump).contains(URI_1.toString());
+        assertThat(dump).contains("requests=2 notifies=1");
+        assertThat(dump).contains("notifyLatencyMs avg=" + INTERVAL_MS);
+    }
+
+    private static void idleFor(long millis) {
+        ShadowLooper.idleMainLooper(millis, TimeUnit.MILLISECONDS);
+    }
+
+    private static class TestWorker extends SliceBackgroundWorker<Void> {
+
+        TestWorker(Context context, Uri uri) {
+            super(context, uri);
+        }
+
+        @Override
+        protected void onSlicePinned() {
+        }
+
+        @Override
+        protected void onSliceUnpinned() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        protected long getSliceUpdateInterval() {
+            return INTERVAL_MS;
+        }
+    }
+}
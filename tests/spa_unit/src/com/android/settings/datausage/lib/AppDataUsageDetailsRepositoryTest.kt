@@ -20,16 +20,19 @@ import android.app.usage.NetworkStats
 import android.content.Context
 import android.net.NetworkTemplate
 import android.util.Range
+import android.util.SparseLongArray
 import androidx.test.core.app.ApplicationProvider
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import com.google.common.truth.Truth.assertThat
 import kotlinx.coroutines.runBlocking
+import org.junit.Before
 import org.junit.Test
 import org.junit.runner.RunWith
+import org.mockito.kotlin.any
 import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.eq
 import org.mockito.kotlin.mock
 import org.mockito.kotlin.stub
-import com.android.settings.datausage.lib.NetworkStatsRepository.Companion.Bucket
 
 @RunWith(AndroidJUnit4::class)
 class AppDataUsageDetailsRepositoryTest {
@@ -43,25 +46,20 @@ class AppDataUsageDetailsRepositoryTest {
 
     private val networkStatsRepository = mock<NetworkStatsRepository>()
 
+    @Before
+    fun setUp() {
+        NetworkUsageSnapshotCache.invalidate(context, template)
+    }
+
     @Test
     fun queryDetailsForCycles_hasCycles(): Unit = runBlocking {
         networkStatsRepository.stub {
-            on { queryBuckets(CYCLE1_START_TIME, CYCLE1_END_TIME) } doReturn listOf(
-                Bucket(
-                    uid = UID,
-                    bytes = BACKGROUND_USAGE,
-                    state = NetworkStats.Bucket.STATE_DEFAULT,
-                    startTimeStamp = 0L,
-                    endTimeStamp = 0L,
-                ),
-                Bucket(
-                    uid = UID,
-                    bytes = FOREGROUND_USAGE,
-                    state = NetworkStats.Bucket.STATE_FOREGROUND,
-                    startTimeStamp = 0L,
-                    endTimeStamp = 0L,
-                ),
-            )
+            on {
+                queryUsageByState(eq(CYCLE1_START_TIME), eq(CYCLE1_END_TIME), any())
+            } doReturn SparseLongArray().apply {
+                put(NetworkStats.Bucket.STATE_DEFAULT, BACKGROUND_USAGE)
+                put(NetworkStats.Bucket.STATE_FOREGROUND, FOREGROUND_USAGE)
+            }
         }
         val repository = AppDataUsageDetailsRepository(
             context = context,
@@ -87,22 +85,12 @@ class AppDataUsageDetailsRepositoryTest {
     @Test
     fun queryDetailsForCycles_defaultCycles(): Unit = runBlocking {
         networkStatsRepository.stub {
-            on { queryBuckets(CYCLE1_END_TIME, CYCLE2_END_TIME) } doReturn listOf(
-                Bucket(
-                    uid = UID,
-                    bytes = BACKGROUND_USAGE,
-                    state = NetworkStats.Bucket.STATE_DEFAULT,
-                    startTimeStamp = 0L,
-                    endTimeStamp = 0L,
-                ),
-                Bucket(
-                    uid = UID,
-                    bytes = FOREGROUND_USAGE,
-                    state = NetworkStats.Bucket.STATE_FOREGROUND,
-                    startTimeStamp = 0L,
-                    endTimeStamp = 0L,
-                ),
-            )
+            on {
+                queryUsageByState(eq(CYCLE1_END_TIME), eq(CYCLE2_END_TIME), any())
+            } doReturn SparseLongArray().apply {
+                put(NetworkStats.Bucket.STATE_DEFAULT, BACKGROUND_USAGE)
+                put(NetworkStats.Bucket.STATE_FOREGROUND, FOREGROUND_USAGE)
+            }
         }
         val repository = AppDataUsageDetailsRepository(
             context = context,
@@ -128,14 +116,9 @@ class AppDataUsageDetailsRepositoryTest {
     @Test
     fun queryDetailsForCycles_appWithZeroUsage_filtered(): Unit = runBlocking {
         networkStatsRepository.stub {
-            on { queryBuckets(CYCLE1_END_TIME, CYCLE2_END_TIME) } doReturn listOf(
-                Bucket(
-                    uid = UID,
-                    bytes = 0L,
-                    startTimeStamp = 0L,
-                    endTimeStamp = 0L,
-                ),
-            )
+            on {
+                queryUsageByState(eq(CYCLE1_END_TIME), eq(CYCLE2_END_TIME), any())
+            } doReturn SparseLongArray()
         }
         val repository = AppDataUsageDetailsRepository(
             context = context,
@@ -23,10 +23,10 @@ import android.net.NetworkPolicyManager
 import android.net.NetworkTemplate
 import android.os.UserHandle
 import android.os.UserManager
+import android.util.SparseLongArray
 import androidx.test.core.app.ApplicationProvider
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import com.android.settings.R
-import com.android.settings.datausage.lib.NetworkStatsRepository.Companion.Bucket
 import com.android.settingslib.AppItem
 import com.android.settingslib.spaprivileged.framework.common.userManager
 import com.google.common.truth.Truth.assertThat
@@ -76,12 +76,12 @@ class AppDataUsageRepositoryTest {
             template = Template,
             getPackageName = { null },
         )
-        val buckets = listOf(
-            Bucket(uid = APP_ID_1, bytes = 1, startTimeStamp = 0, endTimeStamp = 0),
-            Bucket(uid = APP_ID_2, bytes = 2, startTimeStamp = 0, endTimeStamp = 0),
-        )
+        val usageByUid = SparseLongArray().apply {
+            put(APP_ID_1, 1)
+            put(APP_ID_2, 2)
+        }
 
-        val appPercentList = repository.getAppPercent(null, buckets)
+        val appPercentList = repository.getAppPercent(null, usageByUid)
 
         assertThat(appPercentList).hasSize(2)
         appPercentList[0].first.apply {
@@ -106,12 +106,12 @@ class AppDataUsageRepositoryTest {
             template = Template,
             getPackageName = { if (it.key == APP_ID_1) HIDING_PACKAGE_NAME else null },
         )
-        val buckets = listOf(
-            Bucket(uid = APP_ID_1, bytes = 1, startTimeStamp = 0, endTimeStamp = 0),
-            Bucket(uid = APP_ID_2, bytes = 2, startTimeStamp = 0, endTimeStamp = 0),
-        )
+        val usageByUid = SparseLongArray().apply {
+            put(APP_ID_1, 1)
+            put(APP_ID_2, 2)
+        }
 
-        val appPercentList = repository.getAppPercent(HIDING_CARRIER_ID, buckets)
+        val appPercentList = repository.getAppPercent(HIDING_CARRIER_ID, usageByUid)
 
         assertThat(appPercentList).hasSize(1)
         appPercentList[0].first.apply {
@@ -27,6 +27,7 @@ import com.android.settings.testutils.zonedDateTime
 import com.google.common.truth.Truth.assertThat
 import java.time.ZonedDateTime
 import kotlinx.coroutines.test.runTest
+import org.junit.Before
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.mockito.kotlin.doReturn
@@ -61,6 +62,11 @@ class NetworkCycleDataRepositoryTest {
     private val repository =
         spy(NetworkCycleDataRepository(context, template, mockNetworkStatsRepository))
 
+    @Before
+    fun setUp() {
+        NetworkUsageSnapshotCache.invalidate(context, template)
+    }
+
     @Test
     fun loadFirstCycle_byPolicy() = runTest {
         val policy = mock<NetworkPolicy> {
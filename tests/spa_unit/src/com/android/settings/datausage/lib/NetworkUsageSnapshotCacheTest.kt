@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage.lib
+
+import android.content.Context
+import android.net.NetworkTemplate
+import android.util.Range
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.kotlin.mock
+
+@RunWith(AndroidJUnit4::class)
+class NetworkUsageSnapshotCacheTest {
+    private val context: Context = ApplicationProvider.getApplicationContext()
+
+    private val template = mock<NetworkTemplate>()
+
+    private var now = CLOSED_CYCLE.upper + NetworkUsageSnapshotCache.SETTLE_TIME_MS
+
+    private val cache = NetworkUsageSnapshotCache(context, template) { now }
+
+    private var loadCount = 0
+
+    @After
+    fun tearDown() {
+        cache.invalidate()
+    }
+
+    @Test
+    fun getUsage_closedCycle_loadedOnce() {
+        val usage1 = cache.getUsage(CLOSED_CYCLE) { load(USAGE) }
+        val usage2 = cache.getUsage(CLOSED_CYCLE) { load(USAGE + 1) }
+
+        assertThat(usage1).isEqualTo(USAGE)
+        assertThat(usage2).isEqualTo(USAGE)
+        assertThat(loadCount).isEqualTo(1)
+    }
+
+    @Test
+    fun getUsage_closedCycle_persisted() {
+        cache.getUsage(CLOSED_CYCLE) { load(USAGE) }
+
+        val usage = NetworkUsageSnapshotCache(context, template) { now }
+            .getUsage(CLOSED_CYCLE) { load(USAGE + 1) }
+
+        assertThat(usage).isEqualTo(USAGE)
+        assertThat(loadCount).isEqualTo(1)
+    }
+
+    @Test
+    fun getUsage_cycleNotSettled_loadedEveryTime() {
+        now--
+
+        cache.getUsage(CLOSED_CYCLE) { load(USAGE) }
+        val usage = cache.getUsage(CLOSED_CYCLE) { load(USAGE + 1) }
+
+        assertThat(usage).isEqualTo(USAGE + 1)
+        assertThat(loadCount).isEqualTo(2)
+    }
+
+    @Test
+    fun getUsage_zeroUsage_cached() {
+        cache.getUsage(CLOSED_CYCLE) { load(0) }
+        val usage = cache.getUsage(CLOSED_CYCLE) { load(USAGE) }
+
+        assertThat(usage).isEqualTo(0)
+        assertThat(loadCount).isEqualTo(1)
+    }
+
+    @Test
+    fun getUsage_loadFailed_notCached() {
+        val usage1 = cache.getUsage(CLOSED_CYCLE) { load(null) }
+        val usage2 = cache.getUsage(CLOSED_CYCLE) { load(USAGE) }
+
+        assertThat(usage1).isNull()
+        assertThat(usage2).isEqualTo(USAGE)
+        assertThat(loadCount).isEqualTo(2)
+    }
+
+    @Test
+    fun getUsage_differentSubscriberIds_cachedSeparately() {
+        val template1 = NetworkTemplate.Builder(NetworkTemplate.MATCH_MOBILE)
+            .setSubscriberIds(setOf(SUBSCRIBER_ID_1)).build()
+        val template2 = NetworkTemplate.Builder(NetworkTemplate.MATCH_MOBILE)
+            .setSubscriberIds(setOf(SUBSCRIBER_ID_2)).build()
+        val cache1 = NetworkUsageSnapshotCache(context, template1) { now }
+        val cache2 = NetworkUsageSnapshotCache(context, template2) { now }
+
+        try {
+            cache1.getUsage(CLOSED_CYCLE) { load(USAGE) }
+            val usage = cache2.getUsage(CLOSED_CYCLE) { load(USAGE + 1) }
+
+            assertThat(usage).isEqualTo(USAGE + 1)
+            assertThat(loadCount).isEqualTo(2)
+        } finally {
+            cache1.invalidate()
+            cache2.invalidate()
+        }
+    }
+
+    @Test
+    fun getOrLoad_differentUids_cachedSeparately() {
+        cache.getOrLoad(CLOSED_CYCLE, listOf(UID_1)) { longArrayOf(1, 0) }
+
+        val values = cache.getOrLoad(CLOSED_CYCLE, listOf(UID_2, UID_1)) { longArrayOf(3, 2) }
+
+        assertThat(values).asList().containsExactly(3L, 2L).inOrder()
+    }
+
+    @Test
+    fun invalidate_loadedAgain() {
+        cache.getUsage(CLOSED_CYCLE) { load(USAGE) }
+
+        NetworkUsageSnapshotCache.invalidate(context, template)
+        val usage = cache.getUsage(CLOSED_CYCLE) { load(USAGE + 1) }
+
+        assertThat(usage).isEqualTo(USAGE + 1)
+        assertThat(loadCount).isEqualTo(2)
+    }
+
+    private fun load(usage: Long?): Long? {
+        loadCount++
+        return usage
+    }
+
+    private companion object {
+        val CLOSED_CYCLE = Range(1694444444000L, 1695555555000L)
+        const val USAGE = 100L
+        const val UID_1 = 10000
+        const val UID_2 = 10001
+        const val SUBSCRIBER_ID_1 = "310260000000001"
+        const val SUBSCRIBER_ID_2 = "310260000000002"
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage.lib
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.settings.datausage.lib.NetworkStatsRepository.Companion.Bucket
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class NetworkUsageTimeIndexTest {
+
+    @Test
+    fun getUsage_empty_returnZero() {
+        val index = NetworkUsageTimeIndex(emptyList())
+
+        assertThat(index.getUsage(0L, Long.MAX_VALUE)).isEqualTo(0L)
+    }
+
+    @Test
+    fun getUsage_onlyBucketsFullyInRange() {
+        val index = NetworkUsageTimeIndex(
+            listOf(
+                Bucket(uid = 0, bytes = 3L, startTimeStamp = 20L, endTimeStamp = 30L),
+                Bucket(uid = 0, bytes = 1L, startTimeStamp = 0L, endTimeStamp = 10L),
+                Bucket(uid = 0, bytes = 2L, startTimeStamp = 10L, endTimeStamp = 20L),
+            )
+        )
+
+        assertThat(index.getUsage(0L, 30L)).isEqualTo(6L)
+        assertThat(index.getUsage(10L, 20L)).isEqualTo(2L)
+        assertThat(index.getUsage(5L, 25L)).isEqualTo(2L)
+        assertThat(index.getUsage(12L, 18L)).isEqualTo(0L)
+        assertThat(index.getUsage(30L, 40L)).isEqualTo(0L)
+    }
+
+    @Test
+    fun getUsage_overlappingBuckets_sameAsFilterTime() {
+        val index = NetworkUsageTimeIndex(
+            listOf(
+                Bucket(uid = 0, bytes = 1L, startTimeStamp = 0L, endTimeStamp = 40L),
+                Bucket(uid = 0, bytes = 2L, startTimeStamp = 10L, endTimeStamp = 20L),
+                Bucket(uid = 0, bytes = 4L, startTimeStamp = 20L, endTimeStamp = 30L),
+            )
+        )
+
+        assertThat(index.getUsage(10L, 30L)).isEqualTo(6L)
+        assertThat(index.getUsage(0L, 30L)).isEqualTo(6L)
+        assertThat(index.getUsage(0L, 40L)).isEqualTo(7L)
+    }
+}
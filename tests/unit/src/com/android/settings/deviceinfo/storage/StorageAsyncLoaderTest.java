@@ -33,6 +33,7 @@ import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.UserInfo;
 import android.content.res.Resources;
+import android.os.Looper;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.util.DataUnit;
@@ -40,6 +41,7 @@ import android.util.SparseArray;
 
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
 import androidx.test.runner.AndroidJUnit4;
 
 import com.android.settings.R;
@@ -83,6 +85,8 @@ public class StorageAsyncLoaderTest {
         MockitoAnnotations.initMocks(this);
         mContext = spy(ApplicationProvider.getApplicationContext());
         mInfo = new ArrayList<>();
+        // Sizes cached by the previous tests would hide the mocked stats.
+        StorageSizeCache.getInstance(mContext).clear();
         mLoader = new StorageAsyncLoader(mContext, mUserManager, "id", mSource, mPackageManager);
         when(mPackageManager.getInstalledApplicationsAsUser(eq(PRIMARY_USER_ID), anyInt()))
                 .thenReturn(mInfo);
@@ -210,6 +214,58 @@ public class StorageAsyncLoaderTest {
         assertThat(result.get(PRIMARY_USER_ID).allAppsExceptGamesSize).isEqualTo(33L);
     }
 
+    @Test
+    public void testManyPackages_allCounted() throws Exception {
+        // More packages than a single scan task handles.
+        for (int i = 0; i < 70; i++) {
+            addPackage(PACKAGE_NAME_1 + i, 0, 1, 10, ApplicationInfo.CATEGORY_UNDEFINED);
+        }
+
+        SparseArray<StorageAsyncLoader.StorageResult> result = mLoader.loadInBackground();
+
+        assertThat(result.size()).isEqualTo(1);
+        assertThat(result.get(PRIMARY_USER_ID).allAppsExceptGamesSize).isEqualTo(770L);
+    }
+
+    @Test
+    public void testMultipleUsers_duplicateCodeCountedForLaterUser() throws Exception {
+        UserInfo info = new UserInfo();
+        info.id = SECONDARY_USER_ID;
+        mUsers.add(info);
+        // The installed packages are mocked for all the users.
+        addPackage(PACKAGE_NAME_1, 0, 1, 10, ApplicationInfo.CATEGORY_UNDEFINED);
+
+        SparseArray<StorageAsyncLoader.StorageResult> result = mLoader.loadInBackground();
+
+        assertThat(result.size()).isEqualTo(2);
+        assertThat(result.get(PRIMARY_USER_ID).duplicateCodeSize).isEqualTo(0L);
+        assertThat(result.get(SECONDARY_USER_ID).duplicateCodeSize).isEqualTo(1L);
+    }
+
+    @Test
+    public void testProgressListener_calledOnMainThreadForEachUser() throws Exception {
+        UserInfo info = new UserInfo();
+        info.id = SECONDARY_USER_ID;
+        mUsers.add(info);
+        final List<SparseArray<StorageAsyncLoader.StorageResult>> progress = new ArrayList<>();
+        final List<Boolean> onMainThread = new ArrayList<>();
+        mLoader.setProgressListener(loadedResults -> {
+            onMainThread.add(Looper.myLooper() == Looper.getMainLooper());
+            progress.add(loadedResults);
+        });
+
+        mLoader.loadInBackground();
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        assertThat(progress).hasSize(2);
+        assertThat(onMainThread).containsExactly(true, true);
+        final SparseArray<StorageAsyncLoader.StorageResult> lastResults =
+                progress.get(0).size() > progress.get(1).size() ? progress.get(0) : progress.get(1);
+        assertThat(lastResults.size()).isEqualTo(2);
+        assertThat(lastResults.get(PRIMARY_USER_ID)).isNotNull();
+        assertThat(lastResults.get(SECONDARY_USER_ID)).isNotNull();
+    }
+
     private ApplicationInfo addPackage(String packageName, long cacheSize, long codeSize,
             long dataSize, int category) throws Exception {
         StorageStatsSource.AppStorageStats storageStats =
@@ -18,6 +18,7 @@ package com.android.settings.network;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -39,11 +40,19 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 @RunWith(AndroidJUnit4.class)
 public class CarrierConfigCacheTest {
 
     static final int ONCE_SUB_ID = 11;
     static final int TWICE_SUB_ID = 12;
+    static final int PARTIAL_SUB_ID = 13;
+    static final int SLOW_SUB_ID = 14;
+    static final int FAST_SUB_ID = 15;
+    static final String KEY = CarrierConfigManager.KEY_HIDE_CARRIER_NETWORK_SETTINGS_BOOL;
 
     @Rule
     public final MockitoRule mMockitoRule = MockitoJUnit.rule();
@@ -98,4 +107,42 @@ public class CarrierConfigCacheTest {
 
         verify(mCarrierConfigManager, times(1)).getConfigForSubId(TWICE_SUB_ID);
     }
+
+    @Test
+    public void getBoolean_notCached_onlyGetRequestedKey() {
+        PersistableBundle partialConfig = new PersistableBundle();
+        partialConfig.putBoolean(KEY, true);
+        when(mCarrierConfigManager.getConfigForSubId(PARTIAL_SUB_ID, KEY))
+                .thenReturn(partialConfig);
+
+        assertThat(mCarrierConfigCache.getBoolean(PARTIAL_SUB_ID, KEY, false)).isTrue();
+        assertThat(mCarrierConfigCache.getBoolean(PARTIAL_SUB_ID, KEY, false)).isTrue();
+
+        verify(mCarrierConfigManager, times(1)).getConfigForSubId(PARTIAL_SUB_ID, KEY);
+        verify(mCarrierConfigManager, never()).getConfigForSubId(PARTIAL_SUB_ID);
+    }
+
+    @Test
+    public void getConfigForSubId_slowSubId_doNotBlockOtherSubId() throws Exception {
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+        when(mCarrierConfigManager.getConfigForSubId(SLOW_SUB_ID)).thenAnswer(invocation -> {
+            fetchStarted.countDown();
+            releaseFetch.await(5, TimeUnit.SECONDS);
+            return mCarrierConfig;
+        });
+        when(mCarrierConfigManager.getConfigForSubId(FAST_SUB_ID)).thenReturn(mCarrierConfig);
+
+        CompletableFuture<PersistableBundle> slowConfig = CompletableFuture.supplyAsync(
+                () -> mCarrierConfigCache.getConfigForSubId(SLOW_SUB_ID));
+        fetchStarted.await(5, TimeUnit.SECONDS);
+        CompletableFuture<PersistableBundle> sharedConfig = CompletableFuture.supplyAsync(
+                () -> mCarrierConfigCache.getConfigForSubId(SLOW_SUB_ID));
+
+        assertThat(mCarrierConfigCache.getConfigForSubId(FAST_SUB_ID)).isEqualTo(mCarrierConfig);
+        releaseFetch.countDown();
+        assertThat(slowConfig.get(5, TimeUnit.SECONDS)).isEqualTo(mCarrierConfig);
+        assertThat(sharedConfig.get(5, TimeUnit.SECONDS)).isEqualTo(mCarrierConfig);
+        verify(mCarrierConfigManager, times(1)).getConfigForSubId(SLOW_SUB_ID);
+    }
 }
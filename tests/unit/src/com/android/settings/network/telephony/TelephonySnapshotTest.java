@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network.telephony;
+
+import static com.android.settings.network.telephony.TelephonyConstants.RadioAccessFamily.GSM;
+import static com.android.settings.network.telephony.TelephonyConstants.RadioAccessFamily.LTE;
+import static com.android.settings.network.telephony.TelephonyConstants.RadioAccessFamily.WCDMA;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.os.PersistableBundle;
+import android.telephony.CarrierConfigManager;
+import android.telephony.ServiceState;
+import android.telephony.TelephonyManager;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.android.settings.network.CarrierConfigCache;
+import com.android.settings.network.telephony.TelephonyConstants.TelephonyManagerConstants;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@RunWith(AndroidJUnit4.class)
+public class TelephonySnapshotTest {
+    private static final int SUB_ID = 2;
+
+    @Mock
+    private TelephonyManager mTelephonyManager;
+    @Mock
+    private CarrierConfigCache mCarrierConfigCache;
+    @Mock
+    private ServiceState mServiceState;
+
+    private PersistableBundle mCarrierConfig;
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = spy(ApplicationProvider.getApplicationContext());
+
+        CarrierConfigCache.setTestInstance(mContext, mCarrierConfigCache);
+        when(mContext.getSystemService(TelephonyManager.class)).thenReturn(mTelephonyManager);
+        doReturn(mTelephonyManager).when(mTelephonyManager).createForSubscriptionId(SUB_ID);
+        doReturn(mServiceState).when(mTelephonyManager).getServiceState();
+        mCarrierConfig = new PersistableBundle();
+        doReturn(mCarrierConfig).when(mCarrierConfigCache).getConfig();
+        doReturn(mCarrierConfig).when(mCarrierConfigCache).getConfigForSubId(SUB_ID);
+    }
+
+    @Test
+    public void load_readNetworkTypes() {
+        doReturn((long) (LTE | GSM | WCDMA)).when(mTelephonyManager)
+                .getAllowedNetworkTypesForReason(
+                        TelephonyManager.ALLOWED_NETWORK_TYPES_REASON_USER);
+        doReturn(~TelephonyManager.NETWORK_TYPE_BITMASK_NR).when(mTelephonyManager)
+                .getAllowedNetworkTypesForReason(
+                        TelephonyManager.ALLOWED_NETWORK_TYPES_REASON_CARRIER);
+        doReturn(TelephonyManager.NETWORK_TYPE_BITMASK_NR).when(mTelephonyManager)
+                .getSupportedRadioAccessFamily();
+
+        final TelephonySnapshot snapshot = TelephonySnapshot.load(mContext, SUB_ID);
+
+        assertThat(snapshot.getSubId()).isEqualTo(SUB_ID);
+        assertThat(snapshot.getPreferredNetworkMode())
+                .isEqualTo(TelephonyManagerConstants.NETWORK_MODE_LTE_GSM_WCDMA);
+        assertThat(snapshot.is5gSupported()).isTrue();
+        assertThat(snapshot.is5gAllowedByCarrier()).isFalse();
+    }
+
+    @Test
+    public void load_readCarrierConfigOnce() {
+        mCarrierConfig.putBoolean(CarrierConfigManager.KEY_WORLD_MODE_ENABLED_BOOL, true);
+        mCarrierConfig.putBoolean(CarrierConfigManager.KEY_SHOW_CDMA_CHOICES_BOOL, true);
+        mCarrierConfig.putBoolean(CarrierConfigManager.KEY_LTE_ENABLED_BOOL, true);
+        doReturn(true).when(mTelephonyManager).isLteCdmaEvdoGsmWcdmaEnabled();
+
+        final TelephonySnapshot snapshot = TelephonySnapshot.load(mContext, SUB_ID);
+
+        assertThat(snapshot.hasCarrierConfig()).isTrue();
+        assertThat(snapshot.isWorldMode()).isTrue();
+        assertThat(snapshot.isGlobalCdma()).isTrue();
+        assertThat(snapshot.isLteEnabled()).isTrue();
+        assertThat(snapshot.isPrefer2g()).isFalse();
+        verify(mCarrierConfigCache, times(1)).getConfigForSubId(SUB_ID);
+    }
+
+    @Test
+    public void load_noCarrierConfig_carrierValuesAreFalse() {
+        doReturn(null).when(mCarrierConfigCache).getConfigForSubId(SUB_ID);
+        doReturn(true).when(mTelephonyManager).isLteCdmaEvdoGsmWcdmaEnabled();
+
+        final TelephonySnapshot snapshot = TelephonySnapshot.load(mContext, SUB_ID);
+
+        assertThat(snapshot.hasCarrierConfig()).isFalse();
+        assertThat(snapshot.isWorldMode()).isFalse();
+        assertThat(snapshot.isGlobalCdma()).isFalse();
+    }
+
+    @Test
+    public void load_tdscdmaSupported() {
+        mCarrierConfig.putBoolean(CarrierConfigManager.KEY_SUPPORT_TDSCDMA_BOOL, true);
+
+        assertThat(TelephonySnapshot.load(mContext, SUB_ID).isTdscdmaSupported()).isTrue();
+    }
+}